@@ -0,0 +1,92 @@
+package org.folio.okapi.bench;
+
+import io.vertx.core.json.Json;
+import java.util.ArrayList;
+import java.util.List;
+import org.folio.okapi.bean.ModuleDescriptor;
+
+/**
+ * Synthetic ModuleDescriptors for the benchmarks. Module i provides
+ * interface "bench-i" with a collection and an item handler, and requires
+ * "bench-(i/2)", so the dependencies form a binary tree rooted at module 0.
+ * Optionally an auth module with a filter for everything.
+ */
+public class BenchData {
+
+  public static final String AUTH_MODULE = "mod-bench-auth-1.0.0";
+
+  private BenchData() {
+    throw new IllegalAccessError("BenchData");
+  }
+
+  public static String moduleId(int i) {
+    return "mod-bench-" + i + "-1.0." + (i % 7);
+  }
+
+  public static String moduleJson(int i) {
+    StringBuilder b = new StringBuilder();
+    b.append("{\"id\" : \"").append(moduleId(i)).append("\",")
+      .append(" \"name\" : \"bench module ").append(i).append("\",");
+    if (i > 0) {
+      b.append(" \"requires\" : [ { \"id\" : \"bench-").append(i / 2)
+        .append("\", \"version\" : \"1.0\" } ],");
+    }
+    b.append(" \"provides\" : [ {")
+      .append(" \"id\" : \"bench-").append(i).append("\", \"version\" : \"1.")
+      .append(i % 3).append("\",")
+      .append(" \"handlers\" : [ {")
+      .append(" \"methods\" : [ \"GET\", \"POST\" ],")
+      .append(" \"pathPattern\" : \"/bench-").append(i).append("/items\",")
+      .append(" \"permissionsRequired\" : [ \"bench-").append(i).append(".items.get\" ]")
+      .append(" }, {")
+      .append(" \"methods\" : [ \"GET\", \"PUT\", \"DELETE\" ],")
+      .append(" \"pathPattern\" : \"/bench-").append(i).append("/items/{id}\",")
+      .append(" \"permissionsRequired\" : [ \"bench-").append(i).append(".item.get\" ]")
+      .append(" } ]")
+      .append(" }, {")
+      .append(" \"id\" : \"_tenant\", \"version\" : \"1.0\", \"interfaceType\" : \"system\",")
+      .append(" \"handlers\" : [ {")
+      .append(" \"methods\" : [ \"POST\", \"DELETE\" ],")
+      .append(" \"pathPattern\" : \"/_/tenant\"")
+      .append(" } ]")
+      .append(" } ],")
+      .append(" \"permissionSets\" : [ {")
+      .append(" \"permissionName\" : \"bench-").append(i).append(".items.get\",")
+      .append(" \"displayName\" : \"get items\"")
+      .append(" } ],")
+      .append(" \"launchDescriptor\" : {")
+      .append(" \"exec\" : \"java -Dport=%p -jar ../okapi-test-module/target/okapi-test-module-fat.jar\"")
+      .append(" }")
+      .append("}");
+    return b.toString();
+  }
+
+  public static String authModuleJson() {
+    return "{\"id\" : \"" + AUTH_MODULE + "\","
+      + " \"filters\" : [ {"
+      + " \"methods\" : [ \"*\" ],"
+      + " \"pathPattern\" : \"/*\","
+      + " \"phase\" : \"auth\","
+      + " \"type\" : \"headers\""
+      + " } ]"
+      + "}";
+  }
+
+  /**
+   * Make synthetic modules.
+   *
+   * @param count number of modules (not counting auth)
+   * @param auth whether to include the auth module
+   * @return list of modules
+   */
+  public static List<ModuleDescriptor> modules(int count, boolean auth) {
+    List<ModuleDescriptor> l = new ArrayList<>();
+    if (auth) {
+      l.add(Json.decodeValue(authModuleJson(), ModuleDescriptor.class));
+    }
+    for (int i = 0; i < count; i++) {
+      l.add(Json.decodeValue(moduleJson(i), ModuleDescriptor.class));
+    }
+    return l;
+  }
+}
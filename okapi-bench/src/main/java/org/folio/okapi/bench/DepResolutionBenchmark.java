@@ -0,0 +1,83 @@
+package org.folio.okapi.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.folio.okapi.bean.ModuleDescriptor;
+import org.folio.okapi.bean.TenantModuleDescriptor;
+import org.folio.okapi.util.DepResolution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DepResolution.installSimulate for a fresh tenant. Either one module is
+ * enabled and all its dependencies are pulled in, or all modules are
+ * listed in the install request like a full platform install.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DepResolutionBenchmark {
+
+  @Param({"100", "300"})
+  public int modules;
+
+  private Map<String, ModuleDescriptor> modsAvailable;
+
+  @Setup
+  public void setup() {
+    modsAvailable = new HashMap<>();
+    for (ModuleDescriptor md : BenchData.modules(modules, false)) {
+      modsAvailable.put(md.getId(), md);
+    }
+  }
+
+  private Boolean simulate(List<TenantModuleDescriptor> tml) {
+    Map<String, ModuleDescriptor> modsEnabled = new HashMap<>();
+    Boolean[] result = new Boolean[1];
+    DepResolution.installSimulate(modsAvailable, modsEnabled, tml, res -> {
+      if (res.failed()) {
+        throw new IllegalStateException(res.cause());
+      }
+      result[0] = res.result();
+    });
+    return result[0];
+  }
+
+  private static TenantModuleDescriptor enable(String id) {
+    TenantModuleDescriptor tm = new TenantModuleDescriptor();
+    tm.setAction(TenantModuleDescriptor.Action.enable);
+    tm.setId(id);
+    return tm;
+  }
+
+  @Benchmark
+  public Boolean enableLeaf() {
+    List<TenantModuleDescriptor> tml = new ArrayList<>();
+    tml.add(enable(BenchData.moduleId(modules - 1)));
+    return simulate(tml);
+  }
+
+  @Benchmark
+  public Boolean enableAll() {
+    List<TenantModuleDescriptor> tml = new ArrayList<>();
+    for (int i = 0; i < modules; i++) {
+      tml.add(enable(BenchData.moduleId(i)));
+    }
+    return simulate(tml);
+  }
+}
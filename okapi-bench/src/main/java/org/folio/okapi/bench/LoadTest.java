@@ -0,0 +1,436 @@
+package org.folio.okapi.bench;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.SynchronizedHistogram;
+import org.folio.okapi.MainDeploy;
+import org.folio.okapi.common.OkapiClient;
+import org.folio.okapi.common.OkapiLogger;
+import org.folio.okapi.common.XOkapiHeaders;
+
+/**
+ * Offline end-to-end load test. Boots Okapi in-process in dev mode with
+ * in-memory storage, deploys okapi-test-module and okapi-test-auth-module,
+ * registers synthetic modules served by the test module, creates tenants
+ * with all the modules enabled, and drives open-loop load against the
+ * proxy at a constant rate.
+ *
+ * Latency is measured from the time a request was scheduled to be sent,
+ * not from when it was actually sent, so queueing in the client is counted
+ * (coordinated omission correction). The service time, from actual send to
+ * end of response, is reported too.
+ *
+ * Configured with -D options, see README.md. Reports are written to the
+ * directory given by -Dout.
+ */
+public class LoadTest {
+
+  private final Logger logger = OkapiLogger.get();
+
+  private final int port = Integer.getInteger("port", 9230);
+  private final int tenants = Integer.getInteger("tenants", 10);
+  private final int modules = Integer.getInteger("modules", 20);
+  private final int rps = Integer.getInteger("rps", 500);
+  private final int warmupSeconds = Integer.getInteger("warmup", 10);
+  private final int durationSeconds = Integer.getInteger("duration", 60);
+  private final int connections = Integer.getInteger("connections", 200);
+  private final boolean auth = Boolean.parseBoolean(System.getProperty("auth", "true"));
+  private final String testModuleJar = System.getProperty("testModuleJar",
+    "okapi-test-module/target/okapi-test-module-fat.jar");
+  private final String testAuthJar = System.getProperty("testAuthJar",
+    "okapi-test-auth-module/target/okapi-test-auth-module-fat.jar");
+  private final File outDir = new File(System.getProperty("out", "okapi-bench/target/loadtest"));
+
+  private static final long TIMEOUT_SECONDS = 300;
+  private static final long HIGHEST_US = TimeUnit.MINUTES.toMicros(10);
+
+  private Vertx vertx;
+  private final String okapiUrl = "http://localhost:" + port;
+  private final Map<String, String> tokens = new HashMap<>();
+
+  private final Histogram corrected = new SynchronizedHistogram(HIGHEST_US, 3);
+  private final Histogram service = new SynchronizedHistogram(HIGHEST_US, 3);
+  private final Map<Integer, AtomicLong> statusCounts = new TreeMap<>();
+  private final AtomicLong errors = new AtomicLong();
+  private AtomicLongArray perSecond;
+
+  public static void main(String[] args) {
+    LoadTest t = new LoadTest();
+    int ret = 0;
+    try {
+      t.run();
+    } catch (Exception e) {
+      t.logger.error("Load test failed", e);
+      ret = 1;
+    }
+    System.exit(ret);
+  }
+
+  public void run() throws Exception {
+    logger.info("Load test: tenants=" + tenants + " modules=" + modules
+      + " rps=" + rps + " warmup=" + warmupSeconds + "s duration="
+      + durationSeconds + "s connections=" + connections + " auth=" + auth);
+    vertx = bootOkapi();
+    try {
+      setupModules();
+      setupTenants();
+      logger.info("Warmup " + warmupSeconds + "s");
+      drive(warmupSeconds, false);
+      logger.info("Measuring " + durationSeconds + "s");
+      long elapsed = drive(durationSeconds, true);
+      writeReports(elapsed);
+    } finally {
+      CompletableFuture<Void> f = new CompletableFuture<>();
+      vertx.close(res -> f.complete(null));
+      f.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+  }
+
+  private Vertx bootOkapi() throws Exception {
+    JsonObject conf = new JsonObject()
+      .put("port", Integer.toString(port))
+      .put("port_start", Integer.toString(port + 1))
+      .put("port_end", Integer.toString(port + 5))
+      .put("storage", "inmemory");
+    CompletableFuture<Vertx> f = new CompletableFuture<>();
+    new MainDeploy(conf).init(new String[]{"dev"}, res -> {
+      if (res.failed()) {
+        f.completeExceptionally(res.cause());
+      } else {
+        f.complete(res.result());
+      }
+    });
+    return f.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Make a request to Okapi and wait for the result.
+   *
+   * @param method HTTP method
+   * @param path path, starting with slash
+   * @param tenant tenant; null for supertenant
+   * @param body request body; may be null
+   * @return the client, with response headers and body
+   */
+  private OkapiClient call(HttpMethod method, String path, String tenant,
+    String body) throws Exception {
+
+    Map<String, String> headers = new HashMap<>();
+    headers.put("Content-Type", "application/json");
+    if (tenant != null) {
+      headers.put(XOkapiHeaders.TENANT, tenant);
+    }
+    OkapiClient cli = new OkapiClient(okapiUrl, vertx, headers);
+    CompletableFuture<OkapiClient> f = new CompletableFuture<>();
+    cli.request(method, path, body, res -> {
+      cli.close();
+      if (res.failed()) {
+        f.completeExceptionally(new IllegalStateException(method + " " + path
+          + ": " + res.cause().getMessage()));
+      } else {
+        f.complete(cli);
+      }
+    });
+    return f.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  private static String moduleId(int i) {
+    return "mod-load-" + i + "-1.0.0";
+  }
+
+  /**
+   * Module i provides interface "load-i" with handler /testb/load-i, which
+   * the test module serves.
+   */
+  private static String moduleDescriptor(int i) {
+    return new JsonObject()
+      .put("id", moduleId(i))
+      .put("provides", new JsonArray()
+        .add(new JsonObject()
+          .put("id", "load-" + i)
+          .put("version", "1.0")
+          .put("handlers", new JsonArray()
+            .add(new JsonObject()
+              .put("methods", new JsonArray().add("GET").add("POST"))
+              .put("pathPattern", "/testb/load-" + i))))
+        .add(new JsonObject()
+          .put("id", "_tenant")
+          .put("version", "1.0")
+          .put("interfaceType", "system")
+          .put("handlers", new JsonArray()
+            .add(new JsonObject()
+              .put("methods", new JsonArray().add("POST"))
+              .put("pathPattern", "/_/tenant")))))
+      .encode();
+  }
+
+  private String deploy(String srvcId) throws Exception {
+    JsonObject dd = new JsonObject()
+      .put("srvcId", srvcId)
+      .put("nodeId", "localhost");
+    OkapiClient cli = call(HttpMethod.POST, "/_/discovery/modules", null, dd.encode());
+    return new JsonObject(cli.getResponsebody()).getString("url");
+  }
+
+  private void setupModules() throws Exception {
+    JsonObject testMd = new JsonObject()
+      .put("id", "mod-load-backend-1.0.0")
+      .put("launchDescriptor", new JsonObject()
+        .put("exec", "java -Dport=%p -jar " + testModuleJar));
+    call(HttpMethod.POST, "/_/proxy/modules", null, testMd.encode());
+    final String backendUrl = deploy("mod-load-backend-1.0.0");
+    logger.info("okapi-test-module deployed at " + backendUrl);
+
+    if (auth) {
+      JsonObject authMd = new JsonObject()
+        .put("id", "mod-load-auth-1.0.0")
+        .put("provides", new JsonArray()
+          .add(new JsonObject()
+            .put("id", "authn")
+            .put("version", "1.0")
+            .put("handlers", new JsonArray()
+              .add(new JsonObject()
+                .put("methods", new JsonArray().add("POST"))
+                .put("pathPattern", "/authn/login")))))
+        .put("filters", new JsonArray()
+          .add(new JsonObject()
+            .put("methods", new JsonArray().add("*"))
+            .put("pathPattern", "/*")
+            .put("phase", "auth")
+            .put("type", "request-response")))
+        .put("launchDescriptor", new JsonObject()
+          .put("exec", "java -Dport=%p -jar " + testAuthJar));
+      call(HttpMethod.POST, "/_/proxy/modules", null, authMd.encode());
+      logger.info("okapi-test-auth-module deployed at "
+        + deploy("mod-load-auth-1.0.0"));
+    }
+
+    // The synthetic modules are all served by the one test module process
+    for (int i = 0; i < modules; i++) {
+      call(HttpMethod.POST, "/_/proxy/modules", null, moduleDescriptor(i));
+      JsonObject dd = new JsonObject()
+        .put("srvcId", moduleId(i))
+        .put("instId", "load-" + i)
+        .put("url", backendUrl);
+      call(HttpMethod.POST, "/_/discovery/modules", null, dd.encode());
+    }
+    logger.info(modules + " synthetic modules registered");
+  }
+
+  private void setupTenants() throws Exception {
+    JsonArray install = new JsonArray();
+    if (auth) {
+      install.add(new JsonObject().put("id", "mod-load-auth-1.0.0").put("action", "enable"));
+    }
+    for (int i = 0; i < modules; i++) {
+      install.add(new JsonObject().put("id", moduleId(i)).put("action", "enable"));
+    }
+    for (int t = 0; t < tenants; t++) {
+      final String tenant = "load_" + t;
+      call(HttpMethod.POST, "/_/proxy/tenants", null,
+        new JsonObject().put("id", tenant).encode());
+      call(HttpMethod.POST, "/_/proxy/tenants/" + tenant + "/install", null,
+        install.encode());
+      if (auth) {
+        JsonObject login = new JsonObject()
+          .put("tenant", tenant)
+          .put("username", "peter")
+          .put("password", "peter-password");
+        OkapiClient cli = call(HttpMethod.POST, "/authn/login", tenant, login.encode());
+        tokens.put(tenant, cli.getRespHeaders().get(XOkapiHeaders.TOKEN));
+      }
+    }
+    logger.info(tenants + " tenants created");
+  }
+
+  /**
+   * Drive open-loop load at the configured rate.
+   *
+   * @param seconds how long to run
+   * @param record whether to record the results
+   * @return elapsed nanoseconds, from first scheduled send to last response
+   */
+  private long drive(int seconds, boolean record) throws Exception {
+    final long total = (long) rps * seconds;
+    if (total == 0) {
+      return 0;
+    }
+    final double intervalNs = 1e9 / rps;
+    if (record) {
+      perSecond = new AtomicLongArray(seconds + 1);
+    }
+    HttpClientOptions opt = new HttpClientOptions()
+      .setKeepAlive(true)
+      .setMaxPoolSize(connections)
+      .setMaxWaitQueueSize(-1);
+    HttpClient client = vertx.createHttpClient(opt);
+    final Run run = new Run(System.nanoTime(), total, record);
+    final long[] sent = new long[1];
+    final long timerId = vertx.setPeriodic(1, tid -> {
+      final long now = System.nanoTime();
+      while (sent[0] < total) {
+        final long intended = run.start + (long) (sent[0] * intervalNs);
+        if (intended > now) {
+          break;
+        }
+        sent[0]++;
+        send(client, run, sent[0] - 1, intended);
+      }
+    });
+    long end;
+    try {
+      end = run.done.get(seconds + TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } finally {
+      vertx.cancelTimer(timerId);
+      client.close();
+    }
+    return end - run.start;
+  }
+
+  /**
+   * State of one load run (warmup or measurement).
+   */
+  private static class Run {
+    final long start;
+    final long total;
+    final boolean record;
+    final AtomicLong completed = new AtomicLong();
+    final AtomicLong lastEnd;
+    final CompletableFuture<Long> done = new CompletableFuture<>();
+
+    Run(long start, long total, boolean record) {
+      this.start = start;
+      this.total = total;
+      this.record = record;
+      this.lastEnd = new AtomicLong(start);
+    }
+  }
+
+  private void send(HttpClient client, Run run, long i, long intended) {
+    final String tenant = "load_" + (i % tenants);
+    final String uri = "/testb/load-" + ((i / tenants) % modules);
+    final long sendTime = System.nanoTime();
+    final AtomicBoolean finished = new AtomicBoolean();
+    HttpClientRequest req = client.get(port, "localhost", uri, res -> {
+      res.endHandler(v -> complete(run, finished, res.statusCode(), intended, sendTime));
+      res.exceptionHandler(e -> complete(run, finished, -1, intended, sendTime));
+    });
+    req.exceptionHandler(e -> complete(run, finished, -1, intended, sendTime));
+    req.putHeader(XOkapiHeaders.TENANT, tenant);
+    String tok = tokens.get(tenant);
+    if (tok != null) {
+      req.putHeader(XOkapiHeaders.TOKEN, tok);
+    }
+    req.end();
+  }
+
+  private void complete(Run run, AtomicBoolean finished, int status,
+    long intended, long sendTime) {
+
+    if (!finished.compareAndSet(false, true)) {
+      return;
+    }
+    final long now = System.nanoTime();
+    if (run.record) {
+      corrected.recordValue(Math.min(HIGHEST_US, (now - intended) / 1000));
+      service.recordValue(Math.min(HIGHEST_US, (now - sendTime) / 1000));
+      if (status < 200 || status >= 300) {
+        errors.incrementAndGet();
+      }
+      synchronized (statusCounts) {
+        statusCounts.computeIfAbsent(status, k -> new AtomicLong()).incrementAndGet();
+      }
+      int sec = (int) ((intended - run.start) / 1000000000L);
+      if (sec < perSecond.length()) {
+        perSecond.incrementAndGet(sec);
+      }
+    }
+    run.lastEnd.accumulateAndGet(now, Math::max);
+    if (run.completed.incrementAndGet() == run.total) {
+      run.done.complete(run.lastEnd.get());
+    }
+  }
+
+  private void writeReports(long elapsedNs) throws IOException {
+    if (!outDir.isDirectory() && !outDir.mkdirs()) {
+      throw new IOException("Can not create " + outDir);
+    }
+    try (PrintStream ps = new PrintStream(new FileOutputStream(new File(outDir, "latency.hgrm")))) {
+      corrected.outputPercentileDistribution(ps, 1000.0);
+    }
+    try (PrintStream ps = new PrintStream(new FileOutputStream(new File(outDir, "service.hgrm")))) {
+      service.outputPercentileDistribution(ps, 1000.0);
+    }
+    try (PrintStream ps = new PrintStream(new FileOutputStream(new File(outDir, "latency.hlog")))) {
+      HistogramLogWriter w = new HistogramLogWriter(ps);
+      w.outputComment("okapi load test tenants=" + tenants + " modules=" + modules
+        + " rps=" + rps + " auth=" + auth);
+      w.outputLogFormatVersion();
+      w.outputLegend();
+      corrected.setTag("latency");
+      w.outputIntervalHistogram(corrected);
+      service.setTag("service");
+      w.outputIntervalHistogram(service);
+    }
+    try (PrintStream ps = new PrintStream(new FileOutputStream(new File(outDir, "throughput.csv")))) {
+      ps.println("second,responses");
+      for (int i = 0; i < perSecond.length(); i++) {
+        ps.println(i + "," + perSecond.get(i));
+      }
+    }
+    List<String> lines = new ArrayList<>();
+    final long count = corrected.getTotalCount();
+    lines.add("tenants " + tenants);
+    lines.add("modules " + modules);
+    lines.add("auth " + auth);
+    lines.add("target.rps " + rps);
+    lines.add("duration.s " + durationSeconds);
+    lines.add("requests " + count);
+    lines.add("errors " + errors.get());
+    synchronized (statusCounts) {
+      for (Map.Entry<Integer, AtomicLong> e : statusCounts.entrySet()) {
+        lines.add("status." + e.getKey() + " " + e.getValue().get());
+      }
+    }
+    lines.add(String.format("achieved.rps %.1f", count * 1e9 / elapsedNs));
+    for (double p : new double[]{50.0, 90.0, 99.0, 99.9, 99.99}) {
+      lines.add(String.format("latency.p%s.ms %.3f", p,
+        corrected.getValueAtPercentile(p) / 1000.0));
+    }
+    lines.add(String.format("latency.max.ms %.3f", corrected.getMaxValue() / 1000.0));
+    for (double p : new double[]{50.0, 90.0, 99.0, 99.9, 99.99}) {
+      lines.add(String.format("service.p%s.ms %.3f", p,
+        service.getValueAtPercentile(p) / 1000.0));
+    }
+    lines.add(String.format("service.max.ms %.3f", service.getMaxValue() / 1000.0));
+    try (PrintStream ps = new PrintStream(new FileOutputStream(new File(outDir, "summary.txt")))) {
+      for (String l : lines) {
+        ps.println(l);
+        logger.info(l);
+      }
+    }
+    logger.info("Reports written to " + outDir.getAbsolutePath());
+  }
+}
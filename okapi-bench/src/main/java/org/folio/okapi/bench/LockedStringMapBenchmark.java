@@ -0,0 +1,94 @@
+package org.folio.okapi.bench;
+
+import io.vertx.core.Vertx;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.util.LockedStringMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LockedStringMap add and get on a local (non-clustered) map. The map is
+ * keyed like the discovery map: srvcId, then instId. Each operation is
+ * waited for, so this measures the full round trip including the JSON
+ * encoding of the inner map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockedStringMapBenchmark {
+
+  @Param({"1", "20"})
+  public int instances;
+
+  private Vertx vertx;
+  private LockedStringMap map;
+  private int seq;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    vertx = Vertx.vertx();
+    map = new LockedStringMap();
+    CompletableFuture<Void> f = new CompletableFuture<>();
+    map.init(vertx, "bench", res -> complete(f, res));
+    f.get();
+    for (int i = 0; i < instances; i++) {
+      add("srvc", "inst" + i);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    vertx.close();
+  }
+
+  private static <T> void complete(CompletableFuture<T> f, ExtendedAsyncResult<T> res) {
+    if (res.failed()) {
+      f.completeExceptionally(res.cause());
+    } else {
+      f.complete(res.result());
+    }
+  }
+
+  private void add(String k, String k2) throws Exception {
+    CompletableFuture<Void> f = new CompletableFuture<>();
+    map.addOrReplace(true, k, k2, "{\"srvcId\":\"" + k + "\",\"instId\":\"" + k2 + "\"}",
+      res -> complete(f, res));
+    f.get();
+  }
+
+  @Benchmark
+  public void addOrReplace() throws Exception {
+    add("srvc", "inst" + (seq++ % instances));
+  }
+
+  @Benchmark
+  public String getOne() throws Exception {
+    CompletableFuture<String> f = new CompletableFuture<>();
+    map.getString("srvc", "inst0", res -> complete(f, res));
+    return f.get();
+  }
+
+  @Benchmark
+  public Collection<String> getAll() throws Exception {
+    CompletableFuture<Collection<String>> f = new CompletableFuture<>();
+    map.getString("srvc", res -> complete(f, res));
+    return f.get();
+  }
+}
@@ -0,0 +1,52 @@
+package org.folio.okapi.bench;
+
+import io.vertx.core.json.Json;
+import java.util.concurrent.TimeUnit;
+import org.folio.okapi.bean.ModuleDescriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Json encode and decode of a ModuleDescriptor, which happens on every
+ * access to the shared module map and on every store write.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModuleDescriptorJsonBenchmark {
+
+  private String json;
+  private ModuleDescriptor md;
+
+  @Setup
+  public void setup() {
+    json = BenchData.moduleJson(17);
+    md = Json.decodeValue(json, ModuleDescriptor.class);
+  }
+
+  @Benchmark
+  public ModuleDescriptor decode() {
+    return Json.decodeValue(json, ModuleDescriptor.class);
+  }
+
+  @Benchmark
+  public String encode() {
+    return Json.encode(md);
+  }
+
+  @Benchmark
+  public String encodePrettily() {
+    return Json.encodePrettily(md);
+  }
+}
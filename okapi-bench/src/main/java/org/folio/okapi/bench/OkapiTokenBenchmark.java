@@ -0,0 +1,49 @@
+package org.folio.okapi.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.folio.okapi.common.OkapiToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * OkapiToken decode of the tenant, as done by the proxy for every request
+ * without X-Okapi-Tenant.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OkapiTokenBenchmark {
+
+  private String token;
+
+  @Setup
+  public void setup() {
+    String payload = "{\"sub\":\"diku_admin\","
+      + "\"user_id\":\"1ad737b0-d847-11e6-bf26-cec0c932ce01\","
+      + "\"tenant\":\"diku\"}";
+    Base64.Encoder enc = Base64.getUrlEncoder().withoutPadding();
+    token = enc.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8))
+      + "." + Base64.getEncoder().encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+      + "." + enc.encodeToString("signature".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Benchmark
+  public String getTenant() {
+    OkapiToken t = new OkapiToken();
+    t.setToken(token);
+    return t.getTenant();
+  }
+}
@@ -0,0 +1,63 @@
+package org.folio.okapi.bench;
+
+import io.vertx.core.json.Json;
+import java.util.concurrent.TimeUnit;
+import org.folio.okapi.bean.RoutingEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RoutingEntry.match for pathPattern entries, old-style path entries and
+ * the filter-everything pattern.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoutingEntryBenchmark {
+
+  private RoutingEntry pattern;
+  private RoutingEntry path;
+  private RoutingEntry filter;
+
+  @Setup
+  public void setup() {
+    pattern = Json.decodeValue("{\"methods\" : [ \"GET\", \"PUT\" ],"
+      + " \"pathPattern\" : \"/inventory/items/{id}/holdings/{hid}\"}",
+      RoutingEntry.class);
+    path = Json.decodeValue("{\"methods\" : [ \"GET\" ],"
+      + " \"path\" : \"/inventory/items\"}", RoutingEntry.class);
+    filter = Json.decodeValue("{\"methods\" : [ \"*\" ],"
+      + " \"pathPattern\" : \"/*\", \"phase\" : \"auth\"}", RoutingEntry.class);
+  }
+
+  @Benchmark
+  public boolean patternMatch() {
+    return pattern.match("/inventory/items/1234/holdings/5678?limit=10", "GET");
+  }
+
+  @Benchmark
+  public boolean patternNoMatch() {
+    return pattern.match("/circulation/loans/1234", "GET");
+  }
+
+  @Benchmark
+  public boolean pathMatch() {
+    return path.match("/inventory/items/1234", "GET");
+  }
+
+  @Benchmark
+  public boolean filterMatch() {
+    return filter.match("/inventory/items/1234", "POST");
+  }
+}
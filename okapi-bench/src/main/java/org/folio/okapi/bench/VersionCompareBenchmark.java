@@ -0,0 +1,81 @@
+package org.folio.okapi.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.folio.okapi.common.ModuleId;
+import org.folio.okapi.common.SemVer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SemVer and ModuleId parsing and comparison. ModuleId.compare parses both
+ * ids on every call, which is how most of Okapi uses it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VersionCompareBenchmark {
+
+  private SemVer v1;
+  private SemVer v2;
+  private ModuleId m1;
+  private ModuleId m2;
+  private List<String> ids;
+
+  @Setup
+  public void setup() {
+    v1 = new SemVer("2.17.1-SNAPSHOT.3141");
+    v2 = new SemVer("2.17.1-SNAPSHOT.3142");
+    m1 = new ModuleId("mod-inventory-storage-13.1.0-SNAPSHOT.214");
+    m2 = new ModuleId("mod-inventory-storage-13.1.0");
+    ids = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      ids.add("mod-inventory-storage-" + (i / 10) + "." + (i % 10) + ".0");
+    }
+    Collections.shuffle(ids);
+  }
+
+  @Benchmark
+  public SemVer semVerParse() {
+    return new SemVer("13.1.0-SNAPSHOT.214");
+  }
+
+  @Benchmark
+  public int semVerCompare() {
+    return v1.compareTo(v2);
+  }
+
+  @Benchmark
+  public ModuleId moduleIdParse() {
+    return new ModuleId("mod-inventory-storage-13.1.0-SNAPSHOT.214");
+  }
+
+  @Benchmark
+  public int moduleIdCompare() {
+    return m1.compareTo(m2);
+  }
+
+  @Benchmark
+  public int moduleIdCompareStrings() {
+    return ModuleId.compare("mod-inventory-storage-13.1.0-SNAPSHOT.214",
+      "mod-inventory-storage-13.1.0");
+  }
+
+  @Benchmark
+  public String moduleIdGetLatest() {
+    return new ModuleId("mod-inventory-storage").getLatest(ids);
+  }
+}
@@ -0,0 +1,53 @@
+package org.folio.okapi.managers;
+
+import io.vertx.core.http.HttpMethod;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.folio.okapi.bean.ModuleDescriptor;
+import org.folio.okapi.bean.ModuleInstance;
+import org.folio.okapi.bench.BenchData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pipeline construction for a request with hundreds of enabled modules:
+ * ProxyService.matchModules, which matches the handlers and filters of every
+ * enabled module and sorts the resulting ModuleInstances by phase level. The
+ * request is for the last module, so every module is inspected. In the
+ * package of ProxyService, as matchModules is package visible.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+  @Param({"100", "500"})
+  public int modules;
+
+  private List<ModuleDescriptor> enabled;
+  private String uri;
+
+  @Setup
+  public void setup() {
+    enabled = BenchData.modules(modules, true);
+    uri = "/bench-" + (modules - 1) + "/items/1234";
+  }
+
+  @Benchmark
+  public List<ModuleInstance> matchModules() {
+    return ProxyService.matchModules(enabled, null, HttpMethod.GET, uri, null,
+      (mods, re) -> true);
+  }
+}
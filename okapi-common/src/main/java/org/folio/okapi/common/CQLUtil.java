@@ -2,6 +2,7 @@ package org.folio.okapi.common;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.Predicate;
 import org.z3950.zing.cql.CQLAndNode;
 import org.z3950.zing.cql.CQLBooleanNode;
 import org.z3950.zing.cql.CQLNode;
@@ -48,6 +49,38 @@ public class CQLUtil {
     }
   }
 
+  /**
+   * Evaluate a query for a record.
+   *
+   * @param vn1 query
+   * @param term whether a term matches the record
+   * @return whether the query matches the record
+   */
+  public static boolean eval(CQLNode vn1, Predicate<CQLTermNode> term) {
+    if (vn1 instanceof CQLBooleanNode) {
+      CQLBooleanNode n1 = (CQLBooleanNode) vn1;
+      switch (n1.getOperator()) {
+        case AND:
+        case PROX:
+          return eval(n1.getLeftOperand(), term) && eval(n1.getRightOperand(), term);
+        case OR:
+          return eval(n1.getLeftOperand(), term) || eval(n1.getRightOperand(), term);
+        case NOT:
+          return eval(n1.getLeftOperand(), term) && !eval(n1.getRightOperand(), term);
+        default:
+          throw new IllegalArgumentException("unknown operator for CQLBooleanNode: " + n1.getOperator());
+      }
+    } else if (vn1 instanceof CQLTermNode) {
+      return term.test((CQLTermNode) vn1);
+    } else if (vn1 instanceof CQLSortNode) {
+      return eval(((CQLSortNode) vn1).getSubtree(), term);
+    } else if (vn1 instanceof CQLPrefixNode) {
+      return eval(((CQLPrefixNode) vn1).getSubtree(), term);
+    } else {
+      throw new IllegalArgumentException("unknown type for CQLNode: " + vn1.toString());
+    }
+  }
+
   public static CQLNode reducer(CQLNode vn1, CQLTermNode tn, Comparator<CQLTermNode> cmp) {
     if (vn1 instanceof CQLBooleanNode) {
       return reduceBoolean((CQLBooleanNode) vn1, tn, cmp);
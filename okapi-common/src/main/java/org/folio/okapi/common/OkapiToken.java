@@ -55,4 +55,16 @@ public class OkapiToken {
     JsonObject pl = this.getPayload();
     return pl.getString("tenant");
   }
+
+  /**
+   * Get the user ID out from the token.
+   * @return null if no token, or no user there
+   */
+  public String getUserId() {
+    if (token == null) {
+      return null;
+    }
+    JsonObject pl = this.getPayload();
+    return pl.getString("user_id");
+  }
 }
@@ -79,6 +79,14 @@ public class XOkapiHeaders {
    */
   public static final String TRACE = "X-Okapi-Trace";
 
+  /**
+   * X-Okapi-Phase-Timing. Added to responses from Okapi, if enabled, to tell
+   * how long Okapi spent in each phase of the request: tenant lookup, module
+   * resolution, routing, discovery and each module hop. For example
+   * "tenant=15us modules=40us routing=120us discovery=9us handler:mod-x-1.0.0=3748us"
+   */
+  public static final String PHASE_TIMING = "X-Okapi-Phase-Timing";
+
   /**
    * X-Okapi-Module-Id. Explicit call to a given module. Used to distinguish
    * which of the 'multiple' type modules we mean to call. Not to be used in
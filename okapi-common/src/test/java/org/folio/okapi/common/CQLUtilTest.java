@@ -46,6 +46,31 @@ public class CQLUtilTest {
     assertFalse(eval("source=x and a not b"));
   }
 
+  private boolean evalTerms(String input) {
+    CQLParser parser = new CQLParser(CQLParser.V1POINT2);
+    try {
+      CQLNode top = parser.parse(input);
+      return CQLUtil.eval(top, n -> n.getTerm().equals("t"));
+    } catch (Exception ex) {
+      return false;
+    }
+  }
+
+  @Test
+  public void testEvalTerms() {
+    assertTrue(evalTerms("t"));
+    assertFalse(evalTerms("f"));
+    assertTrue(evalTerms("a=t sortby title"));
+    assertTrue(evalTerms("t and a=t"));
+    assertFalse(evalTerms("t and f"));
+    assertTrue(evalTerms("f or t"));
+    assertFalse(evalTerms("f or f"));
+    assertTrue(evalTerms("t not f"));
+    assertFalse(evalTerms("t not t"));
+    assertFalse(evalTerms("f not f"));
+    assertTrue(evalTerms(">dc = \"xx\" t"));
+  }
+
   private String reduce(String input) {
     CQLParser parser = new CQLParser(CQLParser.V1POINT2);
     try {
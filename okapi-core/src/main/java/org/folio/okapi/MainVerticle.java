@@ -1,5 +1,6 @@
 package org.folio.okapi;
 
+import org.folio.okapi.managers.Autoscaler;
 import org.folio.okapi.managers.ModuleManager;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Context;
@@ -33,6 +34,9 @@ import org.folio.okapi.managers.ProxyService;
 import org.folio.okapi.managers.TenantManager;
 import org.folio.okapi.service.TenantStore;
 import org.folio.okapi.util.LogHelper;
+import org.folio.okapi.util.ModuleLoad;
+import org.folio.okapi.util.RequestMirror;
+import org.folio.okapi.util.StartupTimer;
 import org.folio.okapi.common.XOkapiHeaders;
 import org.folio.okapi.managers.DiscoveryManager;
 import org.folio.okapi.managers.EnvManager;
@@ -41,6 +45,8 @@ import org.folio.okapi.service.impl.Storage;
 import static org.folio.okapi.service.impl.Storage.InitMode.*;
 import org.folio.okapi.common.ModuleId;
 import org.folio.okapi.managers.InternalModule;
+import org.folio.okapi.managers.InstallJobManager;
+import org.folio.okapi.managers.SnapshotManager;
 
 @java.lang.SuppressWarnings({"squid:S1192"})
 public class MainVerticle extends AbstractVerticle {
@@ -50,13 +56,18 @@ public class MainVerticle extends AbstractVerticle {
 
   private ModuleManager moduleManager;
   private TenantManager tenantManager;
+  private InstallJobManager installJobManager;
+  private SnapshotManager snapshotManager;
   private EnvManager envManager;
   private ProxyService proxyService;
   private DeploymentManager deploymentManager;
+  private Autoscaler autoscaler;
+  private int autoscaleInterval;
   private DiscoveryManager discoveryManager;
   private ClusterManager clusterManager;
   private Storage storage;
   private Storage.InitMode initMode = NORMAL;
+  private StartupTimer startupTimer;
   private int port;
   private String okapiVersion = null;
   private Messages messages = Messages.getInstance();
@@ -107,6 +118,8 @@ public class MainVerticle extends AbstractVerticle {
     }
     final String logWaitMsStr = Config.getSysConf("logWaitMs", "", config);
     final int waitMs = logWaitMsStr.isEmpty() ? 0 : Integer.parseInt(logWaitMsStr);
+    final boolean phaseTimingHeader = Boolean.parseBoolean(
+      Config.getSysConf("phaseTimingHeader", "false", config));
 
     String mode = config.getString("mode", "cluster");
     switch (mode) {
@@ -173,7 +186,22 @@ public class MainVerticle extends AbstractVerticle {
       proxyService = new ProxyService(vertx,
         moduleManager, tenantManager, discoveryManager,
         internalModule, okapiUrl, waitMs);
+      proxyService.setPhaseTimingHeader(phaseTimingHeader);
+      proxyService.setRequestMirror(new RequestMirror(vertx,
+        Integer.parseInt(Config.getSysConf("mirrorParallel", "10", config)),
+        Integer.parseInt(Config.getSysConf("mirrorQueue", "100", config)),
+        Integer.parseInt(Config.getSysConf("mirrorMaxBody", "1048576", config))));
       tenantManager.setProxyService(proxyService);
+      installJobManager = new InstallJobManager(tenantManager,
+        storage.getInstallJobStore());
+      installJobManager.setMaxRunning(Integer.parseInt(
+        Config.getSysConf("installJobs", "4", config)));
+      installJobManager.setMaxKept(Integer.parseInt(
+        Config.getSysConf("installJobsKept", "10", config)));
+      internalModule.setInstallJobManager(installJobManager);
+      snapshotManager = new SnapshotManager(vertx, moduleManager, tenantManager,
+        envManager, discoveryManager, Config.getSysConf("snapshot", null, config));
+      internalModule.setSnapshotManager(snapshotManager);
     } else { // not really proxying, except to /_/deployment
       moduleManager = new ModuleManager(null);
       moduleManager.forceLocalMap(); // make sure it is not shared
@@ -189,12 +217,25 @@ public class MainVerticle extends AbstractVerticle {
         moduleManager, tenantManager, discoveryManager,
         internalModule, okapiUrl, waitMs);
     }
+    ModuleLoad moduleLoad = new ModuleLoad();
+    proxyService.setModuleLoad(moduleLoad);
+    if (deploymentManager != null) {
+      deploymentManager.setModuleLoad(moduleLoad);
+      deploymentManager.setDrainTimeout(Integer.parseInt(
+        Config.getSysConf("drainTimeout", "30000", config)));
+      deploymentManager.setDrainGrace(Integer.parseInt(
+        Config.getSysConf("drainGrace", "0", config)));
+      autoscaler = new Autoscaler(vertx, deploymentManager, moduleLoad);
+      autoscaleInterval = Integer.parseInt(
+        Config.getSysConf("autoscaleInterval", "10000", config));
+    }
 
   }
 
   @Override
   public void start(Future<Void> fut) {
     logger.debug("starting");
+    startupTimer = new StartupTimer();
     if (storage != null) {
       storage.prepareDatabases(initMode, res -> {
         if (res.failed()) {
@@ -205,6 +246,7 @@ public class MainVerticle extends AbstractVerticle {
             logger.info("Database operation " + initMode.toString() + " done. Exiting");
             System.exit(0);
           }
+          startupTimer.end("storage");
           startModmanager(fut);
         }
       });
@@ -216,6 +258,7 @@ public class MainVerticle extends AbstractVerticle {
   private void startModmanager(Future<Void> fut) {
     moduleManager.init(vertx, res -> {
       if (res.succeeded()) {
+        startupTimer.end("modules");
         startTenants(fut);
       } else {
         logger.fatal("ModuleManager init: " + res.cause().getMessage());
@@ -227,7 +270,8 @@ public class MainVerticle extends AbstractVerticle {
   private void startTenants(Future<Void> fut) {
     tenantManager.init(vertx, res -> {
       if (res.succeeded()) {
-        checkInternalModules(fut);
+        startupTimer.end("tenants");
+        startChanges(fut);
       } else {
         logger.fatal("load tenants failed: " + res.cause().getMessage());
         fut.fail(res.cause());
@@ -235,6 +279,54 @@ public class MainVerticle extends AbstractVerticle {
     });
   }
 
+  private void startChanges(Future<Void> fut) {
+    if (storage == null || snapshotManager == null) { // not proxying
+      startSnapshot(fut);
+      return;
+    }
+    storage.listen(moduleManager::refresh, tenantManager::refresh, res -> {
+      if (res.succeeded()) {
+        startupTimer.end("changes");
+        startSnapshot(fut);
+      } else {
+        logger.fatal("listen for changes failed: " + res.cause().getMessage());
+        fut.fail(res.cause());
+      }
+    });
+  }
+
+  private void startSnapshot(Future<Void> fut) {
+    if (snapshotManager == null) {
+      startInstallJobs(fut);
+      return;
+    }
+    snapshotManager.restoreProxy(res -> {
+      if (res.succeeded()) {
+        startupTimer.end("snapshot");
+        startInstallJobs(fut);
+      } else {
+        logger.fatal("load snapshot failed: " + res.cause().getMessage());
+        fut.fail(res.cause());
+      }
+    });
+  }
+
+  private void startInstallJobs(Future<Void> fut) {
+    if (installJobManager == null) {
+      checkInternalModules(fut);
+      return;
+    }
+    installJobManager.init(vertx, res -> {
+      if (res.succeeded()) {
+        startupTimer.end("installJobs");
+        checkInternalModules(fut);
+      } else {
+        logger.fatal("load install jobs failed: " + res.cause().getMessage());
+        fut.fail(res.cause());
+      }
+    });
+  }
+
 
   private void checkInternalModules(Future<Void> fut) {
     final ModuleDescriptor md = InternalModule.moduleDescriptor(okapiVersion);
@@ -354,8 +446,10 @@ public class MainVerticle extends AbstractVerticle {
 
   private void startEnv(Future<Void> fut) {
     logger.debug("starting Env");
+    startupTimer.end("internalModule");
     envManager.init(vertx, res -> {
       if (res.succeeded()) {
+        startupTimer.end("env");
         startDiscovery(fut);
       } else {
         fut.fail(res.cause());
@@ -367,8 +461,25 @@ public class MainVerticle extends AbstractVerticle {
     logger.debug("Starting discovery");
     discoveryManager.init(vertx, res -> {
       if (res.succeeded()) {
+        startupTimer.end("discovery");
+        startSnapshotServices(fut);
+      } else {
+        fut.fail(res.cause());
+      }
+    });
+  }
+
+  private void startSnapshotServices(Future<Void> fut) {
+    if (snapshotManager == null) {
+      startDeployment(fut);
+      return;
+    }
+    snapshotManager.restoreServices(res -> {
+      if (res.succeeded()) {
+        startupTimer.end("snapshotServices");
         startDeployment(fut);
       } else {
+        logger.fatal("load snapshot failed: " + res.cause().getMessage());
         fut.fail(res.cause());
       }
     });
@@ -381,6 +492,7 @@ public class MainVerticle extends AbstractVerticle {
       logger.debug("Starting deployment");
       deploymentManager.init(res -> {
         if (res.succeeded()) {
+          autoscaler.start(autoscaleInterval);
           startListening(fut);
         } else {
           fut.fail(res.cause());
@@ -390,6 +502,7 @@ public class MainVerticle extends AbstractVerticle {
   }
 
   private void startListening(Future<Void> fut) {
+    startupTimer.end("deployment");
     Router router = Router.router(vertx);
     logger.debug("Setting up routes");
     //handle CORS
@@ -433,6 +546,8 @@ public class MainVerticle extends AbstractVerticle {
             .listen(port,
                     result -> {
                       if (result.succeeded()) {
+                        startupTimer.end("listen");
+                        logger.info("Startup phases: " + startupTimer.report());
                         logger.info("API Gateway started PID "
                                 + ManagementFactory.getRuntimeMXBean().getName()
                           + ". Listening on port " + port);
@@ -0,0 +1,71 @@
+package org.folio.okapi.bean;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Bounds and targets for scaling the number of instances of a module on a
+ * node, based on the load seen by the proxy.
+ */
+@JsonInclude(Include.NON_NULL)
+public class AutoscaleDescriptor {
+
+  private Integer min;
+  private Integer max;
+  private Integer inFlight;
+  private Integer latency;
+
+  /**
+   * Get minimum number of instances on the node.
+   *
+   * @return number of instances; null for 1
+   */
+  public Integer getMin() {
+    return min;
+  }
+
+  public void setMin(Integer min) {
+    this.min = min;
+  }
+
+  /**
+   * Get maximum number of instances on the node.
+   *
+   * @return number of instances; null for same as min
+   */
+  public Integer getMax() {
+    return max;
+  }
+
+  public void setMax(Integer max) {
+    this.max = max;
+  }
+
+  /**
+   * Get target for the average number of requests being processed by each
+   * instance. More instances are started when it is exceeded.
+   *
+   * @return number of requests; null for no target
+   */
+  public Integer getInFlight() {
+    return inFlight;
+  }
+
+  public void setInFlight(Integer inFlight) {
+    this.inFlight = inFlight;
+  }
+
+  /**
+   * Get target for the average response time in milliseconds. More
+   * instances are started when it is exceeded.
+   *
+   * @return milliseconds; null for no target
+   */
+  public Integer getLatency() {
+    return latency;
+  }
+
+  public void setLatency(Integer latency) {
+    this.latency = latency;
+  }
+}
@@ -0,0 +1,29 @@
+package org.folio.okapi.bean;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Request for installing the same modules for several tenants.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkInstallDescriptor {
+
+  private String[] tenants;
+  private TenantModuleDescriptor[] modules;
+
+  public String[] getTenants() {
+    return tenants;
+  }
+
+  public void setTenants(String[] tenants) {
+    this.tenants = tenants;
+  }
+
+  public TenantModuleDescriptor[] getModules() {
+    return modules;
+  }
+
+  public void setModules(TenantModuleDescriptor[] modules) {
+    this.modules = modules;
+  }
+}
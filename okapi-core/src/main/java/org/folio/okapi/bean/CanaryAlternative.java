@@ -0,0 +1,50 @@
+package org.folio.okapi.bean;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Another version of a module that gets a share of the traffic of a tenant.
+ */
+@JsonInclude(Include.NON_NULL)
+public class CanaryAlternative {
+
+  private String id;
+  private int weight;
+  private ModuleDescriptor module;
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  /**
+   * Get share of the requests that go to this version.
+   *
+   * @return percentage 0 to 100
+   */
+  public int getWeight() {
+    return weight;
+  }
+
+  public void setWeight(int weight) {
+    this.weight = weight;
+  }
+
+  /**
+   * Get the descriptor of this version, as found when the split was set, so
+   * that requests need not look it up. Not shown to clients.
+   *
+   * @return module descriptor; null if not known
+   */
+  public ModuleDescriptor getModule() {
+    return module;
+  }
+
+  public void setModule(ModuleDescriptor module) {
+    this.module = module;
+  }
+}
@@ -0,0 +1,133 @@
+package org.folio.okapi.bean;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Splits the traffic of a tenant for a module between the enabled version
+ * and other versions of the same module. Each request goes to one version,
+ * chosen by a hash of the request or user key, so that the same key always
+ * gets the same version. Some of the requests may also be copied to a
+ * shadow instance.
+ */
+@JsonInclude(Include.NON_NULL)
+public class CanaryDescriptor {
+
+  public static final String KEY_REQUEST = "request";
+  public static final String KEY_USER = "user";
+
+  private String id;
+  private String key;
+  private CanaryAlternative[] alternatives;
+  private String mirror;
+  private Integer mirrorPercent;
+  private Boolean mirrorUnsafe;
+
+  /**
+   * Get the module that is enabled for the tenant.
+   *
+   * @return module ID
+   */
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  /**
+   * Get what the split is based on: "request" for X-Okapi-Request-Id or
+   * "user" for the user of the token, if any.
+   *
+   * @return key type; null for "request"
+   */
+  public String getKey() {
+    return key;
+  }
+
+  public void setKey(String key) {
+    this.key = key;
+  }
+
+  /**
+   * Get the other versions and their shares. The enabled module gets the
+   * rest of the traffic.
+   *
+   * @return alternatives
+   */
+  public CanaryAlternative[] getAlternatives() {
+    return alternatives;
+  }
+
+  public void setAlternatives(CanaryAlternative[] alternatives) {
+    this.alternatives = alternatives;
+  }
+
+  /**
+   * Get the module whose instances get a copy of some of the requests. The
+   * responses of these are discarded.
+   *
+   * @return module ID; null for no mirroring
+   */
+  public String getMirror() {
+    return mirror;
+  }
+
+  public void setMirror(String mirror) {
+    this.mirror = mirror;
+  }
+
+  /**
+   * Get share of the requests that are copied to the mirror.
+   *
+   * @return percentage 0 to 100; null for 100
+   */
+  public Integer getMirrorPercent() {
+    return mirrorPercent;
+  }
+
+  public void setMirrorPercent(Integer mirrorPercent) {
+    this.mirrorPercent = mirrorPercent;
+  }
+
+  /**
+   * Get whether requests with methods other than GET and HEAD are copied to
+   * the mirror. The mirror shares storage with the enabled version, so it
+   * applies such writes a second time.
+   *
+   * @return true to copy all methods; null or false for GET and HEAD only
+   */
+  public Boolean getMirrorUnsafe() {
+    return mirrorUnsafe;
+  }
+
+  public void setMirrorUnsafe(Boolean mirrorUnsafe) {
+    this.mirrorUnsafe = mirrorUnsafe;
+  }
+
+  /**
+   * Get a copy without the module descriptors of the alternatives, as shown
+   * to clients.
+   *
+   * @return copy
+   */
+  public CanaryDescriptor withoutModules() {
+    CanaryDescriptor cd = new CanaryDescriptor();
+    cd.id = id;
+    cd.key = key;
+    cd.mirror = mirror;
+    cd.mirrorPercent = mirrorPercent;
+    cd.mirrorUnsafe = mirrorUnsafe;
+    if (alternatives != null) {
+      cd.alternatives = new CanaryAlternative[alternatives.length];
+      for (int i = 0; i < alternatives.length; i++) {
+        CanaryAlternative alt = new CanaryAlternative();
+        alt.setId(alternatives[i].getId());
+        alt.setWeight(alternatives[i].getWeight());
+        cd.alternatives[i] = alt;
+      }
+    }
+    return cd;
+  }
+}
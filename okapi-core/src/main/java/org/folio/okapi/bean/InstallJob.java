@@ -0,0 +1,103 @@
+package org.folio.okapi.bean;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An install or upgrade for a tenant that runs in the background. Stored so
+ * that progress can be queried while it runs, and the result afterwards.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class InstallJob {
+
+  private String id;
+  private String tenant;
+  private String action; // install or upgrade
+  private boolean complete;
+  private String error;
+  private String startDate;
+  private String endDate;
+  private List<InstallJobModule> modules = new ArrayList<>();
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getTenant() {
+    return tenant;
+  }
+
+  public void setTenant(String tenant) {
+    this.tenant = tenant;
+  }
+
+  public String getAction() {
+    return action;
+  }
+
+  public void setAction(String action) {
+    this.action = action;
+  }
+
+  public boolean getComplete() {
+    return complete;
+  }
+
+  public void setComplete(boolean complete) {
+    this.complete = complete;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+
+  public String getStartDate() {
+    return startDate;
+  }
+
+  public void setStartDate(String startDate) {
+    this.startDate = startDate;
+  }
+
+  public String getEndDate() {
+    return endDate;
+  }
+
+  public void setEndDate(String endDate) {
+    this.endDate = endDate;
+  }
+
+  public List<InstallJobModule> getModules() {
+    return modules;
+  }
+
+  public void setModules(List<InstallJobModule> modules) {
+    this.modules = modules;
+  }
+
+  /**
+   * Find module entry of the job.
+   *
+   * @param moduleId module id
+   * @return entry; null if the module is not part of the job
+   */
+  @JsonIgnore
+  public InstallJobModule getModule(String moduleId) {
+    for (InstallJobModule m : modules) {
+      if (moduleId.equals(m.getId())) {
+        return m;
+      }
+    }
+    return null;
+  }
+}
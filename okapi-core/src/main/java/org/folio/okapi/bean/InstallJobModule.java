@@ -0,0 +1,71 @@
+package org.folio.okapi.bean;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Progress of one module in an install job. The module, action and message
+ * are as for the synchronous install; status and timing are added.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class InstallJobModule extends TenantModuleDescriptor {
+
+  // we really want these lowercase as they reflect the JSON property values
+  @java.lang.SuppressWarnings({"squid:S00115"})
+  public enum Status {
+    pending, running, done, failed
+  }
+
+  private Status status;
+  private String stage;
+  private String startDate;
+  private String endDate;
+
+  public InstallJobModule() {
+  }
+
+  public InstallJobModule(TenantModuleDescriptor tm) {
+    setId(tm.getId());
+    setFrom(tm.getFrom());
+    setAction(tm.getAction());
+    setMessage(tm.getMessage());
+    status = Status.pending;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  /**
+   * Get the current, or last, stage for the module: deploy, enable,
+   * disable or undeploy.
+   *
+   * @return stage; null if not started
+   */
+  public String getStage() {
+    return stage;
+  }
+
+  public void setStage(String stage) {
+    this.stage = stage;
+  }
+
+  public String getStartDate() {
+    return startDate;
+  }
+
+  public void setStartDate(String startDate) {
+    this.startDate = startDate;
+  }
+
+  public String getEndDate() {
+    return endDate;
+  }
+
+  public void setEndDate(String endDate) {
+    this.endDate = endDate;
+  }
+}
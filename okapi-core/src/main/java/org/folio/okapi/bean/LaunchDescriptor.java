@@ -19,6 +19,12 @@ public class LaunchDescriptor {
   private String[] dockerCMD;
   private EnvEntry[] env;
   private AnyDescriptor dockerArgs;
+  private String healthPath;
+  private Integer readyTimeout;
+  private Integer warmStandby;
+  private AutoscaleDescriptor autoscale;
+  private String[] warmUp;
+  private Integer warmUpRequests;
 
   public String getCmdlineStart() {
     return cmdlineStart;
@@ -83,4 +89,87 @@ public class LaunchDescriptor {
   public void setDockerArgs(AnyDescriptor dockerArgs) {
     this.dockerArgs = dockerArgs;
   }
+
+  /**
+   * Get path that is polled with GET after deployment. The module is not
+   * ready until it returns 2xx.
+   *
+   * @return path; null for just waiting for the port to be open
+   */
+  public String getHealthPath() {
+    return healthPath;
+  }
+
+  public void setHealthPath(String healthPath) {
+    this.healthPath = healthPath;
+  }
+
+  /**
+   * Get number of seconds to wait for the module to be ready.
+   *
+   * @return seconds; null for the default
+   */
+  public Integer getReadyTimeout() {
+    return readyTimeout;
+  }
+
+  public void setReadyTimeout(Integer readyTimeout) {
+    this.readyTimeout = readyTimeout;
+  }
+
+  /**
+   * Get number of instances to keep started in advance on each node where
+   * the module is deployed. Such an instance is used by the next deploy
+   * of the same module, and a new one is started in the background.
+   *
+   * @return number of instances; null for none
+   */
+  public Integer getWarmStandby() {
+    return warmStandby;
+  }
+
+  public void setWarmStandby(Integer warmStandby) {
+    this.warmStandby = warmStandby;
+  }
+
+  /**
+   * Get autoscaling settings for the module on each node where it is
+   * deployed.
+   *
+   * @return settings; null for no autoscaling
+   */
+  public AutoscaleDescriptor getAutoscale() {
+    return autoscale;
+  }
+
+  public void setAutoscale(AutoscaleDescriptor autoscale) {
+    this.autoscale = autoscale;
+  }
+
+  /**
+   * Get paths that are requested with GET on new instances of the module
+   * when it is enabled for a tenant, before the tenant starts using it.
+   *
+   * @return paths; null for no warm-up
+   */
+  public String[] getWarmUp() {
+    return warmUp;
+  }
+
+  public void setWarmUp(String[] warmUp) {
+    this.warmUp = warmUp;
+  }
+
+  /**
+   * Get number of times each warm-up path is requested on each instance.
+   *
+   * @return number of requests; null for 1
+   */
+  public Integer getWarmUpRequests() {
+    return warmUpRequests;
+  }
+
+  public void setWarmUpRequests(Integer warmUpRequests) {
+    this.warmUpRequests = warmUpRequests;
+  }
 }
@@ -0,0 +1,52 @@
+package org.folio.okapi.bean;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The state of the proxy, as kept in a snapshot: modules, tenants with their
+ * enabled modules, environment variables, and the instances that were
+ * registered in discovery by URL.
+ */
+@JsonInclude(Include.NON_NULL)
+public class Snapshot {
+
+  private List<ModuleDescriptor> modules = new LinkedList<>();
+  private List<Tenant> tenants = new LinkedList<>();
+  private List<EnvEntry> env = new LinkedList<>();
+  private List<DeploymentDescriptor> discovery = new LinkedList<>();
+
+  public List<ModuleDescriptor> getModules() {
+    return modules;
+  }
+
+  public void setModules(List<ModuleDescriptor> modules) {
+    this.modules = modules;
+  }
+
+  public List<Tenant> getTenants() {
+    return tenants;
+  }
+
+  public void setTenants(List<Tenant> tenants) {
+    this.tenants = tenants;
+  }
+
+  public List<EnvEntry> getEnv() {
+    return env;
+  }
+
+  public void setEnv(List<EnvEntry> env) {
+    this.env = env;
+  }
+
+  public List<DeploymentDescriptor> getDiscovery() {
+    return discovery;
+  }
+
+  public void setDiscovery(List<DeploymentDescriptor> discovery) {
+    this.discovery = discovery;
+  }
+}
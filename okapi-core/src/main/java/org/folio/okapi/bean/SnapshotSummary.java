@@ -0,0 +1,78 @@
+package org.folio.okapi.bean;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * What was written to, or read from, a snapshot file.
+ */
+@JsonInclude(Include.NON_NULL)
+public class SnapshotSummary {
+
+  private String file;
+  private String checksum;
+  private int modules;
+  private int tenants;
+  private int env;
+  private int discovery;
+
+  public SnapshotSummary() {
+  }
+
+  public SnapshotSummary(String file, String checksum, Snapshot s) {
+    this.file = file;
+    this.checksum = checksum;
+    this.modules = s.getModules().size();
+    this.tenants = s.getTenants().size();
+    this.env = s.getEnv().size();
+    this.discovery = s.getDiscovery().size();
+  }
+
+  public String getFile() {
+    return file;
+  }
+
+  public void setFile(String file) {
+    this.file = file;
+  }
+
+  public String getChecksum() {
+    return checksum;
+  }
+
+  public void setChecksum(String checksum) {
+    this.checksum = checksum;
+  }
+
+  public int getModules() {
+    return modules;
+  }
+
+  public void setModules(int modules) {
+    this.modules = modules;
+  }
+
+  public int getTenants() {
+    return tenants;
+  }
+
+  public void setTenants(int tenants) {
+    this.tenants = tenants;
+  }
+
+  public int getEnv() {
+    return env;
+  }
+
+  public void setEnv(int env) {
+    this.env = env;
+  }
+
+  public int getDiscovery() {
+    return discovery;
+  }
+
+  public void setDiscovery(int discovery) {
+    this.discovery = discovery;
+  }
+}
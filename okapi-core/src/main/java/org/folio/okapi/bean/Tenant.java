@@ -1,6 +1,7 @@
 package org.folio.okapi.bean;
 
 import com.fasterxml.jackson.annotation.*;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -23,6 +24,11 @@ public class Tenant {
   // will be undefined. That should not harm in real life, but it messes up
   // our tests!
 
+  @JsonProperty
+  @JsonInclude(JsonInclude.Include.NON_EMPTY)
+  private List<CanaryDescriptor> canary;
+  // traffic splits between versions of enabled modules; null if none
+
   public Tenant(TenantDescriptor descriptor) {
     this.descriptor = descriptor;
     this.enabled = new TreeMap<>();
@@ -86,4 +92,30 @@ public class Tenant {
   public Set<String> listModules() {
     return enabled.keySet();
   }
+
+  public List<CanaryDescriptor> getCanary() {
+    return canary;
+  }
+
+  public void setCanary(List<CanaryDescriptor> canary) {
+    this.canary = canary;
+  }
+
+  /**
+   * Get the traffic split for an enabled module.
+   *
+   * @param id module ID
+   * @return split; null if none
+   */
+  @JsonIgnore
+  public CanaryDescriptor getCanary(String id) {
+    if (canary != null) {
+      for (CanaryDescriptor c : canary) {
+        if (c.getId().equals(id)) {
+          return c;
+        }
+      }
+    }
+    return null;
+  }
 }
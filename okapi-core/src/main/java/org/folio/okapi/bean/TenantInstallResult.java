@@ -0,0 +1,40 @@
+package org.folio.okapi.bean;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+
+/**
+ * Outcome of a bulk install for one tenant: the install plan, and the
+ * reason if the install failed for the tenant.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TenantInstallResult {
+
+  private String tenant;
+  private List<TenantModuleDescriptor> modules;
+  private String error;
+
+  public String getTenant() {
+    return tenant;
+  }
+
+  public void setTenant(String tenant) {
+    this.tenant = tenant;
+  }
+
+  public List<TenantModuleDescriptor> getModules() {
+    return modules;
+  }
+
+  public void setModules(List<TenantModuleDescriptor> modules) {
+    this.modules = modules;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+}
@@ -0,0 +1,161 @@
+package org.folio.okapi.managers;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.folio.okapi.bean.AutoscaleDescriptor;
+import org.folio.okapi.bean.DeploymentDescriptor;
+import org.folio.okapi.bean.LaunchDescriptor;
+import org.folio.okapi.common.OkapiLogger;
+import org.folio.okapi.util.ModuleLoad;
+
+/**
+ * Scales the number of instances of modules deployed on this node, for
+ * modules that have autoscale in their LaunchDescriptor. At every check, the
+ * load that the proxy on this node has put on the local instances of a module
+ * is compared to the targets. If a target is exceeded, one instance is added.
+ * If the load is well below the targets, one of the instances added earlier
+ * is undeployed, which waits for requests in progress to complete. The number
+ * of instances is kept within min and max.
+ */
+public class Autoscaler {
+
+  private final Logger logger = OkapiLogger.get();
+  private final Vertx vertx;
+  private final DeploymentManager deploymentManager;
+  private final ModuleLoad moduleLoad;
+  // instances added by the autoscaler, by srvcId, newest last
+  private final Map<String, LinkedList<String>> added = new HashMap<>();
+  // services with a deploy or undeploy in progress
+  private final Set<String> busy = new HashSet<>();
+  private Long timerId;
+
+  public Autoscaler(Vertx vertx, DeploymentManager deploymentManager,
+    ModuleLoad moduleLoad) {
+
+    this.vertx = vertx;
+    this.deploymentManager = deploymentManager;
+    this.moduleLoad = moduleLoad;
+  }
+
+  /**
+   * Start checking periodically.
+   *
+   * @param interval milliseconds between checks; 0 to not check at all
+   */
+  public void start(long interval) {
+    stop();
+    if (interval > 0) {
+      timerId = vertx.setPeriodic(interval, x -> check());
+    }
+  }
+
+  /**
+   * Stop checking.
+   */
+  public void stop() {
+    if (timerId != null) {
+      vertx.cancelTimer(timerId);
+      timerId = null;
+    }
+  }
+
+  /**
+   * Check the load of all autoscaled modules and add or remove instances.
+   */
+  public void check() {
+    deploymentManager.list(res -> {
+      if (res.failed()) {
+        logger.warn("Autoscaler: " + res.cause().getMessage());
+        return;
+      }
+      Map<String, List<DeploymentDescriptor>> services = new LinkedHashMap<>();
+      for (DeploymentDescriptor dd : res.result()) {
+        LaunchDescriptor ld = dd.getDescriptor();
+        if (ld != null && ld.getAutoscale() != null) {
+          services.computeIfAbsent(dd.getSrvcId(), k -> new LinkedList<>()).add(dd);
+        }
+      }
+      added.keySet().retainAll(services.keySet());
+      for (Map.Entry<String, List<DeploymentDescriptor>> e : services.entrySet()) {
+        check(e.getKey(), e.getValue());
+      }
+    });
+  }
+
+  private void check(String srvcId, List<DeploymentDescriptor> instances) {
+    // sample even when busy, so that the next period starts now
+    double inFlight = 0.0;
+    long requests = 0;
+    double totalTime = 0.0;
+    Set<String> instIds = new HashSet<>();
+    for (DeploymentDescriptor dd : instances) {
+      ModuleLoad.Sample s = moduleLoad.sample(dd.getUrl());
+      inFlight += s.getInFlight();
+      requests += s.getRequests();
+      totalTime += s.getLatency() * s.getRequests();
+      instIds.add(dd.getInstId());
+    }
+    if (busy.contains(srvcId)) {
+      return;
+    }
+    LinkedList<String> mine = added.computeIfAbsent(srvcId, k -> new LinkedList<>());
+    mine.retainAll(instIds);
+
+    AutoscaleDescriptor as = instances.get(0).getDescriptor().getAutoscale();
+    final int min = as.getMin() == null ? 1 : Math.max(1, as.getMin());
+    final int max = as.getMax() == null ? min : Math.max(min, as.getMax());
+    final int n = instances.size();
+    final double latency = requests > 0 ? totalTime / requests : 0.0;
+    final boolean high = (as.getInFlight() != null && inFlight / n > as.getInFlight())
+      || (as.getLatency() != null && latency > as.getLatency());
+    // low if the load would still be at most half the targets with one less
+    final boolean low = n > 1
+      && (as.getInFlight() == null || inFlight / (n - 1) < as.getInFlight() / 2.0)
+      && (as.getLatency() == null || latency < as.getLatency() / 2.0);
+    final String load = String.format("%d instances, %.2f in flight, %.1f ms",
+      n, inFlight, latency);
+    if (n < min || (high && n < max)) {
+      scaleUp(srvcId, instances.get(0), load);
+    } else if (n > min && low && !mine.isEmpty()) {
+      scaleDown(srvcId, mine.removeLast(), load);
+    }
+  }
+
+  private void scaleUp(String srvcId, DeploymentDescriptor template, String load) {
+    logger.info("Autoscaler: adding instance of " + srvcId + ": " + load);
+    busy.add(srvcId);
+    DeploymentDescriptor dd = new DeploymentDescriptor(null, srvcId,
+      template.getDescriptor());
+    dd.setNodeId(template.getNodeId());
+    deploymentManager.deploy(dd, res -> {
+      busy.remove(srvcId);
+      if (res.failed()) {
+        logger.warn("Autoscaler: adding instance of " + srvcId + " failed: "
+          + res.cause().getMessage());
+      } else {
+        added.computeIfAbsent(srvcId, k -> new LinkedList<>())
+          .add(res.result().getInstId());
+      }
+    });
+  }
+
+  private void scaleDown(String srvcId, String instId, String load) {
+    logger.info("Autoscaler: removing instance " + instId + " of " + srvcId
+      + ": " + load);
+    busy.add(srvcId);
+    deploymentManager.undeploy(instId, res -> {
+      busy.remove(srvcId);
+      if (res.failed()) {
+        logger.warn("Autoscaler: removing instance " + instId + " failed: "
+          + res.cause().getMessage());
+      }
+    });
+  }
+}
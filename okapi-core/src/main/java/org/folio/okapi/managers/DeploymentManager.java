@@ -4,22 +4,29 @@ import com.codahale.metrics.Timer;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
 import io.vertx.core.logging.Logger;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import org.folio.okapi.bean.DeploymentDescriptor;
 import org.folio.okapi.bean.EnvEntry;
 import org.folio.okapi.bean.NodeDescriptor;
 import org.folio.okapi.service.ModuleHandle;
 import org.folio.okapi.bean.Ports;
 import org.folio.okapi.bean.LaunchDescriptor;
+import org.folio.okapi.util.DeploymentEvent;
 import org.folio.okapi.util.DropwizardHelper;
+import org.folio.okapi.util.ModuleLoad;
+import org.folio.okapi.util.OkapiEvents;
 import org.folio.okapi.service.impl.ModuleHandleFactory;
 import static org.folio.okapi.common.ErrorType.*;
 import org.folio.okapi.common.ExtendedAsyncResult;
@@ -45,6 +52,26 @@ public class DeploymentManager {
   private final int listenPort;
   private final String nodeName;
   private Messages messages = Messages.getInstance();
+  // warm standby: started instances, not yet in discovery, by standbyKey
+  private final Map<String, LinkedList<Standby>> standby = new HashMap<>();
+  private final Map<String, Integer> standbyStarting = new HashMap<>();
+  private final Map<String, Integer> standbyTarget = new HashMap<>();
+  private ModuleLoad moduleLoad;
+  // instances removed from discovery, waiting for requests to complete
+  private final Set<String> draining = new HashSet<>();
+  private int drainTimeout = 30000;
+  private int drainGrace = 0;
+  private static final int DRAIN_CHECK = 100;
+
+  private static class Standby {
+    private final ModuleHandle mh;
+    private final int port;
+
+    Standby(ModuleHandle mh, int port) {
+      this.mh = mh;
+      this.port = port;
+    }
+  }
 
   public DeploymentManager(Vertx vertx, DiscoveryManager dm, EnvManager em,
     String host, Ports ports, int listenPort, String nodeName) {
@@ -55,6 +82,45 @@ public class DeploymentManager {
     this.listenPort = listenPort;
     this.ports = ports;
     this.nodeName = nodeName;
+    DropwizardHelper.registerGauge("deploy.standby", () -> {
+      int n = 0;
+      for (LinkedList<Standby> l : standby.values()) {
+        n += l.size();
+      }
+      return n;
+    });
+    DropwizardHelper.registerGauge("deploy.draining", draining::size);
+  }
+
+  /**
+   * Set load tracking of the proxy. When set, undeploy waits for requests
+   * that use the instance to complete before stopping it.
+   *
+   * @param moduleLoad load tracking; null for none
+   */
+  public void setModuleLoad(ModuleLoad moduleLoad) {
+    this.moduleLoad = moduleLoad;
+  }
+
+  /**
+   * Set how long undeploy waits for requests in progress to an instance.
+   *
+   * @param drainTimeout milliseconds; 0 to stop the instance right away
+   */
+  public void setDrainTimeout(int drainTimeout) {
+    this.drainTimeout = drainTimeout;
+  }
+
+  /**
+   * Set how long undeploy waits at least, also when no request in progress
+   * is known. Only requests proxied by this node are known, so this gives
+   * requests that other nodes of a cluster sent to the instance time to
+   * complete. Bounded by the drain timeout.
+   *
+   * @param drainGrace milliseconds; 0 to not wait when no request is known
+   */
+  public void setDrainGrace(int drainGrace) {
+    this.drainGrace = drainGrace;
   }
 
   public void init(Handler<ExtendedAsyncResult<Void>> fut) {
@@ -75,6 +141,15 @@ public class DeploymentManager {
       mh.stop(f::handle);
       futures.add(f);
     }
+    standbyTarget.clear();
+    for (LinkedList<Standby> l : standby.values()) {
+      for (Standby sb : l) {
+        Future<Void> f = Future.future();
+        sb.mh.stop(f::handle);
+        futures.add(f);
+      }
+    }
+    standby.clear();
     futures.all(fut);
   }
 
@@ -104,17 +179,20 @@ public class DeploymentManager {
       md1.setInstId(id);
     }
     logger.info("deploy instId " + id);
-    deploy2(fut, tim, usePort, md1, url);
+    DeploymentEvent ev = OkapiEvents.beginDeployment("deploy", srvc, id);
+    deploy2(fut, tim, ev, usePort, md1, url);
   }
 
   private void deploy2(Handler<ExtendedAsyncResult<DeploymentDescriptor>> fut,
-    Timer.Context tim, int usePort, DeploymentDescriptor md1, String url) {
+    Timer.Context tim, DeploymentEvent ev, int usePort,
+    DeploymentDescriptor md1, String url) {
 
     LaunchDescriptor descriptor = md1.getDescriptor();
     if (descriptor == null) {
       ports.free(usePort);
       fut.handle(new Failure<>(USER, messages.getMessage("10703")));
       tim.close();
+      OkapiEvents.endDeployment(ev, url, false);
       return;
     }
     HashMap<String, EnvEntry> entries = new HashMap<>();
@@ -129,6 +207,7 @@ public class DeploymentManager {
         ports.free(usePort);
         fut.handle(new Failure<>(INTERNAL, messages.getMessage("10704", eres.cause().getMessage())));
         tim.close();
+        OkapiEvents.endDeployment(ev, url, false);
       } else {
         for (EnvEntry er : eres.result()) {
           entries.put(er.getName(), er);
@@ -141,18 +220,23 @@ public class DeploymentManager {
           }
           descriptor.setEnv(nenv);
         }
+        final String key = standbyKey(md1.getSrvcId(), descriptor);
+        Standby sb = claimStandby(key);
+        if (sb != null) {
+          ports.free(usePort);
+          logger.info("Using standby instance of " + md1.getSrvcId() + " at port " + sb.port);
+          deploy3(fut, tim, ev, md1, "http://" + host + ":" + sb.port, sb.mh);
+          fillStandby(key, md1.getSrvcId(), descriptor);
+          return;
+        }
         ModuleHandle mh = ModuleHandleFactory.create(vertx, descriptor, md1.getSrvcId(), ports, usePort);
         mh.start(future -> {
           if (future.succeeded()) {
-            DeploymentDescriptor md2
-              = new DeploymentDescriptor(md1.getInstId(), md1.getSrvcId(),
-                url, md1.getDescriptor(), mh);
-            md2.setNodeId(md1.getNodeId() != null ? md1.getNodeId() : host);
-            list.put(md2.getInstId(), md2);
-            tim.close();
-            dm.add(md2, res -> fut.handle(new Success<>(md2)));
+            deploy3(fut, tim, ev, md1, url, mh);
+            fillStandby(key, md1.getSrvcId(), descriptor);
           } else {
             tim.close();
+            OkapiEvents.endDeployment(ev, url, false);
             ports.free(usePort);
             logger.warn("Deploying " + md1.getSrvcId() + " failed");
             fut.handle(new Failure<>(USER, future.cause()));
@@ -162,34 +246,164 @@ public class DeploymentManager {
     });
   }
 
+  private void deploy3(Handler<ExtendedAsyncResult<DeploymentDescriptor>> fut,
+    Timer.Context tim, DeploymentEvent ev, DeploymentDescriptor md1,
+    String url, ModuleHandle mh) {
+
+    DeploymentDescriptor md2
+      = new DeploymentDescriptor(md1.getInstId(), md1.getSrvcId(),
+        url, md1.getDescriptor(), mh);
+    md2.setNodeId(md1.getNodeId() != null ? md1.getNodeId() : host);
+    list.put(md2.getInstId(), md2);
+    tim.close();
+    OkapiEvents.endDeployment(ev, url, true);
+    dm.add(md2, res -> fut.handle(new Success<>(md2)));
+  }
+
+  /*
+   * Standby instances can only stand in for a deployment of the same service
+   * with the same launch descriptor, including environment.
+   */
+  private static String standbyKey(String srvcId, LaunchDescriptor descriptor) {
+    return srvcId + " " + Json.encode(descriptor);
+  }
+
+  private Standby claimStandby(String key) {
+    LinkedList<Standby> l = standby.get(key);
+    if (l == null || l.isEmpty()) {
+      return null;
+    }
+    return l.removeFirst();
+  }
+
+  /**
+   * Start instances in the background until there are warmStandby of them
+   * ready or starting for the service. These are not added to discovery
+   * until claimed by a deploy.
+   */
+  private void fillStandby(String key, String srvcId, LaunchDescriptor descriptor) {
+    final Integer target = descriptor.getWarmStandby();
+    if (target == null || target <= 0) {
+      return;
+    }
+    standbyTarget.put(key, target);
+    standby.putIfAbsent(key, new LinkedList<>());
+    while (standby.get(key).size() + standbyStarting.getOrDefault(key, 0) < target) {
+      final int usePort = ports.get();
+      if (usePort == -1) {
+        logger.warn("No port for standby instance of " + srvcId);
+        return;
+      }
+      standbyStarting.merge(key, 1, Integer::sum);
+      ModuleHandle mh = ModuleHandleFactory.create(vertx, descriptor, srvcId, ports, usePort);
+      mh.start(res -> {
+        standbyStarting.merge(key, -1, Integer::sum);
+        if (res.failed()) {
+          ports.free(usePort);
+          logger.warn("Starting standby instance of " + srvcId + " failed: "
+            + res.cause().getMessage());
+        } else if (!standbyTarget.containsKey(key)) {
+          // service undeployed while starting
+          mh.stop(x -> { });
+        } else {
+          logger.info("Standby instance of " + srvcId + " ready at port " + usePort);
+          standby.get(key).add(new Standby(mh, usePort));
+        }
+      });
+    }
+  }
+
+  /* stop standby instances when the last instance of the service is gone */
+  private void drainStandby(DeploymentDescriptor md) {
+    final String key = standbyKey(md.getSrvcId(), md.getDescriptor());
+    for (DeploymentDescriptor dd : list.values()) {
+      if (key.equals(standbyKey(dd.getSrvcId(), dd.getDescriptor()))) {
+        return;
+      }
+    }
+    standbyTarget.remove(key);
+    LinkedList<Standby> l = standby.remove(key);
+    if (l != null) {
+      for (Standby sb : l) {
+        logger.info("Stopping standby instance of " + md.getSrvcId() + " at port " + sb.port);
+        sb.mh.stop(x -> { });
+      }
+    }
+  }
+
+  /**
+   * Undeploy an instance. It is removed from discovery right away, so that
+   * the proxy does not pick it for new requests. The process is stopped when
+   * requests in progress to it have completed, or after the drain timeout.
+   * Only the requests proxied by this node are known; for those of other
+   * nodes, the process is not stopped before the drain grace period.
+   *
+   * @param id instance identifier
+   * @param fut future; completes when the instance is stopped
+   */
   public void undeploy(String id, Handler<ExtendedAsyncResult<Void>> fut) {
     logger.info("undeploy instId " + id);
     if (!list.containsKey(id)) {
       fut.handle(new Failure<>(NOT_FOUND, messages.getMessage("10705", id)));
+    } else if (draining.contains(id)) {
+      fut.handle(new Failure<>(USER, messages.getMessage("10706", id)));
     } else {
       Timer.Context tim = DropwizardHelper.getTimerContext("deploy." + id + ".undeploy");
       DeploymentDescriptor md = list.get(id);
+      DeploymentEvent ev = OkapiEvents.beginDeployment("undeploy",
+        md.getSrvcId(), id);
       dm.remove(md.getSrvcId(), md.getInstId(), res -> {
         if (res.failed()) {
           tim.close();
+          OkapiEvents.endDeployment(ev, md.getUrl(), false);
           fut.handle(new Failure<>(res.getType(), res.cause()));
         } else {
           ModuleHandle mh = md.getModuleHandle();
-          mh.stop(future -> {
-            if (future.failed()) {
-              tim.close();
-              fut.handle(new Failure<>(INTERNAL, future.cause()));
-            } else {
-              fut.handle(new Success<>());
-              tim.close();
-              list.remove(id);
-            }
+          draining.add(id);
+          final long start = System.currentTimeMillis();
+          waitIdle(md.getUrl(), start + Math.min(drainGrace, drainTimeout),
+            start + drainTimeout, x -> {
+            draining.remove(id);
+            DropwizardHelper.updateTimer("deploy.drain",
+              System.currentTimeMillis() - start, TimeUnit.MILLISECONDS);
+            mh.stop(future -> {
+              if (future.failed()) {
+                tim.close();
+                OkapiEvents.endDeployment(ev, md.getUrl(), false);
+                fut.handle(new Failure<>(INTERNAL, future.cause()));
+              } else {
+                fut.handle(new Success<>());
+                tim.close();
+                OkapiEvents.endDeployment(ev, md.getUrl(), true);
+                list.remove(id);
+                drainStandby(md);
+              }
+            });
           });
         }
       });
     }
   }
 
+  /*
+   * wait until no proxy request of this node uses the instance at url, but
+   * at least until grace, or until deadline
+   */
+  private void waitIdle(String url, long grace, long deadline, Handler<Void> handler) {
+    final long now = System.currentTimeMillis();
+    if (now >= grace && (moduleLoad == null || url == null
+      || (moduleLoad.getReserved(url) == 0 && moduleLoad.getInFlight(url) == 0))) {
+      handler.handle(null);
+    } else if (now >= deadline) {
+      logger.warn("Stopping " + url + " with " + moduleLoad.getReserved(url)
+        + " requests reserved and " + moduleLoad.getInFlight(url)
+        + " in flight");
+      handler.handle(null);
+    } else {
+      vertx.setTimer(DRAIN_CHECK, x -> waitIdle(url, grace, deadline, handler));
+    }
+  }
+
   public void list(Handler<ExtendedAsyncResult<List<DeploymentDescriptor>>> fut) {
     List<DeploymentDescriptor> ml = new LinkedList<>();
     for (Map.Entry<String, DeploymentDescriptor> entry : list.entrySet()) {
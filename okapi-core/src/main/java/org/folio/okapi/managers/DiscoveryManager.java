@@ -210,9 +210,9 @@ public class DiscoveryManager implements NodeListener {
       } else {
         Map<String, String> headers = new HashMap<>();
         if (pc != null) {
-          for (String s : pc.getCtx().request().headers().names()) {
+          for (String s : pc.getHeaders().names()) {
             if (s.startsWith("X-") || s.startsWith("x-")) {
-              final String v = pc.getCtx().request().headers().get(s);
+              final String v = pc.getHeaders().get(s);
               headers.put(s, v);
             }
           }
@@ -311,9 +311,9 @@ public class DiscoveryManager implements NodeListener {
         } else {
           Map<String, String> headers = new HashMap<>();
           if (pc != null) {
-            for (String s : pc.getCtx().request().headers().names()) {
+            for (String s : pc.getHeaders().names()) {
               if (s.startsWith("X-") || s.startsWith("x-")) {
-                final String v = pc.getCtx().request().headers().get(s);
+                final String v = pc.getHeaders().get(s);
                 headers.put(s, v);
               }
             }
@@ -485,6 +485,16 @@ public class DiscoveryManager implements NodeListener {
     });
   }
 
+  /**
+   * Get the version of the instances, which increases with every change to
+   * them.
+   *
+   * @param fut callback with the version
+   */
+  public void getVersion(Handler<ExtendedAsyncResult<Long>> fut) {
+    deployments.getVersion(fut);
+  }
+
   /**
    * Get all known DeploymentDescriptors (all services on all nodes).
    */
@@ -111,6 +111,22 @@ public class EnvManager {
     });
   }
 
+  /**
+   * Add many variables. For restoring a snapshot.
+   *
+   * @param list variables
+   * @param fut callback
+   */
+  public void restore(List<EnvEntry> list, Handler<ExtendedAsyncResult<Void>> fut) {
+    CompList<List<Void>> futures = new CompList<>(INTERNAL);
+    for (EnvEntry e : list) {
+      Future<Void> f = Future.future();
+      add(e, f::handle);
+      futures.add(f);
+    }
+    futures.all(fut);
+  }
+
   public void remove(String name, Handler<ExtendedAsyncResult<Void>> fut) {
     envMap.remove(name, res -> {
       if (res.failed()) {
@@ -0,0 +1,421 @@
+package org.folio.okapi.managers;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import io.vertx.core.logging.Logger;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import org.folio.okapi.bean.InstallJob;
+import org.folio.okapi.bean.InstallJobModule;
+import org.folio.okapi.bean.TenantModuleDescriptor;
+import static org.folio.okapi.common.ErrorType.*;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.common.Failure;
+import org.folio.okapi.common.Messages;
+import org.folio.okapi.common.OkapiLogger;
+import org.folio.okapi.common.Success;
+import org.folio.okapi.service.InstallJobStore;
+import org.folio.okapi.util.InstallProgress;
+import org.folio.okapi.util.LockedTypedMap1;
+import org.folio.okapi.util.ProxyContext;
+import org.folio.okapi.util.TenantInstallOptions;
+
+/**
+ * Runs install and upgrade for tenants in the background. The jobs are kept
+ * in a shared map, so that any node can report progress, and passed on to the
+ * database, so that the result is still there after a restart. At most
+ * maxRunning jobs run at a time on this node; the rest wait in a queue. A
+ * tenant has at most one job that is not complete, and at most maxKept
+ * completed jobs; older ones are removed when a job completes.
+ */
+public class InstallJobManager {
+
+  private final Logger logger = OkapiLogger.get();
+  private final TenantManager tenantManager;
+  private final InstallJobStore jobStore;
+  private final LockedTypedMap1<InstallJob> jobs = new LockedTypedMap1<>(InstallJob.class);
+  private final Messages messages = Messages.getInstance();
+  private final LinkedList<Runnable> queue = new LinkedList<>();
+  private final Set<String> saving = new HashSet<>();
+  private final Set<String> dirty = new HashSet<>();
+  private final Set<String> active = new HashSet<>();
+  private int maxRunning = 4;
+  private int maxKept = 10;
+  private int running;
+
+  public InstallJobManager(TenantManager tenantManager, InstallJobStore jobStore) {
+    this.tenantManager = tenantManager;
+    this.jobStore = jobStore;
+  }
+
+  /**
+   * Set maximum number of jobs that run at a time on this node.
+   *
+   * @param maxRunning number of jobs; values less than 1 are treated as 1
+   */
+  public void setMaxRunning(int maxRunning) {
+    this.maxRunning = maxRunning < 1 ? 1 : maxRunning;
+  }
+
+  /**
+   * Set maximum number of completed jobs that are kept for each tenant.
+   *
+   * @param maxKept number of jobs; values less than 1 are treated as 1
+   */
+  public void setMaxKept(int maxKept) {
+    this.maxKept = maxKept < 1 ? 1 : maxKept;
+  }
+
+  /**
+   * Initialize the map and load the jobs from storage. Jobs that were
+   * not complete when stored were interrupted by a shutdown; they are marked
+   * as complete with an error.
+   *
+   * @param vertx Vert.x handle
+   * @param fut future
+   */
+  public void init(Vertx vertx, Handler<ExtendedAsyncResult<Void>> fut) {
+    jobs.init(vertx, "installJobs", ires -> {
+      if (ires.failed()) {
+        fut.handle(new Failure<>(ires.getType(), ires.cause()));
+        return;
+      }
+      jobs.getKeys(kres -> {
+        if (kres.failed()) {
+          fut.handle(new Failure<>(kres.getType(), kres.cause()));
+        } else if (!kres.result().isEmpty()) {
+          logger.info("Not loading install jobs, looks like someone already did");
+          fut.handle(new Success<>());
+        } else {
+          loadJobs(fut);
+        }
+      });
+    });
+  }
+
+  private void loadJobs(Handler<ExtendedAsyncResult<Void>> fut) {
+    jobStore.getAll(res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      List<InstallJob> list = res.result();
+      loadJobs2(list.iterator(), fut);
+    });
+  }
+
+  private void loadJobs2(Iterator<InstallJob> it,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (!it.hasNext()) {
+      fut.handle(new Success<>());
+      return;
+    }
+    InstallJob job = it.next();
+    if (!job.getComplete()) {
+      job.setComplete(true);
+      job.setError(messages.getMessage("11700", job.getId()));
+      job.setEndDate(Instant.now().toString());
+      for (InstallJobModule m : job.getModules()) {
+        if (m.getStatus() == InstallJobModule.Status.running) {
+          m.setStatus(InstallJobModule.Status.failed);
+        }
+      }
+      jobStore.add(job, sres -> {
+        if (sres.failed()) {
+          logger.warn("Could not update install job " + job.getId()
+            + ": " + sres.cause().getMessage());
+        }
+      });
+    }
+    jobs.add(job.getId(), job, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        loadJobs2(it, fut);
+      }
+    });
+  }
+
+  /**
+   * Start an install or upgrade job. The install plan is computed before
+   * returning, so that errors in the request are reported right away. The
+   * install itself runs later. Fails with USER error if the tenant already
+   * has a job that is not complete.
+   *
+   * @param tenantId tenant
+   * @param upgrade true for upgrade; false for install
+   * @param pc proxy context of the request that started the job
+   * @param options install options
+   * @param tml modules to install; null for upgrade
+   * @param fut the job as stored, with all modules pending
+   */
+  public void start(String tenantId, boolean upgrade, ProxyContext pc,
+    TenantInstallOptions options, List<TenantModuleDescriptor> tml,
+    Handler<ExtendedAsyncResult<InstallJob>> fut) {
+
+    if (!active.add(tenantId)) {
+      fut.handle(new Failure<>(USER, messages.getMessage("11702", tenantId)));
+      return;
+    }
+    jobs.getAll(res -> {
+      if (res.failed()) {
+        active.remove(tenantId);
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      // a job started on another node
+      for (InstallJob job : res.result().values()) {
+        if (tenantId.equals(job.getTenant()) && !job.getComplete()) {
+          active.remove(tenantId);
+          fut.handle(new Failure<>(USER, messages.getMessage("11702", tenantId)));
+          return;
+        }
+      }
+      start2(tenantId, upgrade, pc, options, tml, sres -> {
+        if (sres.failed()) {
+          active.remove(tenantId);
+        }
+        fut.handle(sres);
+      });
+    });
+  }
+
+  private void start2(String tenantId, boolean upgrade, ProxyContext pc,
+    TenantInstallOptions options, List<TenantModuleDescriptor> tml,
+    Handler<ExtendedAsyncResult<InstallJob>> fut) {
+
+    TenantInstallOptions simOptions = new TenantInstallOptions();
+    simOptions.setSimulate(true);
+    simOptions.setPreRelease(options.getPreRelease());
+    simOptions.setNpmSnapshot(options.getNpmSnapshot());
+    tenantManager.installUpgradeModules(tenantId, pc, simOptions, copyList(tml), sres -> {
+      if (sres.failed()) {
+        fut.handle(new Failure<>(sres.getType(), sres.cause()));
+        return;
+      }
+      InstallJob job = new InstallJob();
+      job.setId(UUID.randomUUID().toString());
+      job.setTenant(tenantId);
+      job.setAction(upgrade ? "upgrade" : "install");
+      job.setStartDate(Instant.now().toString());
+      List<InstallJobModule> modules = new ArrayList<>();
+      for (TenantModuleDescriptor tm : sres.result()) {
+        modules.add(new InstallJobModule(tm));
+      }
+      job.setModules(modules);
+      jobStore.add(job, ares -> {
+        if (ares.failed()) {
+          fut.handle(new Failure<>(ares.getType(), ares.cause()));
+          return;
+        }
+        jobs.add(job.getId(), job, mres -> {
+          if (mres.failed()) {
+            fut.handle(new Failure<>(mres.getType(), mres.cause()));
+            return;
+          }
+          fut.handle(new Success<>(job));
+          // the response is sent by now, so the job must not write to it
+          final ProxyContext jobPc = pc.detach();
+          queue.add(() -> run(job, jobPc, options, tml));
+          runNext();
+        });
+      });
+    });
+  }
+
+  private static List<TenantModuleDescriptor> copyList(List<TenantModuleDescriptor> tml) {
+    if (tml == null) {
+      return null;
+    }
+    return new LinkedList<>(Arrays.asList(
+      Json.decodeValue(Json.encode(tml), TenantModuleDescriptor[].class)));
+  }
+
+  private void runNext() {
+    while (running < maxRunning && !queue.isEmpty()) {
+      running++;
+      queue.removeFirst().run();
+    }
+  }
+
+  private void run(InstallJob job, ProxyContext pc, TenantInstallOptions options,
+    List<TenantModuleDescriptor> tml) {
+
+    logger.info("Starting " + job.getAction() + " job " + job.getId()
+      + " for tenant " + job.getTenant());
+    options.setProgress(new InstallProgress() {
+      @Override
+      public void begin(String moduleId, String stage) {
+        InstallJobModule m = job.getModule(moduleId);
+        if (m != null) {
+          if (m.getStartDate() == null) {
+            m.setStartDate(Instant.now().toString());
+          }
+          m.setStatus(InstallJobModule.Status.running);
+          m.setStage(stage);
+          save(job);
+        }
+      }
+
+      @Override
+      public void end(String moduleId, String stage, Throwable cause) {
+        InstallJobModule m = job.getModule(moduleId);
+        if (m != null) {
+          m.setEndDate(Instant.now().toString());
+          if (cause != null) {
+            m.setStatus(InstallJobModule.Status.failed);
+            m.setMessage(cause.getMessage());
+          } else {
+            m.setStatus(InstallJobModule.Status.done);
+          }
+          save(job);
+        }
+      }
+    });
+    tenantManager.installUpgradeModules(job.getTenant(), pc, options, tml, res -> {
+      job.setComplete(true);
+      job.setEndDate(Instant.now().toString());
+      if (res.failed()) {
+        job.setError(res.cause().getMessage());
+        logger.warn("Job " + job.getId() + " failed: " + res.cause().getMessage());
+      } else {
+        logger.info("Job " + job.getId() + " done");
+      }
+      for (InstallJobModule m : job.getModules()) {
+        if (m.getStatus() == InstallJobModule.Status.running) {
+          m.setStatus(res.succeeded()
+            ? InstallJobModule.Status.done : InstallJobModule.Status.failed);
+        } else if (res.succeeded() && m.getStatus() == InstallJobModule.Status.pending) {
+          m.setStatus(InstallJobModule.Status.done);
+        }
+      }
+      save(job);
+      active.remove(job.getTenant());
+      running--;
+      runNext();
+      prune(job.getTenant());
+    });
+  }
+
+  /*
+   * Remove the oldest completed jobs of the tenant, so that at most maxKept
+   * remain.
+   */
+  private void prune(String tenantId) {
+    list(tenantId, res -> {
+      if (res.failed()) {
+        logger.warn("Could not list install jobs of " + tenantId + ": "
+          + res.cause().getMessage());
+        return;
+      }
+      List<InstallJob> completed = new LinkedList<>();
+      for (InstallJob job : res.result()) {
+        if (job.getComplete()) {
+          completed.add(job);
+        }
+      }
+      for (int i = 0; i < completed.size() - maxKept; i++) {
+        remove(completed.get(i).getId());
+      }
+    });
+  }
+
+  private void remove(String id) {
+    jobs.remove(id, mres -> {
+      if (mres.failed() && mres.getType() != NOT_FOUND) {
+        logger.warn("Could not remove install job " + id + ": " + mres.cause().getMessage());
+      }
+      jobStore.delete(id, sres -> {
+        if (sres.failed() && sres.getType() != NOT_FOUND) {
+          logger.warn("Could not delete install job " + id + ": " + sres.cause().getMessage());
+        }
+      });
+    });
+  }
+
+  /*
+   * Store the job in the map and the database. Saves of a job are not allowed
+   * to overlap, so that an older state does not overwrite a newer one; a save
+   * requested while one is in progress is done when it completes.
+   */
+  private void save(InstallJob job) {
+    final String id = job.getId();
+    if (!saving.add(id)) {
+      dirty.add(id);
+      return;
+    }
+    save2(job);
+  }
+
+  private void save2(InstallJob job) {
+    final String id = job.getId();
+    jobs.put(id, job, mres -> {
+      if (mres.failed()) {
+        logger.warn("Could not update install job " + id + ": " + mres.cause().getMessage());
+      }
+      jobStore.add(job, sres -> {
+        if (sres.failed()) {
+          logger.warn("Could not store install job " + id + ": " + sres.cause().getMessage());
+        }
+        if (dirty.remove(id)) {
+          save2(job);
+        } else {
+          saving.remove(id);
+        }
+      });
+    });
+  }
+
+  /**
+   * Get job.
+   *
+   * @param tenantId tenant that the job belongs to
+   * @param jobId job identifier
+   * @param fut the job; NOT_FOUND if no such job for the tenant
+   */
+  public void get(String tenantId, String jobId,
+    Handler<ExtendedAsyncResult<InstallJob>> fut) {
+
+    jobs.get(jobId, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else if (!tenantId.equals(res.result().getTenant())) {
+        fut.handle(new Failure<>(NOT_FOUND, messages.getMessage("11701", jobId)));
+      } else {
+        fut.handle(new Success<>(res.result()));
+      }
+    });
+  }
+
+  /**
+   * List jobs of a tenant, oldest first.
+   *
+   * @param tenantId tenant
+   * @param fut list of jobs
+   */
+  public void list(String tenantId, Handler<ExtendedAsyncResult<List<InstallJob>>> fut) {
+    jobs.getAll(res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      List<InstallJob> list = new LinkedList<>();
+      for (InstallJob job : res.result().values()) {
+        if (tenantId.equals(job.getTenant())) {
+          list.add(job);
+        }
+      }
+      list.sort((a, b) -> a.getStartDate().compareTo(b.getStartDate()));
+      fut.handle(new Success<>(list));
+    });
+  }
+}
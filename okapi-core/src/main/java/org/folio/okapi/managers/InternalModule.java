@@ -11,13 +11,17 @@ import io.vertx.ext.web.impl.Utils;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import org.folio.okapi.bean.BulkInstallDescriptor;
+import org.folio.okapi.bean.CanaryDescriptor;
 import org.folio.okapi.bean.DeploymentDescriptor;
 import org.folio.okapi.bean.EnvEntry;
+import org.folio.okapi.bean.InstallJob;
 import org.folio.okapi.bean.ModuleDescriptor;
 import org.folio.okapi.bean.NodeDescriptor;
 import org.folio.okapi.bean.PullDescriptor;
@@ -32,6 +36,8 @@ import org.folio.okapi.common.Messages;
 import org.folio.okapi.common.OkapiLogger;
 import org.folio.okapi.common.Success;
 import org.folio.okapi.common.XOkapiHeaders;
+import org.folio.okapi.util.CqlQuery;
+import org.folio.okapi.util.JsonListWriter;
 import org.folio.okapi.util.LogHelper;
 import org.folio.okapi.util.GraphDot;
 import org.folio.okapi.util.ModuleUtil;
@@ -62,7 +68,11 @@ public class InternalModule {
   private final PullManager pullManager;
   private final LogHelper logHelper;
   private final String okapiVersion;
+  private InstallJobManager installJobManager;
+  private SnapshotManager snapshotManager;
   private static final String INTERFACE_VERSION = "1.9";
+  // hex digits of the checksum of the URI in ETags
+  private static final int ETAG_URI_LENGTH = 16;
   private Messages messages = Messages.getInstance();
 
   public InternalModule(ModuleManager modules, TenantManager tenantManager,
@@ -79,6 +89,26 @@ public class InternalModule {
     logger.warn("InternalModule starting okapiversion=" + okapiVersion);
   }
 
+  /**
+   * Set the manager for asynchronous install and upgrade. Without it, the
+   * async parameter is ignored.
+   *
+   * @param installJobManager job manager
+   */
+  public void setInstallJobManager(InstallJobManager installJobManager) {
+    this.installJobManager = installJobManager;
+  }
+
+  /**
+   * Set the manager for snapshots. Without it, the snapshot service is not
+   * available.
+   *
+   * @param snapshotManager snapshot manager
+   */
+  public void setSnapshotManager(SnapshotManager snapshotManager) {
+    this.snapshotManager = snapshotManager;
+  }
+
   public static ModuleDescriptor moduleDescriptor(String okapiVersion) {
     String v = okapiVersion;
     if (v == null) {  // happens at compile time,
@@ -261,6 +291,21 @@ public class InternalModule {
       + "    \"permissionsRequired\" : [ \"okapi.proxy.tenants.install.post\" ], "
       + "    \"type\" : \"internal\" "
       + "   }, {"
+      + "    \"methods\" :  [ \"GET\" ],"
+      + "    \"pathPattern\" : \"/_/proxy/tenants/{tenantId}/install\","
+      + "    \"permissionsRequired\" : [ ], "
+      + "    \"type\" : \"internal\" "
+      + "   }, {"
+      + "    \"methods\" :  [ \"GET\" ],"
+      + "    \"pathPattern\" : \"/_/proxy/tenants/{tenantId}/install/{jobId}\","
+      + "    \"permissionsRequired\" : [ ], "
+      + "    \"type\" : \"internal\" "
+      + "   }, {"
+      + "    \"methods\" :  [ \"GET\" ],"
+      + "    \"pathPattern\" : \"/_/proxy/tenants/{tenantId}/upgrade/{jobId}\","
+      + "    \"permissionsRequired\" : [ ], "
+      + "    \"type\" : \"internal\" "
+      + "   }, {"
       + "    \"methods\" :  [ \"POST\" ],"
       + "    \"pathPattern\" : \"/_/proxy/tenants/{tenantId}/modules\","
       + "    \"permissionsRequired\" : [ \"okapi.proxy.tenants.modules.post\" ], "
@@ -295,6 +340,21 @@ public class InternalModule {
       + "    \"pathPattern\" : \"/_/proxy/tenants/{tenantId}/interfaces/{interfaceId}\","
       + "    \"permissionsRequired\" : [  ], "
       + "    \"type\" : \"internal\" "
+      + "   }, {"
+      + "    \"methods\" :  [ \"GET\" ],"
+      + "    \"pathPattern\" : \"/_/proxy/tenants/{tenantId}/canary\","
+      + "    \"permissionsRequired\" : [  ], "
+      + "    \"type\" : \"internal\" "
+      + "   }, {"
+      + "    \"methods\" :  [ \"PUT\" ],"
+      + "    \"pathPattern\" : \"/_/proxy/tenants/{tenantId}/canary/{moduleId}\","
+      + "    \"permissionsRequired\" : [ \"okapi.proxy.tenants.canary.put\" ], "
+      + "    \"type\" : \"internal\" "
+      + "   }, {"
+      + "    \"methods\" :  [ \"DELETE\" ],"
+      + "    \"pathPattern\" : \"/_/proxy/tenants/{tenantId}/canary/{moduleId}\","
+      + "    \"permissionsRequired\" : [ \"okapi.proxy.tenants.canary.delete\" ], "
+      + "    \"type\" : \"internal\" "
       + "   },"
       + "   {" // proxy, health
       + "    \"methods\" :  [ \"GET\" ],"
@@ -302,6 +362,24 @@ public class InternalModule {
       + "    \"permissionsRequired\" : [  ], "
       + "    \"type\" : \"internal\" "
       + "   },"
+      + "   {" // proxy, bulk install
+      + "    \"methods\" :  [ \"POST\" ],"
+      + "    \"pathPattern\" : \"/_/proxy/install\","
+      + "    \"permissionsRequired\" : [ \"okapi.proxy.install.post\" ], "
+      + "    \"type\" : \"internal\" "
+      + "   },"
+      + "   {" // proxy, snapshot
+      + "    \"methods\" :  [ \"GET\" ],"
+      + "    \"pathPattern\" : \"/_/proxy/snapshot\","
+      + "    \"permissionsRequired\" : [ \"okapi.proxy.snapshot.get\" ], "
+      + "    \"type\" : \"internal\" "
+      + "   },"
+      + "   {"
+      + "    \"methods\" :  [ \"POST\" ],"
+      + "    \"pathPattern\" : \"/_/proxy/snapshot\","
+      + "    \"permissionsRequired\" : [ \"okapi.proxy.snapshot.post\" ], "
+      + "    \"type\" : \"internal\" "
+      + "   },"
       + "   {" // proxy, pull
       + "    \"methods\" :  [ \"POST\" ],"
       + "    \"pathPattern\" : \"/_/proxy/pull/modules\","
@@ -413,6 +491,10 @@ public class InternalModule {
       + "   \"displayName\" : \"Okapi - Enable modules and dependencies\", "
       + "   \"description\" : \"Check dependencies and enable/disable modules as needed\" "
       + " }, { "
+      + "   \"permissionName\" : \"okapi.proxy.install.post\", "
+      + "   \"displayName\" : \"Okapi - Enable modules for many tenants\", "
+      + "   \"description\" : \"Install the same modules for several tenants\" "
+      + " }, { "
       + "   \"permissionName\" : \"okapi.proxy.tenants.modules.post\", "
       + "   \"displayName\" : \"Okapi - Enable a module for tenant\", "
       + "   \"description\" : \"Enable a module for the tenant\" "
@@ -424,6 +506,22 @@ public class InternalModule {
       + "   \"permissionName\" : \"okapi.proxy.tenants.modules.enabled.delete\", "
       + "   \"displayName\" : \"Okapi - Disable a module for tenant\", "
       + "   \"description\" : \"Disable a module for the tenant\" "
+      + " }, {"
+      + "   \"permissionName\" : \"okapi.proxy.tenants.canary.put\", "
+      + "   \"displayName\" : \"Okapi - Split traffic between module versions\", "
+      + "   \"description\" : \"Send a share of the requests of the tenant to other versions of an enabled module\" "
+      + " }, {"
+      + "   \"permissionName\" : \"okapi.proxy.tenants.canary.delete\", "
+      + "   \"displayName\" : \"Okapi - Remove traffic split\", "
+      + "   \"description\" : \"Send all requests of the tenant to the enabled module version\" "
+      + " }, {"
+      + "   \"permissionName\" : \"okapi.proxy.snapshot.get\", "
+      + "   \"displayName\" : \"Okapi - Get snapshot\", "
+      + "   \"description\" : \"Get modules, tenants, env and discovery as one document\" "
+      + " }, {"
+      + "   \"permissionName\" : \"okapi.proxy.snapshot.post\", "
+      + "   \"displayName\" : \"Okapi - Save snapshot\", "
+      + "   \"description\" : \"Write modules, tenants, env and discovery to the snapshot file\" "
       + " }, "
       + " { "
       + "   \"permissionName\" : \"okapi.env.post\", "
@@ -481,7 +579,10 @@ public class InternalModule {
       + "     \"okapi.proxy.tenants.modules.enabled.post\", "
       + "     \"okapi.proxy.tenants.modules.enabled.delete\", "
       + "     \"okapi.proxy.tenants.upgrade.post\", "
-      + "     \"okapi.proxy.tenants.install.post\" "
+      + "     \"okapi.proxy.tenants.install.post\", "
+      + "     \"okapi.proxy.tenants.canary.put\", "
+      + "     \"okapi.proxy.tenants.canary.delete\", "
+      + "     \"okapi.proxy.install.post\" "
       + "   ]"
       + " }, "
       + " { "
@@ -500,7 +601,8 @@ public class InternalModule {
       + "   \"subPermissions\" : [ "
       + "     \"okapi.deploy\",  \"okapi.modules\", "
       + "     \"okapi.tenants\", \"okapi.tenantmodules\", "
-      + "     \"okapi.env\" "
+      + "     \"okapi.env\", "
+      + "     \"okapi.proxy.snapshot.get\", \"okapi.proxy.snapshot.post\" "
       + "   ]"
       + " } "
       + "],"
@@ -517,6 +619,12 @@ public class InternalModule {
   private void location(ProxyContext pc, String id, String baseUri,
     String s, Handler<ExtendedAsyncResult<String>> fut) {
 
+    location(pc, id, baseUri, 201, s, fut);
+  }
+
+  private void location(ProxyContext pc, String id, String baseUri,
+    int status, String s, Handler<ExtendedAsyncResult<String>> fut) {
+
     String uri;
     try {
       if (baseUri == null) {
@@ -530,7 +638,7 @@ public class InternalModule {
       }
       uri = uri + "/" + URLEncoder.encode(id, "UTF-8");
       pc.getCtx().response().putHeader("Location", uri);
-      pc.getCtx().response().setStatusCode(201);
+      pc.getCtx().response().setStatusCode(status);
       fut.handle(new Success<>(s));
     } catch (UnsupportedEncodingException ex) {
       fut.handle(new Failure<>(INTERNAL, messages.getMessage("11600", id, ex.getMessage())));
@@ -584,16 +692,57 @@ public class InternalModule {
     }
   }
 
-  private void listTenants(Handler<ExtendedAsyncResult<String>> fut) {
-    tenantManager.list(res -> {
+  private void listTenants(ProxyContext pc,
+    Handler<ExtendedAsyncResult<String>> fut) {
+
+    final CqlQuery query;
+    final int offset;
+    final int limit;
+    try {
+      query = getQuery(pc);
+      offset = ModuleUtil.getOffset(pc.getCtx().request());
+      limit = ModuleUtil.getLimit(pc.getCtx().request());
+    } catch (DecodeException ex) {
+      fut.handle(new Failure<>(USER, ex));
+      return;
+    }
+    if (query != null && !query.isSorted()) {
+      // the storage reads only the page, when it can
+      tenantManager.listWithQuery(query, offset, limit, res -> {
+        if (res.failed()) {
+          fut.handle(new Failure<>(res.getType(), res.cause()));
+          return;
+        }
+        fut.handle(new Success<>(Json.encodePrettily(res.result())));
+      });
+      return;
+    }
+    Handler<ExtendedAsyncResult<List<TenantDescriptor>>> lfut = res -> {
       if (res.failed()) {
         fut.handle(new Failure<>(res.getType(), res.cause()));
         return;
       }
-      List<TenantDescriptor> tdl = res.result();
-      String s = Json.encodePrettily(tdl);
-      fut.handle(new Success<>(s));
-    });
+      List<TenantDescriptor> tdl = new ArrayList<>(res.result());
+      if (query != null || offset > 0 || limit < Integer.MAX_VALUE) {
+        // in order of id, so that the pages are the same every time
+        tdl.sort((a, b) -> a.getId().compareTo(b.getId()));
+      }
+      if (query != null) {
+        query.sort(tdl);
+      }
+      tdl = ModuleUtil.page(tdl, offset, limit);
+      fut.handle(new Success<>(Json.encodePrettily(tdl)));
+    };
+    if (query == null) {
+      tenantManager.list(lfut);
+    } else {
+      tenantManager.listWithQuery(query, lfut);
+    }
+  }
+
+  private static CqlQuery getQuery(ProxyContext pc) {
+    final String cql = pc.getCtx().request().getParam("query");
+    return cql == null ? null : new CqlQuery(cql);
   }
 
   private void getTenant(String id, Handler<ExtendedAsyncResult<String>> fut) {
@@ -665,6 +814,11 @@ public class InternalModule {
         TenantModuleDescriptor[].class);
       List<TenantModuleDescriptor> tm = new LinkedList<>();
       Collections.addAll(tm, tml);
+      if (installJobManager != null
+        && ModuleUtil.getParamBoolean(pc.getCtx().request(), "async", false)) {
+        startInstallJob(pc, id, false, options, tm, fut);
+        return;
+      }
       tenantManager.installUpgradeModules(id, pc, options, tm, res -> {
         if (res.failed()) {
           fut.handle(new Failure<>(res.getType(), res.cause()));
@@ -681,18 +835,152 @@ public class InternalModule {
   private void upgradeModulesForTenant(ProxyContext pc, String id,
     Handler<ExtendedAsyncResult<String>> fut) {
 
-    TenantInstallOptions options = ModuleUtil.createTenantOptions(pc.getCtx().request());
+    try {
+      TenantInstallOptions options = ModuleUtil.createTenantOptions(pc.getCtx().request());
 
-    tenantManager.installUpgradeModules(id, pc, options, null, res -> {
+      if (installJobManager != null
+        && ModuleUtil.getParamBoolean(pc.getCtx().request(), "async", false)) {
+        startInstallJob(pc, id, true, options, null, fut);
+        return;
+      }
+      tenantManager.installUpgradeModules(id, pc, options, null, res -> {
+        if (res.failed()) {
+          fut.handle(new Failure<>(res.getType(), res.cause()));
+        } else {
+          logger.info("installUpgradeModules returns:\n" + Json.encodePrettily(res.result()));
+          fut.handle(new Success<>(Json.encodePrettily(res.result())));
+        }
+      });
+    } catch (DecodeException ex) {
+      fut.handle(new Failure<>(USER, ex));
+    }
+  }
+
+  /*
+   * Start install or upgrade in the background. Returns 202 Accepted with the
+   * job, and a Location header pointing to it.
+   */
+  private void startInstallJob(ProxyContext pc, String id, boolean upgrade,
+    TenantInstallOptions options, List<TenantModuleDescriptor> tm,
+    Handler<ExtendedAsyncResult<String>> fut) {
+
+    if (options.getSimulate()) {
+      fut.handle(new Failure<>(USER, messages.getMessage("11609")));
+      return;
+    }
+    installJobManager.start(id, upgrade, pc, options, tm, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      InstallJob job = res.result();
+      location(pc, job.getId(), null, 202, Json.encodePrettily(job), fut);
+    });
+  }
+
+  private void listInstallJobs(String id, Handler<ExtendedAsyncResult<String>> fut) {
+    if (installJobManager == null) {
+      fut.handle(new Success<>("[ ]"));
+      return;
+    }
+    installJobManager.list(id, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        fut.handle(new Success<>(Json.encodePrettily(res.result())));
+      }
+    });
+  }
+
+  private void getInstallJob(String id, String jobId,
+    Handler<ExtendedAsyncResult<String>> fut) {
+
+    if (installJobManager == null) {
+      fut.handle(new Failure<>(NOT_FOUND, messages.getMessage("11701", jobId)));
+      return;
+    }
+    installJobManager.get(id, jobId, res -> {
       if (res.failed()) {
         fut.handle(new Failure<>(res.getType(), res.cause()));
       } else {
-        logger.info("installUpgradeModules returns:\n" + Json.encodePrettily(res.result()));
         fut.handle(new Success<>(Json.encodePrettily(res.result())));
       }
     });
   }
 
+  private void listCanary(String id, Handler<ExtendedAsyncResult<String>> fut) {
+    tenantManager.listCanary(id, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        List<CanaryDescriptor> l = new LinkedList<>();
+        for (CanaryDescriptor cd : res.result()) {
+          l.add(cd.withoutModules());
+        }
+        fut.handle(new Success<>(Json.encodePrettily(l)));
+      }
+    });
+  }
+
+  private void setCanary(String id, String module, String body,
+    Handler<ExtendedAsyncResult<String>> fut) {
+    try {
+      final CanaryDescriptor cd = Json.decodeValue(body, CanaryDescriptor.class);
+      if (cd.getId() != null && !module.equals(cd.getId())) {
+        fut.handle(new Failure<>(USER, messages.getMessage("11606", cd.getId(), module)));
+        return;
+      }
+      cd.setId(module);
+      tenantManager.setCanary(id, cd, res -> {
+        if (res.failed()) {
+          fut.handle(new Failure<>(res.getType(), res.cause()));
+        } else {
+          fut.handle(new Success<>(Json.encodePrettily(cd.withoutModules())));
+        }
+      });
+    } catch (DecodeException ex) {
+      fut.handle(new Failure<>(USER, ex));
+    }
+  }
+
+  private void deleteCanary(String id, String module,
+    Handler<ExtendedAsyncResult<String>> fut) {
+    tenantManager.deleteCanary(id, module, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        fut.handle(new Success<>(""));
+      }
+    });
+  }
+
+  private void installModulesBulk(ProxyContext pc, String body,
+    Handler<ExtendedAsyncResult<String>> fut) {
+
+    try {
+      TenantInstallOptions options = ModuleUtil.createTenantOptions(pc.getCtx().request());
+
+      final BulkInstallDescriptor bd = Json.decodeValue(body,
+        BulkInstallDescriptor.class);
+      if (bd.getTenants() == null || bd.getModules() == null) {
+        fut.handle(new Failure<>(USER, messages.getMessage("11610")));
+        return;
+      }
+      List<TenantModuleDescriptor> tm = new LinkedList<>();
+      Collections.addAll(tm, bd.getModules());
+      tenantManager.installModulesBulk(Arrays.asList(bd.getTenants()), pc,
+        options, tm, res -> {
+        if (res.failed()) {
+          fut.handle(new Failure<>(res.getType(), res.cause()));
+        } else {
+          fut.handle(new Success<>(Json.encodePrettily(res.result())));
+        }
+      });
+    } catch (DecodeException ex) {
+      fut.handle(new Failure<>(USER, ex));
+    }
+  }
+
   private void upgradeModuleForTenant(ProxyContext pc, String id, String mod,
     String body, Handler<ExtendedAsyncResult<String>> fut) {
     try {
@@ -721,19 +1009,65 @@ public class InternalModule {
     try {
       final boolean full = ModuleUtil.getParamBoolean(pc.getCtx().request(), "full", false);
 
-      tenantManager.listModules(id, full, res -> {
-        if (res.failed()) {
-          fut.handle(new Failure<>(res.getType(), res.cause()));
+      final boolean pretty = ModuleUtil.getParamBoolean(pc.getCtx().request(), "pretty", true);
+      tenantManager.getVersion(tres -> {
+        if (tres.failed()) {
+          fut.handle(new Failure<>(tres.getType(), tres.cause()));
           return;
         }
-        String s = Json.encodePrettily(res.result());
-        fut.handle(new Success<>(s));
+        moduleManager.getVersion(mres -> {
+          if (mres.failed()) {
+            fut.handle(new Failure<>(mres.getType(), mres.cause()));
+            return;
+          }
+          if (notModified(pc, Long.toHexString(tres.result())
+            + "." + Long.toHexString(mres.result()))) {
+            fut.handle(new Success<>(""));
+            return;
+          }
+          tenantManager.listModules(id, full, res -> {
+            if (res.failed()) {
+              fut.handle(new Failure<>(res.getType(), res.cause()));
+              return;
+            }
+            pc.setStreamBody(new JsonListWriter<>(res.result(), pretty));
+            fut.handle(new Success<>(""));
+          });
+        });
       });
     } catch (DecodeException ex) {
       fut.handle(new Failure<>(USER, ex));
     }
   }
 
+  /*
+   * Handle a conditional GET of a list, given the versions of what the list
+   * is made from. Sets the ETag of the response, and status 304 if the
+   * request has that ETag in If-None-Match, in which case the list need not
+   * be made. The ETag covers the query parameters, as they change the list.
+   */
+  private static boolean notModified(ProxyContext pc, String version) {
+    final String uri = pc.getCtx().request().uri();
+    final String etag = "\"" + version + "-"
+      + SnapshotManager.checksum(uri).substring(0, ETAG_URI_LENGTH) + "\"";
+    pc.getCtx().response().putHeader("ETag", etag);
+    final String match = pc.getCtx().request().getHeader("If-None-Match");
+    if (match == null) {
+      return false;
+    }
+    for (String tag : match.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        pc.getCtx().response().setStatusCode(304);
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void getModuleForTenant(String id, String mod,
     Handler<ExtendedAsyncResult<String>> fut) {
 
@@ -829,27 +1163,56 @@ public class InternalModule {
 
   private void listModules(ProxyContext pc,
     Handler<ExtendedAsyncResult<String>> fut) {
-    moduleManager.getModulesWithFilter(true, true, res -> {
+
+    final CqlQuery query;
+    try {
+      query = getQuery(pc);
+    } catch (DecodeException ex) {
+      fut.handle(new Failure<>(USER, ex));
+      return;
+    }
+    moduleManager.getVersion(vres -> {
+      if (vres.failed()) {
+        fut.handle(new Failure<>(vres.getType(), vres.cause()));
+      } else if (notModified(pc, Long.toHexString(vres.result()))) {
+        fut.handle(new Success<>(""));
+      } else {
+        listModules(pc, query, fut);
+      }
+    });
+  }
+
+  private void listModules(ProxyContext pc, CqlQuery query,
+    Handler<ExtendedAsyncResult<String>> fut) {
+
+    Handler<ExtendedAsyncResult<List<ModuleDescriptor>>> lfut = res -> {
       if (res.failed()) {
         fut.handle(new Failure<>(res.getType(), res.cause()));
         return;
       }
       try {
         List<ModuleDescriptor> mdl = res.result();
-        mdl = ModuleUtil.filter(pc.getCtx().request(), mdl);
+        mdl = ModuleUtil.filter(pc.getCtx().request(), mdl, query);
         final boolean dot = ModuleUtil.getParamBoolean(pc.getCtx().request(), "dot", false);
         if (dot) {
           String s = GraphDot.report(mdl);
           pc.getCtx().response().putHeader("Content-Type", "text/plain");
           fut.handle(new Success<>(s));
         } else {
-          String s = Json.encodePrettily(mdl);
-          fut.handle(new Success<>(s));
+          // encoded as it is written, as the modules may be many
+          final boolean pretty = ModuleUtil.getParamBoolean(pc.getCtx().request(), "pretty", true);
+          pc.setStreamBody(new JsonListWriter<>(mdl, pretty));
+          fut.handle(new Success<>(""));
         }
       } catch (DecodeException ex) {
         fut.handle(new Failure<>(USER, ex));
       }
-    });
+    };
+    if (query == null) {
+      moduleManager.getModulesWithFilter(true, true, lfut);
+    } else {
+      moduleManager.getModulesWithQuery(query, lfut);
+    }
   }
 
   private void updateModule(ProxyContext pc, String id, String body,
@@ -983,14 +1346,33 @@ public class InternalModule {
     });
   }
 
-  private void listDiscoveryModules(Handler<ExtendedAsyncResult<String>> fut) {
-    discoveryManager.get(res -> {
-      if (res.failed()) {
-        fut.handle(new Failure<>(res.getType(), res.cause()));
+  private void listDiscoveryModules(ProxyContext pc,
+    Handler<ExtendedAsyncResult<String>> fut) {
+
+    final boolean pretty;
+    try {
+      pretty = ModuleUtil.getParamBoolean(pc.getCtx().request(), "pretty", true);
+    } catch (DecodeException ex) {
+      fut.handle(new Failure<>(USER, ex));
+      return;
+    }
+    discoveryManager.getVersion(vres -> {
+      if (vres.failed()) {
+        fut.handle(new Failure<>(vres.getType(), vres.cause()));
         return;
       }
-      final String s = Json.encodePrettily(res.result());
-      fut.handle(new Success<>(s));
+      if (notModified(pc, Long.toHexString(vres.result()))) {
+        fut.handle(new Success<>(""));
+        return;
+      }
+      discoveryManager.get(res -> {
+        if (res.failed()) {
+          fut.handle(new Failure<>(res.getType(), res.cause()));
+          return;
+        }
+        pc.setStreamBody(new JsonListWriter<>(res.result(), pretty));
+        fut.handle(new Success<>(""));
+      });
     });
   }
 
@@ -1168,6 +1550,16 @@ public class InternalModule {
     });
   }
 
+  private void saveSnapshot(Handler<ExtendedAsyncResult<String>> fut) {
+    snapshotManager.save(res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      fut.handle(new Success<>(Json.encodePrettily(res.result())));
+    });
+  }
+
   private void pullModules(String body,
     Handler<ExtendedAsyncResult<String>> fut) {
 
@@ -1285,7 +1677,7 @@ public class InternalModule {
         && tenantManager != null) {
         // /_/proxy/tenants
         if (n == 4 && m.equals(GET)) {
-          listTenants(fut);
+          listTenants(pc, fut);
           return;
         }
         if (n == 4 && m.equals(POST)) {
@@ -1332,11 +1724,35 @@ public class InternalModule {
           installModulesForTenant(pc, decodedSegs[4], req, fut);
           return;
         }
+        if (n == 6 && m.equals(GET) && segments[5].equals("install")) {
+          listInstallJobs(decodedSegs[4], fut);
+          return;
+        }
         // /_/proxy/tenants/:id/upgrade
         if (n == 6 && m.equals(POST) && segments[5].equals("upgrade")) {
           upgradeModulesForTenant(pc, decodedSegs[4], fut);
           return;
         }
+        // /_/proxy/tenants/:id/install/:job and /_/proxy/tenants/:id/upgrade/:job
+        if (n == 7 && m.equals(GET)
+          && (segments[5].equals("install") || segments[5].equals("upgrade"))) {
+          getInstallJob(decodedSegs[4], decodedSegs[6], fut);
+          return;
+        }
+        // /_/proxy/tenants/:id/canary
+        if (n == 6 && m.equals(GET) && segments[5].equals("canary")) {
+          listCanary(decodedSegs[4], fut);
+          return;
+        }
+        // /_/proxy/tenants/:id/canary/:mod
+        if (n == 7 && m.equals(PUT) && segments[5].equals("canary")) {
+          setCanary(decodedSegs[4], decodedSegs[6], req, fut);
+          return;
+        }
+        if (n == 7 && m.equals(DELETE) && segments[5].equals("canary")) {
+          deleteCanary(decodedSegs[4], decodedSegs[6], fut);
+          return;
+        }
         // /_/proxy/tenants/:id/interfaces
         if (n == 6 && m.equals(GET) && segments[5].equals("interfaces")) {
           listInterfaces(pc, decodedSegs[4], fut);
@@ -1350,6 +1766,11 @@ public class InternalModule {
         }
       } // /_/proxy/tenants
 
+      // /_/proxy/install
+      if (n == 4 && segments[3].equals("install") && m.equals(POST)) {
+        installModulesBulk(pc, req, fut);
+        return;
+      }
       // /_/proxy/pull/modules
       if (n == 5 && segments[3].equals("pull") && segments[4].equals("modules")
         && m.equals(POST) && pullManager != null) {
@@ -1361,6 +1782,17 @@ public class InternalModule {
         getHealth(fut);
         return;
       }
+      // /_/proxy/snapshot
+      if (n == 4 && segments[3].equals("snapshot") && snapshotManager != null) {
+        if (m.equals(GET)) {
+          snapshotManager.get(fut);
+          return;
+        }
+        if (m.equals(POST)) {
+          saveSnapshot(fut);
+          return;
+        }
+      }
 
     } // _/proxy
 
@@ -1408,7 +1840,7 @@ public class InternalModule {
 
       // /_/discovery/modules
       if (n == 4 && segments[3].equals("modules") && m.equals(GET)) {
-        listDiscoveryModules(fut);
+        listDiscoveryModules(pc, fut);
         return;
       }
       if (n == 4 && segments[3].equals("modules") && m.equals(POST)) {
@@ -6,6 +6,7 @@ import io.vertx.core.Handler;
 import org.folio.okapi.bean.ModuleDescriptor;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -19,6 +20,7 @@ import org.folio.okapi.common.Failure;
 import org.folio.okapi.common.OkapiLogger;
 import org.folio.okapi.common.Success;
 import org.folio.okapi.util.CompList;
+import org.folio.okapi.util.CqlQuery;
 import org.folio.okapi.util.LockedTypedMap1;
 import org.folio.okapi.common.ModuleId;
 import org.folio.okapi.common.Messages;
@@ -83,17 +85,22 @@ public class ModuleManager {
           logger.debug("Not loading modules, looks like someone already did");
           fut.handle(new Success<>());
         } else {
-          moduleStore.getAll(mres -> {
+          final int[] count = new int[1];
+          moduleStore.streamAll((list, bfut) -> {
+            CompList<Void> futures = new CompList<>(INTERNAL);
+            for (ModuleDescriptor md : list) {
+              Future<Void> f = Future.future();
+              modules.add(md.getId(), md, f::handle);
+              futures.add(f);
+            }
+            count[0] += list.size();
+            futures.all(bfut);
+          }, mres -> {
             if (mres.failed()) {
               fut.handle(new Failure<>(mres.getType(), mres.cause()));
             } else {
-              CompList<Void> futures = new CompList<>(INTERNAL);
-              for (ModuleDescriptor md : mres.result()) {
-                Future<Void> f = Future.future();
-                modules.add(md.getId(), md, f::handle);
-                futures.add(f);
-              }
-              futures.all(fut);
+              logger.info("Loaded " + count[0] + " modules");
+              fut.handle(new Success<>());
             }
           });
         }
@@ -101,6 +108,26 @@ public class ModuleManager {
     }
   }
 
+  /**
+   * Take in a change of a module made by another node that does not share
+   * the map with this one.
+   *
+   * @param id module ID
+   * @param md the module as stored now; null if it was removed
+   */
+  public void refresh(String id, ModuleDescriptor md) {
+    Handler<ExtendedAsyncResult<?>> done = res -> {
+      if (res.failed() && res.getType() != NOT_FOUND) {
+        logger.warn("refresh of module " + id + " failed: " + res.cause().getMessage());
+      }
+    };
+    if (md == null) {
+      modules.remove(id, done::handle);
+    } else {
+      modules.put(id, md, done::handle);
+    }
+  }
+
   public void enableAndDisableCheck(Tenant tenant,
     ModuleDescriptor modFrom, ModuleDescriptor modTo,
     Handler<ExtendedAsyncResult<Void>> fut) {
@@ -193,41 +220,47 @@ public class ModuleManager {
     });
   }
 
+  /**
+   * Add modules without checking them against the modules already there, or
+   * checking their dependencies. For restoring a snapshot that was taken of
+   * a consistent set of modules.
+   *
+   * @param list modules that are not yet known
+   * @param fut callback
+   */
+  public void restore(List<ModuleDescriptor> list, Handler<ExtendedAsyncResult<Void>> fut) {
+    createList2(list, fut);
+  }
+
   private void createList2(List<ModuleDescriptor> list, Handler<ExtendedAsyncResult<Void>> fut) {
-    CompList<Void> futures = new CompList<>(INTERNAL);
-    for (ModuleDescriptor md : list) {
-      Future<Void> f = Future.future();
-      createList3(md, f::handle);
-      futures.add(f);
+    if (moduleStore == null || list.isEmpty()) {
+      createList3(list, fut);
+      return;
     }
-    futures.all(fut);
+    // one bulk insert rather than a statement and connection per module
+    moduleStore.insertList(list, ires -> {
+      if (ires.failed()) {
+        fut.handle(new Failure<>(ires.getType(), ires.cause()));
+        return;
+      }
+      createList3(list, fut);
+    });
   }
 
-  private void createList3(ModuleDescriptor md, Handler<ExtendedAsyncResult<Void>> fut) {
-    String id = md.getId();
-    if (moduleStore == null) {
-      modules.add(id, md, ares -> {
+  private void createList3(List<ModuleDescriptor> list, Handler<ExtendedAsyncResult<Void>> fut) {
+    CompList<Void> futures = new CompList<>(INTERNAL);
+    for (ModuleDescriptor md : list) {
+      Future<Void> f = Future.future();
+      modules.add(md.getId(), md, ares -> {
         if (ares.failed()) {
-          fut.handle(new Failure<>(ares.getType(), ares.cause()));
-          return;
-        }
-        fut.handle(new Success<>());
-      });
-    } else {
-      moduleStore.insert(md, ires -> {
-        if (ires.failed()) {
-          fut.handle(new Failure<>(ires.getType(), ires.cause()));
-          return;
+          f.handle(new Failure<>(ares.getType(), ares.cause()));
+        } else {
+          f.handle(new Success<>());
         }
-        modules.add(id, md, ares -> {
-          if (ares.failed()) {
-            fut.handle(new Failure<>(ares.getType(), ares.cause()));
-            return;
-          }
-          fut.handle(new Success<>());
-        });
       });
+      futures.add(f);
     }
+    futures.all(fut);
   }
 
   /**
@@ -392,6 +425,45 @@ public class ModuleManager {
     });
   }
 
+  /**
+   * Get the version of the modules, which increases with every change to
+   * them.
+   *
+   * @param fut callback with the version
+   */
+  public void getVersion(Handler<ExtendedAsyncResult<Long>> fut) {
+    modules.getVersion(fut);
+  }
+
+  /**
+   * Get the modules that match a query. The query is handed to the storage,
+   * if any, so that modules that do not match need not be read.
+   *
+   * @param query the query
+   * @param fut callback with the modules, in no particular order
+   */
+  public void getModulesWithQuery(CqlQuery query,
+    Handler<ExtendedAsyncResult<List<ModuleDescriptor>>> fut) {
+
+    if (moduleStore != null) {
+      moduleStore.query(query, fut);
+      return;
+    }
+    modules.getAll(kres -> {
+      if (kres.failed()) {
+        fut.handle(new Failure<>(kres.getType(), kres.cause()));
+        return;
+      }
+      List<ModuleDescriptor> mdl = new LinkedList<>();
+      for (ModuleDescriptor md : kres.result().values()) {
+        if (query.matches(new JsonObject(Json.encode(md)))) {
+          mdl.add(md);
+        }
+      }
+      fut.handle(new Success<>(mdl));
+    });
+  }
+
   /**
    * Get all modules that are enabled for the given tenant.
    *
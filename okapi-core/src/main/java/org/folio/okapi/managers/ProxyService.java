@@ -1,5 +1,6 @@
 package org.folio.okapi.managers;
 
+import com.codahale.metrics.Timer;
 import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
 import org.folio.okapi.bean.ModuleInstance;
@@ -28,14 +29,22 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.function.BiPredicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import org.folio.okapi.bean.CanaryAlternative;
+import org.folio.okapi.bean.CanaryDescriptor;
 import org.folio.okapi.bean.DeploymentDescriptor;
+import org.folio.okapi.bean.LaunchDescriptor;
 import org.folio.okapi.bean.ModuleDescriptor;
 import org.folio.okapi.bean.RoutingEntry;
 import org.folio.okapi.bean.RoutingEntry.ProxyType;
 import static org.folio.okapi.common.ErrorType.INTERNAL;
 import org.folio.okapi.util.DropwizardHelper;
+import org.folio.okapi.util.JsonListWriter;
+import org.folio.okapi.util.ModuleLoad;
+import org.folio.okapi.util.ParallelRunner;
+import org.folio.okapi.util.RequestMirror;
 import static org.folio.okapi.common.ErrorType.NOT_FOUND;
 import static org.folio.okapi.common.ErrorType.USER;
 import org.folio.okapi.common.ExtendedAsyncResult;
@@ -70,7 +79,11 @@ public class ProxyService {
   // for load balancing, so security is not an issue
   private static Random random = new Random();
   private final int waitMs;
+  private boolean phaseTimingHeader = false;
+  private ModuleLoad moduleLoad;
+  private RequestMirror requestMirror;
   private static final String REDIRECTQUERY = "redirect-query"; // See redirectProxy below
+  private static final int WARM_UP_PARALLEL = 4;
   private Messages messages = Messages.getInstance();
 
   public ProxyService(Vertx vertx, ModuleManager modules, TenantManager tm,
@@ -88,7 +101,50 @@ public class ProxyService {
   }
 
   /**
-   * Make a trace header. Also writes a log entry for the response.
+   * Enable the X-Okapi-Phase-Timing response header.
+   *
+   * @param enable true to add the header to proxied responses
+   */
+  public void setPhaseTimingHeader(boolean enable) {
+    this.phaseTimingHeader = enable;
+  }
+
+  /**
+   * Register requests to module instances in the given load tracking.
+   *
+   * @param moduleLoad load tracking; null for none
+   */
+  public void setModuleLoad(ModuleLoad moduleLoad) {
+    this.moduleLoad = moduleLoad;
+  }
+
+  /**
+   * Set the sender of mirrored requests. Without it, requests are not
+   * mirrored.
+   *
+   * @param requestMirror sender
+   */
+  public void setRequestMirror(RequestMirror requestMirror) {
+    this.requestMirror = requestMirror;
+  }
+
+  /**
+   * Make a trace header for a module response.
+   *
+   * @param mi
+   * @param res
+   * @param pc
+   */
+  private void makeTraceHeader(ModuleInstance mi, HttpClientResponse res,
+    ProxyContext pc) {
+
+    makeTraceHeader(mi, res.statusCode(), pc);
+  }
+
+  /**
+   * Make a trace header. Also writes a log entry for the response and
+   * registers the status for the flight recorder event of the module
+   * invocation, which ends when the module response has been read.
    *
    * @param mi
    * @param statusCode
@@ -97,19 +153,20 @@ public class ProxyService {
   private void makeTraceHeader(ModuleInstance mi, int statusCode,
     ProxyContext pc) {
 
+    pc.hopResponse(mi, statusCode);
     RoutingContext ctx = pc.getCtx();
     String url = makeUrl(mi, ctx).replaceFirst("[?#].*$", ".."); // rm params
     pc.addTraceHeaderLine(ctx.request().method() + " "
       + mi.getModuleDescriptor().getId() + " "
       + url + " : " + statusCode + pc.timeDiff());
     pc.logResponse(mi.getModuleDescriptor().getId(), url, statusCode);
+    if (pc.isCanary(mi.getModuleDescriptor().getId())) {
+      DropwizardHelper.markEvent("proxy." + pc.getTenant()
+        + ".canary." + mi.getModuleDescriptor().getId() + "." + statusCode / 100 + "xx");
+    }
   }
 
 
-  private boolean match(RoutingEntry e, HttpServerRequest req) {
-    return e.match(req.uri(), req.method().name());
-  }
-
   private boolean resolveRedirects(ProxyContext pc,
     List<ModuleInstance> mods, RoutingEntry re,
     List<ModuleDescriptor> enabledModules,
@@ -160,60 +217,82 @@ public class ProxyService {
   }
 
   /**
-   * Builds the pipeline of modules to be invoked for a request.
-   * Sets the
-   * default authToken for each ModuleInstance. Later, these can be overwritten
-   * by the ModuleTokens from the auth, if needed.
+   * Match the routing entries of the enabled modules against a request, and
+   * sort the resulting instances by phase and level. A module contributes at
+   * most one handler, from its multiple handlers if it is the module asked
+   * for with X-Okapi-Module-Id, and any number of filters. Package visible
+   * for the pipeline benchmark.
    *
-   * @param pc
-   * @param enabledModules modules enabled for the current tenant
-   * @return a list of ModuleInstances. In case of error, sets up ctx and
-   * returns null.
+   * @param enabledModules modules enabled for the tenant
+   * @param moduleId X-Okapi-Module-Id of the request; null if not given
+   * @param method request method
+   * @param uri request URI
+   * @param authToken token for the instances that match directly
+   * @param redirects called after each matching filter is added; may add
+   * more instances, and returns false to give up
+   * @return sorted instances; null if redirects gave up
    */
-  private List<ModuleInstance> getModulesForRequest(ProxyContext pc,
-    List<ModuleDescriptor> enabledModules) {
-    List<ModuleInstance> mods = new ArrayList<>();
-    HttpServerRequest req = pc.getCtx().request();
-    final String id = req.getHeader(XOkapiHeaders.MODULE_ID);
-    pc.debug("getMods: Matching " + req.method() + " " + req.uri());
+  static List<ModuleInstance> matchModules(List<ModuleDescriptor> enabledModules,
+    String moduleId, HttpMethod method, String uri, String authToken,
+    BiPredicate<List<ModuleInstance>, RoutingEntry> redirects) {
 
+    List<ModuleInstance> mods = new ArrayList<>();
     for (ModuleDescriptor md : enabledModules) {
-      pc.debug("getMods:  looking at " + md.getId());
       List<RoutingEntry> rr = null;
-      if (id == null) {
+      if (moduleId == null) {
         rr = md.getProxyRoutingEntries();
-      } else if (id.equals(md.getId())) {
+      } else if (moduleId.equals(md.getId())) {
         rr = md.getMultiRoutingEntries();
       }
       if (rr != null) {
         for (RoutingEntry re : rr) {
-          if (match(re, req)) {
-            ModuleInstance mi = new ModuleInstance(md, re, req.uri(), req.method(), true);
-            mi.setAuthToken(req.headers().get(XOkapiHeaders.TOKEN));
+          if (re.match(uri, method.name())) {
+            ModuleInstance mi = new ModuleInstance(md, re, uri, method, true);
+            mi.setAuthToken(authToken);
             mods.add(mi);
-            pc.debug("getMods:   Added " + md.getId() + " "
-              + re.getPathPattern() + " " + re.getPath() + " " + re.getPhase() + "/" + re.getLevel());
             break;
           }
         }
       }
-      rr = md.getFilterRoutingEntries();
-      for (RoutingEntry re : rr) {
-        if (match(re, req)) {
-          ModuleInstance mi = new ModuleInstance(md, re, req.uri(), req.method(), false);
-          mi.setAuthToken(req.headers().get(XOkapiHeaders.TOKEN));
+      for (RoutingEntry re : md.getFilterRoutingEntries()) {
+        if (re.match(uri, method.name())) {
+          ModuleInstance mi = new ModuleInstance(md, re, uri, method, false);
+          mi.setAuthToken(authToken);
           mods.add(mi);
-          if (!resolveRedirects(pc, mods, re, enabledModules, "", req.uri())) {
+          if (!redirects.test(mods, re)) {
             return null;
           }
-          pc.debug("getMods:   Added " + md.getId() + " "
-            + re.getPathPattern() + " " + re.getPath() + " " + re.getPhase() + "/" + re.getLevel());
         }
       }
     }
     Comparator<ModuleInstance> cmp = (ModuleInstance a, ModuleInstance b)
       -> a.getRoutingEntry().getPhaseLevel().compareTo(b.getRoutingEntry().getPhaseLevel());
     mods.sort(cmp);
+    return mods;
+  }
+
+  /**
+   * Builds the pipeline of modules to be invoked for a request.
+   * Sets the
+   * default authToken for each ModuleInstance. Later, these can be overwritten
+   * by the ModuleTokens from the auth, if needed.
+   *
+   * @param pc
+   * @param enabledModules modules enabled for the current tenant
+   * @return a list of ModuleInstances. In case of error, sets up ctx and
+   * returns null.
+   */
+  private List<ModuleInstance> getModulesForRequest(ProxyContext pc,
+    List<ModuleDescriptor> enabledModules) {
+    HttpServerRequest req = pc.getCtx().request();
+    pc.debug("getMods: Matching " + req.method() + " " + req.uri());
+    List<ModuleInstance> mods = matchModules(enabledModules,
+      req.getHeader(XOkapiHeaders.MODULE_ID), req.method(), req.uri(),
+      req.headers().get(XOkapiHeaders.TOKEN),
+      (l, re) -> resolveRedirects(pc, l, re, enabledModules, "", req.uri()));
+    if (mods == null) {
+      return null;
+    }
 
     // Check that our pipeline has a real module in it, not just filters,
     // so that we can return a proper 404 for requests that only hit auth
@@ -354,7 +433,7 @@ public class ProxyService {
     }
   }
 
-  private void resolveUrls(Iterator<ModuleInstance> it,
+  private void resolveUrls(Iterator<ModuleInstance> it, ProxyContext pc,
     Handler<ExtendedAsyncResult<Void>> fut) {
     if (!it.hasNext()) {
       fut.handle(new Success<>());
@@ -362,7 +441,7 @@ public class ProxyService {
       ModuleInstance mi = it.next();
       if (mi.getRoutingEntry().getProxyType() == ProxyType.INTERNAL) {
         mi.setUrl("");
-        resolveUrls(it, fut);
+        resolveUrls(it, pc, fut);
         return;
       }
       discoveryManager.get(mi.getModuleDescriptor().getId(), res -> {
@@ -377,7 +456,8 @@ public class ProxyService {
             return;
           }
           mi.setUrl(instance.getUrl());
-          resolveUrls(it, fut);
+          pc.reserveUrl(instance.getUrl());
+          resolveUrls(it, pc, fut);
         }
       });
     }
@@ -385,6 +465,7 @@ public class ProxyService {
 
   private void relayToResponse(HttpServerResponse hres,
     HttpClientResponse res, ProxyContext pc) {
+    pc.startPhase("relay");
     if (pc.getHandlerRes() != 0) {
       hres.setStatusCode(pc.getHandlerRes());
       hres.headers().addAll(pc.getHandlerHeaders());
@@ -402,6 +483,9 @@ public class ProxyService {
     }
     hres.headers().remove("Content-Length");
     hres.headers().remove("Transfer-Encoding");
+    if (phaseTimingHeader) {
+      pc.addPhaseHeader();
+    }
     if (hres.getStatusCode() != 204) {
       hres.setChunked(true);
     }
@@ -496,6 +580,10 @@ public class ProxyService {
     // it will get read into a buffer somewhere.
 
     ProxyContext pc = new ProxyContext(ctx, waitMs);
+    pc.setModuleLoad(moduleLoad);
+    pc.startPhase("tenant");
+    ctx.addBodyEndHandler(v -> pc.closePhases());
+    ctx.response().closeHandler(v -> pc.closePhases());
 
     // It would be nice to pass the request-id to the client, so it knows what
     // to look for in Okapi logs. But that breaks the schemas, and RMB-based
@@ -514,18 +602,20 @@ public class ProxyService {
         return;
       }
       Tenant tenant = gres.result();
+      pc.startPhase("modules");
       moduleManager.getEnabledModules(tenant, mres -> {
         if (mres.failed()) {
           stream.resume();
           pc.responseError(mres.getType(), mres.cause());
           return;
         }
-        List<ModuleDescriptor> enabledModules = mres.result();
+        List<ModuleDescriptor> enabledModules = pickCanary(pc, tenant, mres.result());
 
         String metricKey = "proxy." + tenantId + "."
           + ctx.request().method() + "." + ctx.normalisedPath();
         DropwizardHelper.markEvent(metricKey);
 
+        pc.startPhase("routing");
         List<ModuleInstance> l = getModulesForRequest(pc, enabledModules);
         if (l == null) {
           stream.resume();
@@ -541,7 +631,8 @@ public class ProxyService {
         ctx.request().headers().set(XOkapiHeaders.REQUEST_TIMESTAMP, "" + System.currentTimeMillis());
         ctx.request().headers().set(XOkapiHeaders.REQUEST_METHOD, ctx.request().rawMethod());
 
-        resolveUrls(l.iterator(), res -> {
+        pc.startPhase("discovery");
+        resolveUrls(l.iterator(), pc, res -> {
           if (res.failed()) {
             stream.resume();
             pc.responseError(res.getType(), res.cause());
@@ -554,24 +645,182 @@ public class ProxyService {
     });
   }
 
+  /**
+   * Apply the traffic splits of the tenant. For each split, the request key
+   * is hashed into a bucket 0..99, and the alternative whose weight covers
+   * the bucket replaces the enabled module. The same key always ends up with
+   * the same version. Requests sampled for mirroring are marked in the proxy
+   * context; only GET and HEAD, unless the split allows other methods. Splits for modules that are no longer enabled are ignored. The
+   * descriptors of the alternatives come with the split, so nothing is
+   * looked up.
+   *
+   * @param pc proxy context
+   * @param tenant tenant
+   * @param enabledModules modules enabled for the tenant
+   * @return the modules to use for the request
+   */
+  private List<ModuleDescriptor> pickCanary(ProxyContext pc, Tenant tenant,
+    List<ModuleDescriptor> enabledModules) {
+
+    List<CanaryDescriptor> canary = tenant.getCanary();
+    if (canary == null || canary.isEmpty()) {
+      return enabledModules;
+    }
+    Map<String, ModuleDescriptor> picked = new HashMap<>();
+    final HttpMethod method = pc.getCtx().request().method();
+    final boolean safe = method == HttpMethod.GET || method == HttpMethod.HEAD;
+    for (CanaryDescriptor cd : canary) {
+      if (!tenant.isEnabled(cd.getId())) {
+        continue;
+      }
+      String serving = cd.getId();
+      if (cd.getAlternatives() != null) {
+        final int bucket = (canaryKey(pc, cd).concat(cd.getId()).hashCode()
+          & 0x7fffffff) % 100;
+        int sum = 0;
+        for (CanaryAlternative alt : cd.getAlternatives()) {
+          sum += alt.getWeight();
+          if (bucket < sum) {
+            if (alt.getModule() == null) {
+              // split stored without descriptors; set it again to fix
+              pc.warn("canary " + alt.getId() + " for " + cd.getId()
+                + ": module descriptor not known");
+            } else {
+              serving = alt.getId();
+              picked.put(cd.getId(), alt.getModule());
+            }
+            break;
+          }
+        }
+      }
+      final Integer pct = cd.getMirrorPercent();
+      if (requestMirror != null && cd.getMirror() != null
+        && (safe || Boolean.TRUE.equals(cd.getMirrorUnsafe()))
+        && (pct == null || random.nextInt(100) < pct)) {
+        pc.setMirror(serving, cd.getMirror());
+      }
+    }
+    if (picked.isEmpty()) {
+      return enabledModules;
+    }
+    List<ModuleDescriptor> mdl = new ArrayList<>(enabledModules.size());
+    for (ModuleDescriptor md : enabledModules) {
+      ModuleDescriptor alt = picked.get(md.getId());
+      if (alt == null) {
+        mdl.add(md);
+      } else {
+        pc.addCanary(alt.getId());
+        mdl.add(alt);
+      }
+    }
+    return mdl;
+  }
+
+  private String canaryKey(ProxyContext pc, CanaryDescriptor cd) {
+    RoutingContext ctx = pc.getCtx();
+    if (CanaryDescriptor.KEY_USER.equals(cd.getKey())) {
+      OkapiToken t = new OkapiToken(ctx);
+      try {
+        final String userId = t.getUserId();
+        if (userId != null) {
+          return userId;
+        }
+      } catch (IllegalArgumentException e) {
+        pc.debug("canary: no user in token: " + e.getMessage());
+      }
+    }
+    final String reqId = ctx.request().getHeader(XOkapiHeaders.REQUEST_ID);
+    return reqId == null ? "" : reqId.split(";")[0];
+  }
+
   private void proxyResponseImmediate(ProxyContext pc, HttpClientResponse res,
     ModuleInstance mi) {
 
     RoutingContext ctx = pc.getCtx();
     relayToResponse(ctx.response(), res, pc);
-    makeTraceHeader(mi, res.statusCode(), pc);
+    makeTraceHeader(mi, res, pc);
     res.handler(data -> {
+      pc.addHopBytes(mi, data.length());
       ctx.response().write(data);
       pc.trace("ProxyRequestImmediate response chunk '"
         + data.toString() + "'");
     });
     res.endHandler(v -> {
+      pc.endHopEvent(mi);
       pc.closeTimer();
       ctx.response().end();
       pc.trace("ProxyRequestImmediate response end");
     });
-    res.exceptionHandler(e
-      -> pc.warn("proxyRequestImmediate res exception ", e));
+    res.exceptionHandler(e -> {
+      pc.failHopEvent(mi);
+      pc.warn("proxyRequestImmediate res exception ", e);
+    });
+  }
+
+  /*
+   * Read a module response whose body is not used, for the flight recorder
+   * event of the module invocation.
+   */
+  private static void discardBody(ProxyContext pc, ModuleInstance mi,
+    HttpClientResponse res) {
+
+    res.handler(data -> pc.addHopBytes(mi, data.length()));
+    res.endHandler(v -> pc.endHopEvent(mi));
+    res.exceptionHandler(e -> pc.failHopEvent(mi));
+  }
+
+  /*
+   * A module response that is passed on as the request body of the next
+   * module. Counts the bytes and ends the flight recorder event of the
+   * module invocation when the body has been read.
+   */
+  private static ReadStream<Buffer> hopStream(ProxyContext pc, ModuleInstance mi,
+    ReadStream<Buffer> res) {
+
+    return new ReadStream<Buffer>() {
+      @Override
+      public ReadStream<Buffer> exceptionHandler(Handler<Throwable> h) {
+        res.exceptionHandler(e -> {
+          pc.failHopEvent(mi);
+          if (h != null) {
+            h.handle(e);
+          }
+        });
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> handler(Handler<Buffer> h) {
+        res.handler(h == null ? null : data -> {
+          pc.addHopBytes(mi, data.length());
+          h.handle(data);
+        });
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> pause() {
+        res.pause();
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> resume() {
+        res.resume();
+        return this;
+      }
+
+      @Override
+      public ReadStream<Buffer> endHandler(Handler<Void> h) {
+        res.endHandler(v -> {
+          pc.endHopEvent(mi);
+          if (h != null) {
+            h.handle(v);
+          }
+        });
+        return this;
+      }
+    };
   }
 
   private void proxyRequestHttpClient(Iterator<ModuleInstance> it,
@@ -588,14 +837,17 @@ public class ProxyService {
         newIt = it;
       }
       if (newIt.hasNext()) {
-        makeTraceHeader(mi, res.statusCode(), pc);
+        makeTraceHeader(mi, res, pc);
+        discardBody(pc, mi, res);
         pc.closeTimer();
         relayToRequest(res, pc, mi);
         proxyR(newIt, pc, null, bcontent);
       } else {
         relayToResponse(ctx.response(), res, pc);
-        makeTraceHeader(mi, res.statusCode(), pc);
+        makeTraceHeader(mi, res, pc);
+        res.handler(data -> pc.addHopBytes(mi, data.length()));
         res.endHandler(x -> {
+          pc.endHopEvent(mi);
           pc.closeTimer();
           pc.trace("ProxyRequestHttpClient final response buf '"
             + bcontent + "'");
@@ -605,11 +857,14 @@ public class ProxyService {
             ctx.response().end(bcontent);
           }
         });
-        res.exceptionHandler(e
-          -> pc.warn("proxyRequestHttpClient: res exception (b)", e));
+        res.exceptionHandler(e -> {
+          pc.failHopEvent(mi);
+          pc.warn("proxyRequestHttpClient: res exception (b)", e);
+        });
       }
     });
     cReq.exceptionHandler(e -> {
+      pc.failHopEvent(mi);
       pc.warn("proxyRequestHttpClient failure: " + url, e);
       pc.responseError(500, messages.getMessage("10107", mi.getModuleDescriptor().getId(), mi.getUrl(), e,e.getMessage()));
     });
@@ -618,6 +873,101 @@ public class ProxyService {
       + bcontent + "'");
     cReq.end(bcontent);
     log(pc, cReq);
+    MirrorCopy mc = mirrorBegin(pc, mi, cReq);
+    if (mc != null) {
+      mc.append(bcontent);
+      mirrorEnd(pc, mc);
+    }
+  }
+
+  /**
+   * Copy of a request on its way to a shadow instance.
+   */
+  private static class MirrorCopy {
+    private final String shadow;
+    private final HttpMethod method;
+    private final String path;
+    private final MultiMap headers;
+    private final int maxBody;
+    private Buffer body = Buffer.buffer();
+
+    MirrorCopy(String shadow, HttpMethod method, String path, MultiMap headers,
+      int maxBody) {
+      this.shadow = shadow;
+      this.method = method;
+      this.path = path;
+      this.headers = headers;
+      this.maxBody = maxBody;
+    }
+
+    void append(Buffer data) {
+      if (body != null) {
+        if (body.length() + data.length() > maxBody) {
+          body = null; // too large, give up
+        } else {
+          body.appendBuffer(data);
+        }
+      }
+    }
+  }
+
+  /**
+   * Start a copy of a request to a handler, if the request is to be mirrored.
+   *
+   * @param pc proxy context
+   * @param mi module instance that gets the request
+   * @param cReq the request, with headers set
+   * @return copy to append the body to; null if not mirrored
+   */
+  private MirrorCopy mirrorBegin(ProxyContext pc, ModuleInstance mi,
+    HttpClientRequest cReq) {
+
+    if (requestMirror == null || mi.getRoutingEntry().getPhase() != null) {
+      return null;
+    }
+    final String shadow = pc.getMirror(mi.getModuleDescriptor().getId());
+    if (shadow == null) {
+      return null;
+    }
+    if (requestMirror.isFull()) {
+      DropwizardHelper.markEvent("proxy.mirror.dropped");
+      return null;
+    }
+    RoutingContext ctx = pc.getCtx();
+    MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+    headers.setAll(cReq.headers());
+    return new MirrorCopy(shadow, ctx.request().method(),
+      makeUrl(mi, ctx).substring(mi.getUrl().length()), headers,
+      requestMirror.getMaxBody());
+  }
+
+  /**
+   * Send a copy of a request, once the body is complete. Looks up an
+   * instance of the shadow in discovery; the request itself does not wait
+   * for any of this.
+   *
+   * @param pc proxy context
+   * @param mc copy; null if not mirrored
+   */
+  private void mirrorEnd(ProxyContext pc, MirrorCopy mc) {
+    if (mc == null) {
+      return;
+    }
+    if (mc.body == null) {
+      DropwizardHelper.markEvent("proxy.mirror.dropped");
+      return;
+    }
+    final String tenantId = pc.getTenant();
+    discoveryManager.get(mc.shadow, res -> {
+      DeploymentDescriptor instance = res.succeeded() ? pickInstance(res.result()) : null;
+      if (instance == null) {
+        pc.debug("mirror: no instance of " + mc.shadow);
+        DropwizardHelper.markEvent("proxy.mirror.dropped");
+        return;
+      }
+      requestMirror.send(mc.method, instance.getUrl() + mc.path, mc.headers,
+        mc.body, "proxy." + tenantId + ".mirror." + mc.shadow);
+    });
   }
 
   private void proxyRequestOnly(Iterator<ModuleInstance> it,
@@ -691,7 +1041,7 @@ public class ProxyService {
           newIt = it;
         }
         if (res.getHeader(XOkapiHeaders.STOP) == null && newIt.hasNext()) {
-          makeTraceHeader(mi, res.statusCode(), pc);
+          makeTraceHeader(mi, res, pc);
           relayToRequest(res, pc, mi);
           final String ct = res.getHeader("Content-Type");
           if (ct != null) {
@@ -699,29 +1049,39 @@ public class ProxyService {
           }
           storeResponseInfo(pc, mi, res);
           res.pause();
-          proxyR(newIt, pc, res, null);
+          proxyR(newIt, pc, hopStream(pc, mi, res), null);
         } else {
           proxyResponseImmediate(pc, res, mi);
         }
       });
     cReq.exceptionHandler(e -> {
+      pc.failHopEvent(mi);
       pc.warn("proxyRequestResponse failure: ", e);
       pc.responseError(500, messages.getMessage("10108", mi.getModuleDescriptor().getId(), mi.getUrl(), e, e.getMessage()));
     });
     copyHeaders(cReq, ctx, mi);
+    MirrorCopy mc = mirrorBegin(pc, mi, cReq);
     if (bcontent != null) {
       pc.trace("proxyRequestResponse request buf '" + bcontent + "'");
       cReq.end(bcontent);
+      if (mc != null) {
+        mc.append(bcontent);
+        mirrorEnd(pc, mc);
+      }
     } else {
       cReq.setChunked(true);
       stream.handler(data -> {
         pc.trace("proxyRequestResponse request chunk '"
           + data.toString() + "'");
         cReq.write(data);
+        if (mc != null) {
+          mc.append(data);
+        }
       });
       stream.endHandler(v -> {
         pc.trace("proxyRequestResponse request complete");
         cReq.end();
+        mirrorEnd(pc, mc);
       });
       stream.exceptionHandler(e
         -> pc.warn("proxyRequestResponse: content exception ", e));
@@ -752,12 +1112,17 @@ public class ProxyService {
       if (newIt.hasNext()) {
         relayToRequest(res, pc, mi);
         storeResponseInfo(pc, mi, res);
-        makeTraceHeader(mi, res.statusCode(), pc);
-        res.endHandler(x
-          -> proxyR(newIt, pc, stream, bcontent));
+        makeTraceHeader(mi, res, pc);
+        res.handler(data -> pc.addHopBytes(mi, data.length()));
+        res.endHandler(x -> {
+          pc.endHopEvent(mi);
+          proxyR(newIt, pc, stream, bcontent);
+        });
+        res.exceptionHandler(e -> pc.failHopEvent(mi));
       } else {
         relayToResponse(ctx.response(), res, pc);
-        makeTraceHeader(mi, res.statusCode(), pc);
+        makeTraceHeader(mi, res, pc);
+        discardBody(pc, mi, res);
         if (bcontent == null) {
           stream.handler(data -> {
             ctx.response().write(data);
@@ -778,6 +1143,7 @@ public class ProxyService {
       }
     });
     cReq.exceptionHandler(e -> {
+      pc.failHopEvent(mi);
       pc.warn("proxyHeaders failure: " + mi.getUrl() + ": ", e);
       pc.responseError(500, messages.getMessage("10109", mi.getModuleDescriptor().getId(), mi.getUrl(), e, e.getMessage()));
     });
@@ -826,23 +1192,59 @@ public class ProxyService {
     RoutingContext ctx = pc.getCtx();
     internalModule.internalService(req, pc, res -> {
       if (res.failed()) {
+        pc.failHopEvent(mi);
         pc.responseError(res.getType(), res.cause());
         return;
       }
       String resp = res.result();
       int statusCode = pc.getCtx().response().getStatusCode();
       pc.setHandlerRes(statusCode);
-      if (statusCode == 200 && resp.isEmpty()) {
+      final JsonListWriter<?> streamBody = pc.getStreamBody();
+      pc.setStreamBody(null);
+      if (streamBody != null && !it.hasNext()) {
+        makeTraceHeader(mi, statusCode, pc);
+        pc.closeTimer();
+        if (phaseTimingHeader) {
+          pc.addPhaseHeader();
+        }
+        ctx.response().setChunked(true);
+        ctx.response().closeHandler(v -> {
+          pc.closePhases();
+          streamBody.close();
+        });
+        streamBody.write(ctx.response(), wres -> {
+          pc.addHopBytes(mi, ctx.response().bytesWritten());
+          if (wres.failed()) {
+            pc.failHopEvent(mi);
+            logger.warn("proxyInternalBuffer: " + wres.cause().getMessage());
+            if (!ctx.response().closed()) {
+              ctx.response().reset();
+            }
+          } else {
+            pc.endHopEvent(mi);
+            ctx.response().end();
+          }
+        });
+        return;
+      }
+      if (statusCode == 200 && resp.isEmpty() && streamBody == null) {
         // Say "no content", if there isn't any
         statusCode = 204;
         pc.getCtx().response().setStatusCode(statusCode);
       }
-      Buffer respBuf = Buffer.buffer(resp);
+      Buffer respBuf = streamBody != null ? streamBody.toBuffer() : Buffer.buffer(resp);
+      pc.addHopBytes(mi, respBuf.length());
       if (it.hasNext()) { // carry on with the pipeline
+        pc.hopResponse(mi, statusCode);
+        pc.endHopEvent(mi);
         proxyR(it, pc, null, respBuf);
       } else { // produce a result
         makeTraceHeader(mi, statusCode, pc);
+        pc.endHopEvent(mi);
         pc.closeTimer();
+        if (phaseTimingHeader) {
+          pc.addPhaseHeader();
+        }
         ctx.response().end(respBuf);
       }
     });
@@ -866,6 +1268,9 @@ public class ProxyService {
       String metricKey = "proxy." + tenantId
         + ".module." + mi.getModuleDescriptor().getId();
       pc.startTimer(metricKey);
+      final String phase = mi.getRoutingEntry().getPhase();
+      pc.startPhase((phase == null ? "handler" : phase)
+        + ":" + mi.getModuleDescriptor().getId());
 
       // Pass the right token
       ctx.request().headers().remove(XOkapiHeaders.TOKEN);
@@ -880,6 +1285,7 @@ public class ProxyService {
       // Do proxy work
       ProxyType pType = mi.getRoutingEntry().getProxyType();
       if (pType != ProxyType.REDIRECT) {
+        pc.beginHopEvent(mi);
         pc.debug("Invoking module " + mi.getModuleDescriptor().getId()
           + " type " + pType
           + " level " + mi.getRoutingEntry().getPhaseLevel()
@@ -988,7 +1394,7 @@ public class ProxyService {
     Handler<ExtendedAsyncResult<OkapiClient>> fut) {
     String tenantId = tenant.getId(); // the tenant we are about to enable
     String curTenantId = pc.getTenant(); // is often the supertenant
-    String authToken = pc.getCtx().request().headers().get(XOkapiHeaders.TOKEN);
+    String authToken = pc.getHeaders().get(XOkapiHeaders.TOKEN);
     pc.debug("callSystemInterface on " + Json.encode(inst)
       + " for " + tenantId + " as " + curTenantId + " with authToken " + authToken);
     if (tenantId.equals(curTenantId)) {
@@ -1097,7 +1503,7 @@ public class ProxyService {
       }
       String baseurl = instance.getUrl();
       pc.debug("doCallSystemInterface Url: " + baseurl + " and " + inst.getPath());
-      Map<String, String> headers = sysReqHeaders(pc.getCtx(), tenantId, authToken);
+      Map<String, String> headers = sysReqHeaders(pc.getHeaders(), tenantId, authToken);
       headers.put(XOkapiHeaders.URL_TO, baseurl);
       if (modPerms != null) { // We are making an auth call
         RoutingEntry re = inst.getRoutingEntry();
@@ -1145,12 +1551,12 @@ public class ProxyService {
    * Helper to make request headers for the system requests we make. Copies all
    * X- headers over. Adds a tenant, and a token, if we have one.
    */
-  private Map<String, String> sysReqHeaders(RoutingContext ctx,
+  private Map<String, String> sysReqHeaders(MultiMap reqHeaders,
     String tenantId, String authToken) {
     Map<String, String> headers = new HashMap<>();
-    for (String hdr : ctx.request().headers().names()) {
+    for (String hdr : reqHeaders.names()) {
       if (hdr.matches("^X-.*$")) {
-        headers.put(hdr, ctx.request().headers().get(hdr));
+        headers.put(hdr, reqHeaders.get(hdr));
       }
     }
     headers.put(XOkapiHeaders.TENANT, tenantId);
@@ -1206,6 +1612,70 @@ public class ProxyService {
     discoveryManager.autoUndeploy(md, pc, fut);
   }
 
+  /**
+   * Warm up the instances of a module for a tenant, before the module is
+   * enabled. Each path in warmUp of the launch descriptor is requested with
+   * GET warmUpRequests times on every instance in discovery, directly, with
+   * the tenant header of the tenant. The responses are ignored; this never
+   * fails.
+   *
+   * @param tenant tenant that the module is enabled for
+   * @param md module
+   * @param pc proxy context of the install request
+   * @param fut future; completes when all requests have completed
+   */
+  public void warmUp(Tenant tenant, ModuleDescriptor md, ProxyContext pc,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    discoveryManager.get(md.getId(), gres -> {
+      if (gres.failed()) {
+        fut.handle(new Success<>());
+        return;
+      }
+      List<String[]> requests = new ArrayList<>();
+      for (DeploymentDescriptor dd : gres.result()) {
+        LaunchDescriptor ld = dd.getDescriptor() != null
+          ? dd.getDescriptor() : md.getLaunchDescriptor();
+        if (dd.getUrl() == null || ld == null || ld.getWarmUp() == null) {
+          continue;
+        }
+        final int count = ld.getWarmUpRequests() == null ? 1 : ld.getWarmUpRequests();
+        for (int i = 0; i < count; i++) {
+          for (String path : ld.getWarmUp()) {
+            requests.add(new String[]{dd.getUrl(), path});
+          }
+        }
+      }
+      if (requests.isEmpty()) {
+        fut.handle(new Success<>());
+        return;
+      }
+      pc.debug("warmUp " + md.getId() + ": " + requests.size() + " requests");
+      Timer.Context tim = DropwizardHelper.getTimerContext("proxy.warmup");
+      final int[] failed = new int[1];
+      ParallelRunner.run(requests.iterator(), WARM_UP_PARALLEL, (r, f) -> {
+        Map<String, String> headers = sysReqHeaders(pc.getHeaders(), tenant.getId(), null);
+        headers.put(XOkapiHeaders.URL_TO, r[0]);
+        OkapiClient cli = new OkapiClient(r[0], vertx, headers);
+        cli.request(HttpMethod.GET, r[1], "", cres -> {
+          cli.close();
+          if (cres.failed()) {
+            failed[0]++;
+            pc.debug("warmUp " + r[0] + r[1] + ": " + cres.cause().getMessage());
+          }
+          f.handle(new Success<>());
+        });
+      }, res -> {
+        tim.close();
+        if (failed[0] > 0) {
+          pc.warn("warmUp " + md.getId() + ": " + failed[0] + " of "
+            + requests.size() + " requests failed");
+        }
+        fut.handle(new Success<>());
+      });
+    });
+  }
+
   // store Auth/Handler response, and pass header as needed
   private void storeResponseInfo(ProxyContext pc, ModuleInstance mi, HttpClientResponse res) {
     String phase = mi.getRoutingEntry().getPhase();
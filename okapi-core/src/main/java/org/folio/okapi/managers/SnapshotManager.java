@@ -0,0 +1,351 @@
+package org.folio.okapi.managers;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import org.folio.okapi.bean.DeploymentDescriptor;
+import org.folio.okapi.bean.Snapshot;
+import org.folio.okapi.bean.SnapshotSummary;
+import org.folio.okapi.bean.Tenant;
+import static org.folio.okapi.common.ErrorType.*;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.common.Failure;
+import org.folio.okapi.common.Messages;
+import org.folio.okapi.common.OkapiLogger;
+import org.folio.okapi.common.Success;
+import org.folio.okapi.util.CompList;
+
+/**
+ * Saves modules, tenants, environment variables and the instances registered
+ * in discovery by URL to a single file, and restores them from it at
+ * startup. Meant for in-memory storage, where everything is lost on restart.
+ *
+ * The file is one line of JSON: the SHA-256 checksum of the content,
+ * followed by the content itself. If the checksum matches, the content is
+ * known to be a snapshot of a consistent state and is restored without
+ * checking dependencies. Otherwise, for instance after the file has been
+ * edited, the modules are checked as when they are posted.
+ */
+public class SnapshotManager {
+
+  private static final String PREFIX = "{\"checksum\":\"";
+  private static final String INFIX = "\",\"content\":";
+  private static final int CHECKSUM_LENGTH = 64;
+
+  private final Logger logger = OkapiLogger.get();
+  private final Messages messages = Messages.getInstance();
+  private final Vertx vertx;
+  private final ModuleManager moduleManager;
+  private final TenantManager tenantManager;
+  private final EnvManager envManager;
+  private final DiscoveryManager discoveryManager;
+  private final String fileName;
+  private Snapshot pending;
+
+  /**
+   * Create snapshot manager.
+   *
+   * @param vertx Vert.x handle
+   * @param moduleManager modules
+   * @param tenantManager tenants
+   * @param envManager environment variables
+   * @param discoveryManager discovery
+   * @param fileName snapshot file; null for none, in which case snapshots can
+   * only be fetched
+   */
+  public SnapshotManager(Vertx vertx, ModuleManager moduleManager,
+    TenantManager tenantManager, EnvManager envManager,
+    DiscoveryManager discoveryManager, String fileName) {
+
+    this.vertx = vertx;
+    this.moduleManager = moduleManager;
+    this.tenantManager = tenantManager;
+    this.envManager = envManager;
+    this.discoveryManager = discoveryManager;
+    this.fileName = fileName;
+  }
+
+  private void collect(Handler<ExtendedAsyncResult<Snapshot>> fut) {
+    Snapshot s = new Snapshot();
+    moduleManager.getModulesWithFilter(true, true, mres -> {
+      if (mres.failed()) {
+        fut.handle(new Failure<>(mres.getType(), mres.cause()));
+        return;
+      }
+      s.setModules(mres.result());
+      tenantManager.getAll(tres -> {
+        if (tres.failed()) {
+          fut.handle(new Failure<>(tres.getType(), tres.cause()));
+          return;
+        }
+        s.setTenants(tres.result());
+        envManager.get(eres -> {
+          if (eres.failed()) {
+            fut.handle(new Failure<>(eres.getType(), eres.cause()));
+            return;
+          }
+          s.setEnv(eres.result());
+          discoveryManager.get(dres -> {
+            if (dres.failed()) {
+              fut.handle(new Failure<>(dres.getType(), dres.cause()));
+              return;
+            }
+            // instances deployed by Okapi are deployed again from the
+            // deployment store, if at all
+            List<DeploymentDescriptor> dl = new LinkedList<>();
+            for (DeploymentDescriptor dd : dres.result()) {
+              if (dd.getNodeId() == null && dd.getUrl() != null) {
+                dl.add(dd);
+              }
+            }
+            s.setDiscovery(dl);
+            fut.handle(new Success<>(s));
+          });
+        });
+      });
+    });
+  }
+
+  static String checksum(String content) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      StringBuilder b = new StringBuilder();
+      for (byte x : md.digest(content.getBytes(StandardCharsets.UTF_8))) {
+        b.append(String.format("%02x", x));
+      }
+      return b.toString();
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  static String encode(String content, String checksum) {
+    return PREFIX + checksum + INFIX + content + "}";
+  }
+
+  /*
+   * Get the content of a snapshot if the checksum matches; null otherwise.
+   */
+  static String verified(String text) {
+    final int start = PREFIX.length() + CHECKSUM_LENGTH + INFIX.length();
+    if (!text.startsWith(PREFIX) || text.length() <= start || !text.endsWith("}")
+      || !text.startsWith(INFIX, PREFIX.length() + CHECKSUM_LENGTH)) {
+      return null;
+    }
+    final String content = text.substring(start, text.length() - 1);
+    final String checksum = text.substring(PREFIX.length(), PREFIX.length() + CHECKSUM_LENGTH);
+    return checksum.equals(checksum(content)) ? content : null;
+  }
+
+  /**
+   * Take a snapshot.
+   *
+   * @param fut the snapshot, as it would be written to the file
+   */
+  public void get(Handler<ExtendedAsyncResult<String>> fut) {
+    collect(res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      final String content = Json.encode(res.result());
+      fut.handle(new Success<>(encode(content, checksum(content))));
+    });
+  }
+
+  /**
+   * Take a snapshot and write it to the snapshot file. The file is replaced
+   * in one step, so that a failed write leaves the previous snapshot.
+   *
+   * @param fut what was written; USER error if there is no snapshot file
+   */
+  public void save(Handler<ExtendedAsyncResult<SnapshotSummary>> fut) {
+    if (fileName == null) {
+      fut.handle(new Failure<>(USER, messages.getMessage("11900")));
+      return;
+    }
+    collect(res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      final String content = Json.encode(res.result());
+      final String checksum = checksum(content);
+      final byte[] data = encode(content, checksum).getBytes(StandardCharsets.UTF_8);
+      vertx.executeBlocking(future -> {
+        try {
+          Path path = Paths.get(fileName);
+          Path tmp = Paths.get(fileName + ".tmp");
+          Files.write(tmp, data);
+          Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+          future.complete();
+        } catch (IOException e) {
+          future.fail(e);
+        }
+      }, false, wres -> {
+        if (wres.failed()) {
+          fut.handle(new Failure<>(INTERNAL, wres.cause()));
+        } else {
+          logger.info("Wrote snapshot " + fileName);
+          fut.handle(new Success<>(new SnapshotSummary(fileName, checksum, res.result())));
+        }
+      });
+    });
+  }
+
+  /**
+   * Restore modules and tenants from the snapshot file, if there is one and
+   * no modules are known yet. Environment variables and discovery are
+   * restored by {@link #restoreServices}, as they are initialized later.
+   *
+   * @param fut callback
+   */
+  public void restoreProxy(Handler<ExtendedAsyncResult<Void>> fut) {
+    if (fileName == null) {
+      fut.handle(new Success<>());
+      return;
+    }
+    vertx.fileSystem().exists(fileName, eres -> {
+      if (eres.failed() || !eres.result()) {
+        logger.info("No snapshot " + fileName);
+        fut.handle(new Success<>());
+        return;
+      }
+      moduleManager.getModulesWithFilter(true, true, mres -> {
+        if (mres.failed()) {
+          fut.handle(new Failure<>(mres.getType(), mres.cause()));
+        } else if (!mres.result().isEmpty()) {
+          logger.info("Not loading snapshot " + fileName
+            + ", modules are already there");
+          fut.handle(new Success<>());
+        } else {
+          read(fut);
+        }
+      });
+    });
+  }
+
+  private void read(Handler<ExtendedAsyncResult<Void>> fut) {
+    vertx.fileSystem().readFile(fileName, rres -> {
+      if (rres.failed()) {
+        fut.handle(new Failure<>(INTERNAL, rres.cause()));
+        return;
+      }
+      final String text = rres.result().toString(StandardCharsets.UTF_8);
+      final String content = verified(text);
+      Snapshot s;
+      try {
+        if (content != null) {
+          s = Json.decodeValue(content, Snapshot.class);
+        } else {
+          logger.warn("Snapshot " + fileName + " does not match its checksum;"
+            + " checking modules");
+          JsonObject o = new JsonObject(text).getJsonObject("content");
+          if (o == null) {
+            throw new DecodeException("no content");
+          }
+          s = Json.decodeValue(o.encode(), Snapshot.class);
+        }
+      } catch (DecodeException | ClassCastException ex) {
+        fut.handle(new Failure<>(USER, messages.getMessage("11901", fileName, ex.getMessage())));
+        return;
+      }
+      restoreProxy2(s, content != null, fut);
+    });
+  }
+
+  private void restoreProxy2(Snapshot s, boolean verified,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    Handler<ExtendedAsyncResult<Void>> mfut = mres -> {
+      if (mres.failed()) {
+        fut.handle(new Failure<>(mres.getType(), mres.cause()));
+        return;
+      }
+      Handler<ExtendedAsyncResult<Void>> tfut = tres -> {
+        if (tres.failed()) {
+          fut.handle(new Failure<>(tres.getType(), tres.cause()));
+          return;
+        }
+        pending = s;
+        fut.handle(new Success<>());
+      };
+      if (verified) {
+        tenantManager.restore(s.getTenants(), tfut);
+      } else {
+        insertTenants(s.getTenants().iterator(), tfut);
+      }
+    };
+    if (verified) {
+      moduleManager.restore(s.getModules(), mfut);
+    } else {
+      moduleManager.createList(s.getModules(), true, true, mfut);
+    }
+  }
+
+  private void insertTenants(Iterator<Tenant> it, Handler<ExtendedAsyncResult<Void>> fut) {
+    if (!it.hasNext()) {
+      fut.handle(new Success<>());
+      return;
+    }
+    tenantManager.insert(it.next(), res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        insertTenants(it, fut);
+      }
+    });
+  }
+
+  /**
+   * Restore environment variables and discovery, if modules and tenants were
+   * restored by {@link #restoreProxy}.
+   *
+   * @param fut callback
+   */
+  public void restoreServices(Handler<ExtendedAsyncResult<Void>> fut) {
+    final Snapshot s = pending;
+    if (s == null) {
+      fut.handle(new Success<>());
+      return;
+    }
+    pending = null;
+    envManager.restore(s.getEnv(), eres -> {
+      if (eres.failed()) {
+        fut.handle(new Failure<>(eres.getType(), eres.cause()));
+        return;
+      }
+      CompList<Void> futures = new CompList<>(INTERNAL);
+      for (DeploymentDescriptor dd : s.getDiscovery()) {
+        Future<Void> f = Future.future();
+        discoveryManager.add(dd, f::handle);
+        futures.add(f);
+      }
+      futures.all(dres -> {
+        if (dres.succeeded()) {
+          logger.info("Restored " + s.getModules().size() + " modules, "
+            + s.getTenants().size() + " tenants, " + s.getEnv().size()
+            + " variables and " + s.getDiscovery().size() + " instances from "
+            + fileName);
+        }
+        fut.handle(dres);
+      });
+    });
+  }
+}
@@ -8,14 +8,20 @@ import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import org.folio.okapi.bean.CanaryAlternative;
+import org.folio.okapi.bean.CanaryDescriptor;
 import org.folio.okapi.bean.ModuleDescriptor;
 import org.folio.okapi.bean.InterfaceDescriptor;
 import org.folio.okapi.bean.ModuleInstance;
@@ -23,6 +29,7 @@ import org.folio.okapi.bean.PermissionList;
 import org.folio.okapi.bean.RoutingEntry;
 import org.folio.okapi.bean.Tenant;
 import org.folio.okapi.bean.TenantDescriptor;
+import org.folio.okapi.bean.TenantInstallResult;
 import org.folio.okapi.util.TenantInstallOptions;
 import org.folio.okapi.bean.TenantModuleDescriptor;
 import org.folio.okapi.bean.TenantModuleDescriptor.Action;
@@ -32,11 +39,17 @@ import org.folio.okapi.common.Failure;
 import org.folio.okapi.common.Messages;
 import org.folio.okapi.common.OkapiLogger;
 import org.folio.okapi.common.Success;
+import org.folio.okapi.common.XOkapiHeaders;
 import org.folio.okapi.util.CompList;
+import org.folio.okapi.util.CqlQuery;
 import org.folio.okapi.util.LockedTypedMap1;
+import org.folio.okapi.util.ModuleUtil;
 import org.folio.okapi.common.ModuleId;
 import org.folio.okapi.service.TenantStore;
 import org.folio.okapi.util.DepResolution;
+import org.folio.okapi.util.InstallStepEvent;
+import org.folio.okapi.util.OkapiEvents;
+import org.folio.okapi.util.ParallelRunner;
 import org.folio.okapi.util.ProxyContext;
 
 /**
@@ -84,6 +97,26 @@ public class TenantManager {
     });
   }
 
+  /**
+   * Take in a change of a tenant made by another node that does not share
+   * the map with this one.
+   *
+   * @param id tenant ID
+   * @param t the tenant as stored now; null if it was removed
+   */
+  public void refresh(String id, Tenant t) {
+    Handler<ExtendedAsyncResult<?>> done = res -> {
+      if (res.failed() && res.getType() != NOT_FOUND) {
+        logger.warn("refresh of tenant " + id + " failed: " + res.cause().getMessage());
+      }
+    };
+    if (t == null) {
+      tenants.remove(id, done::handle);
+    } else {
+      tenants.put(id, t, done::handle);
+    }
+  }
+
   /**
    * Set the proxyService. So that we can use it to call the tenant interface,
    * etc.
@@ -145,6 +178,7 @@ public class TenantManager {
       Tenant t;
       if (gres.succeeded()) {
         t = new Tenant(td, gres.result().getEnabled());
+        t.setCanary(gres.result().getCanary());
       } else {
         t = new Tenant(td);
       }
@@ -163,6 +197,16 @@ public class TenantManager {
     });
   }
 
+  /**
+   * Get the version of the tenants, which increases with every change to
+   * them, including the modules enabled for them.
+   *
+   * @param fut callback with the version
+   */
+  public void getVersion(Handler<ExtendedAsyncResult<Long>> fut) {
+    tenants.getVersion(fut);
+  }
+
   public void list(Handler<ExtendedAsyncResult<List<TenantDescriptor>>> fut) {
     tenants.getKeys(lres -> {
       if (lres.failed()) {
@@ -186,6 +230,83 @@ public class TenantManager {
     });
   }
 
+  /**
+   * List the tenants that match a query. The query is handed to the storage,
+   * if any, so that tenants that do not match need not be read.
+   *
+   * @param query query on the tenant descriptor
+   * @param fut callback with the descriptors, in no particular order
+   */
+  public void listWithQuery(CqlQuery query,
+    Handler<ExtendedAsyncResult<List<TenantDescriptor>>> fut) {
+
+    if (tenantStore != null) {
+      tenantStore.query(query, res -> {
+        if (res.failed()) {
+          fut.handle(new Failure<>(res.getType(), res.cause()));
+          return;
+        }
+        List<TenantDescriptor> tdl = new LinkedList<>();
+        for (Tenant t : res.result()) {
+          tdl.add(t.getDescriptor());
+        }
+        fut.handle(new Success<>(tdl));
+      });
+      return;
+    }
+    list(res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      List<TenantDescriptor> tdl = new LinkedList<>();
+      for (TenantDescriptor td : res.result()) {
+        if (query.matches(new JsonObject(Json.encode(td)))) {
+          tdl.add(td);
+        }
+      }
+      fut.handle(new Success<>(tdl));
+    });
+  }
+
+  /**
+   * List a page of the tenants that match a query, in order of id. The
+   * storage, if any, reads only the page when it can.
+   *
+   * @param query query on the tenant descriptor, without sortby
+   * @param offset number of matching tenants to skip
+   * @param limit largest number of tenants to list
+   * @param fut callback with the descriptors
+   */
+  public void listWithQuery(CqlQuery query, int offset, int limit,
+    Handler<ExtendedAsyncResult<List<TenantDescriptor>>> fut) {
+
+    Handler<ExtendedAsyncResult<List<TenantDescriptor>>> sfut = res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      List<TenantDescriptor> tdl = new ArrayList<>(res.result());
+      tdl.sort((a, b) -> a.getId().compareTo(b.getId()));
+      fut.handle(new Success<>(ModuleUtil.page(tdl, offset, limit)));
+    };
+    if (tenantStore == null) {
+      listWithQuery(query, sfut);
+      return;
+    }
+    tenantStore.query(query, offset, limit, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      List<TenantDescriptor> tdl = new ArrayList<>();
+      for (Tenant t : res.result()) {
+        tdl.add(t.getDescriptor());
+      }
+      fut.handle(new Success<>(tdl));
+    });
+  }
+
   /**
    * Get a tenant.
    *
@@ -218,6 +339,177 @@ public class TenantManager {
     }
   }
 
+  /**
+   * List the traffic splits of a tenant.
+   *
+   * @param id tenant
+   * @param fut callback with list; empty if none
+   */
+  public void listCanary(String id,
+    Handler<ExtendedAsyncResult<List<CanaryDescriptor>>> fut) {
+
+    tenants.get(id, gres -> {
+      if (gres.failed()) {
+        fut.handle(new Failure<>(gres.getType(), gres.cause()));
+        return;
+      }
+      List<CanaryDescriptor> l = gres.result().getCanary();
+      fut.handle(new Success<>(l == null ? new LinkedList<>() : l));
+    });
+  }
+
+  /**
+   * Split the traffic of a tenant for an enabled module. Replaces any earlier
+   * split for the module. The alternatives and the mirror must be other
+   * versions of the same module, and the weights must not add up to more
+   * than 100. The descriptors of the alternatives are kept in the split.
+   *
+   * @param id tenant
+   * @param cd split
+   * @param fut callback for errors
+   */
+  public void setCanary(String id, CanaryDescriptor cd,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    tenants.get(id, gres -> {
+      if (gres.failed()) {
+        fut.handle(new Failure<>(gres.getType(), gres.cause()));
+        return;
+      }
+      Tenant t = gres.result();
+      final String mid = cd.getId();
+      if (mid == null || !t.isEnabled(mid)) {
+        fut.handle(new Failure<>(USER, messages.getMessage("10405", mid, id)));
+        return;
+      }
+      final String key = cd.getKey();
+      if (key != null && !CanaryDescriptor.KEY_REQUEST.equals(key)
+        && !CanaryDescriptor.KEY_USER.equals(key)) {
+        fut.handle(new Failure<>(USER, messages.getMessage("10406", key)));
+        return;
+      }
+      CanaryAlternative[] alts = cd.getAlternatives();
+      if (alts == null) {
+        alts = new CanaryAlternative[0];
+      }
+      int total = 0;
+      for (CanaryAlternative alt : alts) {
+        total += alt.getWeight();
+        if (alt.getWeight() < 0 || total > 100) {
+          fut.handle(new Failure<>(USER, messages.getMessage("10408", mid)));
+          return;
+        }
+      }
+      final Integer mirrorPercent = cd.getMirrorPercent();
+      if (mirrorPercent != null && (mirrorPercent < 0 || mirrorPercent > 100)) {
+        fut.handle(new Failure<>(USER, messages.getMessage("10409", mid)));
+        return;
+      }
+      List<CanaryAlternative> check = new LinkedList<>(Arrays.asList(alts));
+      if (cd.getMirror() != null) {
+        CanaryAlternative mirror = new CanaryAlternative();
+        mirror.setId(cd.getMirror());
+        check.add(mirror);
+      }
+      checkCanaryR(mid, check.iterator(), cres -> {
+        if (cres.failed()) {
+          fut.handle(new Failure<>(cres.getType(), cres.cause()));
+          return;
+        }
+        List<CanaryDescriptor> l = new LinkedList<>();
+        if (t.getCanary() != null) {
+          for (CanaryDescriptor c : t.getCanary()) {
+            if (!mid.equals(c.getId())) {
+              l.add(c);
+            }
+          }
+        }
+        l.add(cd);
+        updateCanary(t, l, fut);
+      });
+    });
+  }
+
+  private void checkCanaryR(String mid, Iterator<CanaryAlternative> it,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (!it.hasNext()) {
+      fut.handle(new Success<>());
+      return;
+    }
+    final CanaryAlternative alt = it.next();
+    final String aid = alt.getId();
+    moduleManager.get(aid, gres -> {
+      if (gres.failed() && gres.getType() != NOT_FOUND) {
+        fut.handle(new Failure<>(gres.getType(), gres.cause()));
+      } else if (gres.failed() || gres.result() == null || mid.equals(aid)
+        || !new ModuleId(mid).getProduct().equals(gres.result().getProduct())) {
+        fut.handle(new Failure<>(USER, messages.getMessage("10407", aid, mid)));
+      } else {
+        alt.setModule(gres.result());
+        checkCanaryR(mid, it, fut);
+      }
+    });
+  }
+
+  /**
+   * Remove the traffic split of a tenant for a module.
+   *
+   * @param id tenant
+   * @param mid module
+   * @param fut callback for errors; NOT_FOUND if there is no split
+   */
+  public void deleteCanary(String id, String mid,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    tenants.get(id, gres -> {
+      if (gres.failed()) {
+        fut.handle(new Failure<>(gres.getType(), gres.cause()));
+        return;
+      }
+      Tenant t = gres.result();
+      if (t.getCanary(mid) == null) {
+        fut.handle(new Failure<>(NOT_FOUND, mid));
+        return;
+      }
+      List<CanaryDescriptor> l = new LinkedList<>();
+      for (CanaryDescriptor c : t.getCanary()) {
+        if (!mid.equals(c.getId())) {
+          l.add(c);
+        }
+      }
+      updateCanary(t, l.isEmpty() ? null : l, fut);
+    });
+  }
+
+  private void updateCanary(Tenant t, List<CanaryDescriptor> l,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (tenantStore == null) {
+      updateCanaryCommit(t.getId(), l, fut);
+    } else {
+      tenantStore.updateCanary(t.getId(), l, ures -> {
+        if (ures.failed()) {
+          fut.handle(new Failure<>(ures.getType(), ures.cause()));
+        } else {
+          updateCanaryCommit(t.getId(), l, fut);
+        }
+      });
+    }
+  }
+
+  private void updateCanaryCommit(String id, List<CanaryDescriptor> l,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    tenants.update(id, t -> t.setCanary(l), ures -> {
+      if (ures.failed()) {
+        fut.handle(new Failure<>(ures.getType(), ures.cause()));
+      } else {
+        fut.handle(new Success<>());
+      }
+    });
+  }
+
   /**
    * Actually update the enabled modules. Assumes dependencies etc have been
    * checked.
@@ -250,22 +542,35 @@ public class TenantManager {
       t.enableModule(moduleTo);
     }
     if (tenantStore == null) {
-      updateModuleCommit2(id, t, fut);
+      updateModuleCommit3(id, moduleFrom, moduleTo, fut);
     } else {
-      tenantStore.updateModules(id, t.getEnabled(), ures -> {
+      tenantStore.updateModule(id, moduleFrom, moduleTo, ures -> {
         if (ures.failed()) {
           fut.handle(new Failure<>(ures.getType(), ures.cause()));
         } else {
-          updateModuleCommit2(id, t, fut);
+          updateModuleCommit3(id, moduleFrom, moduleTo, fut);
         }
       });
     }
   }
 
-  private void updateModuleCommit2(String id, Tenant t, Handler<ExtendedAsyncResult<Void>> fut) {
-    tenants.put(id, t, pres -> {
-      if (pres.failed()) {
-        fut.handle(new Failure<>(INTERNAL, pres.cause()));
+  /*
+   * Apply the change to the shared copy, rather than putting our copy of the
+   * tenant, which may miss changes made by others in the meantime.
+   */
+  private void updateModuleCommit3(String id, String moduleFrom, String moduleTo,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    tenants.update(id, t -> {
+      if (moduleFrom != null) {
+        t.disableModule(moduleFrom);
+      }
+      if (moduleTo != null) {
+        t.enableModule(moduleTo);
+      }
+    }, ures -> {
+      if (ures.failed()) {
+        fut.handle(new Failure<>(ures.getType(), ures.cause()));
       } else {
         fut.handle(new Success<>());
       }
@@ -402,7 +707,9 @@ public class TenantManager {
     if (mdTo == null) {
       ead5commit(tenant, mdFrom.getId(), null, pc, fut);
     } else {
-      ead2PermMod(tenant, mdFrom, mdTo, pc, fut);
+      // warm up the new module before the tenant is switched to it
+      proxyService.warmUp(tenant, mdTo, pc, res
+        -> ead2PermMod(tenant, mdFrom, mdTo, pc, fut));
     }
   }
 
@@ -435,7 +742,7 @@ public class TenantManager {
             + "Carrying on without it.");
           ead5commit(tenant, moduleFrom, moduleTo, pc, fut);
         } else {
-          pc.responseError(res.getType(), res.cause());
+          fut.handle(new Failure<>(res.getType(), res.cause()));
         }
       } else {
         ModuleDescriptor permsMod = res.result();
@@ -473,14 +780,14 @@ public class TenantManager {
     String mdid = modit.next();
     moduleManager.get(mdid, res -> {
       if (res.failed()) { // not likely to happen
-        pc.responseError(res.getType(), res.cause());
+        fut.handle(new Failure<>(res.getType(), res.cause()));
         return;
       }
       ModuleDescriptor md = res.result();
       pc.debug("ead3RealoadPerms: Should reload perms for " + md.getName());
       tenantPerms(tenant, md, permsModule, pc, pres -> {
         if (pres.failed()) { // not likely to happen
-          pc.responseError(res.getType(), res.cause());
+          fut.handle(new Failure<>(pres.getType(), pres.cause()));
           return;
         }
         ead3RealoadPerms(tenant, modit, moduleFrom, mdTo, permsModule, pc, fut);
@@ -533,7 +840,7 @@ public class TenantManager {
     pc.debug("ead5commit: " + moduleFrom + " " + moduleTo);
     updateModuleCommit(tenant, moduleFrom, moduleTo, ures -> {
       if (ures.failed()) {
-        pc.responseError(ures.getType(), ures.cause());
+        fut.handle(new Failure<>(ures.getType(), ures.cause()));
       } else {
         pc.debug("ead5commit done");
         fut.handle(new Success<>());
@@ -842,6 +1149,245 @@ public class TenantManager {
     });
   }
 
+  /* tenant of bulk install, with its own install plan and result */
+  private static class BulkTenant {
+    private final Tenant tenant;
+    private final TenantInstallResult result = new TenantInstallResult();
+
+    BulkTenant(Tenant tenant) {
+      this.tenant = tenant;
+      result.setTenant(tenant.getId());
+    }
+  }
+
+  /**
+   * Install the same modules for many tenants. The modules are read once,
+   * and the install plan is computed once for each distinct set of modules
+   * enabled among the tenants; normally that is just once. Modules are
+   * deployed once for all tenants, and then enabled for up to tenantParallel
+   * tenants at a time. Modules no longer in use are undeployed at the end.
+   * A failure for one tenant does not stop the others; it is reported in
+   * the result for that tenant.
+   *
+   * @param tenantIds tenants to install for
+   * @param pc proxy context
+   * @param options install options
+   * @param tml modules to install
+   * @param fut result for each tenant, in the order given
+   */
+  public void installModulesBulk(List<String> tenantIds, ProxyContext pc,
+    TenantInstallOptions options, List<TenantModuleDescriptor> tml,
+    Handler<ExtendedAsyncResult<List<TenantInstallResult>>> fut) {
+
+    getTenants(tenantIds.iterator(), new LinkedList<>(), gres -> {
+      if (gres.failed()) {
+        fut.handle(new Failure<>(gres.getType(), gres.cause()));
+        return;
+      }
+      moduleManager.getModulesWithFilter(options.getPreRelease(),
+        options.getNpmSnapshot(), mres -> {
+        if (mres.failed()) {
+          fut.handle(new Failure<>(mres.getType(), mres.cause()));
+          return;
+        }
+        HashMap<String, ModuleDescriptor> modsAvailable = new HashMap<>();
+        for (ModuleDescriptor md : mres.result()) {
+          modsAvailable.put(md.getId(), md);
+        }
+        List<BulkTenant> bulk = new LinkedList<>();
+        for (Tenant t : gres.result()) {
+          bulk.add(new BulkTenant(t));
+        }
+        installBulkPlan(modsAvailable, tml, bulk.iterator(), new HashMap<>(), pres -> {
+          if (pres.failed()) {
+            fut.handle(new Failure<>(pres.getType(), pres.cause()));
+            return;
+          }
+          List<TenantInstallResult> results = new LinkedList<>();
+          for (BulkTenant b : bulk) {
+            results.add(b.result);
+          }
+          if (options.getSimulate()) {
+            fut.handle(new Success<>(results));
+            return;
+          }
+          installBulkCommit(pc, options, modsAvailable, bulk, cres -> {
+            if (cres.failed()) {
+              fut.handle(new Failure<>(cres.getType(), cres.cause()));
+            } else {
+              fut.handle(new Success<>(results));
+            }
+          });
+        });
+      });
+    });
+  }
+
+  /**
+   * Get all tenants, with their enabled modules.
+   *
+   * @param fut list of tenants
+   */
+  public void getAll(Handler<ExtendedAsyncResult<List<Tenant>>> fut) {
+    tenants.getKeys(res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        getTenants(res.result().iterator(), new LinkedList<>(), fut);
+      }
+    });
+  }
+
+  /**
+   * Add tenants as they are, with their enabled modules, without calling
+   * the tenant interface of any module. For restoring a snapshot.
+   *
+   * @param list tenants that are not yet known
+   * @param fut callback
+   */
+  public void restore(List<Tenant> list, Handler<ExtendedAsyncResult<Void>> fut) {
+    if (tenantStore == null || list.isEmpty()) {
+      restore2(list, fut);
+      return;
+    }
+    tenantStore.insertList(list, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        restore2(list, fut);
+      }
+    });
+  }
+
+  private void restore2(List<Tenant> list, Handler<ExtendedAsyncResult<Void>> fut) {
+    CompList<List<Void>> futures = new CompList<>(INTERNAL);
+    for (Tenant t : list) {
+      Future<Void> f = Future.future();
+      tenants.add(t.getId(), t, f::handle);
+      futures.add(f);
+    }
+    futures.all(fut);
+  }
+
+  private void getTenants(Iterator<String> it, List<Tenant> list,
+    Handler<ExtendedAsyncResult<List<Tenant>>> fut) {
+
+    if (!it.hasNext()) {
+      fut.handle(new Success<>(list));
+      return;
+    }
+    tenants.get(it.next(), res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        list.add(res.result());
+        getTenants(it, list, fut);
+      }
+    });
+  }
+
+  /*
+   * Compute the install plan for each tenant. Plans are shared between
+   * tenants that have the same modules enabled.
+   */
+  private void installBulkPlan(Map<String, ModuleDescriptor> modsAvailable,
+    List<TenantModuleDescriptor> tml, Iterator<BulkTenant> it,
+    Map<String, TenantInstallResult> plans,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (!it.hasNext()) {
+      fut.handle(new Success<>());
+      return;
+    }
+    BulkTenant b = it.next();
+    HashMap<String, ModuleDescriptor> modsEnabled = new HashMap<>();
+    for (ModuleDescriptor md : modsAvailable.values()) {
+      if (b.tenant.isEnabled(md.getId())) {
+        modsEnabled.put(md.getId(), md);
+      }
+    }
+    final String key = String.join(",", new TreeSet<>(modsEnabled.keySet()));
+    TenantInstallResult plan = plans.get(key);
+    if (plan != null) {
+      // a copy, as the install of each tenant updates its own
+      if (plan.getModules() != null) {
+        b.result.setModules(new LinkedList<>(Arrays.asList(Json.decodeValue(
+          Json.encode(plan.getModules()), TenantModuleDescriptor[].class))));
+      }
+      b.result.setError(plan.getError());
+      installBulkPlan(modsAvailable, tml, it, plans, fut);
+      return;
+    }
+    List<TenantModuleDescriptor> tml2 = new LinkedList<>(Arrays.asList(
+      Json.decodeValue(Json.encode(tml), TenantModuleDescriptor[].class)));
+    DepResolution.installSimulate(modsAvailable, modsEnabled, tml2, res -> {
+      if (res.failed()) {
+        b.result.setError(res.cause().getMessage());
+      } else {
+        b.result.setModules(tml2);
+      }
+      plans.put(key, b.result);
+      installBulkPlan(modsAvailable, tml, it, plans, fut);
+    });
+  }
+
+  private void installBulkCommit(ProxyContext pc, TenantInstallOptions options,
+    Map<String, ModuleDescriptor> modsAvailable, List<BulkTenant> bulk,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    // modules of all plans to deploy and undeploy, each just once
+    Map<String, TenantModuleDescriptor> deploy = new LinkedHashMap<>();
+    Map<String, TenantModuleDescriptor> undeploy = new LinkedHashMap<>();
+    List<BulkTenant> work = new LinkedList<>();
+    for (BulkTenant b : bulk) {
+      if (b.result.getError() == null) {
+        work.add(b);
+        for (TenantModuleDescriptor tm : b.result.getModules()) {
+          if (tm.getAction() == Action.enable || tm.getAction() == Action.uptodate) {
+            deploy.putIfAbsent(tm.getId(), tm);
+          }
+          if (tm.getAction() == Action.enable && tm.getFrom() != null) {
+            undeploy.putIfAbsent(tm.getFrom(), tm);
+          }
+          if (tm.getAction() == Action.disable) {
+            undeploy.putIfAbsent(tm.getId(), tm);
+          }
+        }
+      }
+    }
+    Handler<ExtendedAsyncResult<Void>> deployed = dres -> {
+      if (dres.failed()) {
+        fut.handle(new Failure<>(dres.getType(), dres.cause()));
+        return;
+      }
+      ParallelRunner.run(work.iterator(), options.getTenantParallel(), (b, f) -> {
+        List<TenantModuleDescriptor> tml = b.result.getModules();
+        Handler<ExtendedAsyncResult<Void>> enabled = eres -> {
+          if (eres.failed()) {
+            logger.warn("Bulk install for tenant " + b.tenant.getId()
+              + " failed: " + eres.cause().getMessage());
+            b.result.setError(eres.cause().getMessage());
+          }
+          f.handle(new Success<>());
+        };
+        if (options.getParallel() > 1) {
+          installParallel2(b.tenant, pc, options, modsAvailable,
+            DepResolution.installLevels(modsAvailable, tml).iterator(), enabled);
+        } else {
+          installCommit2(b.tenant, pc, options, modsAvailable, tml, tml.iterator(), enabled);
+        }
+      }, eres -> installParallel3(OkapiEvents.BULK_TENANT, pc, options, modsAvailable,
+        new LinkedList<>(undeploy.values()), fut));
+    };
+    if (options.getDeploy()) {
+      ParallelRunner.run(deploy.values().iterator(), options.getParallel(),
+        (tm, f) -> installDeploy(OkapiEvents.BULK_TENANT, pc, options, modsAvailable,
+          tm, f), deployed);
+    } else {
+      deployed.handle(new Success<>());
+    }
+  }
+
   private List<TenantModuleDescriptor> prepareTenantModuleList(
     Map<String, ModuleDescriptor> modsAvailable,
     Map<String, ModuleDescriptor> modsEnabled, List<TenantModuleDescriptor> tml) {
@@ -880,14 +1426,18 @@ public class TenantManager {
       if (options.getSimulate()) {
         fut.handle(new Success<>(tml));
       } else {
-        installCommit1(t, pc, options, modsAvailable, tml, tml.iterator(),
-          res1 -> {
-            if (res1.failed()) {
-              fut.handle(new Failure<>(res1.getType(), res1.cause()));
-            } else {
-              fut.handle(new Success<>(tml));
-            }
-          });
+        Handler<ExtendedAsyncResult<Void>> done = res1 -> {
+          if (res1.failed()) {
+            fut.handle(new Failure<>(res1.getType(), res1.cause()));
+          } else {
+            fut.handle(new Success<>(tml));
+          }
+        };
+        if (options.getParallel() > 1) {
+          installParallel1(t, pc, options, modsAvailable, tml, done);
+        } else {
+          installCommit1(t, pc, options, modsAvailable, tml, tml.iterator(), done);
+        }
       }
     });
   }
@@ -902,20 +1452,21 @@ public class TenantManager {
 
     if (it.hasNext() && options.getDeploy()) {
       TenantModuleDescriptor tm = it.next();
-      if (tm.getAction() == Action.enable || tm.getAction() == Action.uptodate) {
-        ModuleDescriptor md = modsAvailable.get(tm.getId());
-        proxyService.autoDeploy(md, pc, res -> {
-          if (res.failed()) {
-            fut.handle(new Failure<>(res.getType(), res.cause()));
-          } else {
-            installCommit1(t, pc, options, modsAvailable, tml, it, fut);
-          }
-        });
-      } else {
-        installCommit1(t, pc, options, modsAvailable, tml, it, fut);
-      }
+      installDeploy(t.getId(), pc, options, modsAvailable, tm, res -> {
+        if (res.failed()) {
+          fut.handle(new Failure<>(res.getType(), res.cause()));
+        } else {
+          installCommit1(t, pc, options, modsAvailable, tml, it, fut);
+        }
+      });
     } else {
-      installCommit2(t, pc, options, modsAvailable, tml, tml.iterator(), fut);
+      installCommit2(t, pc, options, modsAvailable, tml, tml.iterator(), res -> {
+        if (res.failed()) {
+          fut.handle(new Failure<>(res.getType(), res.cause()));
+        } else {
+          installCommit3(t, pc, options, modsAvailable, tml, tml.iterator(), fut);
+        }
+      });
     }
   }
 
@@ -928,33 +1479,15 @@ public class TenantManager {
     Handler<ExtendedAsyncResult<Void>> fut) {
     if (it.hasNext()) {
       TenantModuleDescriptor tm = it.next();
-      ModuleDescriptor mdFrom = null;
-      ModuleDescriptor mdTo = null;
-      boolean purge = false;
-      if (tm.getAction() == Action.enable) {
-        if (tm.getFrom() != null) {
-          mdFrom = modsAvailable.get(tm.getFrom());
-        }
-        mdTo = modsAvailable.get(tm.getId());
-      } else if (tm.getAction() == Action.disable) {
-        mdFrom = modsAvailable.get(tm.getId());
-        if (options.getPurge()) {
-          purge = true;
+      installEnable(tenant, pc, options, modsAvailable, tm, res -> {
+        if (res.failed()) {
+          fut.handle(new Failure<>(res.getType(), res.cause()));
+        } else {
+          installCommit2(tenant, pc, options, modsAvailable, tml, it, fut);
         }
-      }
-      if (mdFrom == null && mdTo == null) {
-        installCommit2(tenant, pc, options, modsAvailable, tml, it, fut);
-      } else {
-        ead1TenantInterface(tenant, options.getTenantParameters(), mdFrom, mdTo, purge, pc, res -> {
-          if (res.failed()) {
-            fut.handle(new Failure<>(res.getType(), res.cause()));
-          } else {
-            installCommit2(tenant, pc, options, modsAvailable, tml, it, fut);
-          }
-        });
-      }
+      });
     } else {
-      installCommit3(tenant, pc, options, modsAvailable, tml, tml.iterator(), fut);
+      fut.handle(new Success<>());
     }
   }
 
@@ -968,37 +1501,232 @@ public class TenantManager {
 
     if (it.hasNext() && options.getDeploy()) {
       TenantModuleDescriptor tm = it.next();
-      ModuleDescriptor md = null;
-      if (tm.getAction() == Action.enable) {
-        md = modsAvailable.get(tm.getFrom());
-      }
-      if (tm.getAction() == Action.disable) {
-        md = modsAvailable.get(tm.getId());
-      }
-      if (md != null) {
-        final ModuleDescriptor mdF = md;
-        getModuleUser(md.getId(), ures -> {
-          if (ures.failed()) {
-            // in use or other error, so skip
-            installCommit3(tenant, pc, options, modsAvailable, tml, it, fut);
-          } else {
-            // success means : not in use, so we can undeploy it
-            logger.info("autoUndeploy mdF=" + mdF.getId());
-            proxyService.autoUndeploy(mdF, pc, res -> {
-              if (res.failed()) {
-                fut.handle(new Failure<>(res.getType(), res.cause()));
-              } else {
-                installCommit3(tenant, pc, options, modsAvailable, tml, it, fut);
-              }
-            });
-          }
-        });
+      installUndeploy(tenant.getId(), pc, options, modsAvailable, tm, res -> {
+        if (res.failed()) {
+          fut.handle(new Failure<>(res.getType(), res.cause()));
+        } else {
+          installCommit3(tenant, pc, options, modsAvailable, tml, it, fut);
+        }
+      });
+    } else {
+      fut.handle(new Success<>());
+    }
+  }
+
+  /* parallel phase 1: deploy modules; order does not matter */
+  private void installParallel1(Tenant t, ProxyContext pc,
+    TenantInstallOptions options,
+    Map<String, ModuleDescriptor> modsAvailable,
+    List<TenantModuleDescriptor> tml,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    Handler<ExtendedAsyncResult<Void>> deployed = res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
       } else {
-        installCommit3(tenant, pc, options, modsAvailable, tml, it, fut);
+        installParallel2(t, pc, options, modsAvailable,
+          DepResolution.installLevels(modsAvailable, tml).iterator(), res1 -> {
+            if (res1.failed()) {
+              fut.handle(new Failure<>(res1.getType(), res1.cause()));
+            } else {
+              installParallel3(t.getId(), pc, options, modsAvailable, tml, fut);
+            }
+          });
       }
+    };
+    if (options.getDeploy()) {
+      ParallelRunner.run(tml.iterator(), options.getParallel(),
+        (tm, f) -> installDeploy(t.getId(), pc, options, modsAvailable, tm, f), deployed);
     } else {
+      deployed.handle(new Success<>());
+    }
+  }
+
+  /**
+   * Parallel phase 2: enable and disable modules for tenant, one level of
+   * the install plan at a time. Modules that provide tenantPermissions or
+   * auth filters are enabled before the rest of their level, so that the
+   * others find them in place, like they would when installing one by one.
+   */
+  private void installParallel2(Tenant tenant, ProxyContext pc,
+    TenantInstallOptions options,
+    Map<String, ModuleDescriptor> modsAvailable,
+    Iterator<List<TenantModuleDescriptor>> levels,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (!levels.hasNext()) {
+      fut.handle(new Success<>());
+      return;
+    }
+    List<TenantModuleDescriptor> first = new LinkedList<>();
+    List<TenantModuleDescriptor> rest = new LinkedList<>();
+    for (TenantModuleDescriptor tm : levels.next()) {
+      ModuleDescriptor md = modsAvailable.get(tm.getId());
+      if (tm.getAction() == Action.enable && md != null && isInstallBarrier(md)) {
+        first.add(tm);
+      } else {
+        rest.add(tm);
+      }
+    }
+    ParallelRunner.run(first.iterator(), 1,
+      (tm, f) -> installEnable(tenant, pc, options, modsAvailable, tm, f), res1 -> {
+        if (res1.failed()) {
+          fut.handle(new Failure<>(res1.getType(), res1.cause()));
+          return;
+        }
+        ParallelRunner.run(rest.iterator(), options.getParallel(),
+          (tm, f) -> installEnable(tenant, pc, options, modsAvailable, tm, f), res2 -> {
+            if (res2.failed()) {
+              fut.handle(new Failure<>(res2.getType(), res2.cause()));
+            } else {
+              installParallel2(tenant, pc, options, modsAvailable, levels, fut);
+            }
+          });
+      });
+  }
+
+  /* parallel phase 3: undeploy if no longer needed */
+  private void installParallel3(String tenantId, ProxyContext pc,
+    TenantInstallOptions options,
+    Map<String, ModuleDescriptor> modsAvailable,
+    List<TenantModuleDescriptor> tml,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (!options.getDeploy()) {
       fut.handle(new Success<>());
+      return;
     }
+    ParallelRunner.run(tml.iterator(), options.getParallel(),
+      (tm, f) -> installUndeploy(tenantId, pc, options, modsAvailable, tm, f), fut);
+  }
+
+  private static boolean isInstallBarrier(ModuleDescriptor md) {
+    if (md.getSystemInterface("_tenantPermissions") != null) {
+      return true;
+    }
+    for (RoutingEntry re : md.getFilterRoutingEntries()) {
+      if (XOkapiHeaders.FILTER_AUTH.equals(re.getPhase())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void progressBegin(TenantInstallOptions options,
+    TenantModuleDescriptor tm, String stage) {
+
+    if (options.getProgress() != null) {
+      options.getProgress().begin(tm.getId(), stage);
+    }
+  }
+
+  private static void progressEnd(TenantInstallOptions options,
+    TenantModuleDescriptor tm, String stage, ExtendedAsyncResult<?> res) {
+
+    if (options.getProgress() != null) {
+      options.getProgress().end(tm.getId(), stage,
+        res.succeeded() ? null : res.cause());
+    }
+  }
+
+  /* deploy one module of install, if it is to be enabled */
+  private void installDeploy(String tenantId, ProxyContext pc,
+    TenantInstallOptions options,
+    Map<String, ModuleDescriptor> modsAvailable, TenantModuleDescriptor tm,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (tm.getAction() != Action.enable && tm.getAction() != Action.uptodate) {
+      fut.handle(new Success<>());
+      return;
+    }
+    ModuleDescriptor md = modsAvailable.get(tm.getId());
+    InstallStepEvent ev = OkapiEvents.beginInstallStep(tenantId,
+      md.getId(), "deploy");
+    progressBegin(options, tm, "deploy");
+    proxyService.autoDeploy(md, pc, res -> {
+      OkapiEvents.endInstallStep(ev, res.succeeded());
+      progressEnd(options, tm, "deploy", res);
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        fut.handle(new Success<>());
+      }
+    });
+  }
+
+  /* enable or disable one module of install for tenant */
+  private void installEnable(Tenant tenant, ProxyContext pc,
+    TenantInstallOptions options,
+    Map<String, ModuleDescriptor> modsAvailable, TenantModuleDescriptor tm,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    ModuleDescriptor mdFrom = null;
+    ModuleDescriptor mdTo = null;
+    boolean purge = false;
+    if (tm.getAction() == Action.enable) {
+      if (tm.getFrom() != null) {
+        mdFrom = modsAvailable.get(tm.getFrom());
+      }
+      mdTo = modsAvailable.get(tm.getId());
+    } else if (tm.getAction() == Action.disable) {
+      mdFrom = modsAvailable.get(tm.getId());
+      if (options.getPurge()) {
+        purge = true;
+      }
+    }
+    if (mdFrom == null && mdTo == null) {
+      fut.handle(new Success<>());
+      return;
+    }
+    InstallStepEvent ev = OkapiEvents.beginInstallStep(tenant.getId(),
+      tm.getId(), tm.getAction().name());
+    progressBegin(options, tm, tm.getAction().name());
+    ead1TenantInterface(tenant, options.getTenantParameters(), mdFrom, mdTo, purge, pc, res -> {
+      OkapiEvents.endInstallStep(ev, res.succeeded());
+      progressEnd(options, tm, tm.getAction().name(), res);
+      fut.handle(res);
+    });
+  }
+
+  /* undeploy module that is no longer in use after install */
+  private void installUndeploy(String tenantId, ProxyContext pc,
+    TenantInstallOptions options,
+    Map<String, ModuleDescriptor> modsAvailable, TenantModuleDescriptor tm,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    ModuleDescriptor md = null;
+    if (tm.getAction() == Action.enable) {
+      md = modsAvailable.get(tm.getFrom());
+    }
+    if (tm.getAction() == Action.disable) {
+      md = modsAvailable.get(tm.getId());
+    }
+    if (md == null) {
+      fut.handle(new Success<>());
+      return;
+    }
+    final ModuleDescriptor mdF = md;
+    getModuleUser(md.getId(), ures -> {
+      if (ures.failed()) {
+        // in use or other error, so skip
+        fut.handle(new Success<>());
+      } else {
+        // success means : not in use, so we can undeploy it
+        logger.info("autoUndeploy mdF=" + mdF.getId());
+        InstallStepEvent ev = OkapiEvents.beginInstallStep(tenantId,
+          mdF.getId(), "undeploy");
+        progressBegin(options, tm, "undeploy");
+        proxyService.autoUndeploy(mdF, pc, res -> {
+          OkapiEvents.endInstallStep(ev, res.succeeded());
+          progressEnd(options, tm, "undeploy", res);
+          if (res.failed()) {
+            fut.handle(new Failure<>(res.getType(), res.cause()));
+          } else {
+            fut.handle(new Success<>());
+          }
+        });
+      }
+    });
   }
 
   public void listModules(String id, boolean full,
@@ -1096,17 +1824,22 @@ public class TenantManager {
   }
 
   private void loadTenants2(Handler<ExtendedAsyncResult<Void>> fut) {
-    tenantStore.listTenants(lres -> {
+    final int[] count = new int[1];
+    tenantStore.streamAll((list, bfut) -> {
+      CompList<List<Void>> futures = new CompList<>(INTERNAL);
+      for (Tenant t : list) {
+        Future<Void> f = Future.future();
+        tenants.add(t.getId(), t, f::handle);
+        futures.add(f);
+      }
+      count[0] += list.size();
+      futures.all(bfut);
+    }, lres -> {
       if (lres.failed()) {
         fut.handle(new Failure<>(lres.getType(), lres.cause()));
       } else {
-        CompList<List<Void>> futures = new CompList<>(INTERNAL);
-        for (Tenant t : lres.result()) {
-          Future<Void> f = Future.future();
-          tenants.add(t.getId(), t, f::handle);
-          futures.add(f);
-        }
-        futures.all(fut);
+        logger.info("Loaded " + count[0] + " tenants");
+        fut.handle(new Success<>());
       }
     });
   }
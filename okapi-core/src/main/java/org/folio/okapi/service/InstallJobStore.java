@@ -0,0 +1,17 @@
+package org.folio.okapi.service;
+
+import io.vertx.core.Handler;
+import java.util.List;
+import org.folio.okapi.bean.InstallJob;
+import org.folio.okapi.common.ExtendedAsyncResult;
+
+public interface InstallJobStore {
+
+  void add(InstallJob job, Handler<ExtendedAsyncResult<Void>> fut);
+
+  void delete(String id, Handler<ExtendedAsyncResult<Void>> fut);
+
+  void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut);
+
+  void getAll(Handler<ExtendedAsyncResult<List<InstallJob>>> fut);
+}
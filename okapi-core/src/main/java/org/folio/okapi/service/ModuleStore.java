@@ -2,8 +2,10 @@ package org.folio.okapi.service;
 
 import io.vertx.core.Handler;
 import java.util.List;
+import java.util.function.BiConsumer;
 import org.folio.okapi.bean.ModuleDescriptor;
 import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.util.CqlQuery;
 
 public interface ModuleStore {
 
@@ -11,9 +13,37 @@ public interface ModuleStore {
 
   void getAll(Handler<ExtendedAsyncResult<List<ModuleDescriptor>>> fut);
 
+  /**
+   * Read all modules, a batch at a time. The next batch is read when the
+   * handler has completed the current one, so that only one batch is held
+   * in memory.
+   *
+   * @param batch called with each batch and a callback to signal completion
+   * @param fut called when all batches are handled, or one fails
+   */
+  void streamAll(BiConsumer<List<ModuleDescriptor>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut);
+
+  /**
+   * Read the modules that match a query, with as little reading of modules
+   * that do not match as the storage allows.
+   *
+   * @param query query on the module descriptor
+   * @param fut callback with the modules, in no particular order
+   */
+  void query(CqlQuery query, Handler<ExtendedAsyncResult<List<ModuleDescriptor>>> fut);
+
   void insert(ModuleDescriptor md, Handler<ExtendedAsyncResult<Void>> fut);
 
   void update(ModuleDescriptor md, Handler<ExtendedAsyncResult<Void>> fut);
 
+  /**
+   * Insert many modules at once. Fails if any of them exists.
+   *
+   * @param list modules with distinct IDs
+   * @param fut callback
+   */
+  void insertList(List<ModuleDescriptor> list, Handler<ExtendedAsyncResult<Void>> fut);
+
   void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut);
 }
@@ -2,22 +2,77 @@ package org.folio.okapi.service;
 
 import io.vertx.core.Handler;
 import java.util.List;
-import java.util.SortedMap;
+import java.util.function.BiConsumer;
+import org.folio.okapi.bean.CanaryDescriptor;
 import org.folio.okapi.bean.Tenant;
 import org.folio.okapi.bean.TenantDescriptor;
 import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.util.CqlQuery;
 
 public interface TenantStore {
 
   void delete(String id, Handler<ExtendedAsyncResult<Void>> fut);
 
-  void updateModules(String id, SortedMap<String, Boolean> enabled, Handler<ExtendedAsyncResult<Void>> fut);
+  /**
+   * Disable one module and enable another for a tenant, in one step. The
+   * other enabled modules are left as they are, so that the cost does not
+   * grow with the number of modules enabled.
+   *
+   * @param id tenant
+   * @param moduleFrom module to disable; null for none
+   * @param moduleTo module to enable; null for none
+   * @param fut callback; NOT_FOUND if there is no such tenant
+   */
+  void updateModule(String id, String moduleFrom, String moduleTo,
+    Handler<ExtendedAsyncResult<Void>> fut);
+
+  void updateCanary(String id, List<CanaryDescriptor> canary, Handler<ExtendedAsyncResult<Void>> fut);
 
   void insert(Tenant t, Handler<ExtendedAsyncResult<Void>> fut);
 
+  /**
+   * Insert many tenants at once. Fails if any of them exists.
+   *
+   * @param list tenants with distinct IDs
+   * @param fut callback
+   */
+  void insertList(List<Tenant> list, Handler<ExtendedAsyncResult<Void>> fut);
+
   void updateDescriptor(TenantDescriptor td, Handler<ExtendedAsyncResult<Void>> fut);
 
   void listTenants(Handler<ExtendedAsyncResult<List<Tenant>>> fut);
 
+  /**
+   * Read the tenants that match a query, with as little reading of tenants
+   * that do not match as the storage allows.
+   *
+   * @param query query on the tenant descriptor
+   * @param fut callback with the tenants, in no particular order
+   */
+  void query(CqlQuery query, Handler<ExtendedAsyncResult<List<Tenant>>> fut);
+
+  /**
+   * Read a page of the tenants that match a query, in order of id. Storage
+   * that can select the page itself reads no more tenants than it returns.
+   *
+   * @param query query on the tenant descriptor, without sortby
+   * @param offset number of matching tenants to skip
+   * @param limit largest number of tenants to return
+   * @param fut callback with the tenants
+   */
+  void query(CqlQuery query, int offset, int limit,
+    Handler<ExtendedAsyncResult<List<Tenant>>> fut);
+
+  /**
+   * Read all tenants, a batch at a time. The next batch is read when the
+   * handler has completed the current one, so that only one batch is held
+   * in memory.
+   *
+   * @param batch called with each batch and a callback to signal completion
+   * @param fut called when all batches are handled, or one fails
+   */
+  void streamAll(BiConsumer<List<Tenant>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut);
+
   void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut);
 }
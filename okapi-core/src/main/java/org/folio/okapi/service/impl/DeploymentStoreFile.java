@@ -0,0 +1,37 @@
+package org.folio.okapi.service.impl;
+
+import io.vertx.core.Handler;
+import java.util.List;
+import org.folio.okapi.bean.DeploymentDescriptor;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.service.DeploymentStore;
+
+public class DeploymentStoreFile implements DeploymentStore {
+
+  private final FileTable<DeploymentDescriptor> table;
+
+  public DeploymentStoreFile(FileHandle fh) {
+    this.table = new FileTable<>(fh, "deployments", DeploymentDescriptor.class,
+      DeploymentDescriptor::getInstId);
+  }
+
+  @Override
+  public void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.init(reset, fut);
+  }
+
+  @Override
+  public void insert(DeploymentDescriptor dd, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.insert(dd, fut);
+  }
+
+  @Override
+  public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.delete(id, fut);
+  }
+
+  @Override
+  public void getAll(Handler<ExtendedAsyncResult<List<DeploymentDescriptor>>> fut) {
+    table.getAll(fut);
+  }
+}
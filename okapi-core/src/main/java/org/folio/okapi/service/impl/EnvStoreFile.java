@@ -0,0 +1,37 @@
+package org.folio.okapi.service.impl;
+
+import io.vertx.core.Handler;
+import java.util.List;
+import org.folio.okapi.bean.EnvEntry;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.service.EnvStore;
+
+public class EnvStoreFile implements EnvStore {
+
+  private final FileTable<EnvEntry> table;
+
+  public EnvStoreFile(FileHandle fh) {
+    this.table = new FileTable<>(fh, "env", EnvEntry.class, EnvEntry::getName);
+  }
+
+  @Override
+  public void add(EnvEntry env, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.update(env, fut);
+  }
+
+  @Override
+  public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.delete(id, fut);
+  }
+
+  @Override
+  public void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.init(reset, fut);
+  }
+
+  @Override
+  public void getAll(Handler<ExtendedAsyncResult<List<EnvEntry>>> fut) {
+    table.getAll(fut);
+  }
+
+}
@@ -0,0 +1,53 @@
+package org.folio.okapi.service.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import java.io.File;
+import org.folio.okapi.common.Config;
+import org.folio.okapi.common.OkapiLogger;
+
+/**
+ * Generic handle to the file storage. Encapsulates the configuration that
+ * is shared by the file-based storage modules: the directory that holds the
+ * files and how often logs are compacted.
+ */
+class FileHandle {
+
+  private final Logger logger = OkapiLogger.get();
+  static final int DEFAULT_COMPACT_ENTRIES = 1000;
+  private final Vertx vertx;
+  private final File dir;
+  private final int compactEntries;
+
+  protected FileHandle(Vertx vertx, JsonObject conf) {
+    this.vertx = vertx;
+    this.dir = new File(Config.getSysConf("file_dir", "okapi-data", conf));
+    this.compactEntries = Integer.parseInt(Config.getSysConf("file_compact_entries",
+      Integer.toString(DEFAULT_COMPACT_ENTRIES), conf));
+    logger.info("Using file backend at " + dir.getAbsolutePath());
+  }
+
+  public Vertx getVertx() {
+    return vertx;
+  }
+
+  /**
+   * Get directory with the logs and snapshots.
+   *
+   * @return directory; may not exist yet
+   */
+  public File getDir() {
+    return dir;
+  }
+
+  /**
+   * Get number of records a log may grow to before it is compacted into
+   * a snapshot.
+   *
+   * @return number of records
+   */
+  public int getCompactEntries() {
+    return compactEntries;
+  }
+}
@@ -0,0 +1,554 @@
+package org.folio.okapi.service.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import static org.folio.okapi.common.ErrorType.*;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.common.Failure;
+import org.folio.okapi.common.Messages;
+import org.folio.okapi.common.OkapiLogger;
+import org.folio.okapi.common.Success;
+import org.folio.okapi.util.CqlQuery;
+
+/**
+ * A table of JSON objects kept in memory and in an append-only log on disk.
+ * Each change is a line in the log: an object with the id and, unless the
+ * record is a delete, the value, or for a change of part of a row a JSON
+ * merge patch (RFC 7386) to apply to it. Changes made while the log is being written
+ * are collected and written together, with a single sync for all of them;
+ * the rows in memory are changed and the callbacks called when the changes
+ * are on disk. If writing fails, the log is cut back to where it was, so it
+ * always holds the rows in memory. When the log has
+ * grown past the compact limit, the whole table is written to a snapshot and
+ * the log is emptied. On load the snapshot, which has the same format, is
+ * mapped into memory and replayed, followed by the log.
+ *
+ * Must only be used from a single event loop.
+ */
+@java.lang.SuppressWarnings({"squid:S1192"})
+class FileTable<T> {
+
+  private static final String LOG_SUFFIX = ".log";
+  private static final String SNAPSHOT_SUFFIX = ".snapshot";
+  private static final int STREAM_BATCH_SIZE = 100;
+
+  private final Logger logger = OkapiLogger.get();
+  private final Messages messages = Messages.getInstance();
+  private final FileHandle fh;
+  private final Vertx vertx;
+  private final String name;
+  private final Class<T> clazz;
+  private final Function<T, String> idOf;
+  private final File logFile;
+  private final File snapshotFile;
+  private final Map<String, String> rows = new LinkedHashMap<>();
+  private final List<Change> pending = new ArrayList<>();
+  private final List<Handler<ExtendedAsyncResult<Void>>> waiting = new ArrayList<>();
+  // latest value of the rows with changes not yet on disk, null if deleted,
+  // and the number of such changes of each
+  private final Map<String, String> unwritten = new HashMap<>();
+  private final Map<String, Integer> unwrittenCount = new HashMap<>();
+  private int logEntries;
+  private boolean busy;
+  private FileChannel log;
+
+  FileTable(FileHandle fh, String name, Class<T> clazz, Function<T, String> idOf) {
+    this.fh = fh;
+    this.vertx = fh.getVertx();
+    this.name = name;
+    this.clazz = clazz;
+    this.idOf = idOf;
+    this.logFile = new File(fh.getDir(), name + LOG_SUFFIX);
+    this.snapshotFile = new File(fh.getDir(), name + SNAPSHOT_SUFFIX);
+  }
+
+  public void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut) {
+    vertx.<Integer>executeBlocking(future -> {
+      try {
+        future.complete(load(reset));
+      } catch (IOException | RuntimeException e) {
+        future.fail(e);
+      }
+    }, false, res -> {
+      if (res.failed()) {
+        logger.fatal(name + ": " + res.cause().getMessage());
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+        return;
+      }
+      logEntries = res.result();
+      logger.info("Loaded " + rows.size() + " records from " + name);
+      fut.handle(new Success<>());
+      if (logEntries >= fh.getCompactEntries()) {
+        compact();
+      }
+    });
+  }
+
+  /*
+   * Runs on a worker thread, before the table is used.
+   */
+  private int load(boolean reset) throws IOException {
+    if (log != null) {
+      log.close();
+      log = null;
+    }
+    rows.clear();
+    Files.createDirectories(fh.getDir().toPath());
+    int entries = 0;
+    if (reset) {
+      Files.deleteIfExists(snapshotFile.toPath());
+      Files.deleteIfExists(logFile.toPath());
+    } else {
+      replay(snapshotFile, new int[1]);
+      int[] count = new int[1];
+      long valid = replay(logFile, count);
+      entries = count[0];
+      if (logFile.exists() && valid < logFile.length()) {
+        // partial record from a write that was interrupted
+        logger.warn(name + ": dropping " + (logFile.length() - valid)
+          + " bytes at end of " + logFile);
+        try (FileChannel ch = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+          ch.truncate(valid);
+        }
+      }
+    }
+    log = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    return entries;
+  }
+
+  /*
+   * Apply the records of a file. Returns the length of the part that holds
+   * complete records.
+   */
+  private long replay(File f, int[] count) throws IOException {
+    if (!f.exists()) {
+      return 0;
+    }
+    try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+      final long size = ch.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException(f + " too large");
+      }
+      if (size == 0) {
+        return 0;
+      }
+      MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      int start = 0;
+      for (int i = 0; i < size; i++) {
+        if (buf.get(i) == '\n') {
+          byte[] b = new byte[i - start];
+          buf.position(start);
+          buf.get(b);
+          apply(new String(b, StandardCharsets.UTF_8), f, start);
+          count[0]++;
+          start = i + 1;
+        }
+      }
+      return start;
+    }
+  }
+
+  private void apply(String line, File f, long offset) throws IOException {
+    JsonObject o;
+    try {
+      o = new JsonObject(line);
+    } catch (RuntimeException e) {
+      throw new IOException(messages.getMessage("11801", Long.toString(offset), f.toString()), e);
+    }
+    JsonObject value = o.getJsonObject("value");
+    JsonObject patch = o.getJsonObject("patch");
+    if (patch != null) {
+      String json = rows.get(o.getString("id"));
+      if (json != null) {
+        rows.put(o.getString("id"), merge(new JsonObject(json), patch).encode());
+      }
+    } else if (value == null) {
+      rows.remove(o.getString("id"));
+    } else {
+      rows.put(o.getString("id"), value.encode());
+    }
+  }
+
+  /**
+   * A change of a row on its way to the log.
+   */
+  private static class Change {
+    private final String id;
+    private final String json; // new value; null if deleted or patched
+    private final JsonObject patch;
+
+    Change(String id, String json, JsonObject patch) {
+      this.id = id;
+      this.json = json;
+      this.patch = patch;
+    }
+
+    String record() {
+      if (patch != null) {
+        return "{\"id\":" + Json.encode(id) + ",\"patch\":" + patch.encode() + "}\n";
+      }
+      return FileTable.record(id, json);
+    }
+  }
+
+  private static String record(String id, String json) {
+    if (json == null) {
+      return "{\"id\":" + Json.encode(id) + "}\n";
+    }
+    return "{\"id\":" + Json.encode(id) + ",\"value\":" + json + "}\n";
+  }
+
+  /*
+   * Apply a JSON merge patch: null removes a member, objects are merged
+   * and anything else replaces the member. Applying it twice gives the
+   * same result.
+   */
+  static JsonObject merge(JsonObject target, JsonObject patch) {
+    for (String k : patch.fieldNames()) {
+      Object v = patch.getValue(k);
+      if (v == null) {
+        target.remove(k);
+      } else if (v instanceof JsonObject) {
+        Object t = target.getValue(k);
+        target.put(k, merge(t instanceof JsonObject ? (JsonObject) t : new JsonObject(),
+          (JsonObject) v));
+      } else {
+        target.put(k, v);
+      }
+    }
+    return target;
+  }
+
+  /*
+   * Latest value of a row, including the changes that are not yet on disk.
+   */
+  private String current(String id) {
+    return unwritten.containsKey(id) ? unwritten.get(id) : rows.get(id);
+  }
+
+  private void write(List<Change> changes, Handler<ExtendedAsyncResult<Void>> fut) {
+    for (Change c : changes) {
+      String json = c.json;
+      if (c.patch != null) {
+        json = merge(new JsonObject(current(c.id)), c.patch).encode();
+      }
+      unwritten.put(c.id, json);
+      unwrittenCount.merge(c.id, 1, Integer::sum);
+    }
+    pending.addAll(changes);
+    waiting.add(fut);
+    flush();
+  }
+
+  /*
+   * A change has been written, or failed to be. The rows in memory are
+   * changed only in the former case.
+   */
+  private void written(Change c, boolean ok) {
+    if (ok) {
+      if (c.patch != null) {
+        String json = rows.get(c.id);
+        if (json != null) {
+          rows.put(c.id, merge(new JsonObject(json), c.patch).encode());
+        }
+      } else if (c.json == null) {
+        rows.remove(c.id);
+      } else {
+        rows.put(c.id, c.json);
+      }
+    }
+    if (unwrittenCount.merge(c.id, -1, Integer::sum) == 0) {
+      unwrittenCount.remove(c.id);
+      unwritten.remove(c.id);
+    }
+  }
+
+  private void flush() {
+    if (busy || waiting.isEmpty()) {
+      return;
+    }
+    busy = true;
+    final List<Change> changes = new ArrayList<>(pending);
+    final List<Handler<ExtendedAsyncResult<Void>>> handlers = new ArrayList<>(waiting);
+    pending.clear();
+    waiting.clear();
+    StringBuilder records = new StringBuilder();
+    for (Change c : changes) {
+      records.append(c.record());
+    }
+    final byte[] data = records.toString().getBytes(StandardCharsets.UTF_8);
+    vertx.executeBlocking(future -> {
+      long size = -1;
+      try {
+        size = log.size();
+        ByteBuffer b = ByteBuffer.wrap(data);
+        while (b.hasRemaining()) {
+          log.write(b);
+        }
+        log.force(false);
+        future.complete();
+      } catch (IOException e) {
+        truncate(size);
+        future.fail(e);
+      }
+    }, false, res -> {
+      busy = false;
+      for (Change c : changes) {
+        written(c, res.succeeded());
+      }
+      if (res.succeeded()) {
+        logEntries += changes.size();
+      } else {
+        logger.warn(name + ": " + res.cause().getMessage());
+      }
+      for (Handler<ExtendedAsyncResult<Void>> h : handlers) {
+        if (res.failed()) {
+          h.handle(new Failure<>(INTERNAL, res.cause()));
+        } else {
+          h.handle(new Success<>());
+        }
+      }
+      if (logEntries >= fh.getCompactEntries()) {
+        compact();
+      } else {
+        flush();
+      }
+    });
+  }
+
+  /*
+   * Cut the log back to the end of the last complete write, so that no part
+   * of a failed one is replayed. Runs on a worker thread.
+   */
+  private void truncate(long size) {
+    if (size < 0) {
+      return;
+    }
+    try {
+      log.truncate(size);
+      log.force(false);
+    } catch (IOException e) {
+      logger.error(name + ": could not cut " + logFile + " back to " + size
+        + " bytes: " + e.getMessage());
+    }
+  }
+
+  /*
+   * Write all rows to a new snapshot, which replaces the old one, and empty
+   * the log. No write is going on, so the rows are exactly those of the
+   * snapshot and the log; changes that wait are written to the emptied log
+   * afterwards.
+   */
+  private void compact() {
+    if (busy) {
+      return;
+    }
+    busy = true;
+    StringBuilder b = new StringBuilder();
+    for (Map.Entry<String, String> e : rows.entrySet()) {
+      b.append(record(e.getKey(), e.getValue()));
+    }
+    final byte[] data = b.toString().getBytes(StandardCharsets.UTF_8);
+    final File tmp = new File(fh.getDir(), name + SNAPSHOT_SUFFIX + ".tmp");
+    vertx.executeBlocking(future -> {
+      try {
+        try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+          ByteBuffer buf = ByteBuffer.wrap(data);
+          while (buf.hasRemaining()) {
+            ch.write(buf);
+          }
+          ch.force(true);
+        }
+        Files.move(tmp.toPath(), snapshotFile.toPath(),
+          StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDir();
+        log.truncate(0);
+        log.force(true);
+        future.complete();
+      } catch (IOException e) {
+        future.fail(e);
+      }
+    }, false, res -> {
+      busy = false;
+      if (res.failed()) {
+        // the log is still complete; try again when it has grown further
+        logger.warn(name + ": compaction failed: " + res.cause().getMessage());
+      } else {
+        logger.debug(name + ": compacted " + logEntries + " records into "
+          + rows.size());
+      }
+      logEntries = 0;
+      flush();
+    });
+  }
+
+  /*
+   * Make the rename of the snapshot durable before the log is emptied.
+   * Directories cannot be opened on some platforms, such as Windows; there
+   * the rename is as durable as it gets.
+   */
+  private void syncDir() {
+    try (FileChannel ch = FileChannel.open(fh.getDir().toPath(), StandardOpenOption.READ)) {
+      ch.force(true);
+    } catch (IOException e) {
+      logger.debug(name + ": could not sync " + fh.getDir() + ": " + e.getMessage());
+    }
+  }
+
+  public void insert(T t, Handler<ExtendedAsyncResult<Void>> fut) {
+    final String id = idOf.apply(t);
+    if (current(id) != null) {
+      fut.handle(new Failure<>(USER, messages.getMessage("11800", id, name)));
+      return;
+    }
+    update(t, fut);
+  }
+
+  public void update(T t, Handler<ExtendedAsyncResult<Void>> fut) {
+    final String id = idOf.apply(t);
+    write(Collections.singletonList(new Change(id, Json.encode(t), null)), fut);
+  }
+
+  /**
+   * Insert many rows with a single write. Nothing is inserted if any of the
+   * rows exists.
+   *
+   * @param list rows to insert
+   * @param fut callback
+   */
+  public void insertList(List<T> list, Handler<ExtendedAsyncResult<Void>> fut) {
+    for (T t : list) {
+      final String id = idOf.apply(t);
+      if (current(id) != null) {
+        fut.handle(new Failure<>(USER, messages.getMessage("11800", id, name)));
+        return;
+      }
+    }
+    if (list.isEmpty()) {
+      fut.handle(new Success<>());
+      return;
+    }
+    List<Change> changes = new ArrayList<>(list.size());
+    for (T t : list) {
+      changes.add(new Change(idOf.apply(t), Json.encode(t), null));
+    }
+    write(changes, fut);
+  }
+
+  /**
+   * Change part of a row. Only the patch is written to the log; the whole
+   * row is not written again until the log is compacted.
+   *
+   * @param id row identifier
+   * @param patch JSON merge patch
+   * @param fut callback; NOT_FOUND if there is no such row
+   */
+  public void patch(String id, JsonObject patch, Handler<ExtendedAsyncResult<Void>> fut) {
+    if (current(id) == null) {
+      fut.handle(new Failure<>(NOT_FOUND, id));
+      return;
+    }
+    write(Collections.singletonList(new Change(id, null, patch)), fut);
+  }
+
+  public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
+    if (current(id) == null) {
+      fut.handle(new Failure<>(NOT_FOUND, id));
+      return;
+    }
+    write(Collections.singletonList(new Change(id, null, null)), fut);
+  }
+
+  /**
+   * Get one row.
+   *
+   * @param id row identifier
+   * @return the row; null if not found
+   */
+  public T get(String id) {
+    final String json = rows.get(id);
+    return json == null ? null : Json.decodeValue(json, clazz);
+  }
+
+  public void getAll(Handler<ExtendedAsyncResult<List<T>>> fut) {
+    List<T> l = new ArrayList<>(rows.size());
+    for (String json : rows.values()) {
+      l.add(Json.decodeValue(json, clazz));
+    }
+    fut.handle(new Success<>(l));
+  }
+
+  /**
+   * Find the rows that match a query.
+   *
+   * @param query the query
+   * @param base member that the query is about; null for the whole row
+   * @param fut callback with the matching rows
+   */
+  public void query(CqlQuery query, String base, Handler<ExtendedAsyncResult<List<T>>> fut) {
+    List<T> l = new ArrayList<>();
+    for (String json : rows.values()) {
+      JsonObject o = new JsonObject(json);
+      if (query.matches(base == null ? o : o.getJsonObject(base, new JsonObject()))) {
+        l.add(Json.decodeValue(json, clazz));
+      }
+    }
+    fut.handle(new Success<>(l));
+  }
+
+  /**
+   * Hand out all rows, a batch at a time.
+   *
+   * @param batch called with each batch and a callback to signal completion
+   * @param fut called when all batches are handled, or one fails
+   */
+  public void streamAll(BiConsumer<List<T>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    streamR(new ArrayList<>(rows.values()), 0, batch, fut);
+  }
+
+  private void streamR(List<String> values, int offset,
+    BiConsumer<List<T>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (offset >= values.size()) {
+      fut.handle(new Success<>());
+      return;
+    }
+    final int end = Math.min(values.size(), offset + STREAM_BATCH_SIZE);
+    List<T> l = new ArrayList<>(end - offset);
+    for (int i = offset; i < end; i++) {
+      l.add(Json.decodeValue(values.get(i), clazz));
+    }
+    batch.accept(l, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        streamR(values, end, batch, fut);
+      }
+    });
+  }
+}
@@ -0,0 +1,36 @@
+package org.folio.okapi.service.impl;
+
+import io.vertx.core.Handler;
+import java.util.List;
+import org.folio.okapi.bean.InstallJob;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.service.InstallJobStore;
+
+public class InstallJobStoreFile implements InstallJobStore {
+
+  private final FileTable<InstallJob> table;
+
+  public InstallJobStoreFile(FileHandle fh) {
+    this.table = new FileTable<>(fh, "install_jobs", InstallJob.class, InstallJob::getId);
+  }
+
+  @Override
+  public void add(InstallJob job, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.update(job, fut);
+  }
+
+  @Override
+  public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.delete(id, fut);
+  }
+
+  @Override
+  public void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.init(reset, fut);
+  }
+
+  @Override
+  public void getAll(Handler<ExtendedAsyncResult<List<InstallJob>>> fut) {
+    table.getAll(fut);
+  }
+}
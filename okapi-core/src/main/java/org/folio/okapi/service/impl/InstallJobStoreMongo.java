@@ -0,0 +1,38 @@
+package org.folio.okapi.service.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.ext.mongo.MongoClient;
+import java.util.List;
+import org.folio.okapi.bean.InstallJob;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.service.InstallJobStore;
+
+public class InstallJobStoreMongo implements InstallJobStore {
+
+  private final MongoUtil<InstallJob> util;
+  private static final String COLLECTION = "okapi.installjobs";
+
+  public InstallJobStoreMongo(MongoClient cli) {
+    this.util = new MongoUtil<>(COLLECTION, cli);
+  }
+
+  @Override
+  public void add(InstallJob job, Handler<ExtendedAsyncResult<Void>> fut) {
+    util.add(job, job.getId(), fut);
+  }
+
+  @Override
+  public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
+    util.delete(id, fut);
+  }
+
+  @Override
+  public void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut) {
+    util.init(reset, fut);
+  }
+
+  @Override
+  public void getAll(Handler<ExtendedAsyncResult<List<InstallJob>>> fut) {
+    util.getAll(InstallJob.class, fut);
+  }
+}
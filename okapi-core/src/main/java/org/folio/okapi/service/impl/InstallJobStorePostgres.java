@@ -0,0 +1,39 @@
+package org.folio.okapi.service.impl;
+
+import io.vertx.core.Handler;
+import java.util.List;
+import org.folio.okapi.bean.InstallJob;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.service.InstallJobStore;
+
+public class InstallJobStorePostgres implements InstallJobStore {
+
+  private static final String JSON_COLUMN = "json";
+  private static final String ID_SELECT = JSON_COLUMN + "->>'id' = ?";
+  private static final String ID_INDEX = JSON_COLUMN + "->'id'";
+  private final PostgresTable<InstallJob> table;
+
+  public InstallJobStorePostgres(PostgresHandle pg) {
+    this.table = new PostgresTable<>(pg, "install_jobs", JSON_COLUMN, ID_INDEX, ID_SELECT, "install_job_id");
+  }
+
+  @Override
+  public void add(InstallJob job, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.update(job, fut);
+  }
+
+  @Override
+  public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.delete(id, fut);
+  }
+
+  @Override
+  public void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.init(reset, fut);
+  }
+
+  @Override
+  public void getAll(Handler<ExtendedAsyncResult<List<InstallJob>>> fut) {
+    table.getAll(InstallJob.class, fut);
+  }
+}
@@ -0,0 +1,62 @@
+package org.folio.okapi.service.impl;
+
+import io.vertx.core.Handler;
+import java.util.List;
+import java.util.function.BiConsumer;
+import org.folio.okapi.bean.ModuleDescriptor;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.service.ModuleStore;
+import org.folio.okapi.util.CqlQuery;
+
+public class ModuleStoreFile implements ModuleStore {
+
+  private final FileTable<ModuleDescriptor> table;
+
+  public ModuleStoreFile(FileHandle fh) {
+    this.table = new FileTable<>(fh, "modules", ModuleDescriptor.class, ModuleDescriptor::getId);
+  }
+
+  @Override
+  public void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.init(reset, fut);
+  }
+
+  @Override
+  public void insert(ModuleDescriptor md, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.insert(md, fut);
+  }
+
+  @Override
+  public void update(ModuleDescriptor md, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.update(md, fut);
+  }
+
+  @Override
+  public void insertList(List<ModuleDescriptor> list,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    table.insertList(list, fut);
+  }
+
+  @Override
+  public void getAll(Handler<ExtendedAsyncResult<List<ModuleDescriptor>>> fut) {
+    table.getAll(fut);
+  }
+
+  @Override
+  public void query(CqlQuery query, Handler<ExtendedAsyncResult<List<ModuleDescriptor>>> fut) {
+    table.query(query, null, fut);
+  }
+
+  @Override
+  public void streamAll(BiConsumer<List<ModuleDescriptor>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    table.streamAll(batch, fut);
+  }
+
+  @Override
+  public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.delete(id, fut);
+  }
+}
@@ -4,8 +4,10 @@ import org.folio.okapi.service.ModuleStore;
 import io.vertx.core.Handler;
 import io.vertx.ext.mongo.MongoClient;
 import java.util.List;
+import java.util.function.BiConsumer;
 import org.folio.okapi.bean.ModuleDescriptor;
 import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.util.CqlQuery;
 
 /**
  * Stores ModuleDescriptors in a Mongo database.
@@ -16,8 +18,8 @@ public class ModuleStoreMongo implements ModuleStore {
   private final MongoUtil<ModuleDescriptor> util;
 
 
-  public ModuleStoreMongo(MongoClient cli) {
-    this.util = new MongoUtil<>(COLLECTION, cli);
+  public ModuleStoreMongo(MongoClient cli, int batchSize) {
+    this.util = new MongoUtil<>(COLLECTION, cli, batchSize);
   }
 
   @Override
@@ -39,11 +41,30 @@ public class ModuleStoreMongo implements ModuleStore {
     util.add(md, md.getId(), fut);
   }
 
+  @Override
+  public void insertList(List<ModuleDescriptor> list,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    util.insertList(list, ModuleDescriptor::getId, fut);
+  }
+
   @Override
   public void getAll(Handler<ExtendedAsyncResult<List<ModuleDescriptor>>> fut) {
     util.getAll(ModuleDescriptor.class, fut);
   }
 
+  @Override
+  public void query(CqlQuery query, Handler<ExtendedAsyncResult<List<ModuleDescriptor>>> fut) {
+    util.query(query, null, ModuleDescriptor.class, fut);
+  }
+
+  @Override
+  public void streamAll(BiConsumer<List<ModuleDescriptor>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    util.streamAll(ModuleDescriptor.class, batch, fut);
+  }
+
   @Override
   public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
     util.delete(id, fut);
@@ -3,12 +3,14 @@ package org.folio.okapi.service.impl;
 import org.folio.okapi.service.ModuleStore;
 import io.vertx.core.Handler;
 import java.util.List;
+import java.util.function.BiConsumer;
 import org.folio.okapi.bean.ModuleDescriptor;
 import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.util.CqlQuery;
 
 public class ModuleStorePostgres implements ModuleStore {
 
-  private static final String TABLE = "modules";
+  static final String TABLE = "modules";
   private static final String JSON_COLUMN = "modulejson";
   private static final String ID_SELECT = JSON_COLUMN + "->>'id' = ?";
   private static final String ID_INDEX = JSON_COLUMN + "->'id'";
@@ -16,6 +18,7 @@ public class ModuleStorePostgres implements ModuleStore {
 
   public ModuleStorePostgres(PostgresHandle pg) {
     this.pgTable = new PostgresTable<>(pg, TABLE, JSON_COLUMN, ID_INDEX, ID_SELECT, "module_id");
+    this.pgTable.setQueryIndex(true);
   }
 
   @Override
@@ -33,13 +36,36 @@ public class ModuleStorePostgres implements ModuleStore {
     pgTable.update(md, fut);
   }
 
+  @Override
+  public void insertList(List<ModuleDescriptor> list,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    pgTable.insertList(list, fut);
+  }
+
   @Override
   public void getAll(Handler<ExtendedAsyncResult<List<ModuleDescriptor>>> fut) {
     pgTable.getAll(ModuleDescriptor.class, fut);
   }
 
+  @Override
+  public void query(CqlQuery query, Handler<ExtendedAsyncResult<List<ModuleDescriptor>>> fut) {
+    pgTable.query(query, null, ModuleDescriptor.class, fut);
+  }
+
+  @Override
+  public void streamAll(BiConsumer<List<ModuleDescriptor>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    pgTable.streamAll(ModuleDescriptor.class, batch, fut);
+  }
+
   @Override
   public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
     pgTable.delete(id, fut);
   }
+
+  public void get(String id, Handler<ExtendedAsyncResult<ModuleDescriptor>> fut) {
+    pgTable.get(id, ModuleDescriptor.class, fut);
+  }
 }
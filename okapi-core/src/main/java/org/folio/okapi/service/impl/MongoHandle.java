@@ -15,7 +15,9 @@ import org.folio.okapi.common.OkapiLogger;
 class MongoHandle {
 
   private final Logger logger = OkapiLogger.get();
+  static final int DEFAULT_BATCH_SIZE = 100;
   private final MongoClient cli;
+  private final int batchSize;
 
   // Little helper to get a config value:
   // First from System (-D on command line),
@@ -37,9 +39,20 @@ class MongoHandle {
     }
     logger.info("Using mongo backend at " + h + " : " + p + " / " + dbName);
     this.cli = MongoClient.createShared(vertx, opt);
+    this.batchSize = Integer.parseInt(Config.getSysConf("mongo_batch_size",
+      Integer.toString(DEFAULT_BATCH_SIZE), conf));
   }
 
   public MongoClient getClient() {
     return cli;
   }
+
+  /**
+   * Get number of documents in each bulk write.
+   *
+   * @return number of documents
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
 }
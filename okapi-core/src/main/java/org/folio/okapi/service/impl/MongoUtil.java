@@ -2,29 +2,48 @@ package org.folio.okapi.service.impl;
 
 import io.vertx.core.Handler;
 import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.FindOptions;
 import io.vertx.ext.mongo.MongoClient;
 import io.vertx.ext.mongo.UpdateOptions;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import static org.folio.okapi.common.ErrorType.INTERNAL;
 import static org.folio.okapi.common.ErrorType.NOT_FOUND;
 import org.folio.okapi.common.ExtendedAsyncResult;
 import org.folio.okapi.common.Failure;
 import org.folio.okapi.common.OkapiLogger;
 import org.folio.okapi.common.Success;
+import org.folio.okapi.util.CqlQuery;
+import org.z3950.zing.cql.CQLBoolean;
+import org.z3950.zing.cql.CQLBooleanNode;
+import org.z3950.zing.cql.CQLNode;
+import org.z3950.zing.cql.CQLPrefixNode;
+import org.z3950.zing.cql.CQLTermNode;
 
 @java.lang.SuppressWarnings({"squid:S1192"})
 class MongoUtil<T> {
 
   private final String collection;
   private final MongoClient cli;
+  private final int batchSize;
   private Logger logger = OkapiLogger.get();
 
   public MongoUtil(String collection, MongoClient cli) {
+    this(collection, cli, MongoHandle.DEFAULT_BATCH_SIZE);
+  }
+
+  public MongoUtil(String collection, MongoClient cli, int batchSize) {
     this.collection = collection;
     this.cli = cli;
+    this.batchSize = batchSize;
   }
 
   public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
@@ -87,6 +106,115 @@ class MongoUtil<T> {
     });
   }
 
+  /**
+   * Insert many documents with bulk writes of up to batch size documents.
+   * Mongo has no transactions; the writes are ordered, so on failure the
+   * documents before the failing one are stored.
+   *
+   * @param list documents
+   * @param idOf gets the key of a document
+   * @param fut callback
+   */
+  public void insertList(List<T> list, Function<T, String> idOf,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    List<BulkOperation> ops = new ArrayList<>(list.size());
+    for (T t : list) {
+      JsonObject document = new JsonObject(Json.encode(t));
+      encode(document, idOf.apply(t));
+      ops.add(BulkOperation.createInsert(document));
+    }
+    bulkR(ops, 0, fut);
+  }
+
+  private void bulkR(List<BulkOperation> ops, int offset,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (offset >= ops.size()) {
+      fut.handle(new Success<>());
+      return;
+    }
+    final int end = Math.min(ops.size(), offset + batchSize);
+    cli.bulkWrite(collection, ops.subList(offset, end), res -> {
+      if (res.failed()) {
+        logger.warn("MongoUtil.bulkWrite " + collection + " failed : " + res.cause());
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+      } else {
+        bulkR(ops, end, fut);
+      }
+    });
+  }
+
+  /**
+   * Find the documents that match a query. The query is turned into a
+   * filter that matches them, and possibly more, after which they are
+   * checked with the query itself.
+   *
+   * @param query the query
+   * @param base member that the query is about; null for the whole document.
+   * The query index id is the _id of the document
+   * @param clazz type of documents
+   * @param fut callback with the matching documents
+   */
+  public void query(CqlQuery query, String base, Class<T> clazz,
+    Handler<ExtendedAsyncResult<List<T>>> fut) {
+
+    cli.find(collection, filter(query.getTree(), base), res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+        return;
+      }
+      List<T> ml = new LinkedList<>();
+      for (JsonObject jo : res.result()) {
+        decode(jo);
+        if (query.matches(base == null ? jo : jo.getJsonObject(base, new JsonObject()))) {
+          ml.add(Json.decodeValue(jo.encode(), clazz));
+        }
+      }
+      fut.handle(new Success<>(ml));
+    });
+  }
+
+  private static JsonObject filter(CQLNode node, String base) {
+    if (node instanceof CQLBooleanNode) {
+      CQLBooleanNode n = (CQLBooleanNode) node;
+      JsonObject left = filter(n.getLeftOperand(), base);
+      if (n.getOperator() == CQLBoolean.NOT) {
+        return left; // what the right operand excludes is found by the check
+      }
+      JsonArray both = new JsonArray().add(left).add(filter(n.getRightOperand(), base));
+      return new JsonObject().put(n.getOperator() == CQLBoolean.OR ? "$or" : "$and", both);
+    } else if (node instanceof CQLPrefixNode) {
+      return filter(((CQLPrefixNode) node).getSubtree(), base);
+    }
+    CQLTermNode n = (CQLTermNode) node;
+    final String rel = n.getRelation().getBase();
+    final String term = n.getTerm();
+    // values that are not strings are not found by a string
+    if (CqlQuery.isAllRecords(n) || !("=".equals(rel) || "==".equals(rel))
+      || "true".equals(term) || "false".equals(term) || term.matches("-?[0-9.]+")) {
+      return new JsonObject();
+    }
+    final String index = CqlQuery.index(n);
+    final String field = CqlQuery.ID.equals(index) ? "_id"
+      : base == null ? index : base + "." + index;
+    if ("==".equals(rel)) {
+      return new JsonObject().put(field, term);
+    }
+    List<String> parts = CqlQuery.literals(term);
+    if (parts.size() == 1) {
+      return new JsonObject().put(field, parts.get(0));
+    }
+    StringBuilder regex = new StringBuilder("^");
+    for (int i = 0; i < parts.size(); i++) {
+      if (i > 0) {
+        regex.append(".*");
+      }
+      regex.append(Pattern.quote(parts.get(i)));
+    }
+    return new JsonObject().put(field, new JsonObject().put("$regex", regex.append('$').toString()));
+  }
+
   public void getAll(Class<T> clazz, Handler<ExtendedAsyncResult<List<T>>> fut) {
     final String q = "{}";
     JsonObject jq = new JsonObject(q);
@@ -106,6 +234,61 @@ class MongoUtil<T> {
     });
   }
 
+  /**
+   * Read all documents, batch size documents at a time, in order of _id.
+   * Each batch starts after the last _id of the previous one.
+   *
+   * @param clazz type of documents
+   * @param batch called with each batch and a callback to signal completion
+   * @param fut called when all batches are handled, or one fails
+   */
+  public void streamAll(Class<T> clazz,
+    BiConsumer<List<T>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    streamR(clazz, null, batch, fut);
+  }
+
+  private void streamR(Class<T> clazz, String lastId,
+    BiConsumer<List<T>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    JsonObject jq = new JsonObject();
+    if (lastId != null) {
+      jq.put("_id", new JsonObject().put("$gt", lastId));
+    }
+    FindOptions options = new FindOptions()
+      .setSort(new JsonObject().put("_id", 1))
+      .setLimit(batchSize);
+    cli.findWithOptions(collection, jq, options, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+        return;
+      }
+      List<JsonObject> resl = res.result();
+      if (resl.isEmpty()) {
+        fut.handle(new Success<>());
+        return;
+      }
+      final String id = resl.get(resl.size() - 1).getString("_id");
+      final boolean last = resl.size() < batchSize;
+      List<T> ml = new ArrayList<>(resl.size());
+      for (JsonObject jo : resl) {
+        decode(jo);
+        ml.add(Json.decodeValue(jo.encode(), clazz));
+      }
+      batch.accept(ml, bres -> {
+        if (bres.failed()) {
+          fut.handle(new Failure<>(bres.getType(), bres.cause()));
+        } else if (last) {
+          fut.handle(new Success<>());
+        } else {
+          streamR(clazz, id, batch, fut);
+        }
+      });
+    });
+  }
+
   public void encode(JsonObject j, String id) {
     if (id != null) {
       j.put("_id", id);
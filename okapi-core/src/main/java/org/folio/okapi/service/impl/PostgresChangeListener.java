@@ -0,0 +1,116 @@
+package org.folio.okapi.service.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import org.folio.okapi.bean.ModuleDescriptor;
+import org.folio.okapi.bean.Tenant;
+import static org.folio.okapi.common.ErrorType.NOT_FOUND;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.common.OkapiLogger;
+
+/**
+ * Follows the changes that other nodes make to modules and tenants in
+ * PostgreSQL. The ids in the notifications are collected for a short while,
+ * so that a transaction that changes many rows, like a pull, leads to one
+ * read of each row rather than one per change. The rows are then read one
+ * at a time and handed on; null if the row is gone.
+ */
+class PostgresChangeListener {
+
+  private static final long DELAY = 50; // ms to collect notifications
+
+  private final Logger logger = OkapiLogger.get();
+  private final Vertx vertx;
+  private final PostgresHandle pg;
+  private final ModuleStorePostgres moduleStore;
+  private final TenantStorePostgres tenantStore;
+  private final Set<String> moduleIds = new LinkedHashSet<>();
+  private final Set<String> tenantIds = new LinkedHashSet<>();
+  private BiConsumer<String, ModuleDescriptor> modules;
+  private BiConsumer<String, Tenant> tenants;
+  private boolean scheduled;
+
+  PostgresChangeListener(Vertx vertx, PostgresHandle pg,
+    ModuleStorePostgres moduleStore, TenantStorePostgres tenantStore) {
+
+    this.vertx = vertx;
+    this.pg = pg;
+    this.moduleStore = moduleStore;
+    this.tenantStore = tenantStore;
+  }
+
+  void start(BiConsumer<String, ModuleDescriptor> modules,
+    BiConsumer<String, Tenant> tenants, Handler<ExtendedAsyncResult<Void>> fut) {
+
+    this.modules = modules;
+    this.tenants = tenants;
+    pg.listen(this::notification, fut);
+  }
+
+  private void notification(String payload) {
+    JsonObject o;
+    try {
+      o = new JsonObject(payload);
+    } catch (DecodeException e) {
+      logger.warn("Bad notification " + payload + ": " + e.getMessage());
+      return;
+    }
+    if (pg.getNodeId().equals(o.getString("node"))) {
+      return; // our own change
+    }
+    final String table = o.getString("table");
+    final String id = o.getString("id");
+    logger.debug("Change of " + table + " " + id + " by other node");
+    if (ModuleStorePostgres.TABLE.equals(table)) {
+      moduleIds.add(id);
+    } else if (TenantStorePostgres.TABLE.equals(table)) {
+      tenantIds.add(id);
+    } else {
+      return;
+    }
+    if (!scheduled) {
+      scheduled = true;
+      vertx.setTimer(DELAY, x -> flush());
+    }
+  }
+
+  private void flush() {
+    scheduled = false;
+    Iterator<String> mit = new ArrayList<>(moduleIds).iterator();
+    Iterator<String> tit = new ArrayList<>(tenantIds).iterator();
+    moduleIds.clear();
+    tenantIds.clear();
+    readR(mit, moduleStore::get, modules, x -> readR(tit, tenantStore::get, tenants, y -> {
+    }));
+  }
+
+  private <T> void readR(Iterator<String> it,
+    BiConsumer<String, Handler<ExtendedAsyncResult<T>>> get,
+    BiConsumer<String, T> changed, Handler<Void> done) {
+
+    if (!it.hasNext()) {
+      done.handle(null);
+      return;
+    }
+    final String id = it.next();
+    get.accept(id, res -> {
+      if (res.succeeded()) {
+        changed.accept(id, res.result());
+      } else if (res.getType() == NOT_FOUND) {
+        changed.accept(id, null);
+      } else {
+        logger.warn("Could not read " + id + " changed by other node: "
+          + res.cause().getMessage());
+      }
+      readR(it, get, changed, done);
+    });
+  }
+}
@@ -1,5 +1,8 @@
 package org.folio.okapi.service.impl;
 
+import com.github.mauricio.async.db.postgresql.PostgreSQLConnection;
+import com.github.mauricio.async.db.postgresql.messages.backend.NotificationResponse;
+import io.vertx.core.Context;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
@@ -7,12 +10,20 @@ import io.vertx.core.logging.Logger;
 import io.vertx.ext.asyncsql.AsyncSQLClient;
 import io.vertx.ext.asyncsql.PostgreSQLClient;
 import io.vertx.ext.sql.SQLConnection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.folio.okapi.common.ErrorType.INTERNAL;
 import org.folio.okapi.common.Config;
 import org.folio.okapi.common.ExtendedAsyncResult;
 import org.folio.okapi.common.Failure;
 import org.folio.okapi.common.OkapiLogger;
 import org.folio.okapi.common.Success;
+import org.folio.okapi.util.DropwizardHelper;
+import scala.runtime.AbstractFunction1;
+import scala.runtime.BoxedUnit;
 
 /*
  * PostgreSQL interface for Okapi.
@@ -39,10 +50,37 @@ import org.folio.okapi.common.Success;
 @java.lang.SuppressWarnings({"squid:S1192"})
 class PostgresHandle {
 
+  static final String CHANNEL = "okapi_changes";
+  // setting of each pooled connection that names the node making changes
+  static final String NODE_SETTING = "okapi.node";
+  private static final long LISTEN_CHECK = 5000; // ms between checks of LISTEN
+
+  private final Logger logger = OkapiLogger.get();
+  private final Vertx vertx;
+  private final JsonObject pgconf;
   private AsyncSQLClient cli;
+  private final int batchSize;
+  private final int maxPoolSize;
+  private final long queueTimeout;
+  // connections handed out and not given back; requests waiting for one
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicInteger waiting = new AtomicInteger();
+  // pooled connections that have been handed out at least once
+  private final Set<Object> pooled = Collections.newSetFromMap(
+    Collections.synchronizedMap(new WeakHashMap<>()));
+  private final boolean listen;
+  private final String nodeId = UUID.randomUUID().toString();
+  // pooled connections that have been told the node id
+  private final Set<Object> tagged = Collections.newSetFromMap(
+    Collections.synchronizedMap(new WeakHashMap<>()));
+  // client with the one connection that LISTENs, outside of the pool
+  private AsyncSQLClient listenCli;
+  private SQLConnection listenCon;
+  private boolean listenChecking;
 
   protected PostgresHandle(Vertx vertx, JsonObject conf) {
-    JsonObject pgconf = new JsonObject();
+    this.vertx = vertx;
+    pgconf = new JsonObject();
     String val;
 
     val = Config.getSysConf("postgres_host", "", conf);
@@ -50,7 +88,6 @@ class PostgresHandle {
       pgconf.put("host", val);
     }
     val = Config.getSysConf("postgres_port", "", conf);
-    Logger logger = OkapiLogger.get();
     if (!val.isEmpty()) {
       try {
         Integer x = Integer.parseInt(val);
@@ -71,24 +108,250 @@ class PostgresHandle {
     if (!val.isEmpty()) {
       pgconf.put("database", val);
     }
-    logger.debug("Connecting to postgres with " + pgconf.encode());
+    batchSize = Integer.parseInt(Config.getSysConf("postgres_batch_size", "100", conf));
+    maxPoolSize = Integer.parseInt(Config.getSysConf("postgres_max_pool_size", "10", conf));
+    pgconf.put("maxPoolSize", maxPoolSize);
+    pgconf.put("queryTimeout", Integer.parseInt(
+      Config.getSysConf("postgres_query_timeout", "10000", conf)));
+    queueTimeout = Long.parseLong(Config.getSysConf("postgres_queue_timeout", "10000", conf));
+    listen = Boolean.parseBoolean(Config.getSysConf("postgres_listen", "false", conf));
+    logger.debug("Connecting to postgres with " + pgconf.encode().replaceFirst(
+      "\"password\":\"[^\"]*\"", "\"password\":\"...\""));
     cli = PostgreSQLClient.createNonShared(vertx, pgconf);
     logger.debug("created");
+    DropwizardHelper.registerGauge("postgres.pool.active", active::get);
+    DropwizardHelper.registerGauge("postgres.pool.idle", this::getIdle);
+    DropwizardHelper.registerGauge("postgres.pool.waiting", waiting::get);
+  }
+
+  /*
+   * Number of pooled connections that are still connected and not handed
+   * out. A connection the pool has never handed out is not counted.
+   */
+  private int getIdle() {
+    int connected = 0;
+    synchronized (pooled) {
+      for (Object raw : pooled) {
+        if (raw instanceof PostgreSQLConnection
+          && ((PostgreSQLConnection) raw).isConnected()) {
+          connected++;
+        }
+      }
+    }
+    return Math.max(0, connected - active.get());
   }
 
+  /**
+   * Get a connection from the pool. Fails if none is free within the queue
+   * timeout. The connection must be given back with release.
+   *
+   * @param fut callback with connection
+   */
   public void getConnection(Handler<ExtendedAsyncResult<SQLConnection>> fut) {
+    waiting.incrementAndGet();
+    final boolean[] timedOut = new boolean[1];
+    final long timerId = queueTimeout <= 0 ? -1 : vertx.setTimer(queueTimeout, id -> {
+      timedOut[0] = true;
+      waiting.decrementAndGet();
+      fut.handle(new Failure<>(INTERNAL, "Timed out waiting for database connection"
+        + " (" + active.get() + " of " + maxPoolSize + " in use)"));
+    });
     cli.getConnection(res -> {
+      if (timedOut[0]) {
+        if (res.succeeded()) {
+          res.result().close(); // too late, hand it back
+        }
+        return;
+      }
+      if (timerId != -1) {
+        vertx.cancelTimer(timerId);
+      }
+      waiting.decrementAndGet();
       if (res.failed()) {
         fut.handle(new Failure<>(INTERNAL, res.cause()));
       } else {
+        active.incrementAndGet();
         SQLConnection con = res.result();
-        fut.handle(new Success<>(con));
+        pooled.add(con.unwrap());
+        if (listen) {
+          tagConnection(con, fut);
+        } else {
+          fut.handle(new Success<>(con));
+        }
+      }
+    });
+  }
+
+  /*
+   * Name this node in a setting of a connection the first time it is handed
+   * out, before any change is made through it. The trigger puts the setting
+   * in the notification, which tells our own changes from those of other
+   * nodes.
+   */
+  private void tagConnection(SQLConnection con, Handler<ExtendedAsyncResult<SQLConnection>> fut) {
+    final Object raw = con.unwrap();
+    if (tagged.contains(raw)) {
+      fut.handle(new Success<>(con));
+      return;
+    }
+    con.query("SELECT set_config('" + NODE_SETTING + "', '" + nodeId + "', false)", res -> {
+      if (res.failed()) {
+        release(con);
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+        return;
+      }
+      tagged.add(raw);
+      fut.handle(new Success<>(con));
+    });
+  }
+
+  /**
+   * Whether to follow the changes that other nodes make, as enabled by
+   * option postgres_listen.
+   *
+   * @return true if {@link #listen} should be used
+   */
+  public boolean isListen() {
+    return listen;
+  }
+
+  /**
+   * Get the id of this node, as given in the notifications of its changes.
+   *
+   * @return node id
+   */
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  /**
+   * Receive the changes made to the tables, as announced on
+   * {@link #CHANNEL}. Uses a connection of its own, outside of the pool,
+   * which is held for as long as Okapi runs. The connection is checked every
+   * few seconds; if it is lost, a new one is made and LISTEN is given again.
+   * Changes made while not listening are not seen.
+   *
+   * @param handler called with the payload of each notification
+   * @param fut callback
+   */
+  public void listen(Handler<String> handler, Handler<ExtendedAsyncResult<Void>> fut) {
+    final Context context = vertx.getOrCreateContext();
+    listenCli = PostgreSQLClient.createNonShared(vertx, pgconf.copy().put("maxPoolSize", 1));
+    listenConnect(context, handler, res -> {
+      if (res.succeeded()) {
+        vertx.setPeriodic(LISTEN_CHECK, id -> listenCheck(context, handler));
       }
+      fut.handle(res);
     });
   }
 
+  private void listenConnect(Context context, Handler<String> handler,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    listenCli.getConnection(cres -> {
+      if (cres.failed()) {
+        fut.handle(new Failure<>(INTERNAL, cres.cause()));
+        return;
+      }
+      SQLConnection con = cres.result();
+      con.execute("LISTEN " + CHANNEL, lres -> {
+        if (lres.failed()) {
+          con.close();
+          fut.handle(new Failure<>(INTERNAL, lres.cause()));
+          return;
+        }
+        // the SQL client has no notion of notifications, so the listener
+        // goes on the connection of the driver; it is called on a thread
+        // of the driver
+        PostgreSQLConnection pgcon = con.unwrap();
+        pgcon.registerNotifyListener(new AbstractFunction1<NotificationResponse, BoxedUnit>() {
+          @Override
+          public BoxedUnit apply(NotificationResponse n) {
+            final String payload = n.payload();
+            context.runOnContext(x -> handler.handle(payload));
+            return BoxedUnit.UNIT;
+          }
+        });
+        listenCon = con;
+        logger.info("Listening for changes on " + CHANNEL);
+        fut.handle(new Success<>());
+      });
+    });
+  }
+
+  /*
+   * The SQL client does not tell when a connection is closed by the server
+   * or lost, so LISTEN again, which does nothing if still listening. Once
+   * the connection is gone, make a new one, at every check until that works.
+   */
+  private void listenCheck(Context context, Handler<String> handler) {
+    if (listenChecking) {
+      return;
+    }
+    listenChecking = true;
+    if (listenCon == null) {
+      listenReconnect(context, handler);
+      return;
+    }
+    listenCon.execute("LISTEN " + CHANNEL, res -> {
+      if (res.succeeded()) {
+        listenChecking = false;
+        return;
+      }
+      logger.warn("Lost connection listening on " + CHANNEL + ": "
+        + res.cause().getMessage());
+      PostgreSQLConnection pgcon = listenCon.unwrap();
+      pgcon.disconnect(); // so that the pool does not hand it out again
+      listenCon.close();
+      listenCon = null;
+      listenReconnect(context, handler);
+    });
+  }
+
+  private void listenReconnect(Context context, Handler<String> handler) {
+    listenConnect(context, handler, res -> {
+      if (res.failed()) {
+        logger.warn("Could not listen on " + CHANNEL + ": " + res.cause().getMessage());
+      } else {
+        logger.warn("Changes made by other nodes while not listening on "
+          + CHANNEL + " are not seen");
+      }
+      listenChecking = false;
+    });
+  }
+
+  /**
+   * Give a connection back to the pool.
+   *
+   * @param con connection from getConnection
+   */
+  public void release(SQLConnection con) {
+    active.decrementAndGet();
+    con.close();
+  }
+
+  /**
+   * Get number of rows in each statement of bulk inserts and updates.
+   *
+   * @return number of rows
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
   public PostgresQuery getQuery() {
-    return new PostgresQuery(this);
+    return new PostgresQuery(this, "other");
+  }
+
+  /**
+   * Get a query helper that reports statement times for a table in metric
+   * postgres.TABLE.query.
+   *
+   * @param table table name
+   * @return query helper
+   */
+  public PostgresQuery getQuery(String table) {
+    return new PostgresQuery(this, table);
   }
 
 }
@@ -1,5 +1,6 @@
 package org.folio.okapi.service.impl;
 
+import com.codahale.metrics.Timer;
 import io.vertx.core.Handler;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.logging.Logger;
@@ -11,6 +12,7 @@ import org.folio.okapi.common.ExtendedAsyncResult;
 import org.folio.okapi.common.Failure;
 import org.folio.okapi.common.OkapiLogger;
 import org.folio.okapi.common.Success;
+import org.folio.okapi.util.DropwizardHelper;
 
 @java.lang.SuppressWarnings({"squid:S1192"})
 public class PostgresQuery {
@@ -18,10 +20,13 @@ public class PostgresQuery {
   private SQLConnection conn;
   private static Logger logger = OkapiLogger.get();
   private PostgresHandle pg;
+  private boolean inTransaction;
+  private final String metricKey;
 
-  public PostgresQuery(PostgresHandle pg) {
+  public PostgresQuery(PostgresHandle pg, String table) {
     this.pg = pg;
     this.conn = null;
+    this.metricKey = "postgres." + table + ".query";
   }
 
   private void getCon(Handler<ExtendedAsyncResult<Void>> fut) {
@@ -47,7 +52,9 @@ public class PostgresQuery {
         fut.handle(new Failure<>(gres.getType(), gres.cause()));
       } else {
         logger.debug("queryWithParams sql: " + sql);
+        Timer.Context tim = DropwizardHelper.getTimerContext(metricKey);
         conn.queryWithParams(sql, jsa, qres -> {
+          tim.close();
           if (qres.failed()) {
             logger.fatal("queryWithParams failed: "
               + qres.cause() + " sql: " + sql);
@@ -69,7 +76,9 @@ public class PostgresQuery {
         fut.handle(new Failure<>(gres.getType(), gres.cause()));
       } else {
         logger.debug("updateWithParams sql: " + sql);
+        Timer.Context tim = DropwizardHelper.getTimerContext(metricKey);
         conn.updateWithParams(sql, jsa, qres -> {
+          tim.close();
           if (qres.failed()) {
             logger.fatal("updateWithParams failed: "
               + qres.cause() + " sql: " + sql);
@@ -91,7 +100,9 @@ public class PostgresQuery {
         fut.handle(new Failure<>(gres.getType(), gres.cause()));
       } else {
         logger.debug("query sql: " + sql);
+        Timer.Context tim = DropwizardHelper.getTimerContext(metricKey);
         conn.query(sql, qres -> {
+          tim.close();
           if (qres.failed()) {
             logger.fatal("query failed: "
               + qres.cause() + " sql: " + sql);
@@ -105,9 +116,49 @@ public class PostgresQuery {
     });
   }
 
+  /**
+   * Start a transaction. Ends with commit; close without commit (also the
+   * close done when a statement fails) rolls back.
+   *
+   * @param fut callback
+   */
+  public void begin(Handler<ExtendedAsyncResult<Void>> fut) {
+    query("BEGIN", res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        inTransaction = true;
+        fut.handle(new Success<>());
+      }
+    });
+  }
+
+  /**
+   * Commit the transaction started with begin.
+   *
+   * @param fut callback
+   */
+  public void commit(Handler<ExtendedAsyncResult<Void>> fut) {
+    inTransaction = false;
+    query("COMMIT", res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        fut.handle(new Success<>());
+      }
+    });
+  }
+
   public void close() {
     if (conn != null) {
-      conn.close();
+      if (inTransaction) {
+        // do not hand a connection in a transaction back to the pool
+        inTransaction = false;
+        final SQLConnection c = conn;
+        c.query("ROLLBACK", res -> pg.release(c));
+      } else {
+        pg.release(conn);
+      }
       conn = null;
     }
   }
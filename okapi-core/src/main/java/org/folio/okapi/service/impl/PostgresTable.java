@@ -1,5 +1,8 @@
 package org.folio.okapi.service.impl;
 
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
 import io.vertx.core.Handler;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
@@ -7,17 +10,29 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.ext.sql.ResultSet;
 import io.vertx.ext.sql.UpdateResult;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import static org.folio.okapi.common.ErrorType.INTERNAL;
 import static org.folio.okapi.common.ErrorType.NOT_FOUND;
 import org.folio.okapi.common.ExtendedAsyncResult;
 import org.folio.okapi.common.Failure;
 import org.folio.okapi.common.OkapiLogger;
 import org.folio.okapi.common.Success;
+import org.folio.okapi.util.CqlQuery;
+import org.z3950.zing.cql.CQLBoolean;
+import org.z3950.zing.cql.CQLBooleanNode;
+import org.z3950.zing.cql.CQLNode;
+import org.z3950.zing.cql.CQLPrefixNode;
+import org.z3950.zing.cql.CQLTermNode;
 
 @java.lang.SuppressWarnings({"squid:S1192"})
 class PostgresTable<T> {
 
+  private static final String PAGE_KEY = "okapi_key";
+
   private final io.vertx.core.logging.Logger logger = OkapiLogger.get();
 
   private final String table;
@@ -26,6 +41,17 @@ class PostgresTable<T> {
   private final String idSelect;
   private final String indexName;
   private final PostgresHandle pg;
+  // statement texts are kept the same, so that the driver can reuse the
+  // statements it has prepared on each pooled connection
+  private final String insertSql;
+  private final String updateSql;
+  private final String deleteSql;
+  private final String getAllSql;
+  private final String getSql;
+  private final String firstPageSql;
+  private final String nextPageSql;
+  private final Map<Integer, String> batchSql = new ConcurrentHashMap<>();
+  private boolean queryIndex;
 
   public PostgresTable(PostgresHandle pg, String table, String jsonColumn,
     String idIndex, String idSelect, String indexName) {
@@ -35,6 +61,28 @@ class PostgresTable<T> {
     this.idIndex = idIndex;
     this.idSelect = idSelect;
     this.indexName = indexName;
+    this.insertSql = "INSERT INTO " + table + "(" + jsonColumn + ") VALUES (?::JSONB)";
+    this.updateSql = insertSql + " ON CONFLICT ((" + idIndex + ")) DO UPDATE SET "
+      + jsonColumn + "= ?::JSONB";
+    this.deleteSql = "DELETE FROM " + table + " WHERE " + idSelect;
+    this.getAllSql = "SELECT " + jsonColumn + " FROM " + table;
+    this.getSql = getAllSql + " WHERE " + idSelect;
+    final String page = "SELECT " + jsonColumn + ", (" + idIndex + ")::TEXT AS "
+      + PAGE_KEY + " FROM " + table;
+    final String order = " ORDER BY (" + idIndex + ") LIMIT ?";
+    this.firstPageSql = page + order;
+    this.nextPageSql = page + " WHERE (" + idIndex + ") > ?::JSONB" + order;
+  }
+
+  /**
+   * Create a GIN index on the JSON when the table is created, for the terms
+   * of {@link #query} that become containments. Off by default, as it slows
+   * down every write.
+   *
+   * @param queryIndex whether to create the index
+   */
+  public void setQueryIndex(boolean queryIndex) {
+    this.queryIndex = queryIndex;
   }
 
   private void create(boolean reset, PostgresQuery q, Handler<ExtendedAsyncResult<Void>> fut) {
@@ -49,20 +97,80 @@ class PostgresTable<T> {
         String createSql1 = "CREATE UNIQUE INDEX " + notExists + indexName + " ON "
           + table + " USING btree((" + idIndex + "))";
         q.query(createSql1, res2 -> {
-          if (res1.failed()) {
+          if (res2.failed()) {
             logger.fatal(createSql1 + ": " + res2.cause().getMessage());
             fut.handle(new Failure<>(res2.getType(), res2.cause()));
           } else {
-            fut.handle(new Success<>());
-            q.close();
+            createQueryIndex(notExists, q, fut);
           }
         });
       }
     });
   }
 
+  private void createQueryIndex(String notExists, PostgresQuery q,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (!queryIndex) {
+      createTrigger(q, fut);
+      return;
+    }
+    String createSql = "CREATE INDEX " + notExists + table + "_json ON " + table
+      + " USING gin (" + jsonColumn + " jsonb_path_ops)";
+    q.query(createSql, res -> {
+      if (res.failed()) {
+        logger.fatal(createSql + ": " + res.cause().getMessage());
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        createTrigger(q, fut);
+      }
+    });
+  }
+
+  /*
+   * Announce every change of a row on channel PostgresHandle.CHANNEL, with
+   * the table, the operation, the id of the row and the node that made the
+   * change, so that other nodes can read the row again. Only created when
+   * some node listens, and only if it is not there already. Nodes that start
+   * at the same time take turns through an advisory lock, so they never
+   * create it twice.
+   */
+  private void createTrigger(PostgresQuery q, Handler<ExtendedAsyncResult<Void>> fut) {
+    if (!pg.isListen()) {
+      q.close();
+      fut.handle(new Success<>());
+      return;
+    }
+    final String name = table + "_notify";
+    final String triggerSql = "DO $$ BEGIN"
+      + " PERFORM pg_advisory_xact_lock(hashtext('" + PostgresHandle.CHANNEL + "'));"
+      + " IF NOT EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = '" + name + "'"
+      + " AND tgrelid = '" + table + "'::regclass) THEN"
+      + " CREATE OR REPLACE FUNCTION " + name
+      + "() RETURNS TRIGGER AS $f$ DECLARE r RECORD; BEGIN"
+      + " IF TG_OP = 'DELETE' THEN r := OLD; ELSE r := NEW; END IF;"
+      + " PERFORM pg_notify('" + PostgresHandle.CHANNEL + "', json_build_object("
+      + "'table', TG_TABLE_NAME, 'op', TG_OP, 'id', (r." + idIndex + ") #>> '{}',"
+      + " 'node', current_setting('" + PostgresHandle.NODE_SETTING + "', true))::TEXT);"
+      + " RETURN NULL; END $f$ LANGUAGE plpgsql;"
+      + " CREATE TRIGGER " + name
+      + " AFTER INSERT OR UPDATE OR DELETE ON " + table
+      + " FOR EACH ROW EXECUTE PROCEDURE " + name + "();"
+      + " END IF; END $$";
+    q.query(triggerSql, res -> {
+      if (res.failed()) {
+        logger.fatal(triggerSql + ": " + res.cause().getMessage());
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+      } else {
+        q.close();
+        fut.handle(new Success<>());
+      }
+    });
+  }
+
+
   public void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut) {
-    PostgresQuery q = pg.getQuery();
+    PostgresQuery q = pg.getQuery(table);
     if (!reset) {
       create(reset, q, fut);
     } else {
@@ -79,13 +187,10 @@ class PostgresTable<T> {
   }
 
   public void insert(T dd, Handler<ExtendedAsyncResult<Void>> fut) {
-    PostgresQuery q = pg.getQuery();
-    final String sql = "INSERT INTO " + table + "(" + jsonColumn + ") VALUES (?::JSONB)";
-    String s = Json.encode(dd);
-    JsonObject doc = new JsonObject(s);
+    PostgresQuery q = pg.getQuery(table);
     JsonArray jsa = new JsonArray();
-    jsa.add(doc.encode());
-    q.queryWithParams(sql, jsa, res -> {
+    jsa.add(Json.encode(dd));
+    q.queryWithParams(insertSql, jsa, res -> {
       if (res.failed()) {
         fut.handle(new Failure<>(res.getType(), res.cause()));
       } else {
@@ -96,15 +201,12 @@ class PostgresTable<T> {
   }
 
   public void update(T md, Handler<ExtendedAsyncResult<Void>> fut) {
-    PostgresQuery q = pg.getQuery();
-    String sql = "INSERT INTO " + table + "(" + jsonColumn + ") VALUES (?::JSONB)"
-      + " ON CONFLICT ((" + idIndex + ")) DO UPDATE SET " + jsonColumn + "= ?::JSONB";
+    PostgresQuery q = pg.getQuery(table);
     String s = Json.encode(md);
-    JsonObject doc = new JsonObject(s);
     JsonArray jsa = new JsonArray();
-    jsa.add(doc.encode());
-    jsa.add(doc.encode());
-    q.updateWithParams(sql, jsa, res -> {
+    jsa.add(s);
+    jsa.add(s);
+    q.updateWithParams(updateSql, jsa, res -> {
       if (res.failed()) {
         fut.handle(new Failure<>(INTERNAL, res.cause()));
       } else {
@@ -114,12 +216,71 @@ class PostgresTable<T> {
     });
   }
 
+  /**
+   * Insert many rows in one transaction, with up to batch size rows per
+   * statement. Nothing is inserted if any of the rows exists.
+   *
+   * @param list rows to insert
+   * @param fut callback
+   */
+  public void insertList(List<T> list, Handler<ExtendedAsyncResult<Void>> fut) {
+    if (list.isEmpty()) {
+      fut.handle(new Success<>());
+      return;
+    }
+    PostgresQuery q = pg.getQuery(table);
+    q.begin(bres -> {
+      if (bres.failed()) {
+        fut.handle(new Failure<>(bres.getType(), bres.cause()));
+        return;
+      }
+      batchR(q, list, 0, fut);
+    });
+  }
+
+  private void batchR(PostgresQuery q, List<T> list, int offset,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (offset >= list.size()) {
+      q.commit(cres -> {
+        if (cres.failed()) {
+          fut.handle(new Failure<>(INTERNAL, cres.cause()));
+        } else {
+          q.close();
+          fut.handle(new Success<>());
+        }
+      });
+      return;
+    }
+    final int end = Math.min(list.size(), offset + pg.getBatchSize());
+    JsonArray jsa = new JsonArray();
+    for (int i = offset; i < end; i++) {
+      jsa.add(Json.encode(list.get(i)));
+    }
+    q.updateWithParams(batchSql(end - offset), jsa, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+      } else {
+        batchR(q, list, end, fut);
+      }
+    });
+  }
+
+  private String batchSql(int rows) {
+    return batchSql.computeIfAbsent(rows, k -> {
+      StringBuilder sql = new StringBuilder("INSERT INTO " + table + "(" + jsonColumn + ") VALUES ");
+      for (int i = 0; i < rows; i++) {
+        sql.append(i == 0 ? "(?::JSONB)" : ", (?::JSONB)");
+      }
+      return sql.toString();
+    });
+  }
+
   public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
-    PostgresQuery q = pg.getQuery();
-    String sql = "DELETE FROM " + table + " WHERE " + idSelect;
+    PostgresQuery q = pg.getQuery(table);
     JsonArray jsa = new JsonArray();
     jsa.add(id);
-    q.updateWithParams(sql, jsa, res -> {
+    q.updateWithParams(deleteSql, jsa, res -> {
       if (res.failed()) {
         fut.handle(new Failure<>(INTERNAL, res.cause()));
       } else {
@@ -134,10 +295,35 @@ class PostgresTable<T> {
     });
   }
 
+  /**
+   * Read one row.
+   *
+   * @param id row identifier
+   * @param clazz type of row
+   * @param fut callback with the row; NOT_FOUND if there is none
+   */
+  public void get(String id, Class<T> clazz, Handler<ExtendedAsyncResult<T>> fut) {
+    PostgresQuery q = pg.getQuery(table);
+    JsonArray jsa = new JsonArray();
+    jsa.add(id);
+    q.queryWithParams(getSql, jsa, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+        return;
+      }
+      q.close();
+      List<JsonObject> rows = res.result().getRows();
+      if (rows.isEmpty()) {
+        fut.handle(new Failure<>(NOT_FOUND, id));
+      } else {
+        fut.handle(new Success<>(Json.decodeValue(rows.get(0).getString(jsonColumn), clazz)));
+      }
+    });
+  }
+
   public void getAll(Class<T> clazz, Handler<ExtendedAsyncResult<List<T>>> fut) {
-    PostgresQuery q = pg.getQuery();
-    String sql = "SELECT " + jsonColumn + " FROM " + table;
-    q.query(sql, res -> {
+    PostgresQuery q = pg.getQuery(table);
+    q.query(getAllSql, res -> {
       if (res.failed()) {
         fut.handle(new Failure<>(INTERNAL, res.cause()));
       } else {
@@ -154,4 +340,245 @@ class PostgresTable<T> {
       }
     });
   }
+
+  /**
+   * Read the rows that match a query. The query is turned into a condition
+   * that holds for all rows that match, and possibly more: a term on id
+   * uses the unique index, a term of relation == or = without wildcards on
+   * a member that holds strings becomes a containment (@&gt;) that the GIN
+   * index answers, a term with wildcards becomes a LIKE on the member if no
+   * array is on the way, and the rest is left out. The rows found are then
+   * checked with the query itself.
+   *
+   * @param query the query
+   * @param base member of the JSON that the query is about; null for the
+   * whole JSON. The query index id is the id of the table
+   * @param clazz type of rows
+   * @param fut callback with the matching rows, in order of id
+   */
+  public void query(CqlQuery query, String base, Class<T> clazz,
+    Handler<ExtendedAsyncResult<List<T>>> fut) {
+
+    query(query, base, clazz, 0, Integer.MAX_VALUE, fut);
+  }
+
+  /**
+   * Read a page of the rows that match a query, in order of id. If the
+   * condition is exactly the query, the database selects the page, so that
+   * no other rows are read; otherwise rows are read in order until the page
+   * is full.
+   *
+   * @param query the query; its sortby, if any, is not applied
+   * @param base member of the JSON that the query is about; null for the
+   * whole JSON. The query index id is the id of the table
+   * @param clazz type of rows
+   * @param offset number of matching rows to skip
+   * @param limit largest number of rows to return
+   * @param fut callback with the rows
+   */
+  public void query(CqlQuery query, String base, Class<T> clazz, int offset,
+    int limit, Handler<ExtendedAsyncResult<List<T>>> fut) {
+
+    Condition cond = new Condition(base, clazz);
+    final String where = where(query.getTree(), cond);
+    // jsonb orders strings by the collation of the database, which is
+    // not the order of String.compareTo
+    StringBuilder sql = new StringBuilder(getAllSql + " WHERE " + where
+      + " ORDER BY ((" + idIndex + ") #>> '{}') COLLATE \"C\"");
+    if (cond.exact) {
+      sql.append(" OFFSET ? LIMIT ?");
+      cond.params.add(offset).add(limit);
+    }
+    PostgresQuery q = pg.getQuery(table);
+    q.queryWithParams(sql.toString(), cond.params, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+        return;
+      }
+      q.close();
+      List<T> ml = new ArrayList<>();
+      int skip = cond.exact ? 0 : offset;
+      for (JsonObject r : res.result().getRows()) {
+        if (ml.size() >= limit) {
+          break;
+        }
+        JsonObject o = new JsonObject(r.getString(jsonColumn));
+        if (cond.exact
+          || query.matches(base == null ? o : o.getJsonObject(base, new JsonObject()))) {
+          if (skip > 0) {
+            skip--;
+          } else {
+            ml.add(Json.decodeValue(o.encode(), clazz));
+          }
+        }
+      }
+      fut.handle(new Success<>(ml));
+    });
+  }
+
+  // parameters of a condition, and whether it holds for exactly the rows
+  // that match the query
+  private static class Condition {
+    final String base;
+    final Class<?> clazz;
+    final JsonArray params = new JsonArray();
+    boolean exact = true;
+
+    Condition(String base, Class<?> clazz) {
+      this.base = base;
+      this.clazz = clazz;
+    }
+  }
+
+  private String where(CQLNode node, Condition cond) {
+    if (node instanceof CQLBooleanNode) {
+      CQLBooleanNode n = (CQLBooleanNode) node;
+      final String left = where(n.getLeftOperand(), cond);
+      if (n.getOperator() == CQLBoolean.NOT) {
+        cond.exact = false;
+        return left; // what the right operand excludes is found by the check
+      }
+      final String right = where(n.getRightOperand(), cond);
+      return "(" + left + (n.getOperator() == CQLBoolean.OR ? " OR " : " AND ") + right + ")";
+    } else if (node instanceof CQLPrefixNode) {
+      return where(((CQLPrefixNode) node).getSubtree(), cond);
+    }
+    CQLTermNode n = (CQLTermNode) node;
+    if (CqlQuery.isAllRecords(n)) {
+      return "TRUE";
+    }
+    final String rel = n.getRelation().getBase();
+    if (!("=".equals(rel) || "==".equals(rel))) {
+      cond.exact = false;
+      return "TRUE";
+    }
+    final List<String> parts = "==".equals(rel)
+      ? Collections.singletonList(n.getTerm()) : CqlQuery.literals(n.getTerm());
+    final String index = CqlQuery.index(n);
+    if (CqlQuery.ID.equals(index) && parts.size() == 1) {
+      cond.params.add(parts.get(0));
+      return "(" + idIndex + ") = to_jsonb(?::TEXT)";
+    }
+    final String[] path = (cond.base == null ? index : cond.base + "." + index).split("\\.");
+    final Object doc = contains(Json.mapper.constructType(cond.clazz), path, 0,
+      parts.get(0));
+    if (doc == null) {
+      cond.exact = false;
+      return "TRUE";
+    }
+    if (parts.size() == 1) {
+      cond.params.add(((JsonObject) doc).encode());
+      return jsonColumn + " @> ?::JSONB";
+    }
+    cond.exact = false;
+    if (hasArray(doc)) {
+      return "TRUE";
+    }
+    StringBuilder like = new StringBuilder();
+    for (int i = 0; i < parts.size(); i++) {
+      if (i > 0) {
+        like.append('%');
+      }
+      like.append(parts.get(i).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_"));
+    }
+    cond.params.add(like.toString());
+    return "(" + jsonColumn + " #>> '{" + String.join(",", path) + "}') LIKE ?";
+  }
+
+  /*
+   * The JSON that holds the value at the path, with arrays where the type
+   * has arrays or collections, so that a row contains it if any of the
+   * values at the path is equal to the value. null if a member on the way is
+   * not a property of the type, or the values are not strings.
+   */
+  private static Object contains(JavaType type, String[] path, int i, String value) {
+    if (type.isArrayType() || type.isCollectionLikeType()) {
+      Object e = contains(type.getContentType(), path, i, value);
+      return e == null ? null : new JsonArray().add(e);
+    }
+    if (i == path.length) {
+      return type.hasRawClass(String.class) ? value : null;
+    }
+    BeanDescription bd = Json.mapper.getSerializationConfig().introspect(type);
+    for (BeanPropertyDefinition p : bd.findProperties()) {
+      if (p.getName().equals(path[i]) && p.couldSerialize()) {
+        Object e = contains(p.getPrimaryType(), path, i + 1, value);
+        return e == null ? null : new JsonObject().put(path[i], e);
+      }
+    }
+    return null;
+  }
+
+  private static boolean hasArray(Object doc) {
+    if (doc instanceof JsonArray) {
+      return true;
+    }
+    if (doc instanceof JsonObject) {
+      for (Object v : ((JsonObject) doc).getMap().values()) {
+        if (hasArray(v)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Read all rows, a page of batch size rows at a time. Pages are read in
+   * order of the unique index, each starting after the last key of the
+   * previous one, so that a page is found through the index and no more
+   * than a page is held in memory.
+   *
+   * @param clazz type of rows
+   * @param batch called with each page and a callback to signal completion
+   * @param fut called when all pages are handled, or one fails
+   */
+  public void streamAll(Class<T> clazz,
+    BiConsumer<List<T>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    PostgresQuery q = pg.getQuery(table);
+    streamR(q, clazz, null, batch, fut);
+  }
+
+  private void streamR(PostgresQuery q, Class<T> clazz, String lastKey,
+    BiConsumer<List<T>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    JsonArray jsa = new JsonArray();
+    if (lastKey != null) {
+      jsa.add(lastKey);
+    }
+    jsa.add(pg.getBatchSize());
+    q.queryWithParams(lastKey == null ? firstPageSql : nextPageSql, jsa, res -> {
+      if (res.failed()) {
+        q.close();
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+        return;
+      }
+      List<JsonObject> rows = res.result().getRows();
+      if (rows.isEmpty()) {
+        q.close();
+        fut.handle(new Success<>());
+        return;
+      }
+      List<T> ml = new ArrayList<>(rows.size());
+      for (JsonObject r : rows) {
+        ml.add(Json.decodeValue(r.getString(jsonColumn), clazz));
+      }
+      final String key = rows.get(rows.size() - 1).getString(PAGE_KEY);
+      final boolean last = rows.size() < pg.getBatchSize();
+      batch.accept(ml, bres -> {
+        if (bres.failed()) {
+          q.close();
+          fut.handle(new Failure<>(bres.getType(), bres.cause()));
+        } else if (last) {
+          q.close();
+          fut.handle(new Success<>());
+        } else {
+          streamR(q, clazz, key, batch, fut);
+        }
+      });
+    });
+  }
 }
@@ -5,6 +5,9 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.net.NetClient;
 import io.vertx.core.net.NetClientOptions;
@@ -17,6 +20,7 @@ import org.folio.okapi.bean.LaunchDescriptor;
 import org.folio.okapi.bean.EnvEntry;
 import org.folio.okapi.common.Messages;
 import org.folio.okapi.common.OkapiLogger;
+import org.folio.okapi.util.DropwizardHelper;
 
 @java.lang.SuppressWarnings({"squid:S1192"})
 public class ProcessModuleHandle implements ModuleHandle {
@@ -33,8 +37,13 @@ public class ProcessModuleHandle implements ModuleHandle {
   private Process p;
   private final int port;
   private final Ports ports;
-  private int maxIterations = 30; // x*(x+1) * 0.1 seconds.
-  private static final int MILLISECONDS = 200;
+  private final String healthPath;
+  private int readyTimeout; // milliseconds
+  private static final int DEFAULT_READY_TIMEOUT = 90; // seconds
+  private static final int CONNECT_TIMEOUT = 200;
+  private static final int HEALTH_TIMEOUT = 1000;
+  private static final long PROBE_INITIAL = 50;
+  private static final long PROBE_MAX = 1000;
 
   public ProcessModuleHandle(Vertx vertx, LaunchDescriptor desc,
     Ports ports, int port) {
@@ -44,13 +53,21 @@ public class ProcessModuleHandle implements ModuleHandle {
     this.cmdlineStart = desc.getCmdlineStart();
     this.cmdlineStop = desc.getCmdlineStop();
     this.env = desc.getEnv();
+    this.healthPath = desc.getHealthPath();
+    this.readyTimeout = 1000 * (desc.getReadyTimeout() == null
+      ? DEFAULT_READY_TIMEOUT : desc.getReadyTimeout());
     this.port = port;
     this.ports = ports;
     this.p = null;
   }
 
-  public void setConnectIterMax(int iterations) {
-    this.maxIterations = iterations;
+  /**
+   * Set how long to wait for the module to be ready after it is started.
+   *
+   * @param milliseconds time to wait
+   */
+  public void setReadyTimeout(int milliseconds) {
+    this.readyTimeout = milliseconds;
   }
 
   private ProcessBuilder createProcessBuilder(String[] l) {
@@ -64,36 +81,98 @@ public class ProcessModuleHandle implements ModuleHandle {
     return pb;
   }
 
-  private void tryConnect(Handler<AsyncResult<Void>> startFuture, int count) {
-    NetClientOptions options = new NetClientOptions().setConnectTimeout(MILLISECONDS);
-    NetClient c = vertx.createNetClient(options);
+  /*
+   * Wait for the module to be ready: listening on its port and, if the
+   * LaunchDescriptor has a healthPath, answering a GET of that with 2xx.
+   * Probes are made at 50 ms intervals at first, doubling up to once a
+   * second, until readyTimeout has passed.
+   */
+  private void waitReady(Handler<AsyncResult<Void>> startFuture) {
+    NetClient c = vertx.createNetClient(
+      new NetClientOptions().setConnectTimeout(CONNECT_TIMEOUT));
+    HttpClient hc = null;
+    if (healthPath != null) {
+      hc = vertx.createHttpClient(new HttpClientOptions()
+        .setConnectTimeout(CONNECT_TIMEOUT).setKeepAlive(false));
+    }
+    tryConnect(c, hc, System.nanoTime(), 0, PROBE_INITIAL, startFuture);
+  }
+
+  private void tryConnect(NetClient c, HttpClient hc, long start, int count,
+    long interval, Handler<AsyncResult<Void>> startFuture) {
+
     logger.debug("ProcessModuleHandle.tryConnect() port " + port + " count " + count);
     c.connect(port, "localhost", res -> {
-      if (res.succeeded()) {
-        logger.info("Connected to service at port " + port + " count " + count);
-        NetSocket socket = res.result();
-        socket.close();
-        try {
-          p.getErrorStream().close();
-        } catch (Exception e) {
-          logger.error("Closing streams failed: " + e);
-        }
-        startFuture.handle(Future.succeededFuture());
-      } else if (!p.isAlive() && p.exitValue() != 0) {
-        logger.warn("Service returned with exit code " + p.exitValue());
-        startFuture.handle(Future.failedFuture(messages.getMessage("11500", p.exitValue())));
-      } else if (count < maxIterations) {
-        vertx.setTimer((long) (count + 1) * MILLISECONDS,
-          id -> tryConnect(startFuture, count + 1));
-      } else {
-        this.stopProcess(res2 ->
-          startFuture.handle(Future.failedFuture(messages.getMessage("11501",
-           Integer.toString(port), res.cause().getMessage())))
-        );
+      if (res.failed()) {
+        retryConnect(c, hc, start, count, interval, res.cause().getMessage(), startFuture);
+        return;
       }
+      res.result().close();
+      if (hc == null) {
+        ready(c, hc, start, count, startFuture);
+        return;
+      }
+      HttpClientRequest req = hc.get(port, "localhost", healthPath, hres -> {
+        if (hres.statusCode() >= 200 && hres.statusCode() < 300) {
+          ready(c, hc, start, count, startFuture);
+        } else {
+          retryConnect(c, hc, start, count, interval,
+            "GET " + healthPath + " returned " + hres.statusCode(), startFuture);
+        }
+      });
+      req.setTimeout(HEALTH_TIMEOUT);
+      req.exceptionHandler(e
+        -> retryConnect(c, hc, start, count, interval, e.getMessage(), startFuture));
+      req.end();
     });
   }
 
+  private void retryConnect(NetClient c, HttpClient hc, long start, int count,
+    long interval, String cause, Handler<AsyncResult<Void>> startFuture) {
+
+    if (!p.isAlive() && p.exitValue() != 0) {
+      logger.warn("Service returned with exit code " + p.exitValue());
+      closeClients(c, hc);
+      startFuture.handle(Future.failedFuture(messages.getMessage("11500", p.exitValue())));
+    } else if (elapsedMs(start) < readyTimeout) {
+      vertx.setTimer(interval, id -> tryConnect(c, hc, start, count + 1,
+        Math.min(interval * 2, PROBE_MAX), startFuture));
+    } else {
+      closeClients(c, hc);
+      this.stopProcess(res2
+        -> startFuture.handle(Future.failedFuture(messages.getMessage("11501",
+          Integer.toString(port), cause)))
+      );
+    }
+  }
+
+  private void ready(NetClient c, HttpClient hc, long start, int count,
+    Handler<AsyncResult<Void>> startFuture) {
+
+    final long ms = elapsedMs(start);
+    logger.info("Service at port " + port + " ready after " + ms + " ms, "
+      + (count + 1) + " probes");
+    DropwizardHelper.updateTimer("deploy.ready", ms, TimeUnit.MILLISECONDS);
+    closeClients(c, hc);
+    try {
+      p.getErrorStream().close();
+    } catch (Exception e) {
+      logger.error("Closing streams failed: " + e);
+    }
+    startFuture.handle(Future.succeededFuture());
+  }
+
+  private static void closeClients(NetClient c, HttpClient hc) {
+    c.close();
+    if (hc != null) {
+      hc.close();
+    }
+  }
+
+  private static long elapsedMs(long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
   @Override
   public void start(Handler<AsyncResult<Void>> startFuture) {
     if (port > 0) {
@@ -141,7 +220,10 @@ public class ProcessModuleHandle implements ModuleHandle {
           ProcessBuilder pb = createProcessBuilder(l);
           pb.inheritIO();
           p = pb.start();
-          p.waitFor(1, TimeUnit.SECONDS);
+          if (port == 0) {
+            // no port to probe; catch a process that fails right away
+            p.waitFor(1, TimeUnit.SECONDS);
+          }
         } catch (InterruptedException ex) {
           logger.warn("Caught InterruptedException " + ex + " when starting " + c);
           Thread.currentThread().interrupt();
@@ -161,7 +243,7 @@ public class ProcessModuleHandle implements ModuleHandle {
         logger.debug("ProcessModuleHandle.start2() executeBlocking failed " + result.cause());
         startFuture.handle(Future.failedFuture(result.cause()));
       } else if (port > 0) {
-        tryConnect(startFuture, 0);
+        waitReady(startFuture);
       } else {
         startFuture.handle(Future.succeededFuture());
       }
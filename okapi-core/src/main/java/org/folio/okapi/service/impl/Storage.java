@@ -1,26 +1,36 @@
 package org.folio.okapi.service.impl;
 
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
+import java.util.function.BiConsumer;
+import org.folio.okapi.bean.ModuleDescriptor;
+import org.folio.okapi.bean.Tenant;
 import org.folio.okapi.common.Config;
+import static org.folio.okapi.common.ErrorType.INTERNAL;
 import org.folio.okapi.common.ExtendedAsyncResult;
 import org.folio.okapi.common.OkapiLogger;
 import org.folio.okapi.common.Success;
 import org.folio.okapi.service.DeploymentStore;
 import org.folio.okapi.service.EnvStore;
+import org.folio.okapi.service.InstallJobStore;
 import org.folio.okapi.service.ModuleStore;
 import org.folio.okapi.service.TenantStore;
+import org.folio.okapi.util.CompList;
 
 public class Storage {
 
   private MongoHandle mongo;
   private PostgresHandle postgres;
+  private FileHandle file;
   private ModuleStore moduleStore;
   private TenantStore tenantStore;
   private DeploymentStore deploymentStore;
   private EnvStore envStore;
+  private InstallJobStore installJobStore;
+  private PostgresChangeListener changeListener;
 
   public enum InitMode {
     NORMAL, // normal operation
@@ -35,23 +45,40 @@ public class Storage {
     switch (type) {
       case "mongo":
         mongo = new MongoHandle(vertx, config);
-        moduleStore = new ModuleStoreMongo(mongo.getClient());
-        tenantStore = new TenantStoreMongo(mongo.getClient());
+        moduleStore = new ModuleStoreMongo(mongo.getClient(), mongo.getBatchSize());
+        tenantStore = new TenantStoreMongo(mongo.getClient(), mongo.getBatchSize());
         deploymentStore = new DeploymentStoreMongo(mongo.getClient());
         envStore = new EnvStoreMongo(mongo.getClient());
+        installJobStore = new InstallJobStoreMongo(mongo.getClient());
         break;
       case "inmemory":
         moduleStore = null;
         tenantStore = null;
         deploymentStore = new DeploymentStoreNull();
         envStore = new EnvStoreNull();
+        installJobStore = new InstallJobStoreNull();
         break;
       case "postgres":
         postgres = new PostgresHandle(vertx, config);
-        moduleStore = new ModuleStorePostgres(postgres);
-        tenantStore = new TenantStorePostgres(postgres);
+        ModuleStorePostgres pgModuleStore = new ModuleStorePostgres(postgres);
+        TenantStorePostgres pgTenantStore = new TenantStorePostgres(postgres);
+        if (postgres.isListen()) {
+          changeListener = new PostgresChangeListener(vertx, postgres,
+            pgModuleStore, pgTenantStore);
+        }
+        moduleStore = pgModuleStore;
+        tenantStore = pgTenantStore;
         deploymentStore = new DeploymentStorePostgres(postgres);
         envStore = new EnvStorePostgres(postgres);
+        installJobStore = new InstallJobStorePostgres(postgres);
+        break;
+      case "file":
+        file = new FileHandle(vertx, config);
+        moduleStore = new ModuleStoreFile(file);
+        tenantStore = new TenantStoreFile(file);
+        deploymentStore = new DeploymentStoreFile(file);
+        envStore = new EnvStoreFile(file);
+        installJobStore = new InstallJobStoreFile(file);
         break;
       default:
         logger.fatal("Unknown storage type '" + type + "'");
@@ -64,6 +91,10 @@ public class Storage {
     if (mongo != null && "1".equals(dbInit)) {
       initModeP = InitMode.INIT;
     }
+    dbInit = Config.getSysConf("file_db_init", "0", config);
+    if (file != null && "1".equals(dbInit)) {
+      initModeP = InitMode.INIT;
+    }
     dbInit = Config.getSysConf("postgres_db_init", "0", config);
     if (postgres != null && "1".equals(dbInit)) {
       logger.warn("Will initialize the whole database!");
@@ -75,17 +106,57 @@ public class Storage {
     logger.info("prepareDatabases: " + initMode);
 
     boolean reset = initMode != InitMode.NORMAL;
-    envStore.init(reset, res1
-      -> deploymentStore.init(reset, res2 -> {
-        if (tenantStore == null) {
-          fut.handle(new Success<>());
+    // the stores are independent, so they are initialized at the same time.
+    // As before, only a failure of the module store stops the startup
+    CompList<Void> futures = new CompList<>(INTERNAL);
+    futures.add(initStore("env", envStore::init, reset));
+    futures.add(initStore("deployment", deploymentStore::init, reset));
+    futures.add(initStore("install job", installJobStore::init, reset));
+    if (tenantStore != null) {
+      futures.add(initStore("tenant", tenantStore::init, reset));
+      Future<Void> f = Future.future();
+      moduleStore.init(reset, res -> {
+        if (res.failed()) {
+          f.fail(res.cause());
         } else {
-          tenantStore.init(reset, res3
-            -> moduleStore.init(reset, fut)
-          );
+          f.complete();
         }
-      })
-    );
+      });
+      futures.add(f);
+    }
+    futures.all(fut);
+  }
+
+  private Future<Void> initStore(String name,
+    BiConsumer<Boolean, Handler<ExtendedAsyncResult<Void>>> init, boolean reset) {
+
+    Future<Void> f = Future.future();
+    init.accept(reset, res -> {
+      if (res.failed()) {
+        logger.warn("Init of " + name + " store failed: " + res.cause().getMessage());
+      }
+      f.complete();
+    });
+    return f;
+  }
+
+  /**
+   * Follow the changes that other nodes make to modules and tenants in the
+   * database, for nodes that do not share them through a cluster. Only done
+   * for PostgreSQL with option postgres_listen.
+   *
+   * @param modules called with the id and the new module; null if removed
+   * @param tenants called with the id and the new tenant; null if removed
+   * @param fut callback
+   */
+  public void listen(BiConsumer<String, ModuleDescriptor> modules,
+    BiConsumer<String, Tenant> tenants, Handler<ExtendedAsyncResult<Void>> fut) {
+
+    if (changeListener == null) {
+      fut.handle(new Success<>());
+    } else {
+      changeListener.start(modules, tenants, fut);
+    }
   }
 
   public ModuleStore getModuleStore() {
@@ -104,4 +175,8 @@ public class Storage {
     return envStore;
   }
 
+  public InstallJobStore getInstallJobStore() {
+    return installJobStore;
+  }
+
 }
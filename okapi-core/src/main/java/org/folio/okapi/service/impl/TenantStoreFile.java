@@ -0,0 +1,141 @@
+package org.folio.okapi.service.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.folio.okapi.bean.CanaryDescriptor;
+import org.folio.okapi.bean.Tenant;
+import org.folio.okapi.bean.TenantDescriptor;
+import static org.folio.okapi.common.ErrorType.*;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.common.Failure;
+import org.folio.okapi.common.Messages;
+import org.folio.okapi.common.OkapiLogger;
+import org.folio.okapi.common.Success;
+import org.folio.okapi.service.TenantStore;
+import org.folio.okapi.util.CqlQuery;
+import org.folio.okapi.util.ModuleUtil;
+
+/**
+ * Stores Tenants in local files.
+ */
+public class TenantStoreFile implements TenantStore {
+
+  private final Logger logger = OkapiLogger.get();
+  private final FileTable<Tenant> table;
+  private Messages messages = Messages.getInstance();
+
+  public TenantStoreFile(FileHandle fh) {
+    this.table = new FileTable<>(fh, "tenants", Tenant.class, Tenant::getId);
+  }
+
+  @Override
+  public void init(boolean reset, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.init(reset, fut);
+  }
+
+  @Override
+  public void insert(Tenant t, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.insert(t, fut);
+  }
+
+  @Override
+  public void insertList(List<Tenant> list, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.insertList(list, fut);
+  }
+
+  @Override
+  public void updateDescriptor(TenantDescriptor td,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    Tenant t = table.get(td.getId());
+    Tenant nt;
+    if (t == null) {
+      nt = new Tenant(td);
+    } else {
+      nt = new Tenant(td, t.getEnabled());
+      nt.setCanary(t.getCanary());
+    }
+    table.update(nt, fut);
+  }
+
+  @Override
+  public void listTenants(Handler<ExtendedAsyncResult<List<Tenant>>> fut) {
+    table.getAll(fut);
+  }
+
+  @Override
+  public void query(CqlQuery query, Handler<ExtendedAsyncResult<List<Tenant>>> fut) {
+    table.query(query, "descriptor", fut);
+  }
+
+  @Override
+  public void query(CqlQuery query, int offset, int limit,
+    Handler<ExtendedAsyncResult<List<Tenant>>> fut) {
+
+    query(query, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      List<Tenant> tl = new ArrayList<>(res.result());
+      tl.sort((a, b) -> a.getId().compareTo(b.getId()));
+      fut.handle(new Success<>(ModuleUtil.page(tl, offset, limit)));
+    });
+  }
+
+  @Override
+  public void streamAll(BiConsumer<List<Tenant>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    table.streamAll(batch, fut);
+  }
+
+  @Override
+  public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
+    table.delete(id, fut);
+  }
+
+  @Override
+  public void updateModule(String id, String moduleFrom, String moduleTo,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    JsonObject enabled = new JsonObject();
+    if (moduleFrom != null) {
+      enabled.putNull(moduleFrom);
+    }
+    if (moduleTo != null) {
+      enabled.put(moduleTo, true);
+    }
+    table.patch(id, new JsonObject().put("enabled", enabled), res -> {
+      if (res.failed() && res.getType() == NOT_FOUND) {
+        fut.handle(new Failure<>(NOT_FOUND, messages.getMessage("1100", id)));
+      } else {
+        fut.handle(res);
+      }
+    });
+  }
+
+  @Override
+  public void updateCanary(String id, List<CanaryDescriptor> canary,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    updateTenant(id, t -> t.setCanary(canary), fut);
+  }
+
+  private void updateTenant(String id, Consumer<Tenant> change,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    Tenant t = table.get(id);
+    if (t == null) {
+      fut.handle(new Failure<>(NOT_FOUND, messages.getMessage("1100", id)));
+      return;
+    }
+    change.accept(t);
+    table.update(t, fut);
+  }
+}
@@ -6,8 +6,11 @@ import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.ext.mongo.MongoClient;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.SortedMap;
+import java.util.function.Consumer;
+import java.util.function.BiConsumer;
+import org.folio.okapi.bean.CanaryDescriptor;
 import org.folio.okapi.bean.Tenant;
 import org.folio.okapi.bean.TenantDescriptor;
 import static org.folio.okapi.common.ErrorType.*;
@@ -16,6 +19,8 @@ import org.folio.okapi.common.Failure;
 import org.folio.okapi.common.Messages;
 import org.folio.okapi.common.OkapiLogger;
 import org.folio.okapi.common.Success;
+import org.folio.okapi.util.CqlQuery;
+import org.folio.okapi.util.ModuleUtil;
 
 /**
  * Stores Tenants in a Mongo database.
@@ -40,9 +45,9 @@ public class TenantStoreMongo implements TenantStore {
     return Json.decodeValue(j.encode(), Tenant.class);
   }
 
-  public TenantStoreMongo(MongoClient cli) {
+  public TenantStoreMongo(MongoClient cli, int batchSize) {
     this.cli = cli;
-    this.util = new MongoUtil<>(COLLECTION, cli);
+    this.util = new MongoUtil<>(COLLECTION, cli, batchSize);
   }
 
   @Override
@@ -55,6 +60,11 @@ public class TenantStoreMongo implements TenantStore {
     util.insert(t, t.getId(), fut);
   }
 
+  @Override
+  public void insertList(List<Tenant> list, Handler<ExtendedAsyncResult<Void>> fut) {
+    util.insertList(list, Tenant::getId, fut);
+  }
+
   @Override
   public void updateDescriptor(TenantDescriptor td, Handler<ExtendedAsyncResult<Void>> fut) {
     final String id = td.getId();
@@ -79,6 +89,7 @@ public class TenantStoreMongo implements TenantStore {
           JsonObject d = l.get(0);
           final Tenant t = decodeTenant(d);
           Tenant nt = new Tenant(td, t.getEnabled());
+          nt.setCanary(t.getCanary());
           JsonObject document = encodeTenant(nt, id);
           cli.replaceDocuments(COLLECTION, jq, document, ures -> {
             if (ures.succeeded()) {
@@ -99,31 +110,97 @@ public class TenantStoreMongo implements TenantStore {
     util.getAll(Tenant.class, fut);
   }
 
+  @Override
+  public void query(CqlQuery query, Handler<ExtendedAsyncResult<List<Tenant>>> fut) {
+    util.query(query, "descriptor", Tenant.class, fut);
+  }
+
+  @Override
+  public void query(CqlQuery query, int offset, int limit,
+    Handler<ExtendedAsyncResult<List<Tenant>>> fut) {
+
+    query(query, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(res.getType(), res.cause()));
+        return;
+      }
+      List<Tenant> tl = new ArrayList<>(res.result());
+      tl.sort((a, b) -> a.getId().compareTo(b.getId()));
+      fut.handle(new Success<>(ModuleUtil.page(tl, offset, limit)));
+    });
+  }
+
+  @Override
+  public void streamAll(BiConsumer<List<Tenant>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    util.streamAll(Tenant.class, batch, fut);
+  }
+
   @Override
   public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
     util.delete(id, fut);
   }
 
   @Override
-  public void updateModules(String id, SortedMap<String, Boolean> enabled, Handler<ExtendedAsyncResult<Void>> fut) {
+  public void updateModule(String id, String moduleFrom, String moduleTo,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    // same encoding of module IDs as in MongoUtil.encode
+    JsonObject update = new JsonObject();
+    if (moduleTo != null) {
+      update.put("$set", new JsonObject()
+        .put("enabled." + moduleTo.replace(".", "__"), true));
+    }
+    if (moduleFrom != null && !moduleFrom.equals(moduleTo)) {
+      update.put("$unset", new JsonObject()
+        .put("enabled." + moduleFrom.replace(".", "__"), ""));
+    }
+    if (update.isEmpty()) {
+      fut.handle(new Success<>());
+      return;
+    }
+    JsonObject jq = new JsonObject().put("_id", id);
+    cli.updateCollection(COLLECTION, jq, update, res -> {
+      if (res.failed()) {
+        logger.debug("updateModule failed: " + res.cause().getMessage());
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+      } else if (res.result().getDocMatched() == 0) {
+        fut.handle(new Failure<>(NOT_FOUND, messages.getMessage("1100", id)));
+      } else {
+        fut.handle(new Success<>());
+      }
+    });
+  }
+
+  @Override
+  public void updateCanary(String id, List<CanaryDescriptor> canary,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    updateTenant(id, t -> t.setCanary(canary), fut);
+  }
+
+  private void updateTenant(String id, Consumer<Tenant> change,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
     JsonObject jq = new JsonObject().put("_id", id);
     cli.find(COLLECTION, jq, gres -> {
       if (gres.failed()) {
-        logger.debug("disableModule: find failed: " + gres.cause().getMessage());
+        logger.debug("updateTenant: find failed: " + gres.cause().getMessage());
         fut.handle(new Failure<>(INTERNAL, gres.cause()));
       } else {
         List<JsonObject> l = gres.result();
         if (l.isEmpty()) {
-          logger.debug("disableModule: not found: " + id);
+          logger.debug("updateTenant: not found: " + id);
           fut.handle(new Failure<>(NOT_FOUND, messages.getMessage("1100", id)));
         } else {
           JsonObject d = l.get(0);
           final Tenant t = decodeTenant(d);
-          t.setEnabled(enabled);
+          change.accept(t);
           JsonObject document = encodeTenant(t, id);
           cli.save(COLLECTION, document, sres -> {
             if (sres.failed()) {
-              logger.debug("TenantStoreMongo: disable: saving failed: " + sres.cause().getMessage());
+              logger.debug("TenantStoreMongo: updateTenant: saving failed: " + sres.cause().getMessage());
               fut.handle(new Failure<>(INTERNAL, sres.cause()));
             } else {
               fut.handle(new Success<>());
@@ -133,5 +210,4 @@ public class TenantStoreMongo implements TenantStore {
       }
     });
   }
-
 }
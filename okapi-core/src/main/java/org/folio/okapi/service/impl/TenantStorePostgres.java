@@ -9,7 +9,9 @@ import io.vertx.core.logging.Logger;
 import io.vertx.ext.sql.ResultSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.SortedMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.folio.okapi.bean.CanaryDescriptor;
 import org.folio.okapi.bean.Tenant;
 import org.folio.okapi.bean.TenantDescriptor;
 import static org.folio.okapi.common.ErrorType.*;
@@ -18,6 +20,7 @@ import org.folio.okapi.common.Failure;
 import org.folio.okapi.common.Messages;
 import org.folio.okapi.common.OkapiLogger;
 import org.folio.okapi.common.Success;
+import org.folio.okapi.util.CqlQuery;
 
 /**
  * Stores Tenants in Postgres.
@@ -27,16 +30,27 @@ public class TenantStorePostgres implements TenantStore {
 
   private final Logger logger = OkapiLogger.get();
   private final PostgresHandle pg;
-  private static final String TABLE = "tenants";
+  static final String TABLE = "tenants";
   private static final String JSON_COLUMN = "tenantjson";
   private static final String ID_SELECT = JSON_COLUMN + "->'descriptor'->>'id' = ?";
   private static final String ID_INDEX = JSON_COLUMN + "->'descriptor'->'id'";
   private final PostgresTable<Tenant> pgTable;
   private Messages messages = Messages.getInstance();
+  private static final String ENABLED = "COALESCE(" + JSON_COLUMN
+    + "->'enabled', '{}'::JSONB)";
+  private static final String UPDATE_ENABLED = "UPDATE " + TABLE + " SET "
+    + JSON_COLUMN + " = jsonb_set(" + JSON_COLUMN + ", '{enabled}', ";
+  private static final String DISABLE_SQL = UPDATE_ENABLED
+    + ENABLED + " - ?) WHERE " + ID_SELECT;
+  private static final String ENABLE_SQL = UPDATE_ENABLED
+    + ENABLED + " || jsonb_build_object(?::TEXT, true)) WHERE " + ID_SELECT;
+  private static final String REPLACE_SQL = UPDATE_ENABLED
+    + "(" + ENABLED + " - ?) || jsonb_build_object(?::TEXT, true)) WHERE " + ID_SELECT;
 
   public TenantStorePostgres(PostgresHandle pg) {
     this.pg = pg;
     this.pgTable = new PostgresTable<>(pg, TABLE, JSON_COLUMN, ID_INDEX, ID_SELECT, "tenant_id");
+    this.pgTable.setQueryIndex(true);
   }
 
   @Override
@@ -49,6 +63,11 @@ public class TenantStorePostgres implements TenantStore {
     pgTable.insert(t, fut);
   }
 
+  @Override
+  public void insertList(List<Tenant> list, Handler<ExtendedAsyncResult<Void>> fut) {
+    pgTable.insertList(list, fut);
+  }
+
   @Override
   public void updateDescriptor(TenantDescriptor td,
     Handler<ExtendedAsyncResult<Void>> fut) {
@@ -62,13 +81,36 @@ public class TenantStorePostgres implements TenantStore {
     pgTable.getAll(Tenant.class, fut);
   }
 
+  @Override
+  public void query(CqlQuery query, Handler<ExtendedAsyncResult<List<Tenant>>> fut) {
+    pgTable.query(query, "descriptor", Tenant.class, fut);
+  }
+
+  @Override
+  public void query(CqlQuery query, int offset, int limit,
+    Handler<ExtendedAsyncResult<List<Tenant>>> fut) {
+
+    pgTable.query(query, "descriptor", Tenant.class, offset, limit, fut);
+  }
+
+  @Override
+  public void streamAll(BiConsumer<List<Tenant>, Handler<ExtendedAsyncResult<Void>>> batch,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    pgTable.streamAll(Tenant.class, batch, fut);
+  }
+
   @Override
   public void delete(String id, Handler<ExtendedAsyncResult<Void>> fut) {
     pgTable.delete(id, fut);
   }
 
-  private void updateModuleR(PostgresQuery q, String id,
-    SortedMap<String, Boolean> enabled,
+  public void get(String id, Handler<ExtendedAsyncResult<Tenant>> fut) {
+    pgTable.get(id, Tenant.class, fut);
+  }
+
+  private void updateTenantR(PostgresQuery q, String id,
+    Consumer<Tenant> change,
     Iterator<JsonObject> it, Handler<ExtendedAsyncResult<Void>> fut) {
 
     if (it.hasNext()) {
@@ -76,7 +118,7 @@ public class TenantStorePostgres implements TenantStore {
       String sql = "UPDATE " + TABLE + " SET " + JSON_COLUMN + " = ? WHERE " + ID_SELECT;
       String tj = r.getString(JSON_COLUMN);
       Tenant t = Json.decodeValue(tj, Tenant.class);
-      t.setEnabled(enabled);
+      change.accept(t);
       String s = Json.encode(t);
       JsonObject doc = new JsonObject(s);
       JsonArray jsa = new JsonArray();
@@ -86,7 +128,7 @@ public class TenantStorePostgres implements TenantStore {
         if (res.failed()) {
           fut.handle(new Failure<>(INTERNAL, res.cause()));
         } else {
-          updateModuleR(q, id, enabled, it, fut);
+          updateTenantR(q, id, change, it, fut);
         }
       });
     } else {
@@ -96,17 +138,57 @@ public class TenantStorePostgres implements TenantStore {
   }
 
   @Override
-  public void updateModules(String id, SortedMap<String, Boolean> enabled,
+  public void updateModule(String id, String moduleFrom, String moduleTo,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    JsonArray jsa = new JsonArray();
+    String sql;
+    if (moduleFrom != null && moduleTo != null) {
+      sql = REPLACE_SQL;
+      jsa.add(moduleFrom).add(moduleTo);
+    } else if (moduleFrom != null) {
+      sql = DISABLE_SQL;
+      jsa.add(moduleFrom);
+    } else if (moduleTo != null) {
+      sql = ENABLE_SQL;
+      jsa.add(moduleTo);
+    } else {
+      fut.handle(new Success<>());
+      return;
+    }
+    jsa.add(id);
+    PostgresQuery q = pg.getQuery(TABLE);
+    q.updateWithParams(sql, jsa, res -> {
+      if (res.failed()) {
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+        return;
+      }
+      if (res.result().getUpdated() > 0) {
+        fut.handle(new Success<>());
+      } else {
+        fut.handle(new Failure<>(NOT_FOUND, messages.getMessage("1100", id)));
+      }
+      q.close();
+    });
+  }
+
+  @Override
+  public void updateCanary(String id, List<CanaryDescriptor> canary,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    updateTenant(id, t -> t.setCanary(canary), fut);
+  }
+
+  private void updateTenant(String id, Consumer<Tenant> change,
     Handler<ExtendedAsyncResult<Void>> fut) {
 
-    logger.debug("updateModules " + Json.encode(enabled.keySet()));
-    PostgresQuery q = pg.getQuery();
+    PostgresQuery q = pg.getQuery(TABLE);
     String sql = "SELECT " + JSON_COLUMN + " FROM " + TABLE + " WHERE " + ID_SELECT;
     JsonArray jsa = new JsonArray();
     jsa.add(id);
     q.queryWithParams(sql, jsa, res -> {
       if (res.failed()) {
-        logger.fatal("updateModule failed: " + res.cause().getMessage());
+        logger.fatal("updateTenant failed: " + res.cause().getMessage());
         fut.handle(new Failure<>(INTERNAL, res.cause()));
       } else {
         ResultSet rs = res.result();
@@ -115,7 +197,7 @@ public class TenantStorePostgres implements TenantStore {
           q.close();
         } else {
           logger.debug("update: replace");
-          updateModuleR(q, id, enabled, rs.getRows().iterator(), fut);
+          updateTenantR(q, id, change, rs.getRows().iterator(), fut);
         }
       }
     });
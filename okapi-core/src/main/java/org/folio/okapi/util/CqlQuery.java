@@ -0,0 +1,327 @@
+package org.folio.okapi.util;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.folio.okapi.common.CQLUtil;
+import org.folio.okapi.common.Messages;
+import org.z3950.zing.cql.CQLBooleanNode;
+import org.z3950.zing.cql.CQLNode;
+import org.z3950.zing.cql.CQLParseException;
+import org.z3950.zing.cql.CQLParser;
+import org.z3950.zing.cql.CQLPrefixNode;
+import org.z3950.zing.cql.CQLSortNode;
+import org.z3950.zing.cql.CQLTermNode;
+import org.z3950.zing.cql.Modifier;
+import org.z3950.zing.cql.ModifierSet;
+
+/**
+ * A CQL query for listing records, evaluated against their JSON.
+ *
+ * An index is a path of JSON members separated by dots, like provides.id;
+ * arrays on the way are searched, so a term matches if any of the values
+ * matches. A term without index searches the id. The relations are = (with
+ * * and ? as wildcards), == (exact), &lt;&gt; (no value is equal), and &lt;,
+ * &gt;, &lt;= and &gt;=, which compare numbers as numbers and anything else
+ * as strings. cql.allRecords=1 matches everything. A query may end with
+ * sortby and one or more indexes, each optionally with modifier
+ * /sort.descending.
+ *
+ * The storage modules use the tree to select, in the database, a set of
+ * records that includes all that match, so that {@link #matches} has fewer
+ * records to check.
+ */
+public class CqlQuery {
+
+  public static final String ID = "id";
+  private static final String ALL_RECORDS = "cql.allRecords";
+  private static final Pattern INDEX = Pattern.compile("[A-Za-z0-9_]+(\\.[A-Za-z0-9_]+)*");
+  private static final List<String> RELATIONS
+    = Arrays.asList("=", "==", "<>", "<", ">", "<=", ">=");
+
+  private static Messages messages = Messages.getInstance();
+
+  private final CQLNode tree;
+  private final List<String> sortIndexes = new ArrayList<>();
+  private final List<Boolean> sortDescending = new ArrayList<>();
+
+  /**
+   * Parse a query.
+   *
+   * @param cql query
+   * @throws DecodeException if the query is not valid or uses what is not
+   * supported
+   */
+  public CqlQuery(String cql) {
+    CQLNode top;
+    try {
+      top = new CQLParser(CQLParser.V1POINT2).parse(cql);
+    } catch (CQLParseException | IOException ex) {
+      throw new DecodeException(messages.getMessage("11608", "query", ex.getMessage()));
+    }
+    while (top instanceof CQLPrefixNode) {
+      top = ((CQLPrefixNode) top).getSubtree();
+    }
+    if (top instanceof CQLSortNode) {
+      CQLSortNode sn = (CQLSortNode) top;
+      for (ModifierSet ms : sn.getSortIndexes()) {
+        checkIndex(ms.getBase());
+        boolean descending = false;
+        for (Modifier m : ms.getModifiers()) {
+          if ("sort.descending".equals(m.getType()) || "descending".equals(m.getType())) {
+            descending = true;
+          }
+        }
+        sortIndexes.add(ms.getBase());
+        sortDescending.add(descending);
+      }
+      top = sn.getSubtree();
+    }
+    check(top);
+    this.tree = top;
+  }
+
+  private static void check(CQLNode node) {
+    if (node instanceof CQLBooleanNode) {
+      check(((CQLBooleanNode) node).getLeftOperand());
+      check(((CQLBooleanNode) node).getRightOperand());
+    } else if (node instanceof CQLPrefixNode) {
+      check(((CQLPrefixNode) node).getSubtree());
+    } else if (node instanceof CQLTermNode) {
+      CQLTermNode n = (CQLTermNode) node;
+      checkIndex(index(n));
+      if (!RELATIONS.contains(n.getRelation().getBase())) {
+        throw new DecodeException(messages.getMessage("12000", n.getRelation().getBase()));
+      }
+    } else {
+      throw new DecodeException(messages.getMessage("12001", node.toCQL()));
+    }
+  }
+
+  private static void checkIndex(String index) {
+    if (!INDEX.matcher(index).matches()) {
+      throw new DecodeException(messages.getMessage("12002", index));
+    }
+  }
+
+  /**
+   * Get the query without sortby.
+   *
+   * @return tree of the query
+   */
+  public CQLNode getTree() {
+    return tree;
+  }
+
+  /**
+   * Whether the query ends with sortby.
+   *
+   * @return true if {@link #sort} changes the order
+   */
+  public boolean isSorted() {
+    return !sortIndexes.isEmpty();
+  }
+
+  /**
+   * Get the index of a term.
+   *
+   * @param n term
+   * @return index; id if the term has none
+   */
+  public static String index(CQLTermNode n) {
+    final String index = n.getIndex();
+    return index.startsWith("cql.serverChoice") ? ID : index;
+  }
+
+  /**
+   * Whether a term matches all records.
+   *
+   * @param n term
+   * @return true for cql.allRecords
+   */
+  public static boolean isAllRecords(CQLTermNode n) {
+    return n.getIndex().equalsIgnoreCase(ALL_RECORDS);
+  }
+
+  /**
+   * Split the term of relation = at the wildcards.
+   *
+   * @param term the term
+   * @return the literal parts; a wildcard at the start or end gives an empty
+   * first or last part. One part if there is no wildcard
+   */
+  public static List<String> literals(String term) {
+    List<String> parts = new ArrayList<>();
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; i < term.length(); i++) {
+      char c = term.charAt(i);
+      if (c == '\\' && i + 1 < term.length()) {
+        b.append(term.charAt(++i));
+      } else if (c == '*' || c == '?') {
+        parts.add(b.toString());
+        b.setLength(0);
+      } else {
+        b.append(c);
+      }
+    }
+    parts.add(b.toString());
+    return parts;
+  }
+
+  private static Pattern wildcardPattern(String term) {
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; i < term.length(); i++) {
+      char c = term.charAt(i);
+      if (c == '\\' && i + 1 < term.length()) {
+        b.append(Pattern.quote(String.valueOf(term.charAt(++i))));
+      } else if (c == '*') {
+        b.append(".*");
+      } else if (c == '?') {
+        b.append('.');
+      } else {
+        b.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return Pattern.compile(b.toString(), Pattern.DOTALL);
+  }
+
+  /**
+   * Check a record.
+   *
+   * @param o the record as JSON
+   * @return whether the query matches
+   */
+  public boolean matches(JsonObject o) {
+    return CQLUtil.eval(tree, n -> matchTerm(n, o));
+  }
+
+  private static boolean matchTerm(CQLTermNode n, JsonObject o) {
+    if (isAllRecords(n)) {
+      return true;
+    }
+    List<Object> values = new ArrayList<>();
+    collect(o, index(n).split("\\."), 0, values);
+    final String rel = n.getRelation().getBase();
+    final String term = n.getTerm();
+    if ("<>".equals(rel)) {
+      for (Object v : values) {
+        if (String.valueOf(v).equals(term)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (Object v : values) {
+      if (matchValue(rel, term, v)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchValue(String rel, String term, Object v) {
+    final String s = String.valueOf(v);
+    switch (rel) {
+      case "==":
+        return s.equals(term);
+      case "=":
+        List<String> parts = literals(term);
+        if (parts.size() == 1) {
+          return s.equals(parts.get(0));
+        }
+        return wildcardPattern(term).matcher(s).matches();
+      default:
+        int c = compare(v, term);
+        switch (rel) {
+          case "<":
+            return c < 0;
+          case ">":
+            return c > 0;
+          case "<=":
+            return c <= 0;
+          default:
+            return c >= 0;
+        }
+    }
+  }
+
+  private static int compare(Object v, String term) {
+    if (v instanceof Number) {
+      try {
+        return Double.compare(((Number) v).doubleValue(), Double.parseDouble(term));
+      } catch (NumberFormatException ex) {
+        // compared as strings
+      }
+    }
+    return String.valueOf(v).compareTo(term);
+  }
+
+  private static void collect(Object v, String[] path, int i, List<Object> values) {
+    if (v instanceof JsonArray) {
+      for (Object e : (JsonArray) v) {
+        collect(e, path, i, values);
+      }
+    } else if (i == path.length) {
+      if (v != null && !(v instanceof JsonObject)) {
+        values.add(v);
+      }
+    } else if (v instanceof JsonObject) {
+      collect(((JsonObject) v).getValue(path[i]), path, i + 1, values);
+    }
+  }
+
+  /**
+   * Sort records by the sortby indexes of the query, if any. The sort is
+   * stable, so records that are equal stay in the order they were. Records
+   * without a value for an index come after those with one.
+   *
+   * @param <T> type of records
+   * @param list records, which are encoded to JSON to find the values
+   */
+  public <T> void sort(List<T> list) {
+    if (sortIndexes.isEmpty()) {
+      return;
+    }
+    Map<T, List<String>> keys = new IdentityHashMap<>();
+    for (T t : list) {
+      JsonObject o = new JsonObject(Json.encode(t));
+      List<String> k = new ArrayList<>();
+      for (String index : sortIndexes) {
+        List<Object> values = new ArrayList<>();
+        collect(o, index.split("\\."), 0, values);
+        k.add(values.isEmpty() ? null : String.valueOf(values.get(0)));
+      }
+      keys.put(t, k);
+    }
+    list.sort((a, b) -> {
+      List<String> ka = keys.get(a);
+      List<String> kb = keys.get(b);
+      for (int i = 0; i < ka.size(); i++) {
+        int c = compareKey(ka.get(i), kb.get(i), sortDescending.get(i));
+        if (c != 0) {
+          return c;
+        }
+      }
+      return 0;
+    });
+  }
+
+  // records without a value come last, in either direction
+  private static int compareKey(String a, String b, boolean descending) {
+    if (a == null) {
+      return b == null ? 0 : 1;
+    }
+    if (b == null) {
+      return -1;
+    }
+    return descending ? b.compareTo(a) : a.compareTo(b);
+  }
+}
@@ -2,6 +2,7 @@ package org.folio.okapi.util;
 
 import io.vertx.core.Handler;
 import io.vertx.core.logging.Logger;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -482,6 +483,80 @@ public class DepResolution {
     return sum + 1;
   }
 
+  /**
+   * Split an install plan into levels that can be executed one after the
+   * other, with the entries of each level executed concurrently. An entry
+   * is placed after every earlier entry that it is related to, where two
+   * entries are related if a module of one provides a (non-system)
+   * interface that a module of the other requires. Related entries are thus
+   * executed in the same order as in the plan.
+   *
+   * @param modsAvailable all modules, for looking up entry ids
+   * @param tml install plan, as returned by installSimulate
+   * @return levels; each level in plan order
+   */
+  public static List<List<TenantModuleDescriptor>> installLevels(
+    Map<String, ModuleDescriptor> modsAvailable,
+    List<TenantModuleDescriptor> tml) {
+
+    List<List<ModuleDescriptor>> mods = new ArrayList<>(tml.size());
+    for (TenantModuleDescriptor tm : tml) {
+      List<ModuleDescriptor> l = new LinkedList<>();
+      if (tm.getAction() == TenantModuleDescriptor.Action.enable
+        || tm.getAction() == TenantModuleDescriptor.Action.disable) {
+        addIfFound(modsAvailable, tm.getId(), l);
+        addIfFound(modsAvailable, tm.getFrom(), l);
+      }
+      mods.add(l);
+    }
+    int[] level = new int[tml.size()];
+    List<List<TenantModuleDescriptor>> levels = new ArrayList<>();
+    for (int j = 0; j < tml.size(); j++) {
+      for (int i = 0; i < j; i++) {
+        if (level[i] >= level[j] && related(mods.get(i), mods.get(j))) {
+          level[j] = level[i] + 1;
+        }
+      }
+      while (levels.size() <= level[j]) {
+        levels.add(new LinkedList<>());
+      }
+      levels.get(level[j]).add(tml.get(j));
+    }
+    return levels;
+  }
+
+  private static void addIfFound(Map<String, ModuleDescriptor> modsAvailable,
+    String id, List<ModuleDescriptor> l) {
+
+    if (id != null && modsAvailable.containsKey(id)) {
+      l.add(modsAvailable.get(id));
+    }
+  }
+
+  private static boolean related(List<ModuleDescriptor> a, List<ModuleDescriptor> b) {
+    for (ModuleDescriptor ma : a) {
+      for (ModuleDescriptor mb : b) {
+        if (providesRequired(ma, mb) || providesRequired(mb, ma)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean providesRequired(ModuleDescriptor prov, ModuleDescriptor req) {
+    for (InterfaceDescriptor pi : prov.getProvidesList()) {
+      if (!pi.isType("system")) {
+        for (InterfaceDescriptor ri : req.getRequiresList()) {
+          if (pi.getId().equals(ri.getId())) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
   public static List<ModuleDescriptor> getLatestProducts(int limit, List<ModuleDescriptor> mdl) {
 
     Collections.sort(mdl, Collections.reverseOrder());
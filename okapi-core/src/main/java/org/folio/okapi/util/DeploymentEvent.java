@@ -0,0 +1,37 @@
+package org.folio.okapi.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for deployment or undeployment of a module instance
+ * on this node. Created through {@link OkapiEvents} only.
+ */
+@Name("org.folio.okapi.Deployment")
+@Label("Deployment")
+@Description("Deploy or undeploy of a module instance")
+@Category({"Okapi", "Deployment"})
+@StackTrace(false)
+public final class DeploymentEvent extends jdk.jfr.Event {
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Service Id")
+  String srvcId;
+
+  @Label("Instance Id")
+  String instId;
+
+  @Label("URL")
+  String url;
+
+  @Label("Success")
+  boolean success;
+
+  DeploymentEvent() {
+  }
+}
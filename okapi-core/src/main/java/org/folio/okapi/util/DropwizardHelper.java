@@ -79,6 +79,19 @@ public class DropwizardHelper {
     return timer.time();
   }
 
+  /**
+   * Update a timer with a duration measured elsewhere.
+   * Used when the start and end of an operation are not in the same place,
+   * for example the phases of a proxied request.
+   * @param metricKey
+   * @param duration
+   * @param unit
+   */
+  public static void updateTimer(String metricKey, long duration, TimeUnit unit) {
+    SharedMetricRegistries.getOrCreate("okapi").timer(metricKey)
+      .update(duration, unit);
+  }
+
   /**
    * Mark an event.
    * Tells the metrics system that an event has occurred, for example a request
@@ -0,0 +1,26 @@
+package org.folio.okapi.util;
+
+/**
+ * Receives progress of an install or upgrade, module by module. The module
+ * identifies the entry of the install plan; the stage is one of deploy,
+ * enable, disable or undeploy.
+ */
+public interface InstallProgress {
+
+  /**
+   * A stage for a module has started.
+   *
+   * @param moduleId module of install plan
+   * @param stage stage name
+   */
+  void begin(String moduleId, String stage);
+
+  /**
+   * A stage for a module has completed.
+   *
+   * @param moduleId module of install plan
+   * @param stage stage name
+   * @param cause null on success; reason otherwise
+   */
+  void end(String moduleId, String stage, Throwable cause);
+}
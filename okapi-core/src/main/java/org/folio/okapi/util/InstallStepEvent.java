@@ -0,0 +1,35 @@
+package org.folio.okapi.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one step of a tenant install or upgrade.
+ * Created through {@link OkapiEvents} only.
+ */
+@Name("org.folio.okapi.InstallStep")
+@Label("Install Step")
+@Description("One step of a tenant install: deploy, enable, disable or undeploy of a module")
+@Category({"Okapi", "Tenant"})
+@StackTrace(false)
+public final class InstallStepEvent extends jdk.jfr.Event {
+
+  @Label("Tenant")
+  @Description("Tenant id; * for deploy and undeploy shared by the tenants of a bulk install")
+  String tenant;
+
+  @Label("Module")
+  String module;
+
+  @Label("Step")
+  String step;
+
+  @Label("Success")
+  boolean success;
+
+  InstallStepEvent() {
+  }
+}
@@ -0,0 +1,134 @@
+package org.folio.okapi.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.streams.WriteStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Writes a list as a JSON array, one element at a time, so that the JSON of
+ * the whole list is never held in memory. The output is the same as that of
+ * Json.encodePrettily, or Json.encode if not pretty.
+ *
+ * @param <T> type of elements
+ */
+public class JsonListWriter<T> {
+
+  static final int CHUNK_SIZE = 65536;
+
+  private final List<T> list;
+  private final boolean pretty;
+  private boolean closed;
+  private Handler<AsyncResult<Void>> done;
+
+  /**
+   * Create writer.
+   *
+   * @param list elements, which must not change while written
+   * @param pretty whether to indent
+   */
+  public JsonListWriter(List<T> list, boolean pretty) {
+    this.list = list;
+    this.pretty = pretty;
+  }
+
+  /**
+   * Encode the whole list.
+   *
+   * @return the JSON
+   */
+  public Buffer toBuffer() {
+    return Buffer.buffer(pretty ? Json.encodePrettily(list) : Json.encode(list));
+  }
+
+  /**
+   * Write the list to a stream, in chunks of about 64 KB. When the write
+   * queue of the stream is full, writing continues when it drains. The
+   * stream is not ended. A writer can be used for one write only.
+   *
+   * @param ws stream, such as an HTTP response that is chunked
+   * @param done called once: when all is written, or encoding or writing
+   * failed, or the writer was closed
+   */
+  public void write(WriteStream<Buffer> ws, Handler<AsyncResult<Void>> done) {
+    this.done = done;
+    final ObjectMapper mapper = pretty ? Json.prettyMapper : Json.mapper;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final JsonGenerator gen;
+    try {
+      gen = mapper.getFactory().createGenerator(out);
+      if (pretty) {
+        gen.useDefaultPrettyPrinter();
+      }
+      gen.writeStartArray();
+    } catch (IOException ex) {
+      finish(Future.failedFuture(new EncodeException(ex.getMessage())));
+      return;
+    }
+    writeR(list.iterator(), mapper, gen, out, ws);
+  }
+
+  /**
+   * Stop writing, because the stream was closed. Nothing more is written,
+   * and the handler of write is called with a failure, unless it was called
+   * already. Without this, a write that waits for the stream to drain would
+   * never complete.
+   */
+  public void close() {
+    closed = true;
+    finish(Future.failedFuture("Stream closed"));
+  }
+
+  private void finish(AsyncResult<Void> res) {
+    Handler<AsyncResult<Void>> h = done;
+    done = null;
+    if (h != null) {
+      h.handle(res);
+    }
+  }
+
+  private void writeR(Iterator<T> it, ObjectMapper mapper, JsonGenerator gen,
+    ByteArrayOutputStream out, WriteStream<Buffer> ws) {
+
+    try {
+      while (!closed && it.hasNext()) {
+        mapper.writeValue(gen, it.next());
+        gen.flush();
+        if (out.size() >= CHUNK_SIZE) {
+          ws.write(Buffer.buffer(out.toByteArray()));
+          out.reset();
+          if (ws.writeQueueFull()) {
+            ws.drainHandler(v -> {
+              ws.drainHandler(null);
+              writeR(it, mapper, gen, out, ws);
+            });
+            return;
+          }
+        }
+      }
+      if (closed) {
+        return;
+      }
+      gen.writeEndArray();
+      gen.close();
+      ws.write(Buffer.buffer(out.toByteArray()));
+    } catch (IOException ex) {
+      finish(Future.failedFuture(new EncodeException(ex.getMessage())));
+      return;
+    } catch (RuntimeException ex) {
+      // such as IllegalStateException when the response is closed
+      finish(Future.failedFuture(ex));
+      return;
+    }
+    finish(Future.succeededFuture());
+  }
+}
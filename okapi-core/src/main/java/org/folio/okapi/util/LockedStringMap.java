@@ -10,11 +10,14 @@ import io.vertx.core.Vertx;
 import io.vertx.core.json.Json;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.shareddata.AsyncMap;
+import io.vertx.core.shareddata.Counter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 import static org.folio.okapi.common.ErrorType.*;
 import org.folio.okapi.common.Messages;
 import org.folio.okapi.common.OkapiLogger;
@@ -29,6 +32,9 @@ public class LockedStringMap {
 
   private AsyncMap<String, String> list = null;
   private Vertx vertx = null;
+  // version of the map, shared by all nodes; null if the map is local
+  private Counter counter = null;
+  private final AtomicLong localVersion = new AtomicLong(firstVersion());
   private static final int DELAY = 10; // ms in recursing for retry of map
   protected final Logger logger = OkapiLogger.get();
   private Messages messages = Messages.getInstance();
@@ -36,15 +42,80 @@ public class LockedStringMap {
   public void init(Vertx vertx, String mapName, Handler<ExtendedAsyncResult<Void>> fut) {
     this.vertx = vertx;
     AsyncMapFactory.<String, String>create(vertx, mapName, res -> {
-      if (res.succeeded()) {
-        this.list = res.result();
+      if (res.failed()) {
+        fut.handle(new Failure<>(INTERNAL, res.cause()));
+        return;
+      }
+      this.list = res.result();
+      if (!vertx.isClustered() || mapName == null) {
         fut.handle(new Success<>());
-      } else {
+        return;
+      }
+      vertx.sharedData().getCounter(mapName + ".version", cres -> {
+        if (cres.failed()) {
+          fut.handle(new Failure<>(INTERNAL, cres.cause()));
+          return;
+        }
+        // the first node of the cluster starts the versions
+        cres.result().compareAndSet(0, firstVersion(), sres -> {
+          if (sres.failed()) {
+            fut.handle(new Failure<>(INTERNAL, sres.cause()));
+          } else {
+            this.counter = cres.result();
+            fut.handle(new Success<>());
+          }
+        });
+      });
+    });
+  }
+
+  /*
+   * Versions start at the time in microseconds, so that they are not
+   * repeated after a restart, unless the map changed more than once per
+   * microsecond on average.
+   */
+  private static long firstVersion() {
+    return System.currentTimeMillis() * 1000;
+  }
+
+  /**
+   * Get the version of the map, which increases with every change. In a
+   * cluster, all nodes see the same version.
+   *
+   * @param fut callback with the version
+   */
+  public void getVersion(Handler<ExtendedAsyncResult<Long>> fut) {
+    if (counter == null) {
+      fut.handle(new Success<>(localVersion.get()));
+      return;
+    }
+    counter.get(res -> {
+      if (res.failed()) {
         fut.handle(new Failure<>(INTERNAL, res.cause()));
+      } else {
+        fut.handle(new Success<>(res.result()));
       }
     });
   }
 
+  /*
+   * Increase the version after a change, then report the change.
+   */
+  private <T> void changed(T result, Handler<ExtendedAsyncResult<T>> fut) {
+    if (counter == null) {
+      localVersion.incrementAndGet();
+      fut.handle(new Success<>(result));
+      return;
+    }
+    counter.incrementAndGet(res -> {
+      if (res.failed()) {
+        // the change is made; only conditional requests may miss it
+        logger.warn("Failed to increase version: " + res.cause().getMessage());
+      }
+      fut.handle(new Success<>(result));
+    });
+  }
+
   public void size(Handler<AsyncResult<Integer>> fut) {
     list.size(fut);
   }
@@ -143,7 +214,7 @@ public class LockedStringMap {
       list.putIfAbsent(k, newVal, resPut -> {
         if (resPut.succeeded()) {
           if (resPut.result() == null) {
-            fut.handle(new Success<>());
+            changed(null, fut);
           } else { // Someone messed with it, try again
             vertx.setTimer(DELAY, res
               -> addOrReplace(allowReplace, k, k2, value, fut));
@@ -156,7 +227,7 @@ public class LockedStringMap {
       list.replaceIfPresent(k, oldVal, newVal, resRepl -> {
         if (resRepl.succeeded()) {
           if (resRepl.result()) {
-            fut.handle(new Success<>());
+            changed(null, fut);
           } else {
             vertx.setTimer(DELAY, res
               -> addOrReplace(allowReplace, k, k2, value, fut));
@@ -168,6 +239,40 @@ public class LockedStringMap {
     }
   }
 
+  /**
+   * Change an existing value. The change is applied to the current value,
+   * and applied again to the value that replaced it if another node
+   * changed it in the meantime, so no change is lost.
+   *
+   * @param k key
+   * @param change computes the new value from the old one
+   * @param fut callback; NOT_FOUND if there is no value for the key
+   */
+  public void replace(String k, UnaryOperator<String> change,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    list.get(k, resGet -> {
+      if (resGet.failed()) {
+        fut.handle(new Failure<>(INTERNAL, resGet.cause()));
+        return;
+      }
+      String oldVal = resGet.result();
+      if (oldVal == null) {
+        fut.handle(new Failure<>(NOT_FOUND, k));
+        return;
+      }
+      list.replaceIfPresent(k, oldVal, change.apply(oldVal), resRepl -> {
+        if (resRepl.failed()) {
+          fut.handle(new Failure<>(INTERNAL, resRepl.cause()));
+        } else if (resRepl.result()) {
+          changed(null, fut);
+        } else {
+          vertx.setTimer(DELAY, res -> replace(k, change, fut));
+        }
+      });
+    });
+  }
+
   public void remove(String k, Handler<ExtendedAsyncResult<Boolean>> fut) {
     remove(k, null, fut);
   }
@@ -205,7 +310,7 @@ public class LockedStringMap {
       list.removeIfPresent(k, val, resDel -> {
         if (resDel.succeeded()) {
           if (resDel.result()) {
-            fut.handle(new Success<>(true));
+            changed(true, fut);
           } else {
             vertx.setTimer(DELAY, res -> remove(k, k2, fut));
           }
@@ -218,7 +323,7 @@ public class LockedStringMap {
       list.replaceIfPresent(k, val, newVal, resPut -> {
         if (resPut.succeeded()) {
           if (resPut.result()) {
-            fut.handle(new Success<>(false));
+            changed(false, fut);
           } else {
             vertx.setTimer(DELAY, res -> remove(k, k2, fut));
           }
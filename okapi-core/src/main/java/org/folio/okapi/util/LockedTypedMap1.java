@@ -8,6 +8,7 @@ import io.vertx.core.Handler;
 import io.vertx.core.json.Json;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.function.Consumer;
 import static org.folio.okapi.common.ErrorType.INTERNAL;
 
 public class LockedTypedMap1<T> extends LockedStringMap {
@@ -28,6 +29,22 @@ public class LockedTypedMap1<T> extends LockedStringMap {
     addOrReplace(true, k, null, json, fut);
   }
 
+  /**
+   * Change an existing record in one step, even if other nodes change it at
+   * the same time.
+   *
+   * @param k key
+   * @param change applied to the current record
+   * @param fut callback; NOT_FOUND if there is no record for the key
+   */
+  public void update(String k, Consumer<T> change, Handler<ExtendedAsyncResult<Void>> fut) {
+    replace(k, json -> {
+      T t = Json.decodeValue(json, clazz);
+      change.accept(t);
+      return Json.encode(t);
+    }, fut);
+  }
+
   public void get(String k, Handler<ExtendedAsyncResult<T>> fut) {
     getString(k, null, res -> {
       if (res.failed()) {
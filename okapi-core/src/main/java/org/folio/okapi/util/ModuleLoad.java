@@ -0,0 +1,176 @@
+package org.folio.okapi.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load on module instances as seen by the proxy on this node: requests in
+ * progress and response times, by instance URL. Also counts requests that
+ * have picked an instance but may not have called it yet, so that an
+ * instance is not stopped under them. Must only be used from the event loop
+ * of the verticle that proxies.
+ */
+public class ModuleLoad {
+
+  /**
+   * Load of one instance over a period.
+   */
+  public static class Sample {
+    private final double inFlight;
+    private final long requests;
+    private final double latency;
+
+    Sample(double inFlight, long requests, double latency) {
+      this.inFlight = inFlight;
+      this.requests = requests;
+      this.latency = latency;
+    }
+
+    /**
+     * Get average number of requests in progress over the period.
+     *
+     * @return average number of requests
+     */
+    public double getInFlight() {
+      return inFlight;
+    }
+
+    /**
+     * Get number of requests that completed in the period.
+     *
+     * @return number of requests
+     */
+    public long getRequests() {
+      return requests;
+    }
+
+    /**
+     * Get average response time of the requests that completed in the period.
+     *
+     * @return milliseconds; 0 if there were no such requests
+     */
+    public double getLatency() {
+      return latency;
+    }
+  }
+
+  private static class Stats {
+    private int inFlight;
+    private long requests;
+    private long nanos;
+    // requests in progress integrated over time, since last sample
+    private long area;
+    private long last;
+    private long since;
+
+    Stats(long now) {
+      last = now;
+      since = now;
+    }
+
+    void advance(long now) {
+      area += inFlight * (now - last);
+      last = now;
+    }
+  }
+
+  private final Map<String, Stats> stats = new HashMap<>();
+  private final Map<String, Integer> reserved = new HashMap<>();
+
+  /**
+   * Register that a request has picked an instance. It must be released
+   * when the request is done.
+   *
+   * @param url instance URL
+   */
+  public void reserve(String url) {
+    reserved.merge(url, 1, Integer::sum);
+  }
+
+  /**
+   * Release an instance picked by a request.
+   *
+   * @param url instance URL
+   */
+  public void release(String url) {
+    reserved.computeIfPresent(url, (k, v) -> v > 1 ? v - 1 : null);
+  }
+
+  /**
+   * Get number of requests that have picked an instance and are not done.
+   *
+   * @param url instance URL
+   * @return number of requests
+   */
+  public int getReserved(String url) {
+    return reserved.getOrDefault(url, 0);
+  }
+
+  /**
+   * Register start of a request to an instance.
+   *
+   * @param url instance URL
+   */
+  public void begin(String url) {
+    final long now = System.nanoTime();
+    Stats s = stats.computeIfAbsent(url, x -> new Stats(now));
+    s.advance(now);
+    s.inFlight++;
+  }
+
+  /**
+   * Register end of a request to an instance.
+   *
+   * @param url instance URL
+   * @param nanos response time in nanoseconds
+   */
+  public void end(String url, long nanos) {
+    Stats s = stats.get(url);
+    if (s == null || s.inFlight == 0) {
+      return;
+    }
+    s.advance(System.nanoTime());
+    s.inFlight--;
+    s.requests++;
+    s.nanos += nanos;
+  }
+
+  /**
+   * Get number of requests in progress.
+   *
+   * @param url instance URL
+   * @return number of requests
+   */
+  public int getInFlight(String url) {
+    Stats s = stats.get(url);
+    return s == null ? 0 : s.inFlight;
+  }
+
+  /**
+   * Return the load since the previous sample (or the first request) and
+   * start a new period.
+   *
+   * @param url instance URL
+   * @return load; all zero if there was no traffic
+   */
+  public Sample sample(String url) {
+    Stats s = stats.get(url);
+    if (s == null) {
+      return new Sample(0.0, 0, 0.0);
+    }
+    final long now = System.nanoTime();
+    s.advance(now);
+    final long period = now - s.since;
+    Sample r = new Sample(period > 0 ? (double) s.area / period : s.inFlight,
+      s.requests, s.requests > 0 ? s.nanos / 1000000.0 / s.requests : 0.0);
+    if (s.inFlight == 0) {
+      stats.remove(url);
+    } else {
+      s.area = 0;
+      s.requests = 0;
+      s.nanos = 0;
+      s.since = now;
+    }
+    return r;
+  }
+}
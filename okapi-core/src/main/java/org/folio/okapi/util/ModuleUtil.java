@@ -27,9 +27,31 @@ public class ModuleUtil {
     options.setDeploy(getParamBoolean(req, "deploy", false));
     options.setPurge(getParamBoolean(req, "purge", false));
     options.setTenantParameters(req.getParam("tenantParameters"));
+    options.setParallel(getParamInteger(req, "parallel", 1));
+    if (options.getParallel() < 1) {
+      throw new DecodeException(messages.getMessage("11608", "parallel",
+        "Must be at least 1"));
+    }
+    options.setTenantParallel(getParamInteger(req, "tenantParallel", 1));
+    if (options.getTenantParallel() < 1) {
+      throw new DecodeException(messages.getMessage("11608", "tenantParallel",
+        "Must be at least 1"));
+    }
     return options;
   }
 
+  public static int getParamInteger(HttpServerRequest req, String name, int defValue) {
+    String v = req.getParam(name);
+    if (v == null) {
+      return defValue;
+    }
+    try {
+      return Integer.parseInt(v);
+    } catch (NumberFormatException ex) {
+      throw new DecodeException(messages.getMessage("11608", name, ex.getMessage()));
+    }
+  }
+
   public static boolean getParamBoolean(HttpServerRequest req, String name, boolean defValue) {
     String v = req.getParam(name);
     if (v == null) {
@@ -42,6 +64,69 @@ public class ModuleUtil {
     throw new DecodeException("Bad boolean for parameter " + name + ": " + v);
   }
 
+  /**
+   * Get the part of a list that is asked for by parameters offset and limit.
+   *
+   * @param <T> type of elements
+   * @param req request with the parameters; offset 0 and no limit if missing
+   * @param list the whole list
+   * @return the part of the list
+   * @throws DecodeException if a parameter is not a number or is negative
+   */
+  public static <T> List<T> page(HttpServerRequest req, List<T> list) {
+    return page(list, getOffset(req), getLimit(req));
+  }
+
+  /**
+   * Get a part of a list.
+   *
+   * @param <T> type of elements
+   * @param list the whole list
+   * @param offset number of elements to skip
+   * @param limit largest number of elements to return
+   * @return the part of the list
+   */
+  public static <T> List<T> page(List<T> list, int offset, int limit) {
+    if (offset == 0 && limit >= list.size()) {
+      return list;
+    }
+    final int from = Math.min(offset, list.size());
+    return new ArrayList<>(list.subList(from, from + Math.min(limit, list.size() - from)));
+  }
+
+  /**
+   * Get parameter offset.
+   *
+   * @param req request with the parameter
+   * @return the offset; 0 if missing
+   * @throws DecodeException if it is not a number or is negative
+   */
+  public static int getOffset(HttpServerRequest req) {
+    final int offset = getParamInteger(req, "offset", 0);
+    if (offset < 0) {
+      throw new DecodeException(messages.getMessage("11608", "offset",
+        "Must not be negative"));
+    }
+    return offset;
+  }
+
+  /**
+   * Get parameter limit.
+   *
+   * @param req request with the parameter
+   * @return the limit; Integer.MAX_VALUE if missing
+   * @throws DecodeException if it is not a number or is negative
+   */
+  public static int getLimit(HttpServerRequest req) {
+    final int limit = getParamInteger(req, "limit", Integer.MAX_VALUE);
+    if (limit < 0) {
+      throw new DecodeException(messages.getMessage("11608", "limit",
+        "Must not be negative"));
+    }
+    return limit;
+  }
+
+
   private static boolean interfaceCheck(InterfaceDescriptor[] interfaces, String interfaceStr) {
     if (interfaceStr == null) {
       return true;
@@ -59,7 +144,20 @@ public class ModuleUtil {
     }
   }
 
-  public static List<ModuleDescriptor> filter(HttpServerRequest req, List<ModuleDescriptor> list) {
+  /**
+   * Filter, sort and page modules by the parameters of a request.
+   *
+   * @param req request with the parameters
+   * @param list modules; may be modified
+   * @param query query whose sortby, if any, sorts the modules after the sort
+   * by id; null for none
+   * @return the modules, without the details unless parameter full is true
+   * @throws DecodeException if a parameter is not valid
+   */
+  public static List<ModuleDescriptor> filter(HttpServerRequest req,
+    List<ModuleDescriptor> list, CqlQuery query) {
+
+
     ModuleId filter = null;
     String filterStr = req.getParam("filter");
     if (filterStr != null) {
@@ -108,6 +206,10 @@ public class ModuleUtil {
     } else {
       Collections.sort(list, Collections.reverseOrder());
     }
+    if (query != null) {
+      query.sort(list);
+    }
+    list = page(req, list);
     if (full) {
       return list;
     }
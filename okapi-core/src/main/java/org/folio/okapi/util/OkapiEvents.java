@@ -0,0 +1,159 @@
+package org.folio.okapi.util;
+
+import io.vertx.core.logging.Logger;
+import org.folio.okapi.common.OkapiLogger;
+
+/**
+ * Java Flight Recorder events for the proxy and for management operations.
+ *
+ * The begin methods return null when flight recorder is not available in
+ * the JVM, or when the event is not enabled in the running recording. The
+ * end methods accept null and do nothing then, so the cost when not
+ * recording is a null check. Callers must not touch the event classes
+ * otherwise, so that Okapi still runs on JVMs without the jdk.jfr module.
+ *
+ * The events are org.folio.okapi.ProxyHop, org.folio.okapi.InstallStep and
+ * org.folio.okapi.Deployment. Enable them with a custom .jfc settings file,
+ * or they are recorded with the defaults (enabled, no threshold).
+ */
+public class OkapiEvents {
+
+  /**
+   * Tenant of install steps that are shared by all tenants of a bulk
+   * install, namely deploy and undeploy. Not a valid tenant id.
+   */
+  public static final String BULK_TENANT = "*";
+
+  private static final Logger logger = OkapiLogger.get();
+  private static final boolean AVAILABLE = checkAvailable();
+
+  private OkapiEvents() {
+    throw new IllegalAccessError("OkapiEvents");
+  }
+
+  private static boolean checkAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      logger.debug("Flight recorder events not available: " + e);
+      return false;
+    }
+  }
+
+  /**
+   * Tell whether flight recorder events can be emitted in this JVM.
+   *
+   * @return true if the jdk.jfr API is present
+   */
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  static ProxyHopEvent beginProxyHop(String reqId, String tenant,
+    String module, String proxyType, String phase) {
+
+    if (!AVAILABLE) {
+      return null;
+    }
+    ProxyHopEvent e = new ProxyHopEvent();
+    if (!e.isEnabled()) {
+      return null;
+    }
+    e.reqId = reqId;
+    e.tenant = tenant;
+    e.module = module;
+    e.proxyType = proxyType;
+    e.phase = phase;
+    e.begin();
+    return e;
+  }
+
+  static void endProxyHop(ProxyHopEvent e, int status, long bytes) {
+    if (e != null) {
+      e.status = status;
+      e.bytes = bytes;
+      e.commit();
+    }
+  }
+
+  /**
+   * Begin an install step event.
+   *
+   * @param tenant tenant id; {@link #BULK_TENANT} for a step of a bulk install
+   * @param module module id
+   * @param step deploy, enable, disable or undeploy
+   * @return event; null if not recording
+   */
+  public static InstallStepEvent beginInstallStep(String tenant,
+    String module, String step) {
+
+    if (!AVAILABLE) {
+      return null;
+    }
+    InstallStepEvent e = new InstallStepEvent();
+    if (!e.isEnabled()) {
+      return null;
+    }
+    e.tenant = tenant;
+    e.module = module;
+    e.step = step;
+    e.begin();
+    return e;
+  }
+
+  /**
+   * End and commit install step event.
+   *
+   * @param e event from beginInstallStep; may be null
+   * @param success whether the step succeeded
+   */
+  public static void endInstallStep(InstallStepEvent e, boolean success) {
+    if (e != null) {
+      e.success = success;
+      e.commit();
+    }
+  }
+
+  /**
+   * Begin a deployment event.
+   *
+   * @param operation deploy or undeploy
+   * @param srvcId module id
+   * @param instId instance id
+   * @return event; null if not recording
+   */
+  public static DeploymentEvent beginDeployment(String operation,
+    String srvcId, String instId) {
+
+    if (!AVAILABLE) {
+      return null;
+    }
+    DeploymentEvent e = new DeploymentEvent();
+    if (!e.isEnabled()) {
+      return null;
+    }
+    e.operation = operation;
+    e.srvcId = srvcId;
+    e.instId = instId;
+    e.begin();
+    return e;
+  }
+
+  /**
+   * End and commit deployment event.
+   *
+   * @param e event from beginDeployment; may be null
+   * @param url URL of the instance; null if unknown
+   * @param success whether the operation succeeded
+   */
+  public static void endDeployment(DeploymentEvent e, String url,
+    boolean success) {
+
+    if (e != null) {
+      e.url = url;
+      e.success = success;
+      e.commit();
+    }
+  }
+}
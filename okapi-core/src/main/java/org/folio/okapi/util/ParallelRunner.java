@@ -0,0 +1,75 @@
+package org.folio.okapi.util;
+
+import io.vertx.core.Handler;
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+import org.folio.okapi.common.ExtendedAsyncResult;
+import org.folio.okapi.common.Failure;
+import org.folio.okapi.common.Success;
+
+/**
+ * Run an asynchronous operation for each element of an iterator, with at
+ * most a given number of operations in progress at a time. When an operation
+ * fails, no more are started, and the first failure is returned once those
+ * in progress have completed. Must be used from one event loop.
+ *
+ * @param <T> element type
+ */
+public class ParallelRunner<T> {
+
+  private final Iterator<T> it;
+  private final int parallel;
+  private final BiConsumer<T, Handler<ExtendedAsyncResult<Void>>> op;
+  private final Handler<ExtendedAsyncResult<Void>> fut;
+  private int running;
+  private ExtendedAsyncResult<Void> failure;
+  private boolean done;
+
+  private ParallelRunner(Iterator<T> it, int parallel,
+    BiConsumer<T, Handler<ExtendedAsyncResult<Void>>> op,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    this.it = it;
+    this.parallel = parallel < 1 ? 1 : parallel;
+    this.op = op;
+    this.fut = fut;
+  }
+
+  /**
+   * Run operation for all elements.
+   *
+   * @param <T> element type
+   * @param it elements
+   * @param parallel maximum number of operations in progress
+   * @param op operation, which must call the handler exactly once
+   * @param fut called when all operations have completed, or after a failure
+   */
+  public static <T> void run(Iterator<T> it, int parallel,
+    BiConsumer<T, Handler<ExtendedAsyncResult<Void>>> op,
+    Handler<ExtendedAsyncResult<Void>> fut) {
+
+    new ParallelRunner<>(it, parallel, op, fut).next();
+  }
+
+  private void next() {
+    while (failure == null && running < parallel && it.hasNext()) {
+      T e = it.next();
+      running++;
+      op.accept(e, res -> {
+        running--;
+        if (res.failed() && failure == null) {
+          failure = res;
+        }
+        next();
+      });
+    }
+    if (!done && running == 0 && (failure != null || !it.hasNext())) {
+      done = true;
+      if (failure != null) {
+        fut.handle(new Failure<>(failure.getType(), failure.cause()));
+      } else {
+        fut.handle(new Success<>());
+      }
+    }
+  }
+}
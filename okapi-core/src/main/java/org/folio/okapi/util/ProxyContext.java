@@ -5,10 +5,17 @@ import io.vertx.core.MultiMap;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.logging.Logger;
 import io.vertx.ext.web.RoutingContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.folio.okapi.bean.ModuleInstance;
+import org.folio.okapi.bean.RoutingEntry;
 import org.folio.okapi.common.ErrorType;
 import org.folio.okapi.common.HttpResponse;
 import org.folio.okapi.common.OkapiClient;
@@ -28,7 +35,8 @@ public class ProxyContext {
   private List<ModuleInstance> modList;
   private final String reqId;
   private String tenant;
-  private final RoutingContext ctx;
+  private final RoutingContext ctx; // null if detached
+  private final MultiMap headers; // of the request
   private Timer.Context timer;
   private Long timerId;
   private final int waitMs;
@@ -40,9 +48,48 @@ public class ProxyContext {
   // store handler response status code and headers
   private int handlerRes;
   private MultiMap handlerHeaders = MultiMap.caseInsensitiveMultiMap();
+  // body of the internal module that is written as it is encoded; null if
+  // the body is the result of the internal module
+  private JsonListWriter<?> streamBody;
+
+  // per-phase timing of the request: tenant, modules, routing, discovery,
+  // each module hop (auth/pre/handler/post) and relay of the response
+  private final List<String> phaseNames = new ArrayList<>();
+  private final List<Long> phaseNanos = new ArrayList<>();
+  private String phase;
+  private long phaseStart;
+  private boolean phasesClosed;
+  // module hops in progress, with a flight recorder event or load
+  // tracking; the response of one hop may still stream into the next, so
+  // there can be more than one
+  private final Map<ModuleInstance, Hop> hops = new IdentityHashMap<>();
+  // load tracking of module instances; null for none
+  private ModuleLoad moduleLoad;
+  private final List<String> reservedUrls = new ArrayList<>();
+  // module versions picked by a traffic split instead of the enabled ones
+  private final Set<String> canaryModules = new HashSet<>();
+  // shadow module for modules whose requests are copied; null if none
+  private Map<String, String> mirrors;
 
   private Messages messages = Messages.getInstance();
 
+  /**
+   * A module hop: flight recorder event, with the status and the bytes of
+   * the module response so far, and the instance whose load it adds to.
+   */
+  private static class Hop {
+    private final ProxyHopEvent event; // null if not recording
+    private final String loadUrl; // null if load is not tracked
+    private final long loadStart = System.nanoTime();
+    private int status = -1;
+    private long bytes;
+
+    Hop(ProxyHopEvent event, String loadUrl) {
+      this.event = event;
+      this.loadUrl = loadUrl;
+    }
+  }
+
   /**
    * Constructor to be used from proxy. Does not log the request, as we do not
    * know the tenant yet.
@@ -54,6 +101,7 @@ public class ProxyContext {
     this.waitMs = waitMs;
     this.tenant = "-";
     this.modList = null;
+    this.headers = ctx.request().headers();
     String curid = ctx.request().getHeader(XOkapiHeaders.REQUEST_ID);
     String path = ctx.request().path();
     if (path == null) { // defensive coding, should always be there
@@ -80,10 +128,35 @@ public class ProxyContext {
     handlerRes = 0;
   }
 
+  private ProxyContext(ProxyContext pc) {
+    this.ctx = null;
+    this.waitMs = 0;
+    this.tenant = pc.tenant;
+    this.reqId = pc.reqId;
+    this.headers = MultiMap.caseInsensitiveMultiMap();
+    for (String name : pc.headers.names()) {
+      if (name.startsWith("X-") || name.startsWith("x-")) {
+        headers.add(name, pc.headers.getAll(name));
+      }
+    }
+  }
+
+  /**
+   * Make a context for work that goes on after the response to this request
+   * has been sent, such as an asynchronous install. It has the tenant,
+   * request id and X- headers of the request, including the token, but no
+   * RoutingContext: errors are logged, never written to a response.
+   *
+   * @return the detached context
+   */
+  public ProxyContext detach() {
+    return new ProxyContext(this);
+  }
+
   public final void startTimer(String key) {
     closeTimer();
     timer = DropwizardHelper.getTimerContext(key);
-    if (waitMs > 0) {
+    if (waitMs > 0 && ctx != null) {
       timerId = ctx.vertx().setPeriodic(waitMs, res
         -> logger.warn(reqId + " WAIT "
           + ctx.request().remoteAddress()
@@ -93,6 +166,249 @@ public class ProxyContext {
     }
   }
 
+  /**
+   * Start timing a phase of the request. Ends the current phase, if any.
+   * Module hops are named like "handler:mod-foo-1.0.0", the rest of the
+   * phases are plain names like "tenant" or "discovery".
+   *
+   * @param name name of the phase
+   */
+  public void startPhase(String name) {
+    endPhase();
+    phase = name;
+    phaseStart = System.nanoTime();
+  }
+
+  /**
+   * End the current phase, if any.
+   */
+  public void endPhase() {
+    if (phase != null) {
+      phaseNames.add(phase);
+      phaseNanos.add(System.nanoTime() - phaseStart);
+      phase = null;
+    }
+  }
+
+  /**
+   * Return the phases timed so far, in microseconds. For example
+   * "tenant=12us modules=30us routing=45us discovery=8us auth:mod-auth=1203us"
+   *
+   * @return phase summary; empty if no phases were timed
+   */
+  public String getPhaseSummary() {
+    StringBuilder b = new StringBuilder();
+    appendPhases(b, false);
+    return b.toString();
+  }
+
+  // phases as name=duration, separated by space; the current phase up to
+  // now, if asked for
+  private void appendPhases(StringBuilder b, boolean current) {
+    for (int i = 0; i < phaseNames.size(); i++) {
+      if (b.length() > 0) {
+        b.append(' ');
+      }
+      b.append(phaseNames.get(i)).append('=')
+        .append(phaseNanos.get(i) / 1000).append("us");
+    }
+    if (current && phase != null) {
+      if (b.length() > 0) {
+        b.append(' ');
+      }
+      b.append(phase).append('=')
+        .append((System.nanoTime() - phaseStart) / 1000).append("us");
+    }
+  }
+
+  /**
+   * Add the phase timings so far as response header. Must be called before
+   * the response headers are written.
+   */
+  public void addPhaseHeader() {
+    if (!phaseNames.isEmpty()) {
+      ctx.response().headers().set(XOkapiHeaders.PHASE_TIMING, getPhaseSummary());
+    }
+  }
+
+  /**
+   * Close the phase timing, when the response has been sent. Logs the phases
+   * at debug level and updates the per-phase metrics ("proxy.phase.tenant",
+   * "proxy.phase.handler", ..). Also ends the module hops that did not
+   * complete, with status -1, and releases the instances used. Only the
+   * first call has any effect.
+   */
+  public void closePhases() {
+    if (phasesClosed) {
+      return;
+    }
+    phasesClosed = true;
+    for (Hop h : hops.values()) {
+      endHop(h, -1);
+    }
+    hops.clear();
+    for (String url : reservedUrls) {
+      moduleLoad.release(url);
+    }
+    reservedUrls.clear();
+    endPhase();
+    if (phaseNames.isEmpty()) {
+      return;
+    }
+    for (int i = 0; i < phaseNames.size(); i++) {
+      String name = phaseNames.get(i);
+      int idx = name.indexOf(':');
+      if (idx != -1) {
+        name = name.substring(0, idx);
+      }
+      DropwizardHelper.updateTimer("proxy.phase." + name,
+        phaseNanos.get(i), TimeUnit.NANOSECONDS);
+    }
+    logger.debug(reqId + " PHASES " + tenant + " " + getPhaseSummary());
+  }
+
+  /**
+   * Begin a module hop: flight recorder event for invoking a module, see
+   * {@link OkapiEvents}, and the request to the instance in the module load
+   * tracking, if set. The hop ends with {@link #endHopEvent} when the module
+   * response has been read, or with {@link #failHopEvent}.
+   *
+   * @param mi module being invoked
+   */
+  public void beginHopEvent(ModuleInstance mi) {
+    final RoutingEntry re = mi.getRoutingEntry();
+    ProxyHopEvent e = OkapiEvents.beginProxyHop(reqId, tenant,
+      mi.getModuleDescriptor().getId(), re.getProxyType().name(),
+      re.getPhase());
+    String url = mi.getUrl();
+    if (moduleLoad == null || url == null || url.isEmpty()) {
+      url = null;
+    } else {
+      moduleLoad.begin(url);
+    }
+    if (e != null || url != null) {
+      hops.put(mi, new Hop(e, url));
+    }
+  }
+
+  /**
+   * Register the arrival of the response headers of a module.
+   *
+   * @param mi module invoked
+   * @param status HTTP status from the module
+   */
+  public void hopResponse(ModuleInstance mi, int status) {
+    Hop h = hops.get(mi);
+    if (h != null) {
+      h.status = status;
+    }
+  }
+
+  /**
+   * Count part of the body of a module response.
+   *
+   * @param mi module invoked
+   * @param bytes size of the part
+   */
+  public void addHopBytes(ModuleInstance mi, long bytes) {
+    Hop h = hops.get(mi);
+    if (h != null) {
+      h.bytes += bytes;
+    }
+  }
+
+  /**
+   * End a module hop, when the module response has been read. The time
+   * until then is the latency of the instance. Does nothing if the hop has
+   * ended already.
+   *
+   * @param mi module invoked
+   */
+  public void endHopEvent(ModuleInstance mi) {
+    Hop h = hops.remove(mi);
+    if (h != null) {
+      endHop(h, h.status);
+    }
+  }
+
+  /**
+   * End a module hop that failed, such as when the module could not be
+   * reached, or its response broke off. The event gets status -1.
+   *
+   * @param mi module invoked
+   */
+  public void failHopEvent(ModuleInstance mi) {
+    Hop h = hops.remove(mi);
+    if (h != null) {
+      endHop(h, -1);
+    }
+  }
+
+  private void endHop(Hop h, int status) {
+    OkapiEvents.endProxyHop(h.event, status, h.bytes);
+    if (h.loadUrl != null) {
+      moduleLoad.end(h.loadUrl, System.nanoTime() - h.loadStart);
+    }
+  }
+
+  /**
+   * Set where the load on module instances is registered.
+   *
+   * @param moduleLoad load tracking; null for none
+   */
+  public void setModuleLoad(ModuleLoad moduleLoad) {
+    this.moduleLoad = moduleLoad;
+  }
+
+  /**
+   * Register that the request is going to use a module instance. The
+   * instance is released when the response has been sent.
+   *
+   * @param url instance URL
+   */
+  public void reserveUrl(String url) {
+    if (moduleLoad != null && url != null && !url.isEmpty()) {
+      reservedUrls.add(url);
+      moduleLoad.reserve(url);
+    }
+  }
+
+  /**
+   * Register that a module version was picked by a traffic split.
+   *
+   * @param id module ID
+   */
+  public void addCanary(String id) {
+    canaryModules.add(id);
+  }
+
+  public boolean isCanary(String id) {
+    return canaryModules.contains(id);
+  }
+
+  /**
+   * Register that requests to a module are to be copied to a shadow.
+   *
+   * @param id module ID
+   * @param shadow module ID of the shadow
+   */
+  public void setMirror(String id, String shadow) {
+    if (mirrors == null) {
+      mirrors = new HashMap<>();
+    }
+    mirrors.put(id, shadow);
+  }
+
+  /**
+   * Get the shadow that requests to a module are copied to.
+   *
+   * @param id module ID
+   * @return module ID of the shadow; null if requests are not copied
+   */
+  public String getMirror(String id) {
+    return mirrors == null ? null : mirrors.get(id);
+  }
+
   public void closeTimer() {
     if (timerId != null) {
       ctx.vertx().cancelTimer(timerId);
@@ -150,10 +466,25 @@ public class ProxyContext {
     this.tenant = tenant;
   }
 
+  /**
+   * Get the routing context of the request.
+   *
+   * @return the context; null if detached
+   */
   public RoutingContext getCtx() {
     return ctx;
   }
 
+  /**
+   * Get the headers of the request. For a detached context, only the X-
+   * headers.
+   *
+   * @return headers
+   */
+  public MultiMap getHeaders() {
+    return headers;
+  }
+
   private String getReqId() {
     return reqId;
   }
@@ -190,6 +521,25 @@ public class ProxyContext {
     return handlerHeaders;
   }
 
+  /**
+   * Get the list that the internal module returned to be streamed.
+   *
+   * @return writer of the list; null if none
+   */
+  public JsonListWriter<?> getStreamBody() {
+    return streamBody;
+  }
+
+  /**
+   * Return a list from the internal module by streaming it, instead of
+   * encoding it to a string first.
+   *
+   * @param streamBody writer of the list
+   */
+  public void setStreamBody(JsonListWriter<?> streamBody) {
+    this.streamBody = streamBody;
+  }
+
   /* Helpers for logging and building responses */
   public final void logRequest(RoutingContext ctx, String tenant) {
     StringBuilder mods = new StringBuilder();
@@ -205,10 +555,20 @@ public class ProxyContext {
       + mods.toString());
   }
 
+  /**
+   * Log a response, with the phases of the request so far as name=duration
+   * fields, the current phase up to now.
+   *
+   * @param module module that responded; okapi for Okapi itself
+   * @param url URL of the request, or message
+   * @param statusCode HTTP status
+   */
   public void logResponse(String module, String url, int statusCode) {
-    logger.info(reqId
+    StringBuilder b = new StringBuilder(reqId
       + " RES " + statusCode + timeDiff() + " "
       + module + " " + url);
+    appendPhases(b, true);
+    logger.info(b.toString());
   }
 
   public void responseError(ErrorType t, Throwable cause) {
@@ -226,10 +586,15 @@ public class ProxyContext {
   public void responseError(int code, String msg) {
     logResponse("okapi", msg, code);
     closeTimer();
-    HttpResponse.responseError(ctx, code, msg);
+    if (ctx != null) {
+      HttpResponse.responseError(ctx, code, msg);
+    }
   }
 
   public void addTraceHeaderLine(String h) {
+    if (ctx == null) {
+      return;
+    }
     ctx.response().headers().add(XOkapiHeaders.TRACE, h);
   }
 
@@ -0,0 +1,47 @@
+package org.folio.okapi.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one module invocation in the proxy pipeline.
+ * Created through {@link OkapiEvents} only.
+ */
+@Name("org.folio.okapi.ProxyHop")
+@Label("Proxy Hop")
+@Description("One module invocation while proxying a request")
+@Category({"Okapi", "Proxy"})
+@StackTrace(false)
+public final class ProxyHopEvent extends jdk.jfr.Event {
+
+  @Label("Request Id")
+  String reqId;
+
+  @Label("Tenant")
+  String tenant;
+
+  @Label("Module")
+  String module;
+
+  @Label("Proxy Type")
+  String proxyType;
+
+  @Label("Phase")
+  String phase;
+
+  @Label("Status")
+  @Description("HTTP status of the module response, -1 if there was no complete response")
+  int status;
+
+  @Label("Response Bytes")
+  @Description("Bytes of the module response body that were read")
+  @DataAmount
+  long bytes;
+
+  ProxyHopEvent() {
+  }
+}
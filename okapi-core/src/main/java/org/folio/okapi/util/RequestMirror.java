@@ -0,0 +1,128 @@
+package org.folio.okapi.util;
+
+import com.codahale.metrics.Timer;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.logging.Logger;
+import java.util.LinkedList;
+import org.folio.okapi.common.OkapiLogger;
+
+/**
+ * Sends copies of proxied requests to shadow instances and discards the
+ * responses. At most maxInFlight copies are outstanding at a time, and at
+ * most maxQueue more wait; anything beyond that is dropped, so that a slow
+ * shadow never holds up the requests it copies. Must only be used from the
+ * event loop of the verticle that proxies.
+ */
+public class RequestMirror {
+
+  private static final int TIMEOUT = 60000;
+
+  private final Logger logger = OkapiLogger.get();
+  private final HttpClient httpClient;
+  private final int maxInFlight;
+  private final int maxQueue;
+  private final int maxBody;
+  private final LinkedList<Runnable> queue = new LinkedList<>();
+  private int inFlight;
+
+  /**
+   * Create mirror.
+   *
+   * @param vertx Vert.x handle
+   * @param maxInFlight number of copies being sent at a time
+   * @param maxQueue number of copies waiting to be sent
+   * @param maxBody largest request body, in bytes, that is copied
+   */
+  public RequestMirror(Vertx vertx, int maxInFlight, int maxQueue, int maxBody) {
+    this.maxInFlight = maxInFlight < 1 ? 1 : maxInFlight;
+    this.maxQueue = maxQueue < 0 ? 0 : maxQueue;
+    this.maxBody = maxBody;
+    HttpClientOptions opt = new HttpClientOptions();
+    opt.setMaxPoolSize(this.maxInFlight);
+    httpClient = vertx.createHttpClient(opt);
+    DropwizardHelper.registerGauge("proxy.mirror.queue", () -> queue.size());
+  }
+
+  /**
+   * Get largest request body that is copied. Requests with a larger body
+   * are not mirrored.
+   *
+   * @return number of bytes
+   */
+  public int getMaxBody() {
+    return maxBody;
+  }
+
+  /**
+   * Check if another copy would be dropped.
+   *
+   * @return true if there is no room to send or queue a copy
+   */
+  public boolean isFull() {
+    return inFlight >= maxInFlight && queue.size() >= maxQueue;
+  }
+
+  /**
+   * Send a copy of a request, now or when there is room.
+   *
+   * @param method HTTP method
+   * @param url full URL of the shadow instance, including path
+   * @param headers request headers; not modified later by the caller
+   * @param body request body
+   * @param metricKey timer for the shadow's response time
+   * @return true if sent or queued; false if dropped
+   */
+  public boolean send(HttpMethod method, String url, MultiMap headers,
+    Buffer body, String metricKey) {
+
+    Runnable r = () -> send2(method, url, headers, body, metricKey);
+    if (inFlight < maxInFlight) {
+      inFlight++;
+      r.run();
+    } else if (queue.size() < maxQueue) {
+      queue.add(r);
+    } else {
+      DropwizardHelper.markEvent("proxy.mirror.dropped");
+      return false;
+    }
+    return true;
+  }
+
+  private void send2(HttpMethod method, String url, MultiMap headers,
+    Buffer body, String metricKey) {
+
+    final boolean[] done = new boolean[1];
+    Timer.Context tim = DropwizardHelper.getTimerContext(metricKey);
+    Runnable end = () -> {
+      if (!done[0]) {
+        done[0] = true;
+        tim.close();
+        inFlight--;
+        if (!queue.isEmpty()) {
+          inFlight++;
+          queue.removeFirst().run();
+        }
+      }
+    };
+    HttpClientRequest cReq = httpClient.requestAbs(method, url, res -> {
+      res.handler(x -> {
+      });
+      res.endHandler(x -> end.run());
+      res.exceptionHandler(e -> end.run());
+    });
+    cReq.exceptionHandler(e -> {
+      logger.debug("mirror " + url + ": " + e.getMessage());
+      end.run();
+    });
+    cReq.setTimeout(TIMEOUT);
+    cReq.headers().setAll(headers);
+    cReq.headers().remove("Content-Length");
+    cReq.end(body);
+  }
+}
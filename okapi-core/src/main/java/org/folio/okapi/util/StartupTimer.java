@@ -0,0 +1,60 @@
+package org.folio.okapi.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the phases of the startup. Each phase lasts from the end of the
+ * previous one, or from the creation of the timer for the first one. The
+ * durations are also reported as timers startup.PHASE.
+ */
+public class StartupTimer {
+
+  private final long start;
+  private long last;
+  private final Map<String, Long> phases = new LinkedHashMap<>();
+
+  public StartupTimer() {
+    start = System.nanoTime();
+    last = start;
+  }
+
+  /**
+   * End a phase.
+   *
+   * @param phase name of the phase
+   */
+  public void end(String phase) {
+    final long now = System.nanoTime();
+    phases.put(phase, now - last);
+    DropwizardHelper.updateTimer("startup." + phase, now - last, TimeUnit.NANOSECONDS);
+    last = now;
+  }
+
+  /**
+   * Get the duration of a phase.
+   *
+   * @param phase name of the phase
+   * @return milliseconds; -1 if the phase has not ended
+   */
+  public long get(String phase) {
+    Long l = phases.get(phase);
+    return l == null ? -1 : TimeUnit.NANOSECONDS.toMillis(l);
+  }
+
+  /**
+   * Report the phases that have ended.
+   *
+   * @return durations of the phases and the total, like "storage 12ms, total 12ms"
+   */
+  public String report() {
+    StringBuilder b = new StringBuilder();
+    for (Map.Entry<String, Long> e : phases.entrySet()) {
+      b.append(e.getKey()).append(' ')
+        .append(TimeUnit.NANOSECONDS.toMillis(e.getValue())).append("ms, ");
+    }
+    b.append("total ").append(TimeUnit.NANOSECONDS.toMillis(last - start)).append("ms");
+    return b.toString();
+  }
+}
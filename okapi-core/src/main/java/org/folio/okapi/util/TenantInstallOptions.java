@@ -8,6 +8,9 @@ public class TenantInstallOptions {
   private boolean purge = false;
   private String tenantParameters;
   private boolean npmSnapshot = false;
+  private int parallel = 1;
+  private int tenantParallel = 1;
+  private InstallProgress progress;
 
   public void setPreRelease(boolean v) {
     preRelease = v;
@@ -57,5 +60,44 @@ public class TenantInstallOptions {
     return npmSnapshot;
   }
 
+  public void setParallel(int v) {
+    parallel = v;
+  }
+
+  /**
+   * Maximum number of deploys or tenant interface calls in progress at a
+   * time during install. 1 performs them one by one.
+   *
+   * @return parallelism, at least 1
+   */
+  public int getParallel() {
+    return parallel;
+  }
+
+  public void setTenantParallel(int v) {
+    tenantParallel = v;
+  }
 
+  /**
+   * Maximum number of tenants that modules are enabled for at a time during
+   * bulk install.
+   *
+   * @return parallelism, at least 1
+   */
+  public int getTenantParallel() {
+    return tenantParallel;
+  }
+
+  public void setProgress(InstallProgress v) {
+    progress = v;
+  }
+
+  /**
+   * Get receiver of per-module progress, used by asynchronous install jobs.
+   *
+   * @return progress receiver; null if progress is not tracked
+   */
+  public InstallProgress getProgress() {
+    return progress;
+  }
 }
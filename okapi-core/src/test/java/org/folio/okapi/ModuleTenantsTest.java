@@ -1,5 +1,6 @@
 package org.folio.okapi;
 
+import com.codahale.metrics.SharedMetricRegistries;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
 import org.junit.After;
@@ -11,12 +12,20 @@ import guru.nidi.ramltester.restassured3.RestAssuredClient;
 import io.restassured.RestAssured;
 import io.restassured.response.Response;
 import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.folio.okapi.common.OkapiLogger;
 import static org.hamcrest.Matchers.*;
 import org.junit.Assert;
@@ -1348,6 +1357,337 @@ public class ModuleTenantsTest {
       c.getLastReport().isEmpty());
   }
 
+  @Test
+  public void testWarmUp() {
+    final String okapiTenant = "roskilde";
+    RestAssured.port = port;
+    RestAssuredClient c;
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"id\" : \"" + okapiTenant + "\", \"name\" : \"" + okapiTenant + "\"}")
+      .post("/_/proxy/tenants")
+      .then().statusCode(201);
+
+    final String doc1 = "{" + LS
+      + "  \"id\" : \"sample-module-1.0.0\"," + LS
+      + "  \"name\" : \"this module\"," + LS
+      + "  \"provides\" : [ {" + LS
+      + "    \"id\" : \"sample\"," + LS
+      + "    \"version\" : \"1.0\"," + LS
+      + "    \"handlers\" : [ {" + LS
+      + "      \"methods\" : [ \"GET\", \"POST\" ]," + LS
+      + "      \"pathPattern\" : \"/testb\"" + LS
+      + "    } ]" + LS
+      + "  } ]," + LS
+      + "  \"requires\" : [ ]," + LS
+      + "  \"launchDescriptor\" : {" + LS
+      + "    \"exec\" : "
+      + "\"java -Dport=%p -jar ../okapi-test-module/target/okapi-test-module-fat.jar\"," + LS
+      + "    \"warmUp\" : [ \"/testb\" ]," + LS
+      + "    \"warmUpRequests\" : 3" + LS
+      + "  }" + LS
+      + "}";
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body(doc1).post("/_/proxy/modules").then().statusCode(201)
+      .log().ifValidationFails();
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    final long warmUps = SharedMetricRegistries.getOrCreate("okapi")
+      .timer("proxy.warmup").getCount();
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("[ {\"id\" : \"sample-module-1.0.0\", \"action\" : \"enable\"} ]")
+      .post("/_/proxy/tenants/" + okapiTenant + "/install?deploy=true")
+      .then().statusCode(200).log().ifValidationFails();
+    Assert.assertEquals(warmUps + 1, SharedMetricRegistries.getOrCreate("okapi")
+      .timer("proxy.warmup").getCount());
+
+    c.given()
+      .header("X-Okapi-Tenant", okapiTenant)
+      .get("/testb")
+      .then()
+      .statusCode(200)
+      .log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("[ {\"id\" : \"sample-module-1.0.0\", \"action\" : \"disable\"} ]")
+      .post("/_/proxy/tenants/" + okapiTenant + "/install?deploy=true")
+      .then().statusCode(200).log().ifValidationFails();
+  }
+
+  @Test
+  public void testCanary() {
+    final String okapiTenant = "roskilde";
+    RestAssured.port = port;
+    RestAssuredClient c;
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"id\" : \"" + okapiTenant + "\", \"name\" : \"" + okapiTenant + "\"}")
+      .post("/_/proxy/tenants")
+      .then().statusCode(201);
+
+    for (String v : new String[]{"1.0.0", "1.1.0"}) {
+      final String doc = "{" + LS
+        + "  \"id\" : \"sample-module-" + v + "\"," + LS
+        + "  \"name\" : \"this module\"," + LS
+        + "  \"provides\" : [ {" + LS
+        + "    \"id\" : \"sample\"," + LS
+        + "    \"version\" : \"1.0\"," + LS
+        + "    \"handlers\" : [ {" + LS
+        + "      \"methods\" : [ \"GET\", \"POST\" ]," + LS
+        + "      \"pathPattern\" : \"/testb\"" + LS
+        + "    } ]" + LS
+        + "  } ]," + LS
+        + "  \"requires\" : [ ]," + LS
+        + "  \"launchDescriptor\" : {" + LS
+        + "    \"exec\" : "
+        + "\"java -Dport=%p -jar ../okapi-test-module/target/okapi-test-module-fat.jar\"" + LS
+        + "  }" + LS
+        + "}";
+      c = api.createRestAssured3();
+      c.given()
+        .header("Content-Type", "application/json")
+        .body(doc).post("/_/proxy/modules").then().statusCode(201)
+        .log().ifValidationFails();
+      Assert.assertTrue(
+        "raml: " + c.getLastReport().toString(),
+        c.getLastReport().isEmpty());
+    }
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"srvcId\" : \"sample-module-1.1.0\", \"nodeId\" : \"localhost\"}")
+      .post("/_/discovery/modules")
+      .then().statusCode(201).log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("[ {\"id\" : \"sample-module-1.0.0\", \"action\" : \"enable\"} ]")
+      .post("/_/proxy/tenants/" + okapiTenant + "/install?deploy=true")
+      .then().statusCode(200).log().ifValidationFails();
+
+    // not enabled
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"alternatives\" : [ {\"id\" : \"sample-module-1.0.0\", \"weight\" : 100} ]}")
+      .put("/_/proxy/tenants/" + okapiTenant + "/canary/sample-module-1.1.0")
+      .then().statusCode(400).log().ifValidationFails();
+
+    // not another version
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"alternatives\" : [ {\"id\" : \"sample-module-1.0.0\", \"weight\" : 10} ]}")
+      .put("/_/proxy/tenants/" + okapiTenant + "/canary/sample-module-1.0.0")
+      .then().statusCode(400).log().ifValidationFails();
+
+    // too much
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"alternatives\" : [ {\"id\" : \"sample-module-1.1.0\", \"weight\" : 101} ]}")
+      .put("/_/proxy/tenants/" + okapiTenant + "/canary/sample-module-1.0.0")
+      .then().statusCode(400).log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"key\" : \"user\", \"alternatives\" : [ {\"id\" : \"sample-module-1.1.0\", \"weight\" : 100} ]}")
+      .put("/_/proxy/tenants/" + okapiTenant + "/canary/sample-module-1.0.0")
+      .then().statusCode(200).log().ifValidationFails();
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given()
+      .get("/_/proxy/tenants/" + okapiTenant + "/canary")
+      .then().statusCode(200).log().ifValidationFails()
+      .body("[0].id", equalTo("sample-module-1.0.0"))
+      .body("[0].alternatives[0].id", equalTo("sample-module-1.1.0"));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    final long canary = SharedMetricRegistries.getOrCreate("okapi")
+      .meter("proxy." + okapiTenant + ".canary.sample-module-1.1.0.2xx").getCount();
+    RestAssured.given()
+      .header("X-Okapi-Tenant", okapiTenant)
+      .get("/testb")
+      .then()
+      .statusCode(200)
+      .header("X-Okapi-Trace", containsString("GET sample-module-1.1.0 "))
+      .log().ifValidationFails();
+    Assert.assertEquals(canary + 1, SharedMetricRegistries.getOrCreate("okapi")
+      .meter("proxy." + okapiTenant + ".canary.sample-module-1.1.0.2xx").getCount());
+
+    c = api.createRestAssured3();
+    c.given()
+      .delete("/_/proxy/tenants/" + okapiTenant + "/canary/sample-module-1.0.0")
+      .then().statusCode(204).log().ifValidationFails();
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given()
+      .delete("/_/proxy/tenants/" + okapiTenant + "/canary/sample-module-1.0.0")
+      .then().statusCode(404).log().ifValidationFails();
+
+    RestAssured.given()
+      .header("X-Okapi-Tenant", okapiTenant)
+      .get("/testb")
+      .then()
+      .statusCode(200)
+      .header("X-Okapi-Trace", containsString("GET sample-module-1.0.0 "))
+      .log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .get("/_/proxy/tenants/" + okapiTenant + "/canary")
+      .then().statusCode(200).log().ifValidationFails()
+      .body(equalTo("[ ]"));
+  }
+
+  @Test
+  public void testMirror() throws InterruptedException {
+    final String okapiTenant = "roskilde";
+    RestAssured.port = port;
+    RestAssuredClient c;
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"id\" : \"" + okapiTenant + "\", \"name\" : \"" + okapiTenant + "\"}")
+      .post("/_/proxy/tenants")
+      .then().statusCode(201);
+
+    for (String v : new String[]{"1.0.0", "1.1.0"}) {
+      final String doc = "{" + LS
+        + "  \"id\" : \"sample-module-" + v + "\"," + LS
+        + "  \"name\" : \"this module\"," + LS
+        + "  \"provides\" : [ {" + LS
+        + "    \"id\" : \"sample\"," + LS
+        + "    \"version\" : \"1.0\"," + LS
+        + "    \"handlers\" : [ {" + LS
+        + "      \"methods\" : [ \"GET\", \"POST\" ]," + LS
+        + "      \"pathPattern\" : \"/testb\"" + LS
+        + "    } ]" + LS
+        + "  } ]," + LS
+        + "  \"requires\" : [ ]," + LS
+        + "  \"launchDescriptor\" : {" + LS
+        + "    \"exec\" : "
+        + "\"java -Dport=%p -jar ../okapi-test-module/target/okapi-test-module-fat.jar\"" + LS
+        + "  }" + LS
+        + "}";
+      c = api.createRestAssured3();
+      c.given()
+        .header("Content-Type", "application/json")
+        .body(doc).post("/_/proxy/modules").then().statusCode(201)
+        .log().ifValidationFails();
+    }
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"srvcId\" : \"sample-module-1.1.0\", \"nodeId\" : \"localhost\"}")
+      .post("/_/discovery/modules")
+      .then().statusCode(201).log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("[ {\"id\" : \"sample-module-1.0.0\", \"action\" : \"enable\"} ]")
+      .post("/_/proxy/tenants/" + okapiTenant + "/install?deploy=true")
+      .then().statusCode(200).log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"mirror\" : \"sample-module-1.1.0\", \"mirrorPercent\" : 101}")
+      .put("/_/proxy/tenants/" + okapiTenant + "/canary/sample-module-1.0.0")
+      .then().statusCode(400).log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"mirror\" : \"sample-module-1.1.0\"}")
+      .put("/_/proxy/tenants/" + okapiTenant + "/canary/sample-module-1.0.0")
+      .then().statusCode(200).log().ifValidationFails();
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    final String key = "proxy." + okapiTenant + ".mirror.sample-module-1.1.0";
+    long mirrored = mirrorCount(key);
+
+    // a POST is not copied by default
+    postTestb(okapiTenant);
+    Thread.sleep(500);
+    Assert.assertEquals(mirrored, mirrorCount(key));
+
+    RestAssured.given()
+      .header("X-Okapi-Tenant", okapiTenant)
+      .get("/testb")
+      .then()
+      .statusCode(200)
+      .header("X-Okapi-Trace", containsString("GET sample-module-1.0.0 "))
+      .log().ifValidationFails();
+    Assert.assertEquals(mirrored + 1, waitMirrorCount(key, mirrored));
+    mirrored++;
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"mirror\" : \"sample-module-1.1.0\", \"mirrorUnsafe\" : true}")
+      .put("/_/proxy/tenants/" + okapiTenant + "/canary/sample-module-1.0.0")
+      .then().statusCode(200).log().ifValidationFails();
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    postTestb(okapiTenant);
+    Assert.assertEquals(mirrored + 1, waitMirrorCount(key, mirrored));
+  }
+
+  private static void postTestb(String tenant) {
+    RestAssured.given()
+      .header("X-Okapi-Tenant", tenant)
+      .header("Content-Type", "text/plain")
+      .body("Okapi")
+      .post("/testb")
+      .then()
+      .statusCode(200)
+      .header("X-Okapi-Trace", containsString("POST sample-module-1.0.0 "))
+      .body(equalTo("Hello Okapi"))
+      .log().ifValidationFails();
+  }
+
+  private static long mirrorCount(String key) {
+    return SharedMetricRegistries.getOrCreate("okapi").timer(key).getCount();
+  }
+
+  private static long waitMirrorCount(String key, long before)
+    throws InterruptedException {
+
+    for (int i = 0; i < 100 && mirrorCount(key) <= before; i++) {
+      Thread.sleep(50);
+    }
+    return mirrorCount(key);
+  }
+
   @Test
   public void testDepCheck() {
     RestAssured.port = port;
@@ -2360,4 +2700,691 @@ public class ModuleTenantsTest {
       .post("/_/proxy/tenants/" + okapiTenant + "/install?simulate=true&preRelease=false")
       .then().statusCode(400).log().ifValidationFails().extract().response();
   }
+
+  @Test
+  public void testInstallAsync() throws InterruptedException {
+    final String okapiTenant = "roskilde";
+    RestAssured.port = port;
+    RestAssuredClient c;
+    Response r;
+
+    final String docTenantRoskilde = "{" + LS
+      + "  \"id\" : \"" + okapiTenant + "\"," + LS
+      + "  \"name\" : \"" + okapiTenant + "\"," + LS
+      + "  \"description\" : \"Roskilde bibliotek\"" + LS
+      + "}";
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body(docTenantRoskilde).post("/_/proxy/tenants")
+      .then().statusCode(201);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    final String docProv_1_0_0 = "{" + LS
+      + "  \"id\" : \"prov-1.0.0\"," + LS
+      + "  \"name\" : \"prov module\"," + LS
+      + "  \"provides\" : [ {" + LS
+      + "    \"id\" : \"i1\"," + LS
+      + "    \"version\" : \"1.0\"," + LS
+      + "    \"handlers\" : [ {" + LS
+      + "      \"methods\" : [ \"GET\", \"POST\" ]," + LS
+      + "      \"pathPattern\" : \"/foo\"" + LS
+      + "    } ]" + LS
+      + "  } ]" + LS
+      + "}";
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body(docProv_1_0_0)
+      .post("/_/proxy/modules")
+      .then().statusCode(201).log().ifValidationFails();
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    // async and simulate do not go together
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("[ {\"id\" : \"prov-1.0.0\", \"action\" : \"enable\"} ]")
+      .post("/_/proxy/tenants/" + okapiTenant + "/install?async=true&simulate=true")
+      .then().statusCode(400);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    // errors in the install plan are reported right away
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("[ {\"id\" : \"prov-9.0.0\", \"action\" : \"enable\"} ]")
+      .post("/_/proxy/tenants/" + okapiTenant + "/install?async=true")
+      .then().statusCode(400);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    r = c.given()
+      .header("Content-Type", "application/json")
+      .body("[ {\"id\" : \"prov-1.0.0\", \"action\" : \"enable\"} ]")
+      .post("/_/proxy/tenants/" + okapiTenant + "/install?async=true")
+      .then().statusCode(202)
+      .body("tenant", equalTo(okapiTenant))
+      .body("action", equalTo("install"))
+      .body("modules[0].id", equalTo("prov-1.0.0"))
+      .extract().response();
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+    final String jobId = r.body().jsonPath().getString("id");
+    final String location = r.getHeader("Location");
+    Assert.assertEquals("/_/proxy/tenants/" + okapiTenant + "/install/" + jobId, location);
+
+    JsonObject job = null;
+    for (int i = 0; i < 100; i++) {
+      c = api.createRestAssured3();
+      r = c.given().get(location)
+        .then().statusCode(200).extract().response();
+      Assert.assertTrue(
+        "raml: " + c.getLastReport().toString(),
+        c.getLastReport().isEmpty());
+      job = new JsonObject(r.body().asString());
+      if (job.getBoolean("complete")) {
+        break;
+      }
+      Thread.sleep(50);
+    }
+    Assert.assertTrue(job.getBoolean("complete"));
+    Assert.assertNull(job.getString("error"));
+    JsonObject mod = job.getJsonArray("modules").getJsonObject(0);
+    Assert.assertEquals("done", mod.getString("status"));
+    Assert.assertEquals("enable", mod.getString("stage"));
+    Assert.assertNotNull(mod.getString("startDate"));
+    Assert.assertNotNull(mod.getString("endDate"));
+
+    c = api.createRestAssured3();
+    c.given().get("/_/proxy/tenants/" + okapiTenant + "/modules")
+      .then().statusCode(200)
+      .body(equalTo("[ {" + LS + "  \"id\" : \"prov-1.0.0\"" + LS + "} ]"));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().get("/_/proxy/tenants/" + okapiTenant + "/install")
+      .then().statusCode(200)
+      .body("size()", equalTo(1))
+      .body("[0].id", equalTo(jobId));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().get("/_/proxy/tenants/" + okapiTenant + "/install/foo")
+      .then().statusCode(404);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+  }
+
+  @Test
+  public void testInstallAsyncFail() throws InterruptedException {
+    final String okapiTenant = "roskilde";
+    RestAssured.port = port;
+    RestAssuredClient c;
+    Response r;
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"id\" : \"" + okapiTenant + "\", \"name\" : \"" + okapiTenant + "\"}")
+      .post("/_/proxy/tenants")
+      .then().statusCode(201);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    // has a tenant interface, but is not deployed, so the call fails
+    final String docFail_1_0_0 = "{" + LS
+      + "  \"id\" : \"tfail-1.0.0\"," + LS
+      + "  \"name\" : \"tenant init fails\"," + LS
+      + "  \"provides\" : [ {" + LS
+      + "    \"id\" : \"_tenant\"," + LS
+      + "    \"version\" : \"1.1\"," + LS
+      + "    \"interfaceType\" : \"system\"," + LS
+      + "    \"handlers\" : [ {" + LS
+      + "      \"methods\" : [ \"POST\", \"DELETE\" ]," + LS
+      + "      \"pathPattern\" : \"/_/tenant\"" + LS
+      + "    } ]" + LS
+      + "  } ]" + LS
+      + "}";
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body(docFail_1_0_0)
+      .post("/_/proxy/modules")
+      .then().statusCode(201);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    for (int run = 0; run < 2; run++) {
+      // the second run checks that the failed job does not block the tenant
+      c = api.createRestAssured3();
+      r = c.given()
+        .header("Content-Type", "application/json")
+        .body("[ {\"id\" : \"tfail-1.0.0\", \"action\" : \"enable\"} ]")
+        .post("/_/proxy/tenants/" + okapiTenant + "/install?async=true")
+        .then().statusCode(202)
+        .extract().response();
+      Assert.assertTrue(
+        "raml: " + c.getLastReport().toString(),
+        c.getLastReport().isEmpty());
+      final String location = r.getHeader("Location");
+
+      JsonObject job = null;
+      for (int i = 0; i < 100; i++) {
+        r = RestAssured.given().get(location).then().statusCode(200).extract().response();
+        job = new JsonObject(r.body().asString());
+        if (job.getBoolean("complete")) {
+          break;
+        }
+        Thread.sleep(50);
+      }
+      Assert.assertTrue(job.getBoolean("complete"));
+      Assert.assertNotNull(job.getString("error"));
+      JsonObject mod = job.getJsonArray("modules").getJsonObject(0);
+      Assert.assertEquals("failed", mod.getString("status"));
+    }
+
+    c = api.createRestAssured3();
+    c.given().get("/_/proxy/tenants/" + okapiTenant + "/modules")
+      .then().statusCode(200)
+      .body(equalTo("[ ]"));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+  }
+
+  @Test
+  public void testInstallBulk() {
+    RestAssured.port = port;
+    RestAssuredClient c;
+
+    for (String tenant : new String[]{"tenant1", "tenant2"}) {
+      c = api.createRestAssured3();
+      c.given()
+        .header("Content-Type", "application/json")
+        .body("{\"id\" : \"" + tenant + "\", \"name\" : \"" + tenant + "\"}")
+        .post("/_/proxy/tenants")
+        .then().statusCode(201);
+      Assert.assertTrue(
+        "raml: " + c.getLastReport().toString(),
+        c.getLastReport().isEmpty());
+    }
+
+    final String docProv_1_0_0 = "{" + LS
+      + "  \"id\" : \"prov-1.0.0\"," + LS
+      + "  \"name\" : \"prov module\"," + LS
+      + "  \"provides\" : [ {" + LS
+      + "    \"id\" : \"i1\"," + LS
+      + "    \"version\" : \"1.0\"," + LS
+      + "    \"handlers\" : [ {" + LS
+      + "      \"methods\" : [ \"GET\", \"POST\" ]," + LS
+      + "      \"pathPattern\" : \"/foo\"" + LS
+      + "    } ]" + LS
+      + "  } ]" + LS
+      + "}";
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body(docProv_1_0_0)
+      .post("/_/proxy/modules")
+      .then().statusCode(201).log().ifValidationFails();
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    final String bulk = "{\"tenants\" : [ \"tenant1\", \"tenant2\" ],"
+      + " \"modules\" : [ {\"id\" : \"prov\", \"action\" : \"enable\"} ] }";
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"tenants\" : [ \"tenant1\", \"unknown\" ],"
+        + " \"modules\" : [ {\"id\" : \"prov\", \"action\" : \"enable\"} ] }")
+      .post("/_/proxy/install")
+      .then().statusCode(404);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"tenants\" : [ \"tenant1\" ] }")
+      .post("/_/proxy/install")
+      .then().statusCode(400);
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body(bulk)
+      .post("/_/proxy/install?simulate=true&tenantParallel=2")
+      .then().statusCode(200)
+      .body("size()", equalTo(2))
+      .body("[0].tenant", equalTo("tenant1"))
+      .body("[0].modules[0].id", equalTo("prov-1.0.0"))
+      .body("[1].tenant", equalTo("tenant2"))
+      .body("[1].modules[0].id", equalTo("prov-1.0.0"));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().get("/_/proxy/tenants/tenant1/modules")
+      .then().statusCode(200).body(equalTo("[ ]"));
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body(bulk)
+      .post("/_/proxy/install?tenantParallel=2")
+      .then().statusCode(200)
+      .body("size()", equalTo(2))
+      .body("[0].error", nullValue())
+      .body("[1].error", nullValue());
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    for (String tenant : new String[]{"tenant1", "tenant2"}) {
+      c = api.createRestAssured3();
+      c.given().get("/_/proxy/tenants/" + tenant + "/modules")
+        .then().statusCode(200)
+        .body(equalTo("[ {" + LS + "  \"id\" : \"prov-1.0.0\"" + LS + "} ]"));
+      Assert.assertTrue(
+        "raml: " + c.getLastReport().toString(),
+        c.getLastReport().isEmpty());
+    }
+
+    // already enabled: uptodate for both
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body(bulk)
+      .post("/_/proxy/install")
+      .then().statusCode(200)
+      .body("[0].modules[0].action", equalTo("uptodate"))
+      .body("[1].modules[0].action", equalTo("uptodate"));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+  }
+
+  /*
+   * Install and upgrade with parallel=4 for one tenant and one module at a
+   * time for another, with dependent modules and a module that provides
+   * tenantPermissions, which is a barrier. One server plays all modules and
+   * records the calls of the tenant interfaces, by tenant.
+   */
+  @Test
+  public void testInstallParallel(TestContext context) {
+    RestAssured.port = port;
+    RestAssuredClient c;
+    final int modulePort = 9250;
+    final String url = "http://localhost:" + modulePort;
+
+    Map<String, List<String>> calls = new ConcurrentHashMap<>();
+    Async listening = context.async();
+    vertx.createHttpServer().requestHandler(req -> req.bodyHandler(b -> {
+      final String tenant = req.getHeader("X-Okapi-Tenant");
+      if ("/_/tenant".equals(req.path()) && req.method() == HttpMethod.POST) {
+        calls.computeIfAbsent(tenant, k -> Collections.synchronizedList(new ArrayList<>()))
+          .add(new JsonObject(b.toString()).getString("module_to"));
+      } else if ("/_/tenantpermissions".equals(req.path())) {
+        calls.computeIfAbsent(tenant + " perms", k -> Collections.synchronizedList(new ArrayList<>()))
+          .add(new JsonObject(b.toString()).getString("moduleId"));
+      }
+      req.response().setStatusCode(200).end("{}");
+    })).listen(modulePort, context.asyncAssertSuccess(x -> listening.complete()));
+    listening.awaitSuccess(10000);
+
+    final String[][] modules = {
+      // id, provides, requires
+      {"perm-1.0.0", "permissions 1.0", ""},
+      {"a-1.0.0", "ia 1.0", "permissions 1.0"},
+      {"b-1.0.0", "ib 1.0", "ia 1.0"},
+      {"c-1.0.0", "ic 1.0", "ia 1.0"},
+      {"d-1.0.0", "id 1.0", "ib 1.0,ic 1.0"},
+      {"a-1.1.0", "ia 1.1", "permissions 1.0"},
+      {"d-1.1.0", "id 1.0", "ia 1.1,ib 1.0,ic 1.0"}
+    };
+    for (String[] m : modules) {
+      JsonArray provides = new JsonArray()
+        .add(new JsonObject().put("id", "_tenant").put("version", "1.1")
+          .put("interfaceType", "system")
+          .put("handlers", new JsonArray().add(new JsonObject()
+            .put("methods", new JsonArray().add("POST").add("DELETE"))
+            .put("pathPattern", "/_/tenant"))));
+      String[] p = m[1].split(" ");
+      provides.add(new JsonObject().put("id", p[0]).put("version", p[1])
+        .put("handlers", new JsonArray().add(new JsonObject()
+          .put("methods", new JsonArray().add("GET"))
+          .put("pathPattern", "/" + p[0]))));
+      if (m[0].startsWith("perm-")) {
+        provides.add(new JsonObject().put("id", "_tenantPermissions")
+          .put("version", "1.0").put("interfaceType", "system")
+          .put("handlers", new JsonArray().add(new JsonObject()
+            .put("methods", new JsonArray().add("POST"))
+            .put("pathPattern", "/_/tenantpermissions"))));
+      }
+      JsonArray requires = new JsonArray();
+      for (String r : m[2].isEmpty() ? new String[0] : m[2].split(",")) {
+        String[] q = r.split(" ");
+        requires.add(new JsonObject().put("id", q[0]).put("version", q[1]));
+      }
+      JsonObject md = new JsonObject().put("id", m[0]).put("name", m[0])
+        .put("provides", provides).put("requires", requires);
+      c = api.createRestAssured3();
+      c.given()
+        .header("Content-Type", "application/json")
+        .body(md.encodePrettily())
+        .post("/_/proxy/modules")
+        .then().statusCode(201).log().ifValidationFails();
+      Assert.assertTrue(
+        "raml: " + c.getLastReport().toString(),
+        c.getLastReport().isEmpty());
+
+      c = api.createRestAssured3();
+      c.given()
+        .header("Content-Type", "application/json")
+        .body(new JsonObject().put("srvcId", m[0]).put("instId", m[0] + "-inst")
+          .put("url", url).encode())
+        .post("/_/discovery/modules")
+        .then().statusCode(201).log().ifValidationFails();
+    }
+
+    final String[] tenants = {"seq", "par"};
+    for (String tenant : tenants) {
+      c = api.createRestAssured3();
+      c.given()
+        .header("Content-Type", "application/json")
+        .body("{\"id\" : \"" + tenant + "\", \"name\" : \"" + tenant + "\"}")
+        .post("/_/proxy/tenants")
+        .then().statusCode(201);
+      Assert.assertTrue(
+        "raml: " + c.getLastReport().toString(),
+        c.getLastReport().isEmpty());
+
+      c = api.createRestAssured3();
+      c.given()
+        .header("Content-Type", "application/json")
+        .body("[ {\"id\" : \"d-1.0.0\", \"action\" : \"enable\"} ]")
+        .post("/_/proxy/tenants/" + tenant + "/install?parallel="
+          + ("par".equals(tenant) ? "4" : "1"))
+        .then().statusCode(200).log().ifValidationFails();
+      Assert.assertTrue(
+        "raml: " + c.getLastReport().toString(),
+        c.getLastReport().isEmpty());
+    }
+    for (String tenant : tenants) {
+      // the barrier first, then a level at a time; b and c in either order
+      for (String key : new String[]{tenant, tenant + " perms"}) {
+        List<String> l = calls.get(key);
+        Assert.assertEquals(key + ": " + l, 5, l.size());
+        Assert.assertEquals(Arrays.asList("perm-1.0.0", "a-1.0.0"), l.subList(0, 2));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("b-1.0.0", "c-1.0.0")),
+          new HashSet<>(l.subList(2, 4)));
+        Assert.assertEquals("d-1.0.0", l.get(4));
+      }
+    }
+    Assert.assertEquals(tenantModules("seq"), tenantModules("par"));
+    Assert.assertEquals(
+      new HashSet<>(Arrays.asList("perm-1.0.0", "a-1.0.0", "b-1.0.0", "c-1.0.0", "d-1.0.0")),
+      new HashSet<>(tenantModules("par")));
+
+    calls.clear();
+    for (String tenant : tenants) {
+      c = api.createRestAssured3();
+      c.given()
+        .post("/_/proxy/tenants/" + tenant + "/upgrade?parallel="
+          + ("par".equals(tenant) ? "4" : "1"))
+        .then().statusCode(200).log().ifValidationFails();
+      Assert.assertTrue(
+        "raml: " + c.getLastReport().toString(),
+        c.getLastReport().isEmpty());
+    }
+    for (String tenant : tenants) {
+      // d-1.1.0 requires what a-1.1.0 provides
+      Assert.assertEquals(Arrays.asList("a-1.1.0", "d-1.1.0"), calls.get(tenant));
+      Assert.assertEquals(Arrays.asList("a-1.1.0", "d-1.1.0"), calls.get(tenant + " perms"));
+    }
+    Assert.assertEquals(tenantModules("seq"), tenantModules("par"));
+    Assert.assertEquals(
+      new HashSet<>(Arrays.asList("perm-1.0.0", "a-1.1.0", "b-1.0.0", "c-1.0.0", "d-1.1.0")),
+      new HashSet<>(tenantModules("par")));
+  }
+
+  private static List<String> tenantModules(String tenant) {
+    return RestAssured.given().get("/_/proxy/tenants/" + tenant + "/modules")
+      .then().statusCode(200).extract().jsonPath().getList("id");
+  }
+
+  @Test
+  public void testPhaseTiming(TestContext context) throws InterruptedException {
+    RestAssured.port = port;
+    RestAssuredClient c;
+    final String okapiTenant = "roskilde";
+    final int modulePort = 9251;
+
+    redeploy(context, new JsonObject()
+      .put("port", Integer.toString(port))
+      .put("logWaitMs", "200")
+      .put("phaseTimingHeader", "true"));
+
+    Async listening = context.async();
+    vertx.createHttpServer().requestHandler(req -> req.response().end("phase"))
+      .listen(modulePort, context.asyncAssertSuccess(x -> listening.complete()));
+    listening.awaitSuccess(10000);
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"id\" : \"" + okapiTenant + "\", \"name\" : \"" + okapiTenant + "\"}")
+      .post("/_/proxy/tenants")
+      .then().statusCode(201);
+
+    final String docPhase = "{" + LS
+      + "  \"id\" : \"phase-1.0.0\"," + LS
+      + "  \"name\" : \"phase module\"," + LS
+      + "  \"provides\" : [ {" + LS
+      + "    \"id\" : \"phase\"," + LS
+      + "    \"version\" : \"1.0\"," + LS
+      + "    \"handlers\" : [ {" + LS
+      + "      \"methods\" : [ \"GET\" ]," + LS
+      + "      \"pathPattern\" : \"/phase\"" + LS
+      + "    } ]" + LS
+      + "  } ]" + LS
+      + "}";
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body(docPhase)
+      .post("/_/proxy/modules")
+      .then().statusCode(201).log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"srvcId\" : \"phase-1.0.0\", \"instId\" : \"phase-1\","
+        + " \"url\" : \"http://localhost:" + modulePort + "\"}")
+      .post("/_/discovery/modules")
+      .then().statusCode(201).log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("[ {\"id\" : \"phase-1.0.0\", \"action\" : \"enable\"} ]")
+      .post("/_/proxy/tenants/" + okapiTenant + "/install")
+      .then().statusCode(200).log().ifValidationFails();
+
+    final String key = "proxy.phase.handler";
+    final long before = phaseCount(key);
+    String timing = RestAssured.given()
+      .header("X-Okapi-Tenant", okapiTenant)
+      .get("/phase")
+      .then().statusCode(200).body(equalTo("phase"))
+      .log().ifValidationFails()
+      .extract().header("X-Okapi-Phase-Timing");
+    Assert.assertNotNull(timing);
+    Assert.assertTrue(timing, timing.matches("tenant=[0-9]+us modules=[0-9]+us"
+      + " routing=[0-9]+us discovery=[0-9]+us handler:phase-1.0.0=[0-9]+us"));
+
+    // the timers are updated when the response has been sent
+    for (int i = 0; i < 100 && phaseCount(key) <= before; i++) {
+      Thread.sleep(50);
+    }
+    Assert.assertEquals(before + 1, phaseCount(key));
+    for (String phase : new String[]{"tenant", "modules", "routing", "discovery"}) {
+      Assert.assertTrue(phase, phaseCount("proxy.phase." + phase) > 0);
+    }
+  }
+
+  private static long phaseCount(String key) {
+    return SharedMetricRegistries.getOrCreate("okapi").timer(key).getCount();
+  }
+
+  private void redeploy(TestContext context, JsonObject conf) {
+    Async async = context.async();
+    vertx.undeploy(vertx.deploymentIDs().iterator().next(), context.asyncAssertSuccess(x -> {
+      DeploymentOptions opt = new DeploymentOptions().setConfig(conf);
+      vertx.deployVerticle(MainVerticle.class.getName(), opt,
+        context.asyncAssertSuccess(y -> async.complete()));
+    }));
+    async.awaitSuccess(60000);
+  }
+
+  @Test
+  public void testSnapshot(TestContext context) {
+    final String okapiTenant = "roskilde";
+    final String snapshotFile = "target/okapi-snapshot.json";
+    RestAssured.port = port;
+    RestAssuredClient c;
+    Response r;
+
+    c = api.createRestAssured3();
+    r = c.given().get("/_/proxy/snapshot")
+      .then().statusCode(200).log().ifValidationFails()
+      .extract().response();
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+    Assert.assertEquals(64, r.getBody().jsonPath().getString("checksum").length());
+
+    // no snapshot file configured
+    c = api.createRestAssured3();
+    c.given().post("/_/proxy/snapshot")
+      .then().statusCode(400).log().ifValidationFails();
+
+    new java.io.File(snapshotFile).delete();
+    JsonObject conf = new JsonObject()
+      .put("port", Integer.toString(port))
+      .put("logWaitMs", "200")
+      .put("snapshot", snapshotFile);
+    redeploy(context, conf);
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"id\" : \"" + okapiTenant + "\"}")
+      .post("/_/proxy/tenants")
+      .then().statusCode(201);
+
+    final String doc = "{" + LS
+      + "  \"id\" : \"sample-module-1.0.0\"," + LS
+      + "  \"provides\" : [ {" + LS
+      + "    \"id\" : \"sample\"," + LS
+      + "    \"version\" : \"1.0\"," + LS
+      + "    \"handlers\" : [ {" + LS
+      + "      \"methods\" : [ \"GET\", \"POST\" ]," + LS
+      + "      \"pathPattern\" : \"/testb\"" + LS
+      + "    } ]" + LS
+      + "  } ]" + LS
+      + "}";
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body(doc).post("/_/proxy/modules").then().statusCode(201)
+      .log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"id\" : \"sample-module-1.0.0\"}")
+      .post("/_/proxy/tenants/" + okapiTenant + "/modules")
+      .then().statusCode(201).log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"name\" : \"helloGreeting\", \"value\" : \"hej\"}")
+      .post("/_/env")
+      .then().statusCode(201).log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given()
+      .header("Content-Type", "application/json")
+      .body("{\"srvcId\" : \"sample-module-1.0.0\", \"instId\" : \"sample-1\","
+        + " \"url\" : \"http://localhost:9231\"}")
+      .post("/_/discovery/modules")
+      .then().statusCode(201).log().ifValidationFails();
+
+    c = api.createRestAssured3();
+    c.given().post("/_/proxy/snapshot")
+      .then().statusCode(200).log().ifValidationFails()
+      .body("file", equalTo(snapshotFile))
+      .body("tenants", equalTo(2))
+      .body("env", equalTo(1))
+      .body("discovery", equalTo(1));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    // in-memory storage starts empty, so everything comes from the snapshot
+    redeploy(context, conf);
+
+    c = api.createRestAssured3();
+    c.given().get("/_/proxy/tenants/" + okapiTenant + "/modules")
+      .then().statusCode(200).log().ifValidationFails()
+      .body("id", hasItem("sample-module-1.0.0"));
+
+    c = api.createRestAssured3();
+    c.given().get("/_/env/helloGreeting")
+      .then().statusCode(200).log().ifValidationFails()
+      .body("value", equalTo("hej"));
+
+    c = api.createRestAssured3();
+    c.given().get("/_/discovery/modules/sample-module-1.0.0/sample-1")
+      .then().statusCode(200).log().ifValidationFails()
+      .body("url", equalTo("http://localhost:9231"));
+
+    // a snapshot that does not match its checksum is checked as when posted
+    c = api.createRestAssured3();
+    String text = c.given().get("/_/proxy/snapshot")
+      .then().statusCode(200).extract().asString();
+    JsonObject o = new JsonObject(text);
+    o.put("checksum", "edited");
+    vertx.fileSystem().writeFileBlocking(snapshotFile,
+      io.vertx.core.buffer.Buffer.buffer(o.encode()));
+    redeploy(context, conf);
+
+    c = api.createRestAssured3();
+    c.given().get("/_/proxy/tenants/" + okapiTenant + "/modules")
+      .then().statusCode(200).log().ifValidationFails()
+      .body("id", hasItem("sample-module-1.0.0"));
+  }
 }
@@ -46,8 +46,19 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.json.Json;
+import io.vertx.ext.asyncsql.AsyncSQLClient;
+import io.vertx.ext.asyncsql.PostgreSQLClient;
+import org.folio.okapi.bean.InterfaceDescriptor;
+import org.folio.okapi.bean.ModuleDescriptor;
+import org.folio.okapi.bean.Tenant;
+import org.folio.okapi.bean.TenantDescriptor;
 import org.folio.okapi.common.OkapiLogger;
+import org.folio.okapi.common.Success;
 import org.folio.okapi.common.XOkapiHeaders;
+import org.folio.okapi.service.ModuleStore;
+import org.folio.okapi.service.TenantStore;
+import org.folio.okapi.service.impl.Storage;
+import org.folio.okapi.util.CqlQuery;
 
 @java.lang.SuppressWarnings({"squid:S1192"})
 @RunWith(Parameterized.class)
@@ -64,7 +75,7 @@ public class ModuleTest {
     if (f != null) {
       return Collections.singletonList("inmemory");
     } else {
-      return Arrays.asList("inmemory", "postgres", "mongo");
+      return Arrays.asList("inmemory", "file", "postgres", "mongo");
     }
   }
 
@@ -139,6 +150,10 @@ public class ModuleTest {
         postgres = new EmbeddedPostgres(V9_6);
         postgres.start("localhost", POSTGRES_PORT, "okapi", "okapi", "okapi25");
       }
+    } else if ("file".equals(value)) {
+      // small, so that compaction is exercised too
+      conf.put("file_dir", "target/okapi-data")
+        .put("file_compact_entries", "5");
     } else if ("mongo".equals(value)) {
       conf.put("mongo_host", "localhost")
         .put("mongo_port", Integer.toString(MONGO_PORT));
@@ -162,6 +177,7 @@ public class ModuleTest {
 
     conf.put("postgres_db_init", "1");
     conf.put("mongo_db_init", "1");
+    conf.put("file_db_init", "1");
     DeploymentOptions opt = new DeploymentOptions().setConfig(conf);
     vertx.deployVerticle(MainVerticle.class.getName(), opt, context.asyncAssertSuccess());
   }
@@ -1699,6 +1715,7 @@ public class ModuleTest {
       undeployFirst(x -> {
         conf.remove("mongo_db_init");
         conf.remove("postgres_db_init");
+        conf.remove("file_db_init");
 
         DeploymentOptions opt = new DeploymentOptions().setConfig(conf);
         vertx.deployVerticle(MainVerticle.class.getName(), opt, res -> {
@@ -2598,6 +2615,7 @@ public class ModuleTest {
     undeployFirst(x -> {
       conf.remove("mongo_db_init");
       conf.remove("postgres_db_init");
+      conf.remove("file_db_init");
 
       DeploymentOptions opt = new DeploymentOptions().setConfig(conf);
       vertx.deployVerticle(MainVerticle.class.getName(), opt, res -> {
@@ -2620,4 +2638,221 @@ public class ModuleTest {
     });
   }
 
+  /*
+   * Two nodes that share the database but not a cluster follow each other,
+   * also after their LISTEN connections were cut by the server.
+   */
+  @Test
+  public void testPostgresListen(TestContext context) {
+    if (!"postgres".equals(conf.getString("storage"))) {
+      return;
+    }
+    conf.remove("postgres_db_init");
+    conf.put("postgres_listen", "true");
+    Async a1 = context.async();
+    undeployFirst(context.asyncAssertSuccess(x -> {
+      DeploymentOptions opt = new DeploymentOptions().setConfig(conf);
+      vertx.deployVerticle(MainVerticle.class.getName(), opt,
+        context.asyncAssertSuccess(y -> a1.complete()));
+    }));
+    a1.awaitSuccess(10000);
+
+    final int port2 = 9240;
+    JsonObject conf2 = conf.copy()
+      .put("port", Integer.toString(port2))
+      .put("port_start", "9241")
+      .put("port_end", "9242")
+      .put("nodename", "node2");
+    Vertx vertx2 = Vertx.vertx();
+    Async a2 = context.async();
+    vertx2.deployVerticle(MainVerticle.class.getName(),
+      new DeploymentOptions().setConfig(conf2),
+      context.asyncAssertSuccess(y -> a2.complete()));
+    a2.awaitSuccess(10000);
+
+    createModule("{\"id\" : \"listen-1.0.0\", \"name\" : \"listen\"}");
+    waitForStatus(port2, "/_/proxy/modules/listen-1.0.0", 200);
+
+    AsyncSQLClient cli = PostgreSQLClient.createNonShared(vertx, new JsonObject()
+      .put("host", "localhost").put("port", POSTGRES_PORT)
+      .put("username", "okapi").put("password", "okapi25")
+      .put("database", "okapi"));
+    StringBuilder cut = new StringBuilder("0");
+    Async a3 = context.async();
+    cli.query("SELECT pid, pg_terminate_backend(pid) FROM pg_stat_activity"
+      + " WHERE query = 'LISTEN okapi_changes'", context.asyncAssertSuccess(res -> {
+        context.assertEquals(2, res.getNumRows());
+        res.getResults().forEach(r -> cut.append(",").append(r.getInteger(0)));
+        a3.complete();
+      }));
+    a3.awaitSuccess(10000);
+    // both nodes listen again, on new connections, within 5 seconds
+    for (int i = 0; i < 150 && countListening(context, cli, cut) < 2; i++) {
+      sleep(100);
+    }
+    context.assertEquals(2L, countListening(context, cli, cut));
+    cli.close();
+
+    createModule("{\"id\" : \"listen-1.0.1\", \"name\" : \"listen\"}");
+    waitForStatus(port2, "/_/proxy/modules/listen-1.0.1", 200);
+    given().delete("/_/proxy/modules/listen-1.0.0").then().statusCode(204);
+    waitForStatus(port2, "/_/proxy/modules/listen-1.0.0", 404);
+
+    Async a4 = context.async();
+    vertx2.close(context.asyncAssertSuccess(y -> a4.complete()));
+    a4.awaitSuccess(10000);
+  }
+
+  private long countListening(TestContext context, AsyncSQLClient cli,
+    CharSequence notPids) {
+
+    long[] count = new long[1];
+    Async a = context.async();
+    cli.query("SELECT count(*) FROM pg_stat_activity"
+      + " WHERE query = 'LISTEN okapi_changes' AND pid NOT IN (" + notPids + ")",
+      context.asyncAssertSuccess(res -> {
+        count[0] = res.getResults().get(0).getLong(0);
+        a.complete();
+      }));
+    a.awaitSuccess(10000);
+    return count[0];
+  }
+
+  // poll until the other node has seen the change
+  private void waitForStatus(int p, String path, int status) {
+    for (int i = 0; i < 50 && given().port(p).get(path).getStatusCode() != status; i++) {
+      sleep(100);
+    }
+    given().port(p).get(path).then().statusCode(status);
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  public void testStreamAll(TestContext context) {
+    if ("inmemory".equals(conf.getString("storage"))) {
+      return;
+    }
+    // more rows than fit in one batch, with ids that sort as inserted
+    final int n = 250;
+    final int batchSize = 100;
+    List<ModuleDescriptor> list = new ArrayList<>();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      ModuleDescriptor md = new ModuleDescriptor();
+      md.setId(String.format("stream-%03d-1.0.0", i));
+      list.add(md);
+      expected.add(md.getId());
+    }
+    JsonObject sconf = conf.copy()
+      .put("file_dir", "target/stream-data")
+      .put("postgres_batch_size", Integer.toString(batchSize))
+      .put("mongo_batch_size", Integer.toString(batchSize));
+    ModuleStore store = new Storage(vertx, conf.getString("storage"), sconf)
+      .getModuleStore();
+
+    List<String> ids = new ArrayList<>();
+    List<Integer> sizes = new ArrayList<>();
+    Async a = context.async();
+    store.init(true, ires -> {
+      context.assertTrue(ires.succeeded());
+      store.insertList(list, lres -> {
+        context.assertTrue(lres.succeeded());
+        store.streamAll((batch, bfut) -> {
+          sizes.add(batch.size());
+          for (ModuleDescriptor md : batch) {
+            ids.add(md.getId());
+          }
+          // complete later, as a handler that does work of its own would
+          vertx.runOnContext(v -> bfut.handle(new Success<>()));
+        }, sres -> {
+          context.assertTrue(sres.succeeded());
+          a.complete();
+        });
+      });
+    });
+    a.awaitSuccess(10000);
+    Assert.assertEquals(expected, ids);
+    Assert.assertEquals(Arrays.asList(100, 100, 50), sizes);
+  }
+
+  /*
+   * A query without sortby reads a page of tenants in order of id, both when
+   * the database finds exactly the matching rows and when it finds more.
+   * Terms on members in arrays find the modules that have them.
+   */
+  @Test
+  public void testQueryPage(TestContext context) {
+    if ("inmemory".equals(conf.getString("storage"))) {
+      return;
+    }
+    JsonObject sconf = conf.copy().put("file_dir", "target/query-data");
+    Storage storage = new Storage(vertx, conf.getString("storage"), sconf);
+    TenantStore tenantStore = storage.getTenantStore();
+    ModuleStore moduleStore = storage.getModuleStore();
+    List<Tenant> tenants = new ArrayList<>();
+    for (int i = 4; i >= 0; i--) {
+      TenantDescriptor td = new TenantDescriptor();
+      td.setId("t" + i);
+      td.setName(i % 2 == 0 ? "even" : "odd");
+      tenants.add(new Tenant(td));
+    }
+    List<ModuleDescriptor> modules = new ArrayList<>();
+    for (String id : Arrays.asList("users-1.0.0", "other-1.0.0")) {
+      ModuleDescriptor md = new ModuleDescriptor();
+      md.setId(id);
+      md.setProvides(new InterfaceDescriptor[]{
+        new InterfaceDescriptor(id.substring(0, id.indexOf('-')), "1.0")});
+      modules.add(md);
+    }
+    Map<String, List<String>> found = new HashMap<>();
+    Async a = context.async();
+    tenantStore.init(true, ires -> {
+      context.assertTrue(ires.succeeded());
+      tenantStore.insertList(tenants, lres -> {
+        context.assertTrue(lres.succeeded());
+        tenantStore.query(new CqlQuery("name==even"), 1, 1, res1 -> {
+          context.assertTrue(res1.succeeded());
+          found.put("exact", tenantIds(res1.result()));
+          tenantStore.query(new CqlQuery("name=ev* not id=t4"), 0, 5, res2 -> {
+            context.assertTrue(res2.succeeded());
+            found.put("more", tenantIds(res2.result()));
+            moduleStore.init(true, mres -> {
+              context.assertTrue(mres.succeeded());
+              moduleStore.insertList(modules, mlres -> {
+                context.assertTrue(mlres.succeeded());
+                moduleStore.query(new CqlQuery("provides.id==users"), res3 -> {
+                  context.assertTrue(res3.succeeded());
+                  List<String> ids = new ArrayList<>();
+                  for (ModuleDescriptor md : res3.result()) {
+                    ids.add(md.getId());
+                  }
+                  found.put("modules", ids);
+                  a.complete();
+                });
+              });
+            });
+          });
+        });
+      });
+    });
+    a.awaitSuccess(10000);
+    Assert.assertEquals(Arrays.asList("t2"), found.get("exact"));
+    Assert.assertEquals(Arrays.asList("t0", "t2"), found.get("more"));
+    Assert.assertEquals(Arrays.asList("users-1.0.0"), found.get("modules"));
+  }
+
+  private static List<String> tenantIds(List<Tenant> tenants) {
+    List<String> ids = new ArrayList<>();
+    for (Tenant t : tenants) {
+      ids.add(t.getId());
+    }
+    return ids;
+  }
 }
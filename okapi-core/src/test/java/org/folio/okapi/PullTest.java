@@ -458,6 +458,148 @@ public class PullTest {
       "raml: " + c.getLastReport().toString(),
       c.getLastReport().isEmpty());
 
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("Content-Type", "application/json")
+      .queryParam("query", "provides.id==int-b")
+      .get("/_/proxy/modules").then().statusCode(200)
+      .body(equalTo("[ {" + LS
+        + "  \"id\" : \"module-b-1.0.0\"," + LS
+        + "  \"name\" : \"B\"" + LS
+        + "} ]"));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("Content-Type", "application/json")
+      .queryParam("query", "module-* not name=B sortby name/sort.descending")
+      .get("/_/proxy/modules").then().statusCode(200)
+      .body(equalTo("[ {" + LS
+        + "  \"id\" : \"module-c-1.0.10000\"," + LS
+        + "  \"name\" : \"C\"" + LS
+        + "}, {" + LS
+        + "  \"id\" : \"module-a-1.0.0\"," + LS
+        + "  \"name\" : \"A\"" + LS
+        + "} ]"));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("Content-Type", "application/json")
+      .get("/_/proxy/modules?orderBy=id&order=asc&offset=1&limit=2").then().statusCode(200)
+      .body(equalTo("[ {" + LS
+        + "  \"id\" : \"module-b-1.0.0\"," + LS
+        + "  \"name\" : \"B\"" + LS
+        + "}, {" + LS
+        + "  \"id\" : \"module-c-1.0.10000\"," + LS
+        + "  \"name\" : \"C\"" + LS
+        + "} ]"));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("Content-Type", "application/json")
+      .get("/_/proxy/modules?offset=10").then().statusCode(200)
+      .body(equalTo("[ ]"));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("Content-Type", "application/json")
+      .get("/_/proxy/modules?orderBy=id&order=asc&limit=2&pretty=false").then().statusCode(200)
+      .body(equalTo("[{\"id\":\"module-a-1.0.0\",\"name\":\"A\"},"
+        + "{\"id\":\"module-b-1.0.0\",\"name\":\"B\"}]"));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    final String etag = c.given().port(port2)
+      .get("/_/proxy/modules").then().statusCode(200)
+      .header("ETag", notNullValue()).extract().header("ETag");
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("If-None-Match", etag)
+      .get("/_/proxy/modules").then().statusCode(304)
+      .header("ETag", etag).body(equalTo(""));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    // other parameters give another list
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("If-None-Match", etag)
+      .get("/_/proxy/modules?full=true").then().statusCode(200)
+      .header("ETag", not(equalTo(etag)));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    // adding and removing a module changes the version, if not the list
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("Content-Type", "application/json")
+      .body("{\"id\":\"module-e-1.0.0\",\"name\":\"E\"}")
+      .post("/_/proxy/modules").then().statusCode(201);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .delete("/_/proxy/modules/module-e-1.0.0").then().statusCode(204);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("If-None-Match", etag)
+      .get("/_/proxy/modules").then().statusCode(200)
+      .header("ETag", not(equalTo(etag)));
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("Content-Type", "application/json")
+      .get("/_/proxy/modules?limit=-1").then().statusCode(400);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("Content-Type", "application/json")
+      .queryParam("query", "name adj B")
+      .get("/_/proxy/modules").then().statusCode(400);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given().port(port2)
+      .header("Content-Type", "application/json")
+      .queryParam("query", "name=(")
+      .get("/_/proxy/modules").then().statusCode(400);
+    Assert.assertTrue(
+      "raml: " + c.getLastReport().toString(),
+      c.getLastReport().isEmpty());
+
     c = api.createRestAssured3();
     c.given().port(port2)
       .header("Content-Type", "application/json")
@@ -153,6 +153,30 @@ public class TenantRATest {
     Assert.assertTrue("raml: " + c.getLastReport().toString(),
              c.getLastReport().isEmpty());
 
+    c = api.createRestAssured3();
+    c.given()
+      .queryParam("query", "description=Roskilde*")
+      .get("/_/proxy/tenants")
+      .then().statusCode(200).body(equalTo("[ " + doc + " ]"));
+    Assert.assertTrue("raml: " + c.getLastReport().toString(),
+             c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given()
+      .queryParam("query", "cql.allRecords=1 sortby id/sort.descending")
+      .get("/_/proxy/tenants?offset=1&limit=1")
+      .then().statusCode(200).body(equalTo("[ " + doc + " ]"));
+    Assert.assertTrue("raml: " + c.getLastReport().toString(),
+             c.getLastReport().isEmpty());
+
+    c = api.createRestAssured3();
+    c.given()
+      .queryParam("query", "name=")
+      .get("/_/proxy/tenants")
+      .then().statusCode(400);
+    Assert.assertTrue("raml: " + c.getLastReport().toString(),
+             c.getLastReport().isEmpty());
+
     c = api.createRestAssured3();
     c.given().delete(location).then().statusCode(204);
     Assert.assertTrue("raml: " + c.getLastReport().toString(),
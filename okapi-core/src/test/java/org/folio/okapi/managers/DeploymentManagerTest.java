@@ -1,16 +1,23 @@
 package org.folio.okapi.managers;
 
+import com.codahale.metrics.SharedMetricRegistries;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.logging.Logger;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.folio.okapi.bean.AutoscaleDescriptor;
 import org.folio.okapi.bean.DeploymentDescriptor;
 import org.folio.okapi.bean.Ports;
 import org.folio.okapi.bean.LaunchDescriptor;
 import org.folio.okapi.common.OkapiLogger;
 import org.folio.okapi.service.impl.EnvStoreNull;
 import org.folio.okapi.service.impl.DeploymentStoreNull;
+import org.folio.okapi.util.ModuleLoad;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -85,4 +92,139 @@ public class DeploymentManagerTest {
       async.complete();
     });
   }
+
+  private static int standbyCount() {
+    return (Integer) SharedMetricRegistries.getOrCreate("okapi").getGauges()
+      .get("deploy.standby").getValue();
+  }
+
+  private boolean portFree(int port) {
+    List<Integer> got = new LinkedList<>();
+    boolean free = false;
+    int p;
+    while ((p = ports.get()) != -1) {
+      got.add(p);
+      if (p == port) {
+        free = true;
+        break;
+      }
+    }
+    for (int q : got) {
+      ports.free(q);
+    }
+    return free;
+  }
+
+  /* call handler when condition holds, checking every 100 ms */
+  private void waitFor(TestContext context, BooleanSupplier cond, int tries,
+    Handler<Void> handler) {
+
+    if (cond.getAsBoolean()) {
+      handler.handle(null);
+    } else if (tries == 0) {
+      context.fail("timed out");
+    } else {
+      vertx.setTimer(100, x -> waitFor(context, cond, tries - 1, handler));
+    }
+  }
+
+  @Test
+  public void testWarmStandby(TestContext context) {
+    async = context.async();
+    LaunchDescriptor descriptor = new LaunchDescriptor();
+    descriptor.setExec(
+      "java -Dport=%p -jar "
+      + "../okapi-test-module/target/okapi-test-module-fat.jar");
+    descriptor.setWarmStandby(1);
+    DeploymentDescriptor dd1 = new DeploymentDescriptor("1", "sid", descriptor);
+    dm.deploy(dd1, res1 -> {
+      context.assertTrue(res1.succeeded());
+      context.assertEquals("http://myhost.index:9231", res1.result().getUrl());
+      // standby gets 9232 and is used by the next deploy
+      waitFor(context, () -> standbyCount() == 1, 300, x -> {
+        DeploymentDescriptor dd2 = new DeploymentDescriptor("2", "sid", descriptor);
+        dm.deploy(dd2, res2 -> {
+          context.assertTrue(res2.succeeded());
+          context.assertEquals("http://myhost.index:9232", res2.result().getUrl());
+          dm.undeploy("1", res3 -> {
+            context.assertTrue(res3.succeeded());
+            dm.undeploy("2", res4 -> {
+              context.assertTrue(res4.succeeded());
+              // the replacement standby is stopped when the last is gone
+              waitFor(context, () -> portFree(9233), 300, y -> async.complete());
+            });
+          });
+        });
+      });
+    });
+  }
+
+  @Test
+  public void testAutoscaleMin(TestContext context) {
+    async = context.async();
+    LaunchDescriptor descriptor = new LaunchDescriptor();
+    descriptor.setExec(
+      "java -Dport=%p -jar "
+      + "../okapi-test-module/target/okapi-test-module-fat.jar");
+    AutoscaleDescriptor as = new AutoscaleDescriptor();
+    as.setMin(2);
+    as.setMax(3);
+    descriptor.setAutoscale(as);
+    ModuleLoad load = new ModuleLoad();
+    dm.setModuleLoad(load);
+    Autoscaler autoscaler = new Autoscaler(vertx, dm, load);
+    DeploymentDescriptor dd1 = new DeploymentDescriptor("1", "sid", descriptor);
+    dm.deploy(dd1, res1 -> {
+      context.assertTrue(res1.succeeded());
+      // below min: one instance is added
+      autoscaler.check();
+      waitFor(context, () -> listSize() == 2, 300, x -> {
+        // at min and no load: nothing happens
+        autoscaler.check();
+        context.assertEquals(2, listSize());
+        dm.shutdown(res2 -> {
+          context.assertTrue(res2.succeeded());
+          async.complete();
+        });
+      });
+    });
+  }
+
+  private int listSize() {
+    int[] n = new int[1];
+    dm.list(res -> n[0] = res.result().size());
+    return n[0];
+  }
+
+  @Test
+  public void testUndeployDrain(TestContext context) {
+    async = context.async();
+    LaunchDescriptor descriptor = new LaunchDescriptor();
+    descriptor.setExec(
+      "java -Dport=%p -jar "
+      + "../okapi-test-module/target/okapi-test-module-fat.jar");
+    ModuleLoad load = new ModuleLoad();
+    dm.setModuleLoad(load);
+    DeploymentDescriptor dd = new DeploymentDescriptor("1", "sid", descriptor);
+    dm.deploy(dd, res1 -> {
+      context.assertTrue(res1.succeeded());
+      final String url = res1.result().getUrl();
+      load.reserve(url);
+      final long start = System.currentTimeMillis();
+      dm.undeploy("1", res2 -> {
+        context.assertTrue(res2.succeeded());
+        context.assertTrue(System.currentTimeMillis() - start >= 500);
+        async.complete();
+      });
+      // removed from discovery right away; the process is still there
+      dis.get("sid", "1", res3 -> {
+        context.assertTrue(res3.failed());
+        dm.undeploy("1", res4 -> {
+          context.assertTrue(res4.failed());
+          context.assertEquals("Instance 1 is being undeployed", res4.cause().getMessage());
+          vertx.setTimer(500, x -> load.release(url));
+        });
+      });
+    });
+  }
 }
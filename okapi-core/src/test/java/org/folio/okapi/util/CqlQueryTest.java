@@ -0,0 +1,81 @@
+package org.folio.okapi.util;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CqlQueryTest {
+
+  private final JsonObject md = new JsonObject()
+    .put("id", "module-a-1.0.0")
+    .put("name", "A b")
+    .put("size", 10)
+    .put("provides", new JsonArray()
+      .add(new JsonObject().put("id", "int-a").put("version", "1.0"))
+      .add(new JsonObject().put("id", "int-b").put("version", "2.1")));
+
+  private boolean matches(String cql) {
+    return new CqlQuery(cql).matches(md);
+  }
+
+  @Test
+  public void testMatches() {
+    assertTrue(matches("cql.allRecords=1"));
+    assertTrue(matches("module-a-1.0.0"));
+    assertTrue(matches("module-*"));
+    assertFalse(matches("module-b*"));
+    assertTrue(matches("id=module-?-1.0.0"));
+    assertTrue(matches("name==\"A b\""));
+    assertFalse(matches("name==A*"));
+    assertTrue(matches("name=A*"));
+    assertTrue(matches("provides.id=int-b"));
+    assertTrue(matches("provides.id=int-b and provides.version>2"));
+    assertFalse(matches("provides.id<>int-b"));
+    assertTrue(matches("provides.id<>int-c"));
+    assertTrue(matches("size>9 and size<=10"));
+    assertFalse(matches("size>=11"));
+    assertTrue(matches("name=X or size=10"));
+    assertFalse(matches("module-* not name=A*"));
+    assertFalse(matches("missing=x"));
+    assertTrue(matches("missing<>x"));
+  }
+
+  @Test
+  public void testBadQueries() {
+    for (String cql : Arrays.asList("name=", "name adj A", "a..b=x")) {
+      try {
+        new CqlQuery(cql);
+        fail(cql);
+      } catch (DecodeException ex) {
+        assertNotNull(ex.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testLiterals() {
+    assertEquals(Arrays.asList("a"), CqlQuery.literals("a"));
+    assertEquals(Arrays.asList("", "a", ""), CqlQuery.literals("*a?"));
+    assertEquals(Arrays.asList("a*b"), CqlQuery.literals("a\\*b"));
+  }
+
+  @Test
+  public void testSort() {
+    List<JsonObject> l = new ArrayList<>();
+    l.add(new JsonObject().put("id", "b").put("n", "x"));
+    l.add(new JsonObject().put("id", "a").put("n", "y"));
+    l.add(new JsonObject().put("id", "c").put("n", "x"));
+    l.add(new JsonObject().put("id", "d"));
+    List<String> ids = new ArrayList<>();
+    new CqlQuery("cql.allRecords=1 sortby n/sort.descending").sort(l);
+    for (JsonObject o : l) {
+      ids.add(o.getString("id"));
+    }
+    assertEquals(Arrays.asList("a", "b", "c", "d"), ids);
+  }
+}
@@ -316,4 +316,30 @@ public class DepResolutionTest {
     });
   }
 
+
+  @Test
+  public void testInstallLevels(TestContext context) {
+    ModuleDescriptor mdF = new ModuleDescriptor();
+    mdF.setId("moduleF-1.0.0");
+
+    Map<String, ModuleDescriptor> modsAvailable = new HashMap<>();
+    modsAvailable.put(mdA100.getId(), mdA100);
+    modsAvailable.put(mdE.getId(), mdE);
+    modsAvailable.put(mdF.getId(), mdF);
+
+    List<TenantModuleDescriptor> tml = new LinkedList<>();
+    for (ModuleDescriptor md : new ModuleDescriptor[]{mdA100, mdE, mdF}) {
+      TenantModuleDescriptor tm = new TenantModuleDescriptor();
+      tm.setAction(TenantModuleDescriptor.Action.enable);
+      tm.setId(md.getId());
+      tml.add(tm);
+    }
+    List<List<TenantModuleDescriptor>> levels = DepResolution.installLevels(modsAvailable, tml);
+    context.assertEquals(2, levels.size());
+    context.assertEquals(2, levels.get(0).size());
+    context.assertEquals("moduleA-1.0.0", levels.get(0).get(0).getId());
+    context.assertEquals("moduleF-1.0.0", levels.get(0).get(1).getId());
+    context.assertEquals(1, levels.get(1).size());
+    context.assertEquals("moduleE-1.0.0", levels.get(1).get(0).getId());
+  }
 }
@@ -0,0 +1,150 @@
+package org.folio.okapi.util;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.streams.WriteStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.folio.okapi.bean.ModuleDescriptor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class JsonListWriterTest {
+
+  /*
+   * Collects what is written. Reports a full queue after each write, if
+   * full, until drained by the test. Throws on write when closed, like an
+   * HTTP response does.
+   */
+  private static class Sink implements WriteStream<Buffer> {
+
+    final Buffer written = Buffer.buffer();
+    final boolean full;
+    Handler<Void> drain;
+    int writes;
+    boolean closed;
+
+    Sink(boolean full) {
+      this.full = full;
+    }
+
+    @Override
+    public Sink exceptionHandler(Handler<Throwable> handler) {
+      return this;
+    }
+
+    @Override
+    public Sink write(Buffer data) {
+      if (closed) {
+        throw new IllegalStateException("Response is closed");
+      }
+      written.appendBuffer(data);
+      writes++;
+      return this;
+    }
+
+    @Override
+    public void end() {
+    }
+
+    @Override
+    public Sink setWriteQueueMaxSize(int maxSize) {
+      return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+      return full;
+    }
+
+    @Override
+    public Sink drainHandler(Handler<Void> handler) {
+      drain = handler;
+      return this;
+    }
+  }
+
+  private static List<ModuleDescriptor> modules(int n) {
+    List<ModuleDescriptor> l = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      ModuleDescriptor md = new ModuleDescriptor();
+      md.setId("module-" + i + "-1.0.0");
+      md.setName("Module number " + i + " with a name that is not very short");
+      l.add(md);
+    }
+    return l;
+  }
+
+  private static String write(List<ModuleDescriptor> l, boolean pretty) {
+    Sink sink = new Sink(false);
+    List<AsyncResult<Void>> done = new ArrayList<>();
+    new JsonListWriter<>(l, pretty).write(sink, done::add);
+    assertEquals(1, done.size());
+    assertTrue(done.get(0).succeeded());
+    return sink.written.toString();
+  }
+
+  @Test
+  public void testSameAsEncode() {
+    for (int n : new int[]{0, 1, 3}) {
+      List<ModuleDescriptor> l = modules(n);
+      assertEquals(Json.encodePrettily(l), write(l, true));
+      assertEquals(Json.encode(l), write(l, false));
+      assertEquals(Json.encodePrettily(l), new JsonListWriter<>(l, true).toBuffer().toString());
+      assertEquals(Json.encode(l), new JsonListWriter<>(l, false).toBuffer().toString());
+    }
+    assertEquals("[ ]", write(Collections.emptyList(), true));
+  }
+
+  @Test
+  public void testBackpressure() {
+    List<ModuleDescriptor> l = modules(5000);
+    Sink sink = new Sink(true);
+    List<AsyncResult<Void>> done = new ArrayList<>();
+    new JsonListWriter<>(l, true).write(sink, done::add);
+    int drains = 0;
+    while (done.isEmpty()) {
+      assertNotNull(sink.drain);
+      assertEquals(drains + 1, sink.writes);
+      Handler<Void> h = sink.drain;
+      drains++;
+      h.handle(null);
+    }
+    assertTrue(drains > 1);
+    assertNull(sink.drain);
+    assertTrue(done.get(0).succeeded());
+    assertEquals(Json.encodePrettily(l), sink.written.toString());
+  }
+
+  @Test
+  public void testWriteToClosed() {
+    Sink sink = new Sink(false);
+    sink.closed = true;
+    List<AsyncResult<Void>> done = new ArrayList<>();
+    new JsonListWriter<>(modules(3), true).write(sink, done::add);
+    assertEquals(1, done.size());
+    assertTrue(done.get(0).failed());
+    assertTrue(done.get(0).cause() instanceof IllegalStateException);
+  }
+
+  @Test
+  public void testCloseWhileDraining() {
+    Sink sink = new Sink(true);
+    List<AsyncResult<Void>> done = new ArrayList<>();
+    JsonListWriter<ModuleDescriptor> w = new JsonListWriter<>(modules(5000), true);
+    w.write(sink, done::add);
+    assertTrue(done.isEmpty());
+    assertNotNull(sink.drain);
+    sink.closed = true;
+    w.close();
+    assertEquals(1, done.size());
+    assertTrue(done.get(0).failed());
+    sink.drain.handle(null);
+    w.close();
+    assertEquals(1, done.size());
+    assertEquals(1, sink.writes);
+  }
+}
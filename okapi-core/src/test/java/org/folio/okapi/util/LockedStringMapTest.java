@@ -25,6 +25,7 @@ public class LockedStringMapTest {
   private Vertx vertx;
   private Async async;
   private LockedStringMap map = new LockedStringMap();
+  private long version;
 
   @Before
   public void setUp(TestContext context) {
@@ -44,7 +45,11 @@ public class LockedStringMapTest {
   public void testit(TestContext context) {
     async = context.async();
     map.init(vertx, "FooMap", res -> {
-      listEmpty(context);
+      map.getVersion(vres -> {
+        assertTrue(vres.succeeded());
+        version = vres.result();
+        listEmpty(context);
+      });
     });
   }
 
@@ -182,6 +187,39 @@ public class LockedStringMapTest {
     map.getKeys(res -> {
       assertTrue(res.succeeded());
       assertTrue("[k1.1]".equals(res.result().toString()));
+      replace(context);
+    });
+  }
+
+  private void replace(TestContext context) {
+    map.replace("k1.1", s -> s.replace("SecondKey", "ThirdKey"), res -> {
+      assertTrue(res.succeeded());
+      map.getString("k1.1", "x", gres -> {
+        assertTrue(gres.succeeded());
+        assertEquals("ThirdKey", gres.result());
+        replaceNotFound(context);
+      });
+    });
+  }
+
+  private void replaceNotFound(TestContext context) {
+    map.getVersion(vres -> {
+      assertTrue(vres.succeeded());
+      // every successful add, replace and remove so far
+      assertEquals(version + 7, vres.result().longValue());
+      version = vres.result();
+      map.replace("k1", s -> s, res -> {
+        assertTrue(res.failed());
+        assertEquals(ErrorType.NOT_FOUND, res.getType());
+        versionUnchanged(context);
+      });
+    });
+  }
+
+  private void versionUnchanged(TestContext context) {
+    map.getVersion(res -> {
+      assertTrue(res.succeeded());
+      assertEquals(version, res.result().longValue());
       done(context);
     });
   }
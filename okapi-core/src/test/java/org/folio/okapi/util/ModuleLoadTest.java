@@ -0,0 +1,52 @@
+package org.folio.okapi.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ModuleLoadTest {
+
+  @Test
+  public void testSample() throws InterruptedException {
+    ModuleLoad load = new ModuleLoad();
+    final String url = "http://localhost:9231";
+
+    ModuleLoad.Sample s = load.sample(url);
+    assertEquals(0.0, s.getInFlight(), 0.0);
+    assertEquals(0, s.getRequests());
+
+    load.begin(url);
+    load.begin(url);
+    assertEquals(2, load.getInFlight(url));
+    Thread.sleep(20);
+    load.end(url, 4000000);
+    load.end(url, 2000000);
+    assertEquals(0, load.getInFlight(url));
+    load.end(url, 1000000); // unmatched end is ignored
+
+    s = load.sample(url);
+    assertEquals(2, s.getRequests());
+    assertEquals(3.0, s.getLatency(), 0.001);
+    assertTrue(s.getInFlight() > 1.0);
+    assertTrue(s.getInFlight() <= 2.0);
+
+    s = load.sample(url);
+    assertEquals(0, s.getRequests());
+    assertEquals(0.0, s.getLatency(), 0.0);
+  }
+
+  @Test
+  public void testReserve() {
+    ModuleLoad load = new ModuleLoad();
+    final String url = "http://localhost:9231";
+
+    assertEquals(0, load.getReserved(url));
+    load.reserve(url);
+    load.reserve(url);
+    assertEquals(2, load.getReserved(url));
+    load.release(url);
+    assertEquals(1, load.getReserved(url));
+    load.release(url);
+    load.release(url);
+    assertEquals(0, load.getReserved(url));
+  }
+}
@@ -38,7 +38,7 @@ public class ProcessModuleHandleTest {
 
   private ModuleHandle createModuleHandle(LaunchDescriptor desc, int port) {
     ProcessModuleHandle pmh = new ProcessModuleHandle(vertx, desc, ports, port);
-    pmh.setConnectIterMax(5);
+    pmh.setReadyTimeout(3000);
     return pmh;
   }
 
@@ -176,6 +176,40 @@ public class ProcessModuleHandleTest {
     });
   }
 
+  @Test
+  public void testHealthPathOk(TestContext context) {
+    final Async async = context.async();
+    LaunchDescriptor desc = new LaunchDescriptor();
+    desc.setExec("java " + testModuleArgs);
+    desc.setHealthPath("/synthetic");
+    ModuleHandle mh = createModuleHandle(desc, 9231);
+
+    mh.start(res1 -> {
+      context.assertTrue(res1.succeeded());
+      mh.stop(res2 -> {
+        context.assertTrue(res2.succeeded());
+        async.complete();
+      });
+    });
+  }
+
+  @Test
+  public void testHealthPathNotFound(TestContext context) {
+    final Async async = context.async();
+    LaunchDescriptor desc = new LaunchDescriptor();
+    // listens on port, but never healthy
+    desc.setExec("java " + testModuleArgs);
+    desc.setHealthPath("/unknown");
+    ModuleHandle mh = createModuleHandle(desc, 9231);
+
+    mh.start(res -> {
+      context.assertTrue(res.failed());
+      context.assertEquals("Deployment failed. Could not connect to port 9231: "
+        + "GET /unknown returned 404", res.cause().getMessage());
+      async.complete();
+    });
+  }
+
   @Test
   public void testPortAlreadyInUse(TestContext context) {
     final Async async = context.async();
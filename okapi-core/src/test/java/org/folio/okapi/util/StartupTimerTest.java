@@ -0,0 +1,20 @@
+package org.folio.okapi.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StartupTimerTest {
+
+  @Test
+  public void testPhases() throws InterruptedException {
+    StartupTimer t = new StartupTimer();
+    assertEquals(-1, t.get("a"));
+    assertTrue(t.report().matches("total \\d+ms"));
+    Thread.sleep(5);
+    t.end("a");
+    t.end("b");
+    assertTrue(t.get("a") >= 5);
+    assertTrue(t.get("b") >= 0);
+    assertTrue(t.report(), t.report().matches("a \\d+ms, b \\d+ms, total \\d+ms"));
+  }
+}
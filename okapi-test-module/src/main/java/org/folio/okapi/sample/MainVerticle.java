@@ -19,6 +19,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.Map;
+import java.util.Random;
 import org.folio.okapi.common.HttpResponse;
 import org.folio.okapi.common.XOkapiHeaders;
 
@@ -34,6 +35,8 @@ public class MainVerticle extends AbstractVerticle {
   private String helloGreeting;
   private String tenantRequests = "";
   private JsonArray tenantParameters;
+  private SyntheticLoad syntheticLoad;
+  private Random random;
 
   // Report the request headers in response headers, body, and/or log
   private void headers(RoutingContext ctx, StringBuilder xmlMsg) {
@@ -217,6 +220,17 @@ public class MainVerticle extends AbstractVerticle {
     }
   }
 
+  private void syntheticHandle(RoutingContext ctx) {
+    SyntheticLoad s;
+    try {
+      s = syntheticLoad.forRequest(ctx.request().params());
+    } catch (IllegalArgumentException ex) {
+      responseError(ctx, 400, ex.getMessage());
+      return;
+    }
+    s.handle(ctx, random);
+  }
+
  private void myPermissionHandle(RoutingContext ctx) {
     final Buffer incoming = Buffer.buffer();
     ctx.request().handler(incoming::appendBuffer);
@@ -237,6 +251,13 @@ public class MainVerticle extends AbstractVerticle {
       helloGreeting = "Hello";
     }
     final int port = Integer.parseInt(System.getProperty("port", "8080"));
+    try {
+      syntheticLoad = SyntheticLoad.fromEnv(System.getenv());
+      random = SyntheticLoad.random(System.getenv());
+    } catch (IllegalArgumentException ex) {
+      fut.fail(ex);
+      return;
+    }
     String bName = ManagementFactory.getRuntimeMXBean().getName();
 
     ModuleVersionReporter m = new ModuleVersionReporter("org.folio.okapi/okapi-test-module");
@@ -257,6 +278,9 @@ public class MainVerticle extends AbstractVerticle {
 
     router.get("/recurse").handler(this::recurseHandle);
 
+    router.routeWithRegex("/synthetic").handler(this::syntheticHandle);
+    router.routeWithRegex("/synthetic/.*").handler(this::syntheticHandle);
+
     HttpServerOptions so = new HttpServerOptions().setHandle100ContinueAutomatically(true);
     vertx.createHttpServer(so)
       .requestHandler(router::accept)
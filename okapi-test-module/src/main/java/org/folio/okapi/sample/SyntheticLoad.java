@@ -0,0 +1,224 @@
+package org.folio.okapi.sample;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import static org.folio.okapi.common.HttpResponse.*;
+
+/**
+ * Synthetic load behavior of the test module, for benchmarks and for testing
+ * timeouts, backpressure and load balancing in Okapi.
+ *
+ * Each setting has a default taken from an environment variable, which can
+ * be overridden for a single request with a query parameter:
+ * <ul>
+ * <li>delay (syntheticDelay): milliseconds before responding</li>
+ * <li>delayMax (syntheticDelayMax): if larger than delay, the delay is
+ * random between delay and delayMax</li>
+ * <li>size (syntheticSize): response body size in bytes</li>
+ * <li>chunk (syntheticChunk): if non-zero, the response is chunked and
+ * written in pieces of this size, honoring backpressure</li>
+ * <li>chunkDelay (syntheticChunkDelay): milliseconds between chunks</li>
+ * <li>errorRate (syntheticErrorRate): fraction 0..1 of requests that fail
+ * with 500</li>
+ * <li>readDelay (syntheticReadDelay): milliseconds to pause after each
+ * piece of the request body, to simulate a slow reader</li>
+ * </ul>
+ * If environment variable syntheticSeed is set, the random delays and
+ * errors are the same sequence on every run.
+ */
+class SyntheticLoad {
+
+  private static final String ENV_PREFIX = "synthetic";
+  private static final int FILLER_SIZE = 65536;
+  private static final Buffer FILLER = filler();
+
+  private long delay;
+  private long delayMax;
+  private long size;
+  private int chunk;
+  private long chunkDelay;
+  private double errorRate;
+  private long readDelay;
+
+  private SyntheticLoad() {
+  }
+
+  private static Buffer filler() {
+    Buffer b = Buffer.buffer(FILLER_SIZE);
+    for (int i = 0; i < FILLER_SIZE; i++) {
+      b.appendByte((byte) ('a' + i % 26));
+    }
+    return b;
+  }
+
+  /**
+   * Create the process wide defaults from environment.
+   *
+   * @param env environment, usually System.getenv()
+   * @return defaults
+   * @throws IllegalArgumentException for bad values
+   */
+  static SyntheticLoad fromEnv(Map<String, String> env) {
+    SyntheticLoad s = new SyntheticLoad();
+    s.set(name -> env.get(ENV_PREFIX + Character.toUpperCase(name.charAt(0))
+      + name.substring(1)));
+    return s;
+  }
+
+  /**
+   * Create random generator for the synthetic behavior.
+   *
+   * @param env environment; syntheticSeed is used if present
+   * @return random generator
+   */
+  static Random random(Map<String, String> env) {
+    final String seed = env.get(ENV_PREFIX + "Seed");
+    return seed == null ? new Random() : new Random(Long.parseLong(seed));
+  }
+
+  /**
+   * Settings for one request: these defaults overridden by query parameters.
+   *
+   * @param params request parameters
+   * @return settings for the request
+   * @throws IllegalArgumentException for bad values
+   */
+  SyntheticLoad forRequest(MultiMap params) {
+    SyntheticLoad s = new SyntheticLoad();
+    s.delay = delay;
+    s.delayMax = delayMax;
+    s.size = size;
+    s.chunk = chunk;
+    s.chunkDelay = chunkDelay;
+    s.errorRate = errorRate;
+    s.readDelay = readDelay;
+    s.set(params::get);
+    return s;
+  }
+
+  private void set(Function<String, String> l) {
+    delay = getLong(l, "delay", delay);
+    delayMax = getLong(l, "delayMax", delayMax);
+    size = getLong(l, "size", size);
+    chunk = (int) getLong(l, "chunk", chunk);
+    chunkDelay = getLong(l, "chunkDelay", chunkDelay);
+    readDelay = getLong(l, "readDelay", readDelay);
+    final String v = l.apply("errorRate");
+    if (v != null) {
+      try {
+        errorRate = Double.parseDouble(v);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Bad value for errorRate: " + v);
+      }
+      if (errorRate < 0.0 || errorRate > 1.0) {
+        throw new IllegalArgumentException("errorRate must be between 0 and 1: " + v);
+      }
+    }
+  }
+
+  private static long getLong(Function<String, String> l, String name, long def) {
+    final String v = l.apply(name);
+    if (v == null) {
+      return def;
+    }
+    long n;
+    try {
+      n = Long.parseLong(v);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Bad value for " + name + ": " + v);
+    }
+    if (n < 0) {
+      throw new IllegalArgumentException(name + " can not be negative: " + v);
+    }
+    return n;
+  }
+
+  /**
+   * Handle a request: read the body, wait, then fail or respond.
+   *
+   * @param ctx routing context
+   * @param random random generator; only used on the verticle's event loop
+   */
+  void handle(RoutingContext ctx, Random random) {
+    final HttpServerRequest req = ctx.request();
+    final long[] received = new long[1];
+    req.handler(b -> {
+      received[0] += b.length();
+      if (readDelay > 0) {
+        req.pause();
+        ctx.vertx().setTimer(readDelay, x -> req.resume());
+      }
+    });
+    req.endHandler(x -> {
+      long wait = delay;
+      if (delayMax > delay) {
+        wait += (long) (random.nextDouble() * (delayMax - delay + 1));
+      }
+      final boolean fail = errorRate > 0.0 && random.nextDouble() < errorRate;
+      ctx.response().putHeader("X-Synthetic-Request-Bytes", Long.toString(received[0]));
+      ctx.response().putHeader("X-Synthetic-Delay", Long.toString(wait));
+      if (wait > 0) {
+        ctx.vertx().setTimer(wait, y -> respond(ctx, fail));
+      } else {
+        respond(ctx, fail);
+      }
+    });
+  }
+
+  private void respond(RoutingContext ctx, boolean fail) {
+    if (fail) {
+      responseError(ctx, 500, "Synthetic error");
+      return;
+    }
+    HttpServerResponse res = responseText(ctx, 200);
+    if (chunk == 0) {
+      res.putHeader("Content-Length", Long.toString(size));
+      writeChunks(ctx, res, size, FILLER_SIZE);
+    } else {
+      res.setChunked(true);
+      writeChunks(ctx, res, size, chunk);
+    }
+  }
+
+  private void writeChunks(RoutingContext ctx, HttpServerResponse res,
+    long remaining, int pieceSize) {
+
+    while (remaining > 0) {
+      if (res.closed()) {
+        return;
+      }
+      final long rest = remaining - pieceSize;
+      res.write(piece((int) Math.min(pieceSize, remaining)));
+      if (rest <= 0) {
+        break;
+      }
+      if (chunk > 0 && chunkDelay > 0) {
+        ctx.vertx().setTimer(chunkDelay, x -> writeChunks(ctx, res, rest, pieceSize));
+        return;
+      }
+      if (res.writeQueueFull()) {
+        res.drainHandler(x -> writeChunks(ctx, res, rest, pieceSize));
+        return;
+      }
+      remaining = rest;
+    }
+    res.end();
+  }
+
+  private static Buffer piece(int len) {
+    if (len <= FILLER_SIZE) {
+      return FILLER.getBuffer(0, len);
+    }
+    Buffer b = Buffer.buffer(len);
+    for (int left = len; left > 0; left -= FILLER_SIZE) {
+      b.appendBuffer(FILLER, 0, Math.min(left, FILLER_SIZE));
+    }
+    return b;
+  }
+}
@@ -211,4 +211,43 @@ public class SampleModuleTest {
       async.complete();
     });
   }
+
+  @Test
+  public void testSynthetic(TestContext context) {
+    Async async = context.async();
+    OkapiClient cli = new OkapiClient(URL, vertx, new HashMap<>());
+    cli.get("/synthetic?size=100000&delay=5&delayMax=10", res -> {
+      context.assertTrue(res.succeeded());
+      context.assertEquals(100000, cli.getResponsebody().length());
+      long delay = Long.parseLong(cli.getRespHeaders().get("X-Synthetic-Delay"));
+      context.assertTrue(delay >= 5 && delay <= 10);
+      testSyntheticChunked(context, cli, async);
+    });
+  }
+
+  public void testSyntheticChunked(TestContext context, OkapiClient cli, Async async) {
+    cli.post("/synthetic/x?size=1000&chunk=300&chunkDelay=1&readDelay=1", "FOO", res -> {
+      context.assertTrue(res.succeeded());
+      context.assertEquals(1000, cli.getResponsebody().length());
+      context.assertEquals("3", cli.getRespHeaders().get("X-Synthetic-Request-Bytes"));
+      testSyntheticError(context, cli, async);
+    });
+  }
+
+  public void testSyntheticError(TestContext context, OkapiClient cli, Async async) {
+    cli.get("/synthetic?errorRate=1", res -> {
+      context.assertTrue(res.failed());
+      context.assertEquals(ErrorType.INTERNAL, res.getType());
+      testSyntheticBadParameter(context, cli, async);
+    });
+  }
+
+  public void testSyntheticBadParameter(TestContext context, OkapiClient cli, Async async) {
+    cli.get("/synthetic?delay=-1", res -> {
+      cli.close();
+      context.assertTrue(res.failed());
+      context.assertEquals(ErrorType.USER, res.getType());
+      async.complete();
+    });
+  }
 }